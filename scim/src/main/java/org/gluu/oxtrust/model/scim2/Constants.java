@@ -99,6 +99,12 @@ public interface Constants {
      */
     String QUERY_PARAM_COUNT = "count";
 
+    /**
+     * Value of the <code>cursor</code> attribute of a search request used to start a search in cursor mode. Subsequent
+     * pages are obtained by supplying the <code>nextCursor</code> value found in the previous response.
+     */
+    String CURSOR_START = "*";
+
     int MAX_COUNT = 200;    //Do not remove till Gluu 4 release. This is used in SCIM-client project
 
     int MAX_BULK_OPERATIONS = 30;
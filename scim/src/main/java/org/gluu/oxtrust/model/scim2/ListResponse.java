@@ -25,6 +25,7 @@ public class ListResponse {
     private int totalResults;
     private int startIndex;
     private int itemsPerPage;
+    private String nextCursor;
 
     @JsonProperty("Resources")
     private List<BaseScimResource> resources;
@@ -76,6 +77,19 @@ public class ListResponse {
         return itemsPerPage;
     }
 
+    /**
+     * Retrieves the continuation token to use for obtaining the next page of results when the search was issued in
+     * cursor mode (see {@link SearchRequest#setCursor(String)}).
+     * @return A String value or null if there are no more results or the search was not done in cursor mode
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     /**
      * Retrieves a list with all resources contained in this <code>ListResponse</code>.
      * @return A List of BaseScimResource objects
@@ -36,6 +36,7 @@ public class SearchRequest {
     private String sortOrder;
     private Integer startIndex;
     private Integer count;
+    private String cursor;
 
     @JsonIgnore
     private String attributesStr;
@@ -170,6 +171,20 @@ public class SearchRequest {
         this.count = count;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Requests the search be performed in cursor mode. In this mode results are not sorted and <code>startIndex</code>
+     * as well as <code>sortBy</code> are ignored. Use {@link Constants#CURSOR_START} to obtain the first page, and the
+     * <code>nextCursor</code> value of the {@link ListResponse} received to get the following ones.
+     * @param cursor A continuation token
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public String getAttributesStr() {
         return attributes==null ? null : Joiner.on(",").join(attributes.toArray());
     }
@@ -15,9 +15,7 @@ import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
 import org.gluu.oxtrust.config.ConfigurationFactory;
 import org.gluu.oxtrust.ldap.service.AttributeService;
-import org.gluu.oxtrust.ldap.service.Shibboleth3ConfService;
-import org.gluu.oxtrust.ldap.service.TrustService;
-import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
+import org.gluu.oxtrust.ldap.service.Shibboleth3ConfUpdateService;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.persist.PersistenceEntryManager;
 import org.slf4j.Logger;
@@ -54,10 +52,7 @@ public class ConfigureNameIdAction implements Serializable {
     private PersistenceEntryManager ldapEntryManager;
 	
 	@Inject
-	private TrustService trustService;
-	
-	@Inject
-	private Shibboleth3ConfService shibboleth3ConfService;
+	private Shibboleth3ConfUpdateService shibboleth3ConfUpdateService;
 
 	@Inject
 	private ConfigurationFactory configurationFactory;
@@ -119,6 +114,7 @@ public class ConfigureNameIdAction implements Serializable {
 			conf.setAttributeResolverConfig(attributeResolverConfiguration);
 			conf.setRevision(conf.getRevision() + 1);
 			ldapEntryManager.merge(conf);
+			configurationFactory.notifyConfigurationChanged();
 		} catch (Exception ex) {
 			log.error("Failed to save Attribute Resolver configuration configuration", ex);
 			return OxTrustConstants.RESULT_FAILURE;
@@ -126,10 +122,7 @@ public class ConfigureNameIdAction implements Serializable {
 		
  		boolean updateShib3Configuration = applicationConfiguration.isConfigGeneration(); 
 		if (updateShib3Configuration) {    
-			List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();    
-			if (!shibboleth3ConfService.generateConfigurationFiles(trustRelationships)) {
-				log.error("Failed to update Shibboleth v3 configuration");
-				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to update Shibboleth v3 configuration");			}
+			shibboleth3ConfUpdateService.requestUpdate();
 		}
 
 		return OxTrustConstants.RESULT_SUCCESS;
@@ -17,13 +17,13 @@ import javax.enterprise.context.ConversationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.gluu.oxtrust.ldap.service.MetadataIndexService;
 import org.gluu.oxtrust.ldap.service.OrganizationService;
 import org.gluu.oxtrust.ldap.service.Shibboleth3ConfService;
 import org.gluu.oxtrust.ldap.service.TrustService;
 import org.gluu.oxtrust.model.GluuMetadataSourceType;
 import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
 import org.gluu.oxtrust.util.OxTrustConstants;
-import org.gluu.saml.metadata.SAMLMetadataParser;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.model.GluuStatus;
@@ -54,6 +54,9 @@ public class FederationDeconstructionAction implements Serializable {
 	@Inject
 	private TrustService trustService;
 
+	@Inject
+	private MetadataIndexService metadataIndexService;
+
 	private Set<String> selectedList = new HashSet<String>();
 
 	private GluuSAMLTrustRelationship selectedTR;
@@ -179,7 +182,7 @@ public class FederationDeconstructionAction implements Serializable {
 			String idpMetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator
 					+ Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
 			File metadataFile = new File(idpMetadataFolder + trustRelationship.getSpMetaDataFN());
-			for (String entity : SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile)) {
+			for (String entity : metadataIndexService.getEntityIds(metadataFile)) {
 				if (entity.toLowerCase().contains(filterString.toLowerCase())) {
 					filteredEntities.add(entity);
 				}
@@ -6,17 +6,16 @@
 
 package org.gluu.oxtrust.action;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ConversationScoped;
@@ -26,9 +25,8 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.RandomStringUtils;
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
 import org.gluu.oxtrust.ldap.load.conf.ImportPersonConfiguration;
@@ -37,28 +35,26 @@ import org.gluu.oxtrust.ldap.service.ExcelService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.ldap.service.OrganizationService;
 import org.gluu.oxtrust.ldap.service.OxTrustAuditService;
+import org.gluu.oxtrust.ldap.service.PersonImportService;
+import org.gluu.oxtrust.ldap.service.PersonImportService.ImportStatus;
+import org.gluu.oxtrust.ldap.service.PersonImportService.JobState;
+import org.gluu.oxtrust.ldap.service.PersonImportService.JobType;
 import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuCustomPerson;
-import org.gluu.oxtrust.model.table.Table;
 import org.gluu.oxtrust.security.Identity;
-import org.gluu.oxtrust.service.external.ExternalUpdateUserService;
 import org.gluu.oxtrust.util.OxTrustConstants;
-import org.gluu.persist.exception.EntryPersistenceException;
-import org.gluu.persist.model.AttributeData;
-import org.gluu.persist.model.base.GluuBoolean;
 import org.richfaces.event.FileUploadEvent;
 import org.richfaces.model.UploadedFile;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.model.GluuAttribute;
-import org.xdi.model.GluuStatus;
-import org.xdi.model.attribute.AttributeDataType;
 import org.xdi.model.user.UserRole;
 import org.xdi.service.security.Secure;
 import org.xdi.util.StringHelper;
 
 /**
- * Action class for load persons from Excel file
+ * Action class for load persons from Excel file. Validation and import are done in background by
+ * PersonImportService
  * 
  * @author Yuriy Movchan Date: 02.14.2011
  */
@@ -69,8 +65,7 @@ public class PersonImportAction implements Serializable {
 
 	private static final long serialVersionUID = -1270460481895022468L;
 
-	private static final String[] PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES = { "uid", "displayName", "mail" };
-	public static final String PERSON_PASSWORD_ATTRIBUTE = "userPassword";
+	public static final String PERSON_PASSWORD_ATTRIBUTE = PersonImportService.PERSON_PASSWORD_ATTRIBUTE;
 
 	@Inject
 	private Logger log;
@@ -88,10 +83,10 @@ public class PersonImportAction implements Serializable {
 	private AppConfiguration appConfiguration;
 
 	@Inject
-	private ExternalUpdateUserService externalUpdateUserService;
+	private ExcelService excelService;
 
 	@Inject
-	private ExcelService excelService;
+	private PersonImportService personImportService;
 
 	@Inject
 	private FacesMessages facesMessages;
@@ -115,7 +110,7 @@ public class PersonImportAction implements Serializable {
 	private FileDataToImport fileDataToImport;
 	private List<GluuAttribute> attributes;
 	private Map<String, GluuAttribute> attributesDisplayNameMap;
-	private byte[] fileData;
+	private File file;
 
 	private boolean isInitialized;
 
@@ -144,36 +139,25 @@ public class PersonImportAction implements Serializable {
 			return OxTrustConstants.RESULT_FAILURE;
 		}
 
-		log.info("Attempting to add {} persons", fileDataToImport.getPersons().size());
+		ImportStatus status;
 		try {
-			for (GluuCustomPerson person : fileDataToImport.getPersons()) {
-
-				this.person = person;
-				String result = initializePerson();
-				if (result.equals(OxTrustConstants.RESULT_SUCCESS)) {
-					result = save();
-				}
-				if (result.equals(OxTrustConstants.RESULT_SUCCESS)) {
-					log.debug("Added new person: {}", person.getUid());
-				} else {
-					log.debug("Failed to add new person: {}", person.getUid());
-					facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to add new person: '%s'", person.getUid());
-				}
-			}
-		} catch (EntryPersistenceException ex) {
-			log.error("Failed to add new person", ex);
+			status = personImportService.start(JobType.IMPORT, this.file, this.fileDataToImport.getFileName(),
+					getImportColumns(this.fileDataToImport.getImportAttributes()));
+		} catch (Exception ex) {
+			log.error("Failed to start persons import", ex);
 			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to import users");
 
 			return OxTrustConstants.RESULT_FAILURE;
 		}
 
-		log.info("All {} persons added successfully", fileDataToImport.getPersons().size());
-		oxTrustAuditService.audit(fileDataToImport.getPersons().size()+ " USERS IMPORTED ",
+		log.info("Started import of persons from file '{}', job: {}", this.fileDataToImport.getFileName(), status.getId());
+		oxTrustAuditService.audit("USERS IMPORT STARTED FROM FILE " + this.fileDataToImport.getFileName(),
 				identity.getUser(),
 				(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
-		facesMessages.add(FacesMessage.SEVERITY_INFO, "Users successfully imported");
+		facesMessages.add(FacesMessage.SEVERITY_INFO, "Users import started");
 
-		removeFileToImport();
+		this.fileDataToImport.setJobId(status.getId());
+		this.fileDataToImport.setReady(false);
 
 		return OxTrustConstants.RESULT_SUCCESS;
 	}
@@ -182,35 +166,33 @@ public class PersonImportAction implements Serializable {
 		try {
 			removeFileDataToImport();
 
-			if (uploadedFile == null) {
+			if (file == null) {
 				return OxTrustConstants.RESULT_FAILURE;
 			}
 
-			Table table;
-			InputStream is = new ByteArrayInputStream(this.fileData);
-			try {
-				table = excelService.read(is);
-			} finally {
-				IOUtils.closeQuietly(is);
-			}
+			String fileName = FilenameUtils.getName(uploadedFile.getName());
 
-			this.fileDataToImport.setTable(table);
+			// Only header row is needed to find columns, rows are validated in background
+			final Map<Integer, String> header = new HashMap<Integer, String>();
+			excelService.read(this.file, fileName, new ExcelService.RowHandler() {
+				@Override
+				public boolean row(int row, Map<Integer, String> cells) {
+					header.putAll(cells);
+					return false;
+				}
+			});
 
-			if (table != null) {
-				this.fileDataToImport.setFileName(FilenameUtils.getName(uploadedFile.getName()));
-				this.fileDataToImport.setImportAttributes(getAttributesForImport(table));
-				this.fileDataToImport.setReady(true);
+			List<ImportAttribute> importAttributes = getAttributesForImport(header);
+			if (!validateImportAttributes(importAttributes)) {
+				return OxTrustConstants.RESULT_FAILURE;
 			}
 
-			if (this.fileDataToImport.isReady()) {
-				boolean valid = prepareAndValidateImportData(this.fileDataToImport.getTable(),
-						this.fileDataToImport.getImportAttributes());
-				this.fileDataToImport.setReady(valid);
+			this.fileDataToImport.setFileName(fileName);
+			this.fileDataToImport.setImportAttributes(importAttributes);
+
+			ImportStatus status = personImportService.start(JobType.VALIDATE, this.file, fileName, getImportColumns(importAttributes));
+			this.fileDataToImport.setJobId(status.getId());
 
-				if (!valid) {
-					removeFileDataToImport();
-				}
-			}
 			return OxTrustConstants.RESULT_SUCCESS;
 		}catch (Exception e) {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Invalid file content");
@@ -221,6 +203,89 @@ public class PersonImportAction implements Serializable {
 		
 	}
 
+	/**
+	 * Refresh status of running job. Import becomes available after validation without errors
+	 */
+	public void updateJobStatus() {
+		ImportStatus status = getJobStatus();
+		if ((status == null) || (status.getType() != JobType.VALIDATE) || !status.isFinished() || this.fileDataToImport.isReady()) {
+			return;
+		}
+
+		boolean valid = (status.getState() == JobState.COMPLETED) && (status.getFailedRows() == 0);
+		if (valid && (status.getProcessedRows() < 1)) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. No data found");
+			valid = false;
+		}
+
+		if (valid) {
+			log.info("Prepared {} persons for creation", status.getProcessedRows());
+		}
+		this.fileDataToImport.setReady(valid);
+	}
+
+	public ImportStatus getJobStatus() {
+		return personImportService.getStatus(this.fileDataToImport.getJobId());
+	}
+
+	public boolean isJobRunning() {
+		ImportStatus status = getJobStatus();
+
+		return (status != null) && !status.isFinished();
+	}
+
+	/**
+	 * @return Import jobs, the latest first
+	 */
+	public List<ImportStatus> getImportJobs() {
+		List<ImportStatus> result = new ArrayList<ImportStatus>();
+		for (ImportStatus status : personImportService.getStatuses()) {
+			if (status.getType() == JobType.IMPORT) {
+				result.add(status);
+			}
+		}
+
+		Collections.sort(result, new Comparator<ImportStatus>() {
+			@Override
+			public int compare(ImportStatus status1, ImportStatus status2) {
+				return Long.compare(status2.getStartTime(), status1.getStartTime());
+			}
+		});
+
+		return result;
+	}
+
+	public boolean isResumable(ImportStatus status) {
+		return personImportService.isResumable(status);
+	}
+
+	public String resumeImport(String jobId) {
+		ImportStatus status = personImportService.resume(jobId);
+		if ((status == null) || (status.getState() != JobState.QUEUED)) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to resume users import");
+			return OxTrustConstants.RESULT_FAILURE;
+		}
+
+		log.info("Resumed import of persons from file '{}', job: {}", status.getFileName(), status.getId());
+		oxTrustAuditService.audit("USERS IMPORT RESUMED FROM FILE " + status.getFileName(),
+				identity.getUser(),
+				(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
+		facesMessages.add(FacesMessage.SEVERITY_INFO, "Users import resumed");
+
+		this.fileDataToImport.setJobId(status.getId());
+
+		return OxTrustConstants.RESULT_SUCCESS;
+	}
+
+	public String removeImport(String jobId) {
+		personImportService.remove(jobId);
+		if (jobId.equals(this.fileDataToImport.getJobId())) {
+			this.fileDataToImport.setJobId(null);
+		}
+
+		return OxTrustConstants.RESULT_SUCCESS;
+	}
+
 	public String cancel() {
 		boolean cancel = this.uploadedFile != null;
 		destroy();
@@ -256,7 +321,14 @@ public class PersonImportAction implements Serializable {
 		removeFileToImport();
 
 		this.uploadedFile = event.getUploadedFile();
-		this.fileData = this.uploadedFile.getData();
+		try {
+			this.file = File.createTempFile("person-import", "." + FilenameUtils.getExtension(this.uploadedFile.getName()));
+			FileUtils.copyInputStreamToFile(this.uploadedFile.getInputStream(), this.file);
+		} catch (Exception ex) {
+			log.error("Failed to store uploaded file", ex);
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to upload file");
+			removeFileToImport();
+		}
 	}
 
 	public void removeFileToImport() {
@@ -269,12 +341,17 @@ public class PersonImportAction implements Serializable {
 
 			this.uploadedFile = null;
 		}
+
+		if (file != null) {
+			FileUtils.deleteQuietly(file);
+			this.file = null;
+		}
 		removeFileDataToImport();
 	}
 
-	private boolean prepareAndValidateImportData(Table table, List<ImportAttribute> importAttributes) throws Exception {
+	private boolean validateImportAttributes(List<ImportAttribute> importAttributes) {
 		String attributesString = getAttributesString(this.attributes);
-		if ((table == null) || (importAttributes == null)) {
+		if (getImportColumns(importAttributes).isEmpty()) {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Missing columns: %s", attributesString);
 			return false;
 		}
@@ -286,31 +363,6 @@ public class PersonImportAction implements Serializable {
 			return false;
 		}
 
-		if (table.getCountRows() < 1) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. No data found");
-			return false;
-		}
-
-		// Convert Excel table to GluuCustomPersons
-		List<GluuCustomPerson> persons = convertTableToPersons(table, importAttributes);
-		if (persons == null) {
-			return false;
-		}
-
-		// Check if person already exist
-		if (!validatePersons(persons)) {
-			return false;
-		}
-
-		// Fill persons with default values
-		if (!setDefaultPersonAttributes(persons, importAttributes)) {
-			return false;
-		}
-
-		// Store persons
-		log.info("Prepared {} persons for creation", persons.size());
-		this.fileDataToImport.setPersons(persons);
-
 		return true;
 	}
 
@@ -336,169 +388,15 @@ public class PersonImportAction implements Serializable {
 		return result;
 	}
 
-	private boolean setDefaultPersonAttributes(List<GluuCustomPerson> persons, List<ImportAttribute> importAttributes)
-			throws Exception {
-		boolean isGeneratePassword = false;
+	private Map<Integer, GluuAttribute> getImportColumns(List<ImportAttribute> importAttributes) {
+		Map<Integer, GluuAttribute> result = new HashMap<Integer, GluuAttribute>();
 		for (ImportAttribute importAttribute : importAttributes) {
-			if (importAttribute.getAttribute().getName().equalsIgnoreCase(PERSON_PASSWORD_ATTRIBUTE)
-					&& !importAttribute.getAttribute().isRequred()) {
-				isGeneratePassword = true;
-				break;
+			if (importAttribute.getCol() != -1) {
+				result.put(importAttribute.getCol(), importAttribute.getAttribute());
 			}
 		}
 
-		for (GluuCustomPerson person : persons) {
-			if (StringHelper.isEmpty(person.getCommonName())) {
-				person.setCommonName(person.getGivenName() + " " + person.getSurname());
-			} else {
-				person.setCommonName(person.getCommonName() + " " + person.getGivenName() + " " + person.getSurname());
-			}
-			person.setDisplayName(person.getCommonName());
-
-			String iname = personService.generateInameForNewPerson(person.getUid());
-			person.setIname(iname);
-
-			if (isGeneratePassword && StringHelper.isEmpty(person.getUserPassword())) {
-				person.setUserPassword(RandomStringUtils.randomAlphanumeric(16));
-			}
-
-		}
-
-		return true;
-	}
-
-	private boolean validatePersons(List<GluuCustomPerson> persons) throws Exception {
-		Set<String> uids = new HashSet<String>();
-		Set<String> mails = new HashSet<String>();
-		for (GluuCustomPerson person : persons) {
-			uids.add(person.getUid());
-			mails.add(person.getMail());
-		}
-
-		if (uids.size() != persons.size()) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR,
-					"Import failed. There are persons with simular uid(s) in input file");
-			return false;
-		}
-
-		if (mails.size() != persons.size()) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR,
-					"Import failed. There are persons with simular mail(s) in input file");
-			return false;
-		}
-
-		List<GluuCustomPerson> existPersons = personService.findPersonsByUids(new ArrayList<String>(uids),
-				PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES);
-		if (existPersons.size() > 0) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. There are persons with existing uid(s): %s",
-					personService.getPersonUids(existPersons));
-			return false;
-		}
-
-		List<GluuCustomPerson> existEmailPersons = personService.findPersonsByMailids(new ArrayList<String>(mails),
-				PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES);
-		if (existEmailPersons.size() > 0) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR,
-					"Import failed. There are persons with existing mailid(s): %s",
-					personService.getPersonMailids(existEmailPersons));
-			return false;
-		}
-
-		return true;
-	}
-
-	protected List<GluuCustomPerson> convertTableToPersons(Table table, List<ImportAttribute> importAttributes)
-			throws Exception {
-		// Prepare for conversion to list of GluuCustomPerson and check data
-		// type
-		Map<String, List<AttributeData>> entriesAttributes = new HashMap<String, List<AttributeData>>();
-		int rows = table.getCountRows();
-		boolean validTable = true;
-		for (int i = 1; i <= rows; i++) {
-			List<AttributeData> attributeDataList = new ArrayList<AttributeData>();
-			for (ImportAttribute importAttribute : importAttributes) {
-				if (importAttribute.getCol() == -1) {
-					continue;
-				}
-
-				GluuAttribute attribute = importAttribute.getAttribute();
-				String cellValue = table.getCellValue(importAttribute.getCol(), i);
-				if (StringHelper.isEmpty(cellValue)) {
-					if (attribute.isRequred()) {
-						facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Empty '%s' not allowed",
-								attribute.getDisplayName());
-						validTable = false;
-					}
-					continue;
-				}
-
-				String ldapValue = getTypedValue(attribute, cellValue);
-				if (StringHelper.isEmpty(ldapValue)) {
-					facesMessages.add(FacesMessage.SEVERITY_ERROR,
-							"Invalid value '%s' in column '%s' at row %s were specified", cellValue,
-							attribute.getDisplayName(), i + 1);
-					validTable = false;
-					continue;
-				}
-
-				AttributeData attributeData = new AttributeData(attribute.getName(), ldapValue);
-				attributeDataList.add(attributeData);
-			}
-			entriesAttributes.put(Integer.toString(i), attributeDataList);
-		}
-
-		if (!validTable) {
-			return null;
-		}
-
-		// Convert to GluuCustomPerson and set right DN
-		List<GluuCustomPerson> persons = personService.createEntities(entriesAttributes);
-		log.info("Found {} persons in input Excel file", persons.size());
-
-		for (GluuCustomPerson person : persons) {
-			for (String key : entriesAttributes.keySet()) {
-				boolean flag = false;
-				for (AttributeData AttributeData : entriesAttributes.get(key)) {
-					if (AttributeData.getName().equalsIgnoreCase("uid")) {
-						if (person.getUid().equalsIgnoreCase(AttributeData.getValue())) {
-							for (AttributeData AttributeData1 : entriesAttributes.get(key)) {
-								if (AttributeData1.getName().equalsIgnoreCase("userPassword")) {
-									person.setUserPassword(AttributeData1.getValue());
-									flag = true;
-									break;
-								} else if (AttributeData1.getName().equalsIgnoreCase("gluuStatus")) {
-
-									person.setStatus(GluuStatus.getByValue(AttributeData1.getValue()));
-									flag = true;
-									break;
-								}
-							}
-						}
-					} else {
-						if (flag)
-							break;
-					}
-				}
-				if (flag)
-					break;
-			}
-
-		}
-
-		return persons;
-	}
-
-	private String getTypedValue(GluuAttribute attribute, String value) {
-		if (AttributeDataType.STRING.equals(attribute.getDataType())) {
-			return value;
-		} else if (AttributeDataType.BOOLEAN.equals(attribute.getDataType())) {
-			GluuBoolean gluuBoolean = GluuBoolean.getByValue(value);
-			if (gluuBoolean != null) {
-				return GluuBoolean.getByValue(value).toString();
-			}
-		}
-
-		return null;
+		return result;
 	}
 
 	private String getAttributesString(List<GluuAttribute> attributes) {
@@ -519,16 +417,15 @@ public class PersonImportAction implements Serializable {
 		return sb.toString();
 	}
 
-	private List<ImportAttribute> getAttributesForImport(Table table) {
+	private List<ImportAttribute> getAttributesForImport(Map<Integer, String> header) {
 		List<ImportAttribute> importAttributes = new ArrayList<ImportAttribute>();
-		if ((table == null) || (table.getCountCols() < 1) || (table.getCountRows() < 1)) {
+		if (header.isEmpty()) {
 			return importAttributes;
 		}
 
-		int cols = table.getCountCols();
 		List<String> addedAttributes = new ArrayList<String>(this.attributes.size());
-		for (int i = 0; i <= cols; i++) {
-			String cellValue = table.getCellValue(i, 0);
+		for (Map.Entry<Integer, String> cell : header.entrySet()) {
+			String cellValue = cell.getValue();
 			if (StringHelper.isEmpty(cellValue)) {
 				continue;
 			}
@@ -537,7 +434,7 @@ public class PersonImportAction implements Serializable {
 			GluuAttribute attribute = attributesDisplayNameMap.get(attributeName);
 			if (attribute != null) {
 				addedAttributes.add(attributeName);
-				ImportAttribute importAttribute = new ImportAttribute(i, attribute);
+				ImportAttribute importAttribute = new ImportAttribute(cell.getKey(), attribute);
 				importAttributes.add(importAttribute);
 			}
 		}
@@ -581,53 +478,10 @@ public class PersonImportAction implements Serializable {
 	}
 
 	public String save() {
-		if (!organizationService.isAllowPersonModification()) {
-			return OxTrustConstants.RESULT_FAILURE;
-		}
-
-		personService.addCustomObjectClass(this.person);
-
-		if (personService.getPersonByUid(this.person.getUid()) != null) {
-			return OxTrustConstants.RESULT_DUPLICATE;
-		}
-
-		this.inum = personService.generateInumForNewPerson();
-		String iname = personService.generateInameForNewPerson(this.person.getUid());
-		String dn = personService.getDnForPerson(this.inum);
-
-		// Save person
-		this.person.setDn(dn);
-		this.person.setInum(this.inum);
-		this.person.setIname(iname);
-
-		List<GluuCustomAttribute> personAttributes = this.person.getCustomAttributes();
-		if (!personAttributes.contains(new GluuCustomAttribute("cn", ""))) {
-			List<GluuCustomAttribute> changedAttributes = new ArrayList<GluuCustomAttribute>();
-			changedAttributes.addAll(personAttributes);
-			changedAttributes.add(
-					new GluuCustomAttribute("cn", this.person.getGivenName() + " " + this.person.getDisplayName()));
-			this.person.setCustomAttributes(changedAttributes);
-		} else {
-			this.person.setCommonName(this.person.getCommonName() + " " + this.person.getGivenName());
-		}
-
-		try {
-			boolean runScript = externalUpdateUserService.isEnabled();
-			if (runScript) {
-				externalUpdateUserService.executeExternalAddUserMethods(this.person);
-			}
-
-			personService.addPerson(this.person);
+		String result = personImportService.addPerson(this.person);
+		this.inum = this.person.getInum();
 
-			if (runScript) {
-				externalUpdateUserService.executeExternalPostAddUserMethods(this.person);
-			}
-		} catch (Exception ex) {
-			log.error("Failed to add new person {}", this.person.getInum(), ex);
-
-			return OxTrustConstants.RESULT_FAILURE;
-		}
-		return OxTrustConstants.RESULT_SUCCESS;
+		return result;
 	}
 
 	public String initializePerson() {
@@ -650,18 +504,13 @@ public class PersonImportAction implements Serializable {
 		private static final long serialVersionUID = 7334362213305310293L;
 
 		private String fileName;
-		private Table table;
 		private List<ImportAttribute> importAttributes;
-		private List<GluuCustomPerson> persons;
+		private String jobId;
 		private boolean ready;
 
 		public FileDataToImport() {
 		}
 
-		public FileDataToImport(Table table) {
-			this.table = table;
-		}
-
 		public List<ImportAttribute> getImportAttributes() {
 			return importAttributes;
 		}
@@ -670,14 +519,6 @@ public class PersonImportAction implements Serializable {
 			this.importAttributes = importAttributes;
 		}
 
-		public Table getTable() {
-			return table;
-		}
-
-		public void setTable(Table table) {
-			this.table = table;
-		}
-
 		public String getFileName() {
 			return fileName;
 		}
@@ -686,12 +527,12 @@ public class PersonImportAction implements Serializable {
 			this.fileName = fileName;
 		}
 
-		public List<GluuCustomPerson> getPersons() {
-			return persons;
+		public String getJobId() {
+			return jobId;
 		}
 
-		public void setPersons(List<GluuCustomPerson> persons) {
-			this.persons = persons;
+		public void setJobId(String jobId) {
+			this.jobId = jobId;
 		}
 
 		public boolean isReady() {
@@ -704,9 +545,8 @@ public class PersonImportAction implements Serializable {
 
 		public void reset() {
 			this.fileName = null;
-			this.table = null;
 			this.importAttributes = null;
-			this.persons = null;
+			this.jobId = null;
 			this.ready = false;
 		}
 	}
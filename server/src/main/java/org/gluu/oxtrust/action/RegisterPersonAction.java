@@ -33,6 +33,7 @@ import org.gluu.oxtrust.ldap.service.AttributeService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.ldap.service.OrganizationService;
 import org.gluu.oxtrust.ldap.service.OxTrustAuditService;
+import org.gluu.oxtrust.ldap.service.PersonUniquenessService;
 import org.gluu.oxtrust.ldap.service.RecaptchaService;
 import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuCustomPerson;
@@ -84,6 +85,9 @@ public class RegisterPersonAction implements Serializable {
 	@Inject
 	private IPersonService personService;
 
+	@Inject
+	private PersonUniquenessService personUniquenessService;
+
 	@Inject
 	private Identity identity;
 
@@ -294,6 +298,12 @@ public class RegisterPersonAction implements Serializable {
 					}
 
 				} else {
+					if (personUniquenessService.isUidUsed(this.person.getUid(), null)) {
+						log.error("User with uid {} already exists", this.person.getUid());
+						this.person = archivedPerson;
+						return OxTrustConstants.RESULT_FAILURE;
+					}
+
 					personService.addPerson(this.person);
 					try {
 						oxTrustAuditService.audit(
@@ -489,8 +499,19 @@ public class RegisterPersonAction implements Serializable {
 
 		}
 
-		GluuCustomPerson gluuCustomPerson = personService.getPersonByEmail(email);
-		if (gluuCustomPerson != null) {
+		boolean mailUsed;
+		try {
+			mailUsed = personUniquenessService.isMailUsed(email, this.inum);
+		} catch (Exception ex) {
+			log.error("Failed to check if email address is already registered", ex);
+
+			// Don't allow registration if uniqueness can't be verified
+			FacesMessage message = new FacesMessage("Unable to verify Email Address. Please try again later.");
+			message.setSeverity(FacesMessage.SEVERITY_ERROR);
+			throw new ValidatorException(message);
+		}
+
+		if (mailUsed) {
 			FacesMessage message = new FacesMessage("Email Address Already Registered.");
 			message.setSeverity(FacesMessage.SEVERITY_ERROR);
 			throw new ValidatorException(message);
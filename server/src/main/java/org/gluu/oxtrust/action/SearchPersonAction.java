@@ -16,7 +16,7 @@ import javax.inject.Named;
 
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
-import org.gluu.oxtrust.ldap.service.IPersonService;
+import org.gluu.oxtrust.ldap.service.PersonSearchService;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.slf4j.Logger;
@@ -53,7 +53,7 @@ public class SearchPersonAction implements Serializable {
 	private List<GluuCustomPerson> personList;
 
 	@Inject
-	private IPersonService personService;
+	private PersonSearchService personSearchService;
 
 	public String start() {
 		firstLaunch = true;
@@ -71,7 +71,10 @@ public class SearchPersonAction implements Serializable {
 			return OxTrustConstants.RESULT_SUCCESS;
 		}
 		try {
-			this.personList = personService.searchPersons(this.searchPattern);
+			this.personList = personSearchService.searchPersons(this.searchPattern, PersonSearchService.DEFAULT_SIZE_LIMIT);
+			if (this.personList.size() >= PersonSearchService.DEFAULT_SIZE_LIMIT) {
+				facesMessages.add(FacesMessage.SEVERITY_INFO, "Only first %d persons are shown. Please refine search", PersonSearchService.DEFAULT_SIZE_LIMIT);
+			}
 			this.oldSearchPattern = this.searchPattern;
 			this.searchPattern = "";
 			firstLaunch = false;
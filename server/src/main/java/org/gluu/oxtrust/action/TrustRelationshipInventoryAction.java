@@ -9,6 +9,7 @@ package org.gluu.oxtrust.action;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.enterprise.context.ConversationScoped;
 import javax.faces.application.FacesMessage;
@@ -27,6 +28,7 @@ import org.slf4j.Logger;
 import org.xdi.model.GluuAttribute;
 import org.xdi.model.user.UserRole;
 import org.xdi.service.security.Secure;
+import org.xdi.util.StringHelper;
 
 /**
  * Action class for displaying trust relationships
@@ -65,6 +67,8 @@ public class TrustRelationshipInventoryAction implements Serializable {
 
 	private List<GluuSAMLTrustRelationship> trustedSpList;
 
+	private Map<String, GluuSAMLTrustRelationship> containerFederations = new HashMap<String, GluuSAMLTrustRelationship>();
+
 	public List<GluuSAMLTrustRelationship> getTrustedSpList() {
 		return trustedSpList;
 	}
@@ -84,10 +88,11 @@ public class TrustRelationshipInventoryAction implements Serializable {
 	public String search() {
 		try {
 			if(searchPattern == null || searchPattern.isEmpty()){
-				this.trustedSpList = trustService.getAllSAMLTrustRelationships(100);
+				this.trustedSpList = trustService.getAllSAMLTrustRelationships(100, TrustService.LIST_VIEW_ATTRIBUTES);
 			}else{
-				this.trustedSpList = trustService.searchSAMLTrustRelationships(searchPattern,100);
+				this.trustedSpList = trustService.searchSAMLTrustRelationships(searchPattern,100, TrustService.LIST_VIEW_ATTRIBUTES);
 			}
+			this.containerFederations.clear();
 			this.oldSearchPattern = this.searchPattern;
 
 			setCustomAttributes(this.trustedSpList);
@@ -113,6 +118,23 @@ public class TrustRelationshipInventoryAction implements Serializable {
 		}
 	}
 
+	/**
+	 * Get federation which trust relationship belongs to. Federations are loaded once for all listed trust
+	 * relationships
+	 */
+	public GluuSAMLTrustRelationship getContainerFederation(GluuSAMLTrustRelationship trustRelationship) {
+		String containerFederationDn = trustRelationship.getGluuContainerFederation();
+		if (StringHelper.isEmpty(containerFederationDn)) {
+			return null;
+		}
+
+		if (!containerFederations.containsKey(containerFederationDn)) {
+			containerFederations.put(containerFederationDn, trustService.getTrustContainerFederation(containerFederationDn));
+		}
+
+		return containerFederations.get(containerFederationDn);
+	}
+
 	public String getSearchPattern() {
 		return searchPattern;
 	}
@@ -20,9 +20,8 @@ import org.apache.commons.configuration.PropertiesConfigurationLayout;
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.oxtrust.ldap.service.CASService;
 import org.gluu.oxtrust.ldap.service.Shibboleth3ConfService;
+import org.gluu.oxtrust.ldap.service.Shibboleth3ConfUpdateService;
 import org.gluu.oxtrust.ldap.service.SvnSyncTimer;
-import org.gluu.oxtrust.ldap.service.TrustService;
-import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.config.oxtrust.ShibbolethCASProtocolConfiguration;
@@ -66,7 +65,7 @@ public class UpdateCASAction implements Serializable {
     private FacesMessages facesMessages;
     
     @Inject
-    private TrustService trustService;
+    private Shibboleth3ConfUpdateService shibboleth3ConfUpdateService;
     
     @Inject
     private Shibboleth3ConfService shibboleth3ConfService;
@@ -198,8 +197,7 @@ public class UpdateCASAction implements Serializable {
     }
 
     private void updateShibboleth3Configuration() {
-        List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
-        shibboleth3ConfService.generateConfigurationFiles(trustRelationships);
+        shibboleth3ConfUpdateService.requestUpdate();
     }
 
     /**
@@ -31,6 +31,7 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
 import org.gluu.oxtrust.ldap.service.AttributeService;
+import org.gluu.oxtrust.ldap.service.AuditTrailService.Outcome;
 import org.gluu.oxtrust.ldap.service.FidoDeviceService;
 import org.gluu.oxtrust.ldap.service.GroupService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
@@ -392,19 +393,19 @@ public class UpdatePersonAction implements Serializable {
 
 		boolean runScript = externalUpdateUserService.isEnabled();
 		if (update) {
+			long startTime = System.currentTimeMillis();
 			try {
 				if (runScript) {
 					externalUpdateUserService.executeExternalUpdateUserMethods(this.person);
 				}
 				personService.updatePerson(this.person);
-				oxTrustAuditService.audit("USER " + this.person.getInum() + " **"+this.person.getDisplayName()+"** UPDATED",
-						identity.getUser(),
-						(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
+				auditPersonChange("UPDATED", Outcome.SUCCESS, startTime);
 				if (runScript) {
 					externalUpdateUserService.executeExternalPostUpdateUserMethods(this.person);
 				}
 			} catch (LdapMappingException ex) {
 				log.error("Failed to update person {}", inum, ex);
+				auditPersonChange("UPDATE FAILED", Outcome.FAILURE, startTime);
 				facesMessages.add(FacesMessage.SEVERITY_ERROR,
 						"Failed to update person '#{updatePersonAction.person.displayName}'");
 
@@ -440,19 +441,19 @@ public class UpdatePersonAction implements Serializable {
 				this.person.setCommonName(this.person.getCommonName() + " " + this.person.getGivenName());
 			}
 
+			long startTime = System.currentTimeMillis();
 			try {
 				if (runScript) {
 					externalUpdateUserService.executeExternalAddUserMethods(this.person);
 				}
 				personService.addPerson(this.person);
-				oxTrustAuditService.audit("USER " + this.person.getInum() + " **"+this.person.getDisplayName()+ "** ADDED",
-						identity.getUser(),
-						(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
+				auditPersonChange("ADDED", Outcome.SUCCESS, startTime);
 				if (runScript) {
 					externalUpdateUserService.executeExternalPostAddUserMethods(this.person);
 				}
 			} catch (Exception ex) {
 				log.error("Failed to add new person {}", this.person.getInum(), ex);
+				auditPersonChange("ADD FAILED", Outcome.FAILURE, startTime);
 				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to add new person'");
 
 				return OxTrustConstants.RESULT_FAILURE;
@@ -468,6 +469,11 @@ public class UpdatePersonAction implements Serializable {
 		return OxTrustConstants.RESULT_SUCCESS;
 	}
 
+	private void auditPersonChange(String action, Outcome outcome, long startTime) {
+		oxTrustAuditService.auditPersonChange(this.person, action, outcome, startTime, identity.getUser(),
+				(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
+	}
+
 	private void updateCustomObjectClasses() {
 		personService.addCustomObjectClass(this.person);
 
@@ -494,15 +500,14 @@ public class UpdatePersonAction implements Serializable {
 
 		if (update) {
 			// Remove person
+			long startTime = System.currentTimeMillis();
 			try {
 				boolean runScript = externalUpdateUserService.isEnabled();
 				if (runScript) {
 					externalUpdateUserService.executeExternalDeleteUserMethods(this.person);
 				}
 				memberService.removePerson(this.person);
-				oxTrustAuditService.audit("USER " + this.person.getInum() + " **"+this.person.getDisplayName()+ "** REMOVED",
-						identity.getUser(),
-						(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
+				auditPersonChange("REMOVED", Outcome.SUCCESS, startTime);
 				if (runScript) {
 					externalUpdateUserService.executeExternalPostDeleteUserMethods(this.person);
 				}
@@ -514,6 +519,7 @@ public class UpdatePersonAction implements Serializable {
 				return OxTrustConstants.RESULT_SUCCESS;
 			} catch (LdapMappingException ex) {
 				log.error("Failed to remove person {}", this.person.getInum(), ex);
+				auditPersonChange("REMOVE FAILED", Outcome.FAILURE, startTime);
 			}
 		}
 
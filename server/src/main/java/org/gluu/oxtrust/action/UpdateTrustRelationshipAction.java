@@ -59,11 +59,15 @@ import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
 import org.gluu.oxtrust.ldap.service.AttributeService;
 import org.gluu.oxtrust.ldap.service.ClientService;
+import org.gluu.oxtrust.ldap.service.MetadataDownloadService;
+import org.gluu.oxtrust.ldap.service.MetadataIndexService;
 import org.gluu.oxtrust.ldap.service.MetadataValidationTimer;
 import org.gluu.oxtrust.ldap.service.OrganizationService;
 import org.gluu.oxtrust.ldap.service.OxTrustAuditService;
 import org.gluu.oxtrust.ldap.service.SSLService;
 import org.gluu.oxtrust.ldap.service.Shibboleth3ConfService;
+import org.gluu.oxtrust.ldap.service.Shibboleth3ConfService.SpMetadataDownloadResult;
+import org.gluu.oxtrust.ldap.service.Shibboleth3ConfUpdateService;
 import org.gluu.oxtrust.ldap.service.SvnSyncTimer;
 import org.gluu.oxtrust.ldap.service.TemplateService;
 import org.gluu.oxtrust.ldap.service.TrustService;
@@ -75,7 +79,6 @@ import org.gluu.oxtrust.model.OxAuthClient;
 import org.gluu.oxtrust.security.Identity;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.persist.exception.BasePersistenceException;
-import org.gluu.saml.metadata.SAMLMetadataParser;
 import org.gluu.site.ldap.persistence.exception.LdapMappingException;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
@@ -131,6 +134,9 @@ public class UpdateTrustRelationshipAction implements Serializable {
 	@Inject
 	private TrustService trustService;
 
+	@Inject
+	private MetadataIndexService metadataIndexService;
+
 	@Inject
 	private ClientService clientService;
 
@@ -146,6 +152,9 @@ public class UpdateTrustRelationshipAction implements Serializable {
 	@Inject
 	private Shibboleth3ConfService shibboleth3ConfService;
 
+	@Inject
+	private Shibboleth3ConfUpdateService shibboleth3ConfUpdateService;
+
 	@Inject
 	private FacesMessages facesMessages;
 
@@ -432,8 +441,7 @@ public class UpdateTrustRelationshipAction implements Serializable {
 			}
 
 			if (updateShib3Configuration) {
-				List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
-				updateShibboleth3Configuration(trustRelationships);
+				updateShibboleth3Configuration();
 			}
 		}
 
@@ -536,7 +544,7 @@ public class UpdateTrustRelationshipAction implements Serializable {
 				+ Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
 		File metadataFile = new File(idpMetadataFolder + trustRelationship.getSpMetaDataFN());
 
-		List<String> entityIdList = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+		List<String> entityIdList = metadataIndexService.getEntityIds(metadataFile);
 		Set<String> entityIdSet = new TreeSet<String>();
 
 		if (entityIdList != null && !entityIdList.isEmpty()) {
@@ -757,20 +765,13 @@ public class UpdateTrustRelationshipAction implements Serializable {
 		}
 	}
 
-	private void updateShibboleth3Configuration(List<GluuSAMLTrustRelationship> trustRelationships) {
-
-		if (!shibboleth3ConfService.generateConfigurationFiles(trustRelationships)) {
-
-			log.error("Failed to update Shibboleth v3 configuration");
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to update Shibboleth v3 configuration");
+	private void updateShibboleth3Configuration() {
+		shibboleth3ConfUpdateService.requestUpdate();
 
-		} else {
-
-			log.info("Shibboleth v3 configuration updated successfully");
-			facesMessages.add(FacesMessage.SEVERITY_INFO, "Shibboleth v3 configuration updated successfully");
-			facesMessages.add(FacesMessage.SEVERITY_WARN,
-					"Please note it may take several minutes before new settings are actually loaded and applied by Shibboleth module!");
-		}
+		log.info("Shibboleth v3 configuration update scheduled");
+		facesMessages.add(FacesMessage.SEVERITY_INFO, "Shibboleth v3 configuration update scheduled");
+		facesMessages.add(FacesMessage.SEVERITY_WARN,
+				"Please note it may take several minutes before new settings are actually loaded and applied by Shibboleth module!");
 	}
 
 	private boolean generateSpMetaDataFile(String certificate) {
@@ -856,15 +857,17 @@ public class UpdateTrustRelationshipAction implements Serializable {
 			spMetadataFileName = shibboleth3ConfService.getSpNewMetadataFileName(this.trustRelationship);
 		}
 
-		String result = shibboleth3ConfService.saveSpMetadataFile(trustRelationship.getSpMetaDataURL(),
-				spMetadataFileName);
-		if (StringHelper.isNotEmpty(result)) {
-			metadataValidationTimer.queue(result);
+		SpMetadataDownloadResult result = shibboleth3ConfService.downloadSpMetadataFile(trustRelationship.getSpMetaDataURL(),
+				spMetadataFileName, !emptySpMetadataFileName);
+		if (MetadataDownloadService.Status.NOT_MODIFIED == result.getStatus()) {
+			log.debug("Metadata of trust relationship '{}' wasn't changed, validation is not needed", trustRelationship.getInum());
+		} else if (MetadataDownloadService.Status.DOWNLOADED == result.getStatus()) {
+			metadataValidationTimer.queue(result.getTempFileName());
 		} else {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to download metadata");
 		}
 
-		return StringHelper.isNotEmpty(result);
+		return MetadataDownloadService.Status.FAILED != result.getStatus();
 	}
 
 	public String delete() {
@@ -906,8 +909,7 @@ public class UpdateTrustRelationshipAction implements Serializable {
 						"Failed to add trust relationship to remove queue. It will be removed during next application restart",
 						e);
 			} finally {
-				List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
-				updateShibboleth3Configuration(trustRelationships);
+				updateShibboleth3Configuration();
 			}
 		}
 
@@ -1366,8 +1368,7 @@ public class UpdateTrustRelationshipAction implements Serializable {
 		}
 		saveTR(true);
 
-		List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
-		updateShibboleth3Configuration(trustRelationships);
+		updateShibboleth3Configuration();
 
 		facesMessages.add(FacesMessage.SEVERITY_INFO,
 				"Relationship '#{updateTrustRelationshipAction.trustRelationship.displayName}' #{updateTrustRelationshipAction.active ? 'activated' : 'deactivated'} successfully");
@@ -10,12 +10,15 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.Serializable;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.PatternSyntaxException;
 
 import javax.enterprise.context.ConversationScoped;
+import javax.faces.application.FacesMessage;
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -25,6 +28,10 @@ import org.apache.commons.io.filefilter.FileFileFilter;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.oxtrust.ldap.service.ApplianceService;
+import org.gluu.oxtrust.ldap.service.LogViewerService;
+import org.gluu.oxtrust.ldap.service.LogViewerService.LogChunk;
+import org.gluu.oxtrust.ldap.service.LogViewerService.LogLevel;
+import org.gluu.oxtrust.ldap.service.LogViewerService.LogLine;
 import org.gluu.oxtrust.model.GluuAppliance;
 import org.gluu.oxtrust.model.LogViewerConfig;
 import org.gluu.oxtrust.util.OxTrustConstants;
@@ -33,7 +40,6 @@ import org.xdi.model.SimpleCustomProperty;
 import org.xdi.service.JsonService;
 import org.xdi.service.security.Secure;
 import org.xdi.util.StringHelper;
-import org.xdi.util.io.ReverseLineReader;
 
 /**
  * Action class for configuring log viewer
@@ -47,6 +53,8 @@ public class ViewLogFileAction implements Serializable {
 
 	private static final long serialVersionUID = -3310340481895022468L;
 
+	private static final int SEARCH_PAGE_SIZE = 200;
+
 	@Inject
 	private Logger log;
 	
@@ -59,6 +67,9 @@ public class ViewLogFileAction implements Serializable {
 	@Inject
 	private JsonService jsonService;
 
+	@Inject
+	private LogViewerService logViewerService;
+
 	private GluuAppliance appliance;
 
 	private LogViewerConfig logViewerConfiguration;
@@ -72,6 +83,16 @@ public class ViewLogFileAction implements Serializable {
 
 	private int displayLastLinesCount;
 
+	private LinkedList<String> tailLines;
+	private int tailGeneration;
+	private long tailNextLine;
+
+	private String searchPattern;
+	private String searchLevel;
+	private List<String> searchLines;
+	private long searchNextLine;
+	private LogLevel searchNextLevel;
+
 	public String init() {
 		if (this.logViewerConfiguration != null) {
 			return OxTrustConstants.RESULT_SUCCESS;
@@ -159,33 +180,126 @@ public class ViewLogFileAction implements Serializable {
 		if (this.activeLogFileIndex == -1) {
 			return "No content available";
 		}
-		setCurrentLogFileName(this.logFiles.get(activeLogFileIndex));
-		File activeLogFile = new File(this.logFiles.get(activeLogFileIndex));
-		ReverseLineReader reverseLineReader = new ReverseLineReader(activeLogFile, Charset.defaultCharset().name());
+
+		if (this.tailLines == null) {
+			loadTail();
+		}
+
+		return joinLines(this.tailLines);
+	}
+
+	/**
+	 * Append lines written to active log file since last call
+	 */
+	public void refreshTail() {
+		if ((this.activeLogFileIndex == -1) || (this.tailLines == null)) {
+			loadTail();
+			return;
+		}
+
+		String logFileName = this.logFiles.get(activeLogFileIndex);
 		try {
-			List<String> logFileLastLines = reverseLineReader.readLastLines(this.displayLastLinesCount);
-			
-			StringBuilder sb = new StringBuilder();
-			for (String logFileLastLine : logFileLastLines) {
-				sb.append(logFileLastLine);
-				sb.append('\n');
+			LogChunk chunk = logViewerService.follow(logFileName, this.tailGeneration, this.tailNextLine, this.displayLastLinesCount);
+			if (chunk.isReset()) {
+				this.tailLines.clear();
 			}
-			
-			return sb.toString();
+			for (LogLine line : chunk.getLines()) {
+				this.tailLines.add(line.getText());
+			}
+			while (this.tailLines.size() > this.displayLastLinesCount) {
+				this.tailLines.removeFirst();
+			}
+
+			this.tailGeneration = chunk.getGeneration();
+			this.tailNextLine = chunk.getNextLine();
 		} catch (IOException ex) {
-			log.error("Failed to read log file '{}'", this.logFiles.get(activeLogFileIndex), ex);
-			String result = String.format("Failed to read log file '%s'", this.logFiles.get(activeLogFileIndex));
-			
-			return result;
-		} finally {
-			try {
-				reverseLineReader.close();
-			} catch (IOException ex) {
-				log.error("Failed to destory ReverseLineReader", ex);
+			log.error("Failed to read log file '{}'", logFileName, ex);
+			this.tailLines = null;
+		}
+	}
+
+	private void loadTail() {
+		this.tailLines = null;
+		if (this.activeLogFileIndex == -1) {
+			return;
+		}
+
+		String logFileName = this.logFiles.get(activeLogFileIndex);
+		setCurrentLogFileName(logFileName);
+		try {
+			LogChunk chunk = logViewerService.tail(logFileName, this.displayLastLinesCount);
+
+			this.tailLines = new LinkedList<String>();
+			for (LogLine line : chunk.getLines()) {
+				this.tailLines.add(line.getText());
 			}
+			this.tailGeneration = chunk.getGeneration();
+			this.tailNextLine = chunk.getNextLine();
+		} catch (IOException ex) {
+			log.error("Failed to read log file '{}'", logFileName, ex);
+			this.tailLines = new LinkedList<String>();
+			this.tailLines.add(String.format("Failed to read log file '%s'", logFileName));
 		}
 	}
 
+	public void search() {
+		this.searchNextLine = 0;
+		this.searchNextLevel = null;
+		this.searchLines = null;
+		searchNextPage();
+	}
+
+	public void searchNextPage() {
+		if ((this.activeLogFileIndex == -1) || (this.searchNextLine < 0)) {
+			return;
+		}
+
+		LogLevel minLevel = StringHelper.isEmpty(this.searchLevel) ? null : LogLevel.valueOf(this.searchLevel);
+		String logFileName = this.logFiles.get(activeLogFileIndex);
+		try {
+			LogChunk chunk = logViewerService.search(logFileName, this.searchPattern, minLevel, this.searchNextLine, this.searchNextLevel,
+					SEARCH_PAGE_SIZE);
+
+			this.searchLines = new ArrayList<String>();
+			for (LogLine line : chunk.getLines()) {
+				this.searchLines.add((line.getNumber() + 1) + ": " + line.getText());
+			}
+			this.searchNextLine = chunk.getNextLine();
+			this.searchNextLevel = chunk.getLevel();
+		} catch (PatternSyntaxException ex) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Invalid search pattern: " + ex.getDescription());
+		} catch (IOException ex) {
+			log.error("Failed to search in log file '{}'", logFileName, ex);
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to search in log file '%s'", logFileName);
+		}
+	}
+
+	public String getSearchResult() {
+		if (this.searchLines == null) {
+			return "";
+		}
+
+		return joinLines(this.searchLines);
+	}
+
+	public boolean isSearchHasMore() {
+		return (this.searchLines != null) && (this.searchNextLine >= 0);
+	}
+
+	public LogLevel[] getLogLevels() {
+		return LogLevel.values();
+	}
+
+	private String joinLines(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(line);
+			sb.append('\n');
+		}
+
+		return sb.toString();
+	}
+
 	public int getActiveLogFileIndex() {
 		return activeLogFileIndex;
 	}
@@ -193,6 +307,8 @@ public class ViewLogFileAction implements Serializable {
 	public void setActiveLogFileIndex(int activeLogFileIndex) {
 		this.activeLogFileIndex = activeLogFileIndex;
 		setCurrentLogFileName(this.logFiles.get(this.activeLogFileIndex));
+		this.searchLines = null;
+		loadTail();
 	}
 
 
@@ -201,7 +317,11 @@ public class ViewLogFileAction implements Serializable {
 	}
 
 	public void setDisplayLastLinesCount(int displayLinesCount) {
+		boolean changed = this.displayLastLinesCount != displayLinesCount;
 		this.displayLastLinesCount = displayLinesCount;
+		if (changed) {
+			this.tailLines = null;
+		}
 	}
 
 	public String getCurrentLogFileName() {
@@ -211,7 +331,21 @@ public class ViewLogFileAction implements Serializable {
 	public void setCurrentLogFileName(String currentLogFileName) {
 		this.currentLogFileName = currentLogFileName;
 	}
-	
-	
+
+	public String getSearchPattern() {
+		return searchPattern;
+	}
+
+	public void setSearchPattern(String searchPattern) {
+		this.searchPattern = searchPattern;
+	}
+
+	public String getSearchLevel() {
+		return searchLevel;
+	}
+
+	public void setSearchLevel(String searchLevel) {
+		this.searchLevel = searchLevel;
+	}
 
 }
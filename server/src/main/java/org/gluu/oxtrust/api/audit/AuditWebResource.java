@@ -0,0 +1,70 @@
+package org.gluu.oxtrust.api.audit;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.gluu.oxtrust.api.openidconnect.BaseWebResource;
+import org.gluu.oxtrust.ldap.service.AuditTrailService;
+import org.gluu.oxtrust.ldap.service.AuditTrailService.AuditEvent;
+import org.gluu.oxtrust.ldap.service.AuditTrailService.Outcome;
+import org.gluu.oxtrust.service.filter.ProtectedApi;
+import org.gluu.oxtrust.util.OxTrustApiConstants;
+import org.slf4j.Logger;
+import org.xdi.util.StringHelper;
+
+import com.wordnik.swagger.annotations.ApiOperation;
+
+@Path(OxTrustApiConstants.BASE_PROTECTED_API_URL + OxTrustApiConstants.AUDIT)
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+@ProtectedApi(scopes = { "/api/audit" })
+public class AuditWebResource extends BaseWebResource {
+
+	@Inject
+	private Logger logger;
+
+	@Inject
+	private AuditTrailService auditTrailService;
+
+	@GET
+	@ApiOperation(value = "Search audit events", notes = "Period is set in milliseconds since EPOCH. Events are ordered by time")
+	public Response searchEvents(@QueryParam(OxTrustApiConstants.FROM) Long from, @QueryParam(OxTrustApiConstants.TO) Long to,
+			@QueryParam(OxTrustApiConstants.ACTOR) String actor, @QueryParam(OxTrustApiConstants.ACTION) String action,
+			@QueryParam(OxTrustApiConstants.TARGET_DN) String targetDn, @QueryParam(OxTrustApiConstants.OUTCOME) String outcome,
+			@DefaultValue("100") @QueryParam(OxTrustApiConstants.SIZE) int size) {
+		log("Search audit events from " + from + " to " + to);
+		Outcome outcomeValue = null;
+		if (StringHelper.isNotEmpty(outcome)) {
+			try {
+				outcomeValue = Outcome.valueOf(outcome.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				return Response.status(Response.Status.BAD_REQUEST).entity("Invalid outcome").build();
+			}
+		}
+
+		try {
+			int limit = size > 0 ? Math.min(size, AuditTrailService.MAX_QUERY_SIZE) : AuditTrailService.MAX_QUERY_SIZE;
+			List<AuditEvent> events = auditTrailService.query(from == null ? null : new Date(from), to == null ? null : new Date(to), actor,
+					action, targetDn, outcomeValue, limit);
+			return Response.ok(events).build();
+		} catch (Exception e) {
+			log(logger, e);
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	private void log(String message) {
+		logger.debug("################# Request: " + message);
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.gluu.oxtrust.api.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.gluu.oxtrust.api.openidconnect.BaseWebResource;
+import org.gluu.oxtrust.ldap.service.AuditTrailService.Outcome;
+import org.gluu.oxtrust.ldap.service.IGroupService;
+import org.gluu.oxtrust.ldap.service.IPersonService;
+import org.gluu.oxtrust.ldap.service.LdifService;
+import org.gluu.oxtrust.ldap.service.OxTrustAuditService;
+import org.gluu.oxtrust.service.filter.ProtectedApi;
+import org.gluu.oxtrust.util.OxTrustApiConstants;
+import org.slf4j.Logger;
+
+import com.unboundid.ldap.sdk.LDAPException;
+import com.wordnik.swagger.annotations.ApiOperation;
+
+/**
+ * LDIF export of people and groups. Export is available only with UMA protection because it returns all entries. Secret
+ * person attributes are never exported by API
+ */
+@Path(OxTrustApiConstants.BASE_PROTECTED_API_URL + OxTrustApiConstants.EXPORT)
+@Produces("application/ldif")
+@ProtectedApi(scopes = { "/api/export" })
+public class ExportWebResource extends BaseWebResource {
+
+	@Inject
+	private Logger logger;
+
+	@Inject
+	private LdifService ldifService;
+
+	@Inject
+	private IPersonService personService;
+
+	@Inject
+	private IGroupService groupService;
+
+	@Inject
+	private OxTrustAuditService oxTrustAuditService;
+
+	@Context
+	private HttpServletRequest request;
+
+	@GET
+	@Path(OxTrustApiConstants.PEOPLE)
+	@ApiOperation(value = "Export people to LDIF", notes = "Passwords and other secret attributes aren't exported")
+	public Response exportPeople(@DefaultValue("false") @QueryParam(OxTrustApiConstants.GZIP) boolean gzip) {
+		log("Export people");
+		return export("people", personService.getDnForPerson(null), gzip);
+	}
+
+	@GET
+	@Path(OxTrustApiConstants.GROUPS)
+	@ApiOperation(value = "Export groups to LDIF")
+	public Response exportGroups(@DefaultValue("false") @QueryParam(OxTrustApiConstants.GZIP) boolean gzip) {
+		log("Export groups");
+		return export("groups", groupService.getDnForGroup(null), gzip);
+	}
+
+	private Response export(final String entries, final String baseDn, final boolean gzip) {
+		StreamingOutput stream = new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException {
+				long startTime = System.currentTimeMillis();
+				int count = -1;
+				try {
+					if ("people".equals(entries)) {
+						count = ldifService.exportPersonsLDIF(output, gzip, false);
+					} else {
+						count = ldifService.exportGroupsLDIF(output, gzip);
+					}
+				} catch (LDAPException e) {
+					throw new IOException(e);
+				} finally {
+					Outcome outcome = count >= 0 ? Outcome.SUCCESS : Outcome.FAILURE;
+					String action = "API " + entries.toUpperCase() + (count >= 0 ? " EXPORTED: " + count + " ENTRIES" : " EXPORT FAILED");
+					oxTrustAuditService.audit(action, baseDn, outcome, System.currentTimeMillis() - startTime, null, request);
+				}
+			}
+		};
+
+		String fileName = gzip ? entries + ".ldif.gz" : entries + ".ldif";
+		return Response.ok(stream).header("Content-Disposition", "attachment; filename=\"" + fileName + "\"").build();
+	}
+
+	private void log(String message) {
+		logger.debug("#################Request: " + message);
+	}
+
+}
@@ -19,7 +19,9 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -28,6 +30,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -50,8 +53,12 @@ import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.util.encoders.Base64;
 import org.gluu.oxtrust.action.TrustContactsAction;
 import org.gluu.oxtrust.ldap.service.ClientService;
+import org.gluu.oxtrust.ldap.service.MetadataDownloadService;
+import org.gluu.oxtrust.ldap.service.MetadataIndexService;
 import org.gluu.oxtrust.ldap.service.MetadataValidationTimer;
 import org.gluu.oxtrust.ldap.service.Shibboleth3ConfService;
+import org.gluu.oxtrust.ldap.service.Shibboleth3ConfService.SpMetadataDownloadResult;
+import org.gluu.oxtrust.ldap.service.Shibboleth3ConfUpdateService;
 import org.gluu.oxtrust.ldap.service.SvnSyncTimer;
 import org.gluu.oxtrust.ldap.service.TrustService;
 import org.gluu.oxtrust.model.GluuMetadataSourceType;
@@ -61,7 +68,8 @@ import org.gluu.oxtrust.security.Identity;
 import org.gluu.oxtrust.service.uma.annotations.UmaSecure;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.persist.exception.BasePersistenceException;
-import org.gluu.saml.metadata.SAMLMetadataParser;
+import org.gluu.persist.model.PagedResult;
+import org.gluu.persist.model.SortOrder;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.model.GluuAttribute;
@@ -95,6 +103,9 @@ public class TrustRelationshipWebService {
     @Inject
     private TrustService trustService;
 
+    @Inject
+    private MetadataIndexService metadataIndexService;
+
     @Inject
     private Identity identity;
 	
@@ -115,6 +126,9 @@ public class TrustRelationshipWebService {
 
     @Inject
     private Shibboleth3ConfService shibboleth3ConfService;
+
+    @Inject
+    private Shibboleth3ConfUpdateService shibboleth3ConfUpdateService;
     
     ObjectMapper objectMapper;
     
@@ -216,7 +230,7 @@ public class TrustRelationshipWebService {
 		@ApiResponse(code = 500, message = "Server error") })
     public String list(@Context HttpServletResponse response) {
         try {
-            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.getAllTrustRelationships());
+            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.getAllTrustRelationships(TrustService.LIST_VIEW_ATTRIBUTES));
             //convert to JSON
             return objectMapper.writeValueAsString(trustRelationships);
         } catch (Exception e) {
@@ -252,7 +266,7 @@ public class TrustRelationshipWebService {
 		@ApiResponse(code = 500, message = "Server error") })
     public String listAllActiveTrustRelationships(@Context HttpServletResponse response) {
         try {
-            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.getAllActiveTrustRelationships());
+            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.getAllActiveTrustRelationships(TrustService.LIST_VIEW_ATTRIBUTES));
             //convert to JSON
             return objectMapper.writeValueAsString(trustRelationships);
         } catch (Exception e) {
@@ -288,7 +302,7 @@ public class TrustRelationshipWebService {
 		@ApiResponse(code = 500, message = "Server error") })
     public String listAllSAMLTrustRelationships(@QueryParam("size_limit") int sizeLimit, @Context HttpServletResponse response) {
         try {
-            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.getAllSAMLTrustRelationships(sizeLimit));
+            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.getAllSAMLTrustRelationships(sizeLimit, TrustService.LIST_VIEW_ATTRIBUTES));
             //convert to JSON
             return objectMapper.writeValueAsString(trustRelationships);
         } catch (Exception e) {
@@ -325,7 +339,7 @@ public class TrustRelationshipWebService {
 		@ApiResponse(code = 500, message = "Server error") })
     public String searchTrustRelationships(@QueryParam("pattern") @NotNull String pattern, @QueryParam("size_limit") int sizeLimit, @Context HttpServletResponse response) {
         try {
-            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.searchSAMLTrustRelationships(pattern, sizeLimit));
+            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.searchSAMLTrustRelationships(pattern, sizeLimit, TrustService.LIST_VIEW_ATTRIBUTES));
             //convert to JSON
             return objectMapper.writeValueAsString(trustRelationships);
         } catch (Exception e) {
@@ -335,6 +349,58 @@ public class TrustRelationshipWebService {
         }
     }
     
+    @GET
+    @Path("/list_by_entity_id")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "list TrustRelationships by entityID", notes = "Find TrustRelationships which metadata defines entityID.", response = SAMLTrustRelationshipShort.class)
+    @ApiResponses(value = {
+		@ApiResponse(code = 200, message = "OK", response = SAMLTrustRelationshipShort.class),
+		@ApiResponse(code = 500, message = "Server error") })
+    public String listByEntityId(@QueryParam("entity_id") @NotNull String entityId, @Context HttpServletResponse response) {
+        try {
+            List<SAMLTrustRelationshipShort> trustRelationships = convertTRtoTRShort(trustService.getTrustRelationshipsByEntityId(entityId));
+            //convert to JSON
+            return objectMapper.writeValueAsString(trustRelationships);
+        } catch (Exception e) {
+            logger.error("listByEntityId() Exception", e);
+            try { response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR"); } catch (Exception ex) {}
+            return OxTrustConstants.RESULT_FAILURE;
+        }
+    }
+    
+    @GET
+    @Path("/list_page")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "list page of TrustRelationships", notes = "Search TrustRelationships page by page. Only fields of short view are loaded.", response = SAMLTrustRelationshipShort.class)
+    @ApiResponses(value = {
+		@ApiResponse(code = 200, message = "OK", response = SAMLTrustRelationshipShort.class),
+		@ApiResponse(code = 400, message = "Invalid sort_by or sort_order"),
+		@ApiResponse(code = 500, message = "Server error") })
+    public String listPage(@QueryParam("pattern") String pattern, @DefaultValue("displayName") @QueryParam("sort_by") String sortBy,
+            @DefaultValue("ascending") @QueryParam("sort_order") String sortOrder, @DefaultValue("1") @QueryParam("start_index") int startIndex,
+            @DefaultValue("50") @QueryParam("count") int count, @Context HttpServletResponse response) {
+        SortOrder order = SortOrder.getByValue(sortOrder);
+        if ((order == null) || !TrustService.SORT_ATTRIBUTES.contains(sortBy)) {
+            try { response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid sort_by or sort_order"); } catch (Exception ex) {}
+            return OxTrustConstants.RESULT_FAILURE;
+        }
+
+        try {
+            PagedResult<GluuSAMLTrustRelationship> page = trustService.searchSAMLTrustRelationships(pattern, sortBy, order,
+                    startIndex, Math.min(count, TrustService.MAX_PAGE_SIZE), TrustService.LIST_VIEW_ATTRIBUTES);
+
+            PagedResult<SAMLTrustRelationshipShort> result = new PagedResult<SAMLTrustRelationshipShort>();
+            result.setEntries(convertTRtoTRShort(page.getEntries()));
+            result.setTotalEntriesCount(page.getTotalEntriesCount());
+            //convert to JSON
+            return objectMapper.writeValueAsString(result);
+        } catch (Exception e) {
+            logger.error("listPage() Exception", e);
+            try { response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR"); } catch (Exception ex) {}
+            return OxTrustConstants.RESULT_FAILURE;
+        }
+    }
+    
     @POST
     @Path("/set_metadata/{inum}")
     @Consumes({MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
@@ -514,8 +580,7 @@ public class TrustRelationshipWebService {
 		@ApiResponse(code = 500, message = "Server error") })
     public void generateConfigurationFiles(@Context HttpServletResponse response) {
         try {
-            List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
-            if (!shibboleth3ConfService.generateConfigurationFiles(trustRelationships)) {
+            if (!shibboleth3ConfUpdateService.update()) {
                 logger.error("Failed to update Shibboleth v3 configuration by web API request");
                 try { response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR"); } catch (Exception ex) {}
             } else {
@@ -526,6 +591,30 @@ public class TrustRelationshipWebService {
             try { response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR"); } catch (Exception ex) {}
         } 
     }
+
+    @GET
+    @Path("/generate_configuration_files/status")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "configuration files generation status", notes = "Returns status of Shibboleth IDP configuration files generation")
+    @ApiResponses(value = {
+		@ApiResponse(code = 200, message = "OK"),
+		@ApiResponse(code = 500, message = "Server error") })
+    public String getConfigurationFilesStatus(@Context HttpServletResponse response) {
+        try {
+            Map<String, Object> status = new LinkedHashMap<String, Object>();
+            status.put("pending", shibboleth3ConfUpdateService.isUpdatePending());
+            status.put("running", shibboleth3ConfUpdateService.isUpdateRunning());
+            status.put("lastUpdateTime", shibboleth3ConfUpdateService.getLastUpdateTime());
+            status.put("lastUpdateDuration", shibboleth3ConfUpdateService.getLastUpdateDuration());
+            status.put("lastUpdateSucceeded", shibboleth3ConfUpdateService.isLastUpdateSucceeded());
+            // convert to JSON
+            return objectMapper.writeValueAsString(status);
+        } catch (Exception e) {
+            logger.error("Failed to get configuration files generation status", e);
+            try { response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR"); } catch (Exception ex) {}
+            return null;
+        }
+    }
     
     /**
      * Save SAML TrustRelationship.
@@ -660,14 +749,9 @@ public class TrustRelationshipWebService {
             }
 
             if (updateShib3Configuration) {
-                List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
-                if (!shibboleth3ConfService.generateConfigurationFiles(trustRelationships)) {
-                    logger.error("Failed to update Shibboleth v3 configuration");
-                    return "Failed to update Shibboleth v3 configuration";
-                } else {
-                    logger.info("Shibboleth v3 configuration updated successfully");
-                    return "Shibboleth v3 configuration updated successfully";
-                }
+                shibboleth3ConfUpdateService.requestUpdate();
+                logger.info("Shibboleth v3 configuration update scheduled");
+                return "Shibboleth v3 configuration update scheduled";
             }
         }
         return OxTrustConstants.RESULT_SUCCESS;
@@ -733,7 +817,7 @@ public class TrustRelationshipWebService {
         String idpMetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator	+ Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
         File metadataFile = new File(idpMetadataFolder + trustRelationship.getSpMetaDataFN());
 
-        List<String> entityIdList = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+        List<String> entityIdList = metadataIndexService.getEntityIds(metadataFile);
         Set<String> entityIdSet = new TreeSet<String>();
 
         if(entityIdList != null && ! entityIdList.isEmpty()){
@@ -757,14 +841,16 @@ public class TrustRelationshipWebService {
                 spMetadataFileName = shibboleth3ConfService.getSpNewMetadataFileName(trustRelationship);
         }
 
-        String result = shibboleth3ConfService.saveSpMetadataFile(trustRelationship.getSpMetaDataURL(), spMetadataFileName);
-        if (StringHelper.isNotEmpty(result)) {
-                metadataValidationTimer.queue(result);
+        SpMetadataDownloadResult result = shibboleth3ConfService.downloadSpMetadataFile(trustRelationship.getSpMetaDataURL(), spMetadataFileName, !emptySpMetadataFileName);
+        if (MetadataDownloadService.Status.NOT_MODIFIED == result.getStatus()) {
+                logger.debug("Metadata of trust relationship '{}' wasn't changed, validation is not needed", trustRelationship.getInum());
+        } else if (MetadataDownloadService.Status.DOWNLOADED == result.getStatus()) {
+                metadataValidationTimer.queue(result.getTempFileName());
         } else {
                 logger.error("Failed to download metadata");
         }
 
-        return StringHelper.isNotEmpty(result);
+        return MetadataDownloadService.Status.FAILED != result.getStatus();
     }
     
     private boolean saveSpMetaDataFileSourceTypeFile(GluuSAMLTrustRelationship  trustRelationship, String inum, String metadata) throws IOException {
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Objects;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -16,12 +17,16 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.gluu.oxtrust.api.GluuPersonApi;
 import org.gluu.oxtrust.api.openidconnect.BaseWebResource;
+import org.gluu.oxtrust.ldap.service.AuditTrailService.Outcome;
 import org.gluu.oxtrust.ldap.service.IPersonService;
+import org.gluu.oxtrust.ldap.service.OxTrustAuditService;
+import org.gluu.oxtrust.ldap.service.PersonSearchService;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.util.OxTrustApiConstants;
 import org.slf4j.Logger;
@@ -39,6 +44,15 @@ public class PeopleWebResource extends BaseWebResource {
 	@Inject
 	private IPersonService personService;
 
+	@Inject
+	private PersonSearchService personSearchService;
+
+	@Inject
+	private OxTrustAuditService oxTrustAuditService;
+
+	@Context
+	private HttpServletRequest request;
+
 	public PeopleWebResource() {
 	}
 
@@ -58,10 +72,13 @@ public class PeopleWebResource extends BaseWebResource {
 	@GET
 	@Path(OxTrustApiConstants.SEARCH)
 	@ApiOperation(value = "Search person")
-	public Response searchGroups(@QueryParam(OxTrustApiConstants.SEARCH_PATTERN) @NotNull String pattern) {
+	public Response searchGroups(@QueryParam(OxTrustApiConstants.SEARCH_PATTERN) @NotNull String pattern,
+			@QueryParam(OxTrustApiConstants.SIZE) int size) {
 		log("Search person with pattern= " + pattern);
 		try {
-			List<GluuCustomPerson> groups = personService.searchPersons(pattern);
+			// Missing size is 0 and falls back to the same limit as person list UI
+			int sizeLimit = size > 0 ? Math.min(size, PersonSearchService.MAX_PAGE_SIZE) : PersonSearchService.DEFAULT_SIZE_LIMIT;
+			List<GluuCustomPerson> groups = personSearchService.searchPersons(pattern, sizeLimit, null);
 			return Response.ok(convert(groups)).build();
 		} catch (Exception e) {
 			log(logger, e);
@@ -98,7 +115,7 @@ public class PeopleWebResource extends BaseWebResource {
 			String inum = personService.generateInumForNewPerson();
 			gluuPerson.setDn(personService.getDnForPerson(inum));
 			gluuPerson.setInum(inum);
-			personService.addPerson(gluuPerson);
+			addPerson(gluuPerson);
 			return Response.ok(convert(Arrays.asList(personService.getPersonByInum(inum))).get(0)).build();
 		} catch (Exception e) {
 			log(logger, e);
@@ -120,7 +137,7 @@ public class PeopleWebResource extends BaseWebResource {
 				person.setPassword(existingPerson.getUserPassword());
 				GluuCustomPerson personToUpdate = updateValues(existingPerson, person);
 				personToUpdate.setDn(personService.getDnForPerson(inum));
-				personService.updatePerson(personToUpdate);
+				updatePerson(personToUpdate);
 				return Response.ok(convert(Arrays.asList(personService.getPersonByInum(inum))).get(0)).build();
 			} else {
 				return Response.status(Response.Status.NOT_FOUND).build();
@@ -139,7 +156,7 @@ public class PeopleWebResource extends BaseWebResource {
 		try {
 			GluuCustomPerson existingPerson = personService.getPersonByInum(inum);
 			if (existingPerson != null) {
-				personService.removePerson(existingPerson);
+				removePerson(existingPerson);
 				return Response.ok().build();
 			} else {
 				return Response.status(Response.Status.NOT_FOUND).build();
@@ -155,6 +172,39 @@ public class PeopleWebResource extends BaseWebResource {
 		return Response.status(Response.Status.UNAUTHORIZED).build();
 	}
 
+	private void addPerson(GluuCustomPerson person) throws Exception {
+		long startTime = System.currentTimeMillis();
+		try {
+			personService.addPerson(person);
+		} catch (Exception e) {
+			oxTrustAuditService.auditPersonChange(person, "ADD FAILED", Outcome.FAILURE, startTime, null, request);
+			throw e;
+		}
+		oxTrustAuditService.auditPersonChange(person, "ADDED", Outcome.SUCCESS, startTime, null, request);
+	}
+
+	private void updatePerson(GluuCustomPerson person) {
+		long startTime = System.currentTimeMillis();
+		try {
+			personService.updatePerson(person);
+		} catch (RuntimeException e) {
+			oxTrustAuditService.auditPersonChange(person, "UPDATE FAILED", Outcome.FAILURE, startTime, null, request);
+			throw e;
+		}
+		oxTrustAuditService.auditPersonChange(person, "UPDATED", Outcome.SUCCESS, startTime, null, request);
+	}
+
+	private void removePerson(GluuCustomPerson person) {
+		long startTime = System.currentTimeMillis();
+		try {
+			personService.removePerson(person);
+		} catch (RuntimeException e) {
+			oxTrustAuditService.auditPersonChange(person, "REMOVE FAILED", Outcome.FAILURE, startTime, null, request);
+			throw e;
+		}
+		oxTrustAuditService.auditPersonChange(person, "REMOVED", Outcome.SUCCESS, startTime, null, request);
+	}
+
 	private List<GluuPersonApi> convert(List<GluuCustomPerson> persons) {
 		List<GluuPersonApi> result = new ArrayList<GluuPersonApi>();
 		for (GluuCustomPerson p : persons) {
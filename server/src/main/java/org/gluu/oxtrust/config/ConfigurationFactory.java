@@ -7,6 +7,9 @@
 package org.gluu.oxtrust.config;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -22,6 +25,8 @@ import javax.inject.Named;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
+import org.gluu.oxtrust.config.ConfigurationWatcher.ChangeListener;
+import org.gluu.oxtrust.config.ConfigurationWatcher.Component;
 import org.gluu.oxtrust.ldap.service.ApplicationFactory;
 import org.gluu.oxtrust.service.custom.LdapCentralConfigurationReload;
 import org.gluu.persist.PersistenceEntryManager;
@@ -79,6 +84,9 @@ public class ConfigurationFactory {
 	@Inject
 	private Instance<Configuration> configurationInstance;
 
+	@Inject
+	private ConfigurationWatcher configurationWatcher;
+
 	public final static String PERSISTENCE_CONFIGUARION_RELOAD_EVENT_TYPE = "persistenceConfigurationReloadEvent";
 	public final static String PERSISTENCE_CENTRAL_CONFIGUARION_RELOAD_EVENT_TYPE = "persistenceCentralConfigurationReloadEvent";
 
@@ -132,6 +140,8 @@ public class ConfigurationFactory {
 	private long loadedRevision = -1;
 	private boolean loadedFromLdap = true;
 
+	private volatile boolean fileWatchActive;
+
 	@PostConstruct
 	public void init() {
 		this.isActive = new AtomicBoolean(true);
@@ -185,22 +195,64 @@ public class ConfigurationFactory {
 		final int delay = 30;
 		final int interval = DEFAULT_INTERVAL;
 
+		// Configuration changes are reported by watcher. Timer checks only what watcher can't watch
+		configurationWatcher.start(new ChangeListener() {
+			@Override
+			public void configurationChanged(Set<Component> components) {
+				reloadConfiguration(components, true);
+			}
+		});
+
+		this.fileWatchActive = watchConfigurationFiles();
+		if (this.loadedFromLdap) {
+			configurationWatcher.watchLdapEntry(persistenceEntryManagerInstance, getConfigurationDn());
+		}
+
 		timerEvent.fire(new TimerEvent(new TimerSchedule(delay, interval), new ConfigurationEvent(),
 				Scheduled.Literal.INSTANCE));
 	}
 
 	@Asynchronous
 	public void reloadConfigurationTimerEvent(@Observes @Scheduled ConfigurationEvent configurationEvent) {
-		if (this.isActive.get()) {
-			return;
+		Set<Component> components = EnumSet.noneOf(Component.class);
+		if (!this.fileWatchActive || !configurationWatcher.isFileWatchActive()) {
+			components.add(Component.PERSISTENCE);
+			components.add(Component.CENTRAL_PERSISTENCE);
+		}
+		if (!configurationWatcher.isLdapWatchActive()) {
+			components.add(Component.APPLICATION);
 		}
 
+		if (!components.isEmpty()) {
+			reloadConfiguration(components, false);
+		}
+	}
+
+	/**
+	 * Report configuration change made by this node. Configuration is reloaded without waiting for timer
+	 */
+	public void notifyConfigurationChanged() {
+		configurationWatcher.changed(Component.APPLICATION);
+	}
+
+	private void reloadConfiguration(Set<Component> components, boolean retryIfActive) {
 		if (!this.isActive.compareAndSet(false, true)) {
+			if (retryIfActive) {
+				configurationWatcher.changed(components);
+			}
 			return;
 		}
 
 		try {
-			reloadConfiguration();
+			if (components.contains(Component.PERSISTENCE)) {
+				reloadPersistenceConfiguration();
+			}
+			if (components.contains(Component.CENTRAL_PERSISTENCE)) {
+				reloadLdapCentralConfiguration();
+			}
+			if (components.contains(Component.APPLICATION)) {
+				reloadApplicationConfiguration();
+			}
 		} catch (Throwable ex) {
 			log.error("Exception happened while reloading application configuration", ex);
 		} finally {
@@ -208,7 +260,26 @@ public class ConfigurationFactory {
 		}
 	}
 
-	private void reloadConfiguration() {
+	private boolean watchConfigurationFiles() {
+		boolean result = configurationWatcher.watchFile(GLUU_FILE_PATH, Component.PERSISTENCE);
+		result &= configurationWatcher.watchFile(LDAP_PROPERTIES_FILE, Component.PERSISTENCE);
+		result &= configurationWatcher.watchFile(LDAP_DEFAULT_PROPERTIES_FILE, Component.PERSISTENCE);
+		result &= configurationWatcher.watchFile(getPersistenceFilePath(), Component.PERSISTENCE);
+		result &= configurationWatcher.watchFile(LDAP_CENTRAL_PROPERTIES_FILE, Component.CENTRAL_PERSISTENCE);
+
+		return result;
+	}
+
+	private String getPersistenceFilePath() {
+		String fileName = this.persistenceConfiguration.getFileName();
+		if (new File(fileName).isAbsolute()) {
+			return fileName;
+		}
+
+		return DIR + fileName;
+	}
+
+	private void reloadPersistenceConfiguration() {
         // Reload LDAP configuration if needed
         PersistenceConfiguration newPersistenceConfiguration = loadPersistenceConfiguration();
 
@@ -217,9 +288,15 @@ public class ConfigurationFactory {
                 // Reload configuration only if it was modified
                 this.persistenceConfiguration = newPersistenceConfiguration;
                 event.select(LdapConfigurationReload.Literal.INSTANCE).fire(PERSISTENCE_CONFIGUARION_RELOAD_EVENT_TYPE);
+
+                // Persistence file or entry manager could be changed
+                configurationWatcher.watchFile(getPersistenceFilePath(), Component.PERSISTENCE);
+                configurationWatcher.restartLdapWatch();
             }
         }
+	}
 
+	private void reloadLdapCentralConfiguration() {
 		// Reload LDAP central configuration if needed
 		File ldapCentralFile = new File(LDAP_CENTRAL_PROPERTIES_FILE);
 		if (ldapCentralFile.exists()) {
@@ -236,7 +313,9 @@ public class ConfigurationFactory {
 			event.select(LdapCentralConfigurationReload.Literal.INSTANCE)
 					.fire(PERSISTENCE_CENTRAL_CONFIGUARION_RELOAD_EVENT_TYPE);
 		}
+	}
 
+	private void reloadApplicationConfiguration() {
 		if (!loadedFromLdap) {
 			return;
 		}
@@ -379,14 +458,20 @@ public class ConfigurationFactory {
 		try {
 			final LdapOxTrustConfiguration conf = loadConfigurationFromLdap();
 			if (conf != null) {
+				List<Class<? extends Configuration>> changedConfigurations = getChangedConfigurations(conf);
 				init(conf);
 
-				// Destroy old configuration
+				// Destroy only changed configurations
 				if (this.loaded) {
-					destroy(AppConfiguration.class);
-					destroy(CacheRefreshConfiguration.class);
-					destroy(ImportPersonConfig.class);
-					destroy(AttributeResolverConfiguration.class);
+					if (changedConfigurations.isEmpty()) {
+						log.debug("Configuration revision was changed but configuration wasn't changed");
+						return true;
+					}
+
+					for (Class<? extends Configuration> changedConfiguration : changedConfigurations) {
+						log.info("Reloading {}", changedConfiguration.getSimpleName());
+						destroy(changedConfiguration);
+					}
 				}
 
 				this.loaded = true;
@@ -409,6 +494,37 @@ public class ConfigurationFactory {
 		return false;
 	}
 
+	private List<Class<? extends Configuration>> getChangedConfigurations(LdapOxTrustConfiguration conf) {
+		List<Class<? extends Configuration>> result = new ArrayList<Class<? extends Configuration>>();
+		if (isChanged(this.appConfiguration, conf.getApplication())) {
+			result.add(AppConfiguration.class);
+		}
+		if (isChanged(this.cacheRefreshConfiguration, conf.getCacheRefresh())) {
+			result.add(CacheRefreshConfiguration.class);
+		}
+		if (isChanged(this.importPersonConfig, conf.getImportPersonConfig())) {
+			result.add(ImportPersonConfig.class);
+		}
+		if (isChanged(this.attributeResolverConfiguration, conf.getAttributeResolverConfig())) {
+			result.add(AttributeResolverConfiguration.class);
+		}
+
+		return result;
+	}
+
+	private boolean isChanged(Object oldConfiguration, Object newConfiguration) {
+		if ((oldConfiguration == null) || (newConfiguration == null)) {
+			return oldConfiguration != newConfiguration;
+		}
+
+		try {
+			return !jsonService.objectToJson(oldConfiguration).equals(jsonService.objectToJson(newConfiguration));
+		} catch (Exception ex) {
+			log.warn("Failed to compare configurations", ex);
+			return true;
+		}
+	}
+
 	public void destroy(Class<? extends Configuration> clazz) {
 		Instance<? extends Configuration> confInstance = configurationInstance.select(clazz);
 		configurationInstance.destroy(confInstance.get());
@@ -0,0 +1,468 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.gluu.oxtrust.service.cdi.event.ConfigurationWatcherEvent;
+import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.persist.ldap.operation.LdapOperationService;
+import org.gluu.persist.operation.PersistenceOperationService;
+import org.slf4j.Logger;
+import org.xdi.service.cdi.async.Asynchronous;
+import org.xdi.service.cdi.event.Scheduled;
+import org.xdi.service.timer.event.TimerEvent;
+import org.xdi.service.timer.schedule.TimerSchedule;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+
+/**
+ * Notifies about configuration changes without reloading configuration on timer:
+ * <ul>
+ * <li>configuration files are watched with WatchService. Modification times of files are also checked every
+ * FILE_CHECK_INTERVAL, because WatchService doesn't report changes of symlink targets (e.g. Kubernetes ConfigMap
+ * "..data" swap) and changes on network file systems</li>
+ * <li>configuration entry is watched with LDAP persistent search. It permanently holds one connection from persistence
+ * connection pool while it's active, so it's started only if pool has at least MIN_POOL_SIZE connections. Search is
+ * restarted after RETRY_INTERVAL if server closes it</li>
+ * <li>changes made by this node are reported directly with changed(Component)</li>
+ * </ul>
+ * Changes are collected per component and reported to listener once after DEBOUNCE_INTERVAL without new changes.
+ *
+ * Watch service events, debounce, file checks and search restarts are processed by timer every CHECK_INTERVAL.
+ */
+@ApplicationScoped
+public class ConfigurationWatcher {
+
+	public static final int CHECK_INTERVAL = 1; // 1 second
+	public static final int DEBOUNCE_INTERVAL = 2; // 2 seconds
+	public static final int RETRY_INTERVAL = 60; // 60 seconds
+	public static final int FILE_CHECK_INTERVAL = 5 * 60; // 5 minutes
+	public static final int MIN_POOL_SIZE = 2;
+
+	public enum Component {
+		PERSISTENCE, CENTRAL_PERSISTENCE, APPLICATION
+	}
+
+	public interface ChangeListener {
+
+		void configurationChanged(Set<Component> components);
+
+	}
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private Event<TimerEvent> timerEvent;
+
+	private ChangeListener listener;
+
+	private volatile boolean started;
+	private final AtomicBoolean isActive = new AtomicBoolean(false);
+
+	private WatchService watchService;
+	private volatile boolean fileWatchActive;
+	private long nextFileCheckTime;
+	private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<WatchKey, Path>();
+	private final Map<Path, Component> watchedFiles = new ConcurrentHashMap<Path, Component>();
+	private final Map<Path, Long> fileModifiedTimes = new ConcurrentHashMap<Path, Long>();
+
+	private final Set<Component> pendingChanges = EnumSet.noneOf(Component.class);
+	private long notificationTime;
+
+	private Instance<PersistenceEntryManager> persistenceEntryManagerInstance;
+	private String entryDn;
+	private LdapOperationService ldapOperationService;
+	private LDAPConnection ldapConnection;
+	private AsyncRequestID ldapSearchId;
+	private ResultCode ldapSearchResultCode;
+	private volatile boolean ldapWatchActive;
+	private long ldapWatchRestartTime;
+
+	// Entry changes could be missed since watch wasn't active. They are reported once search is (re)started
+	private boolean ldapWatchLost = true;
+
+	public synchronized void start(ChangeListener listener) {
+		this.listener = listener;
+		this.nextFileCheckTime = System.currentTimeMillis() + FILE_CHECK_INTERVAL * 1000L;
+
+		try {
+			this.watchService = FileSystems.getDefault().newWatchService();
+			this.fileWatchActive = true;
+		} catch (IOException ex) {
+			log.error("Failed to create watch service. Configuration files will be checked by timer", ex);
+		}
+
+		this.started = true;
+		timerEvent.fire(new TimerEvent(new TimerSchedule(CHECK_INTERVAL, CHECK_INTERVAL), new ConfigurationWatcherEvent(),
+				Scheduled.Literal.INSTANCE));
+	}
+
+	@PreDestroy
+	public void destroy() {
+		this.started = false;
+		stopLdapWatch();
+
+		this.fileWatchActive = false;
+		if (this.watchService != null) {
+			try {
+				this.watchService.close();
+			} catch (IOException ex) {
+				log.error("Failed to close watch service", ex);
+			}
+		}
+	}
+
+	@Asynchronous
+	public void processConfigurationWatcherEvent(@Observes @Scheduled ConfigurationWatcherEvent configurationWatcherEvent) {
+		if (!this.started || !this.isActive.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			long now = System.currentTimeMillis();
+			if (this.fileWatchActive) {
+				watchFiles();
+			}
+
+			if (now >= nextFileCheckTime) {
+				nextFileCheckTime = now + FILE_CHECK_INTERVAL * 1000L;
+				checkFiles();
+			}
+
+			if (isLdapWatchRestartDue(now)) {
+				restartLdapWatch();
+			}
+
+			if (isNotificationDue(now)) {
+				notifyListener();
+			}
+		} catch (Throwable ex) {
+			log.error("Failed to process configuration changes", ex);
+		} finally {
+			this.isActive.set(false);
+		}
+	}
+
+	/**
+	 * Watch configuration file. File may not exist yet
+	 *
+	 * @return False if file can't be watched
+	 */
+	public boolean watchFile(String fileName, Component component) {
+		Path file = new File(fileName).getAbsoluteFile().toPath();
+		watchedFiles.put(file, component);
+		fileModifiedTimes.put(file, file.toFile().lastModified());
+		if (this.watchService == null) {
+			return false;
+		}
+
+		Path dir = file.getParent();
+		try {
+			if (!watchedDirs.containsValue(dir)) {
+				WatchKey watchKey = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+				watchedDirs.put(watchKey, dir);
+			}
+
+			return true;
+		} catch (Exception ex) {
+			log.error("Failed to watch configuration file '{}'", fileName, ex);
+			return false;
+		}
+	}
+
+	public boolean isFileWatchActive() {
+		return this.fileWatchActive;
+	}
+
+	/**
+	 * Watch configuration entry with persistent search. Entry manager is taken from instance on every (re)start, so
+	 * watch continues after persistence configuration reload
+	 */
+	public synchronized void watchLdapEntry(Instance<PersistenceEntryManager> persistenceEntryManagerInstance, String entryDn) {
+		this.persistenceEntryManagerInstance = persistenceEntryManagerInstance;
+		this.entryDn = entryDn;
+
+		restartLdapWatch();
+	}
+
+	public boolean isLdapWatchActive() {
+		return ldapWatchActive;
+	}
+
+	public synchronized void restartLdapWatch() {
+		stopLdapWatch();
+		this.ldapWatchRestartTime = 0;
+		if ((this.persistenceEntryManagerInstance == null) || !this.started) {
+			return;
+		}
+
+		PersistenceOperationService persistenceOperationService = persistenceEntryManagerInstance.get().getOperationService();
+		if (!(persistenceOperationService instanceof LdapOperationService)) {
+			log.info("Persistent search isn't supported by current persistence layer. Configuration entry will be checked by timer");
+			return;
+		}
+
+		AsyncSearchResultListener searchListener = new AsyncSearchResultListener() {
+
+			private static final long serialVersionUID = 3870465186314380472L;
+
+			@Override
+			public void searchEntryReturned(SearchResultEntry searchEntry) {
+				log.debug("Configuration entry '{}' was changed", searchEntry.getDN());
+				changed(Component.APPLICATION);
+			}
+
+			@Override
+			public void searchReferenceReturned(SearchResultReference searchReference) {
+			}
+
+			@Override
+			public void searchResultReceived(AsyncRequestID requestID, SearchResult searchResult) {
+				ldapSearchFinished(requestID, searchResult);
+			}
+		};
+
+		try {
+			LdapOperationService ldapOperationService = (LdapOperationService) persistenceOperationService;
+			LDAPConnectionPool connectionPool = ldapOperationService.getConnectionProvider().getConnectionPool();
+			if ((connectionPool != null) && (connectionPool.getMaximumAvailableConnections() < MIN_POOL_SIZE)) {
+				log.info("Persistence connection pool is too small for persistent search. Configuration entry will be checked by timer");
+				return;
+			}
+
+			this.ldapOperationService = ldapOperationService;
+			this.ldapConnection = ldapOperationService.getConnection();
+
+			SearchRequest searchRequest = new SearchRequest(searchListener, entryDn, SearchScope.BASE, Filter.createPresenceFilter("objectClass"),
+					"oxRevision");
+			searchRequest.addControl(new PersistentSearchRequestControl(PersistentSearchChangeType.allChangeTypes(), true, false));
+
+			this.ldapSearchId = ldapConnection.asyncSearch(searchRequest);
+			this.ldapWatchActive = true;
+			log.info("Watching configuration entry '{}' with persistent search", entryDn);
+
+			// Changes made while search wasn't active are reported once
+			if (this.ldapWatchLost) {
+				this.ldapWatchLost = false;
+				changed(Component.APPLICATION);
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to start persistent search on '{}'. Configuration entry will be checked by timer", entryDn, ex);
+			stopLdapWatch();
+			scheduleLdapWatchRestart();
+		}
+	}
+
+	/**
+	 * Report change of component. Listener is notified after DEBOUNCE_INTERVAL without new changes
+	 */
+	public void changed(Component component) {
+		changed(EnumSet.of(component));
+	}
+
+	public synchronized void changed(Set<Component> components) {
+		if (!this.started) {
+			return;
+		}
+
+		pendingChanges.addAll(components);
+		notificationTime = System.currentTimeMillis() + DEBOUNCE_INTERVAL * 1000L;
+	}
+
+	private synchronized boolean isNotificationDue(long now) {
+		return !pendingChanges.isEmpty() && (now >= notificationTime);
+	}
+
+	private void notifyListener() {
+		Set<Component> components;
+		synchronized (this) {
+			if (pendingChanges.isEmpty()) {
+				return;
+			}
+			components = EnumSet.copyOf(pendingChanges);
+			pendingChanges.clear();
+		}
+
+		try {
+			listener.configurationChanged(components);
+		} catch (Throwable ex) {
+			log.error("Failed to process configuration change of {}", components, ex);
+		}
+	}
+
+	private synchronized void ldapSearchFinished(AsyncRequestID requestID, SearchResult searchResult) {
+		if (requestID != this.ldapSearchId) {
+			return;
+		}
+
+		this.ldapSearchResultCode = searchResult.getResultCode();
+		log.warn("Persistent search on '{}' was finished with result '{}'. Configuration entry will be checked by timer", entryDn,
+				ldapSearchResultCode);
+		stopLdapWatch();
+		scheduleLdapWatchRestart();
+	}
+
+	private synchronized void stopLdapWatch() {
+		this.ldapWatchActive = false;
+
+		if (this.ldapConnection != null) {
+			if (this.ldapSearchId != null) {
+				try {
+					ldapConnection.abandon(ldapSearchId);
+				} catch (Exception ex) {
+					log.debug("Failed to abandon persistent search", ex);
+				}
+			}
+			try {
+				// Pool should replace connection which server closed or which failed
+				boolean defunct = ((ldapSearchResultCode != null) && (ldapSearchResultCode != ResultCode.SUCCESS))
+						|| !ldapConnection.isConnected();
+				if (defunct) {
+					ldapOperationService.releaseDefunctConnection(ldapConnection);
+				} else {
+					ldapOperationService.releaseConnection(ldapConnection);
+				}
+			} catch (Exception ex) {
+				log.debug("Failed to release persistent search connection", ex);
+			}
+		}
+
+		this.ldapSearchId = null;
+		this.ldapSearchResultCode = null;
+		this.ldapConnection = null;
+		this.ldapOperationService = null;
+	}
+
+	private synchronized void scheduleLdapWatchRestart() {
+		this.ldapWatchLost = true;
+		this.ldapWatchRestartTime = System.currentTimeMillis() + RETRY_INTERVAL * 1000L;
+	}
+
+	private synchronized boolean isLdapWatchRestartDue(long now) {
+		return !ldapWatchActive && (ldapWatchRestartTime > 0) && (now >= ldapWatchRestartTime);
+	}
+
+	/**
+	 * Process pending watch service events. Modification times of reported files are updated, so they aren't reported
+	 * again by checkFiles()
+	 */
+	private void watchFiles() {
+		Set<Component> components = EnumSet.noneOf(Component.class);
+		try {
+			WatchKey watchKey;
+			while ((watchKey = watchService.poll()) != null) {
+				Path dir = watchedDirs.get(watchKey);
+				for (WatchEvent<?> event : watchKey.pollEvents()) {
+					if (dir == null) {
+						continue;
+					}
+
+					if (StandardWatchEventKinds.OVERFLOW == event.kind()) {
+						for (Path file : getFiles(dir)) {
+							components.add(fileChanged(file));
+						}
+						continue;
+					}
+
+					Path file = dir.resolve((Path) event.context());
+					if (watchedFiles.containsKey(file)) {
+						components.add(fileChanged(file));
+					}
+				}
+
+				if (!watchKey.reset()) {
+					watchedDirs.remove(watchKey);
+				}
+			}
+		} catch (ClosedWatchServiceException ex) {
+			log.warn("Configuration files watch service was closed. Configuration files will be checked by timer");
+			this.fileWatchActive = false;
+		}
+
+		if (!components.isEmpty()) {
+			changed(components);
+		}
+	}
+
+	private Component fileChanged(Path file) {
+		fileModifiedTimes.put(file, file.toFile().lastModified());
+
+		return watchedFiles.get(file);
+	}
+
+	/**
+	 * Report components of files which modification time was changed since last check
+	 */
+	private void checkFiles() {
+		Set<Component> components = EnumSet.noneOf(Component.class);
+		for (Map.Entry<Path, Long> entry : fileModifiedTimes.entrySet()) {
+			Path file = entry.getKey();
+			long lastModified = file.toFile().lastModified();
+			if (lastModified != entry.getValue()) {
+				log.debug("Configuration file '{}' was changed", file);
+				entry.setValue(lastModified);
+				Component component = watchedFiles.get(file);
+				if (component != null) {
+					components.add(component);
+				}
+			}
+		}
+
+		if (!components.isEmpty()) {
+			changed(components);
+		}
+	}
+
+	private Set<Path> getFiles(Path dir) {
+		Set<Path> result = new HashSet<Path>();
+		for (Path file : new HashMap<Path, Component>(watchedFiles).keySet()) {
+			if (dir.equals(file.getParent())) {
+				result.add(file);
+			}
+		}
+
+		return result;
+	}
+
+}
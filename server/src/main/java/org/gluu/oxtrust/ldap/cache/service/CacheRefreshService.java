@@ -107,31 +107,21 @@ public class CacheRefreshService implements Serializable {
 		return ldapEntryManager.contains(inumMap);
 	}
 
-	public String generateInumForNewInumMap(String inumbBaseDn, PersistenceEntryManager ldapEntryManager) {
-		String newInum = generateInumForNewInumMapImpl();
-		String newDn = getDnForInum(inumbBaseDn, newInum);
-
-		GluuInumMap inumMap = new GluuInumMap();
-		inumMap.setDn(newDn);
-
-		while (containsInumMap(ldapEntryManager, inumMap)) {
-			newInum = generateInumForNewInumMapImpl();
-			newDn = getDnForInum(inumbBaseDn, newInum);
-			inumMap.setDn(newDn);
-		}
+	public String generateInumForNewInumMap() {
+		return inumService.generateInums(OxTrustConstants.INUM_TYPE_PEOPLE_SLUG);
+	}
 
-		return newInum;
+	/**
+	 * Generate several inums for new inum maps at once
+	 */
+	public List<String> generateInumsForNewInumMaps(int count) {
+		return inumService.generateInums(OxTrustConstants.INUM_TYPE_PEOPLE_SLUG, count);
 	}
 
 	public String getDnForInum(String baseDn, String inum) {
 		return String.format("inum=%s,%s", inum, baseDn);
 	}
 
-	private String generateInumForNewInumMapImpl() {
-		String inum = inumService.generateInums(OxTrustConstants.INUM_TYPE_PEOPLE_SLUG);
-		return inum;
-	}
-
 	public void setTargetEntryAttributes(GluuSimplePerson sourcePerson, Map<String, String> targetServerAttributesMapping,
 			GluuCustomPerson targetPerson) {
 		// Collect all attributes to single map
@@ -16,6 +16,7 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -896,9 +897,8 @@ public class CacheRefreshTimer {
 				TARGET_PERSON_RETURN_ATTRIBUTES, null, 0, 0, cacheRefreshConfiguration.getLdapSearchSizeLimit());
 	}
 
-	private GluuInumMap addGluuInumMap(String inumbBaseDn, PersistenceEntryManager inumDbPersistenceEntryManager, String[] primaryKeyAttrName,
-			String[][] primaryKeyValues) {
-		String inum = cacheRefreshService.generateInumForNewInumMap(inumbBaseDn, inumDbPersistenceEntryManager);
+	private GluuInumMap addGluuInumMap(String inumbBaseDn, PersistenceEntryManager inumDbPersistenceEntryManager, String inum,
+			String[] primaryKeyAttrName, String[][] primaryKeyValues) {
 		String inumDn = cacheRefreshService.getDnForInum(inumbBaseDn, inum);
 
 		GluuInumMap inumMap = new GluuInumMap();
@@ -928,6 +928,15 @@ public class CacheRefreshTimer {
 
 		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
 
+		// Allocate inums for all new entries at once
+		int countNewEntries = 0;
+		for (CacheCompoundKey cacheCompoundKey : sourcePersonCacheCompoundKeyMap.keySet()) {
+			if (!primaryKeyAttrValueInumMap.containsKey(cacheCompoundKey)) {
+				countNewEntries++;
+			}
+		}
+		Iterator<String> newInums = cacheRefreshService.generateInumsForNewInumMaps(countNewEntries).iterator();
+
 		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
 		for (Entry<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyEntry : sourcePersonCacheCompoundKeyMap.entrySet()) {
 			CacheCompoundKey cacheCompoundKey = sourcePersonCacheCompoundKeyEntry.getKey();
@@ -940,7 +949,8 @@ public class CacheRefreshTimer {
 			GluuInumMap currentInumMap = primaryKeyAttrValueInumMap.get(cacheCompoundKey);
 			if (currentInumMap == null) {
 				String[][] keyAttributesValues = getKeyAttributesValues(keyAttributesWithoutValues, sourcePerson);
-				currentInumMap = addGluuInumMap(inumbaseDn, inumDbPersistenceEntryManager, keyAttributesWithoutValues, keyAttributesValues);
+				currentInumMap = addGluuInumMap(inumbaseDn, inumDbPersistenceEntryManager, newInums.next(), keyAttributesWithoutValues,
+						keyAttributesValues);
 				result.put(cacheCompoundKey, currentInumMap);
 				log.debug("Added new inum entry for DN: {}", sourcePerson.getDn());
 			} else {
@@ -35,6 +35,7 @@ import org.gluu.oxtrust.service.cdi.event.CentralLdap;
 import org.gluu.oxtrust.service.custom.LdapCentralConfigurationReload;
 import org.gluu.oxtrust.service.logger.LoggerService;
 import org.gluu.oxtrust.service.status.ldap.LdapStatusTimer;
+import org.gluu.oxtrust.service.uma.UmaPatRefreshTimer;
 import org.gluu.oxtrust.util.BuildVersionService;
 import org.gluu.persist.PersistenceEntryManager;
 import org.gluu.persist.ldap.impl.LdapEntryManager;
@@ -158,6 +159,12 @@ public class AppInitializer {
     @Inject
     private CleanerTimer cleanerTimer;
 
+    @Inject
+    private UmaPatRefreshTimer umaPatRefreshTimer;
+
+    @Inject
+    private Shibboleth3ConfUpdateService shibboleth3ConfUpdateService;
+
     private AtomicBoolean isActive;
     private long lastFinishedTime;
 
@@ -218,6 +225,8 @@ public class AppInitializer {
         statusCheckerTimer.initTimer();
         svnSyncTimer.initTimer();
         logFileSizeChecker.initTimer();
+        umaPatRefreshTimer.initTimer();
+        shibboleth3ConfUpdateService.initTimer();
     }
 
     protected void initSchedulerService() {
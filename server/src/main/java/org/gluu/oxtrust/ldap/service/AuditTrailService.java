@@ -0,0 +1,562 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.io.IOUtils;
+import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xdi.service.JsonService;
+import org.xdi.util.StringHelper;
+
+/**
+ * Stores audit events. Request threads only put event into bounded ring buffer, events are logged and written by one
+ * background thread in batches. Every hour is written into own file AUDIT_FILE_PREFIX + yyyy-MM-dd-HH (UTC) with one
+ * JSON event per line. Files of previous hours are compressed with gzip and removed after RETENTION_DAYS.
+ *
+ * File names serve as time index: query reads only files of hours which overlap requested period.
+ *
+ * If buffer is full new events are dropped and count of dropped events is reported by writer thread.
+ */
+@ApplicationScoped
+@Named("auditTrailService")
+public class AuditTrailService {
+
+	public static final String AUDIT_FILE_PREFIX = "audit-";
+	public static final int RETENTION_DAYS = 90;
+	public static final int BUFFER_SIZE = 1 << 16;
+	public static final int MAX_QUERY_SIZE = 1000;
+
+	private static final String FILE_EXTENSION = ".json";
+	private static final String COMPRESSED_FILE_EXTENSION = ".json.gz";
+
+	private static final int BATCH_SIZE = 1000;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	public enum Outcome {
+		SUCCESS, FAILURE
+	}
+
+	// Messages are written into oxTrust audit log configured for this category
+	private static final Logger auditLog = LoggerFactory.getLogger(OxTrustAuditService.class);
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private JsonService jsonService;
+
+	private final AtomicReferenceArray<AuditEvent> buffer = new AtomicReferenceArray<AuditEvent>(BUFFER_SIZE);
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	private File auditDir;
+
+	private volatile boolean stopped;
+	private Thread writerThread;
+
+	// Used by writer thread only
+	private final SimpleDateFormat hourFormat = createHourFormat();
+	private String currentHour;
+	private Writer currentWriter;
+	private long reportedDroppedEvents;
+
+	public AuditTrailService() {
+	}
+
+	AuditTrailService(Logger log, JsonService jsonService) {
+		this.log = log;
+		this.jsonService = jsonService;
+	}
+
+	public static class AuditEvent {
+
+		private long timestamp;
+		private String actor;
+		private String actorName;
+		private String ipAddress;
+		private String action;
+		private String targetDn;
+		private Outcome outcome;
+		private long latency = -1;
+		private String message;
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public void setTimestamp(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		/**
+		 * @return Inum of user who did action
+		 */
+		public String getActor() {
+			return actor;
+		}
+
+		public void setActor(String actor) {
+			this.actor = actor;
+		}
+
+		public String getActorName() {
+			return actorName;
+		}
+
+		public void setActorName(String actorName) {
+			this.actorName = actorName;
+		}
+
+		public String getIpAddress() {
+			return ipAddress;
+		}
+
+		public void setIpAddress(String ipAddress) {
+			this.ipAddress = ipAddress;
+		}
+
+		public String getAction() {
+			return action;
+		}
+
+		public void setAction(String action) {
+			this.action = action;
+		}
+
+		public String getTargetDn() {
+			return targetDn;
+		}
+
+		public void setTargetDn(String targetDn) {
+			this.targetDn = targetDn;
+		}
+
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		public void setOutcome(Outcome outcome) {
+			this.outcome = outcome;
+		}
+
+		/**
+		 * @return Action duration in milliseconds or -1 if it's unknown
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		public void setLatency(long latency) {
+			this.latency = latency;
+		}
+
+		/**
+		 * @return Message for log file
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		public void setMessage(String message) {
+			this.message = message;
+		}
+
+	}
+
+	@PostConstruct
+	public void init() {
+		String baseDir = ConfigurationFactory.BASE_DIR == null ? System.getProperty("java.io.tmpdir") : ConfigurationFactory.BASE_DIR + File.separator + "logs";
+		init(new File(baseDir + File.separator + "oxtrust-audit"));
+	}
+
+	void init(File auditDir) {
+		this.auditDir = auditDir;
+		this.writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeEvents();
+			}
+		}, "AuditTrailWriter");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		this.stopped = true;
+		LockSupport.unpark(this.writerThread);
+		try {
+			this.writerThread.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Put event into buffer. Method doesn't block and doesn't do IO
+	 *
+	 * @return False if buffer is full and event was dropped
+	 */
+	public boolean publish(AuditEvent event) {
+		if (event.getTimestamp() == 0) {
+			event.setTimestamp(System.currentTimeMillis());
+		}
+
+		while (true) {
+			long currentTail = tail.get();
+			if (currentTail - head.get() >= BUFFER_SIZE) {
+				droppedEvents.incrementAndGet();
+				return false;
+			}
+
+			if (tail.compareAndSet(currentTail, currentTail + 1)) {
+				buffer.lazySet(index(currentTail), event);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Find stored events. Events which are still in buffer aren't returned
+	 *
+	 * @param from
+	 *            Start of period or null
+	 * @param to
+	 *            End of period or null
+	 * @param actor
+	 *            Inum or name of user or null
+	 * @param action
+	 *            Part of action or null
+	 * @param targetDn
+	 *            DN of target entry or its parent or null
+	 * @param outcome
+	 *            Outcome or null
+	 * @param limit
+	 *            Maximum count of events
+	 * @return Events ordered by time
+	 */
+	public List<AuditEvent> query(Date from, Date to, String actor, String action, String targetDn, Outcome outcome, int limit) {
+		long fromTime = from == null ? 0 : from.getTime();
+		long toTime = to == null ? Long.MAX_VALUE : to.getTime();
+
+		List<AuditEvent> result = new ArrayList<AuditEvent>();
+
+		File[] files = auditDir.listFiles();
+		if (files == null) {
+			return result;
+		}
+		Arrays.sort(files);
+
+		SimpleDateFormat hourFormat = createHourFormat();
+		for (File file : files) {
+			// Events written right after roll can be in file of next hour
+			Date hour = parseHour(hourFormat, file.getName());
+			if ((hour == null) || (hour.getTime() - HOUR > toTime) || (hour.getTime() + HOUR <= fromTime)) {
+				continue;
+			}
+
+			for (AuditEvent event : readEvents(file)) {
+				if ((event.getTimestamp() >= fromTime) && (event.getTimestamp() <= toTime) && matches(event, actor, action, targetDn, outcome)) {
+					result.add(event);
+					if (result.size() >= limit) {
+						return result;
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	private boolean matches(AuditEvent event, String actor, String action, String targetDn, Outcome outcome) {
+		if (StringHelper.isNotEmpty(actor) && !actor.equalsIgnoreCase(event.getActor()) && !actor.equalsIgnoreCase(event.getActorName())) {
+			return false;
+		}
+
+		if (StringHelper.isNotEmpty(action) && ((event.getAction() == null) || !event.getAction().toLowerCase().contains(action.toLowerCase()))) {
+			return false;
+		}
+
+		if (StringHelper.isNotEmpty(targetDn)
+				&& ((event.getTargetDn() == null) || !event.getTargetDn().toLowerCase().endsWith(targetDn.toLowerCase()))) {
+			return false;
+		}
+
+		return (outcome == null) || (outcome == event.getOutcome());
+	}
+
+	private List<AuditEvent> readEvents(File file) {
+		List<AuditEvent> result = new ArrayList<AuditEvent>();
+
+		InputStream is = null;
+		try {
+			is = new FileInputStream(file);
+			if (file.getName().endsWith(COMPRESSED_FILE_EXTENSION)) {
+				is = new GZIPInputStream(is);
+			}
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					result.add(jsonService.jsonToObject(line, AuditEvent.class));
+				} catch (Exception ex) {
+					// Last line of current file can be incomplete
+					log.trace("Failed to parse audit event '{}'", line, ex);
+				}
+			}
+		} catch (EOFException ex) {
+			log.warn("Audit file '{}' is truncated", file.getAbsolutePath());
+		} catch (IOException ex) {
+			log.error("Failed to read audit file '{}'", file.getAbsolutePath(), ex);
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+
+		return result;
+	}
+
+	private void writeEvents() {
+		compressOldFiles(hourFormat.format(new Date()));
+
+		List<AuditEvent> batch = new ArrayList<AuditEvent>(BATCH_SIZE);
+		while (true) {
+			batch.clear();
+			AuditEvent event;
+			while ((batch.size() < BATCH_SIZE) && ((event = poll()) != null)) {
+				batch.add(event);
+			}
+
+			if (batch.isEmpty()) {
+				if (stopped) {
+					break;
+				}
+				rollIfNeeded(System.currentTimeMillis());
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+				continue;
+			}
+
+			try {
+				writeBatch(batch);
+			} catch (Exception ex) {
+				log.error("Failed to write {} audit events", batch.size(), ex);
+				closeCurrentWriter();
+			}
+
+			long dropped = droppedEvents.get();
+			if (dropped > reportedDroppedEvents) {
+				log.warn("Audit buffer is full, {} events were dropped", dropped - reportedDroppedEvents);
+				reportedDroppedEvents = dropped;
+			}
+		}
+
+		closeCurrentWriter();
+	}
+
+	private AuditEvent poll() {
+		long currentHead = head.get();
+		int index = index(currentHead);
+
+		AuditEvent event = buffer.get(index);
+		if (event == null) {
+			// Buffer is empty or producer didn't store event yet
+			return null;
+		}
+
+		buffer.set(index, null);
+		head.set(currentHead + 1);
+
+		return event;
+	}
+
+	private void writeBatch(List<AuditEvent> batch) throws IOException {
+		for (AuditEvent event : batch) {
+			auditLog.info(event.getMessage());
+
+			rollIfNeeded(event.getTimestamp());
+			if (currentWriter == null) {
+				openCurrentWriter();
+			}
+
+			String json;
+			try {
+				json = jsonService.objectToJson(event);
+			} catch (Exception ex) {
+				log.error("Failed to serialize audit event '{}'", event.getMessage(), ex);
+				continue;
+			}
+			currentWriter.write(json);
+			currentWriter.write('\n');
+		}
+
+		if (currentWriter != null) {
+			currentWriter.flush();
+		}
+	}
+
+	private void rollIfNeeded(long time) {
+		String hour = hourFormat.format(new Date(time));
+		if (hour.equals(currentHour)) {
+			return;
+		}
+
+		// Events of previous hours are written into current file
+		if ((currentHour != null) && (hour.compareTo(currentHour) < 0)) {
+			return;
+		}
+
+		closeCurrentWriter();
+		currentHour = hour;
+		compressOldFiles(hour);
+	}
+
+	private void openCurrentWriter() throws IOException {
+		if (!auditDir.isDirectory() && !auditDir.mkdirs()) {
+			throw new IOException(String.format("Failed to create audit folder '%s'", auditDir.getAbsolutePath()));
+		}
+
+		if (currentHour == null) {
+			currentHour = hourFormat.format(new Date());
+		}
+
+		OutputStream os = new FileOutputStream(new File(auditDir, AUDIT_FILE_PREFIX + currentHour + FILE_EXTENSION), true);
+		currentWriter = new OutputStreamWriter(os, "UTF-8");
+	}
+
+	private void closeCurrentWriter() {
+		if (currentWriter != null) {
+			IOUtils.closeQuietly(currentWriter);
+			currentWriter = null;
+		}
+	}
+
+	/**
+	 * Compress files of hours before current hour and remove files older than RETENTION_DAYS
+	 */
+	private void compressOldFiles(String hour) {
+		File[] files = auditDir.listFiles();
+		if (files == null) {
+			return;
+		}
+
+		long expirationTime = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(RETENTION_DAYS);
+		for (File file : files) {
+			Date fileHour = parseHour(hourFormat, file.getName());
+			if (fileHour == null) {
+				continue;
+			}
+
+			if (fileHour.getTime() + HOUR < expirationTime) {
+				if (!file.delete()) {
+					log.error("Failed to remove expired audit file '{}'", file.getAbsolutePath());
+				}
+				continue;
+			}
+
+			String fileName = file.getName();
+			if (fileName.endsWith(FILE_EXTENSION) && !fileName.equals(AUDIT_FILE_PREFIX + hour + FILE_EXTENSION)) {
+				compress(file);
+			}
+		}
+	}
+
+	private void compress(File file) {
+		File compressedFile = new File(file.getParentFile(), file.getName() + ".gz");
+
+		InputStream is = null;
+		OutputStream os = null;
+		try {
+			is = new FileInputStream(file);
+			os = new GZIPOutputStream(new FileOutputStream(compressedFile));
+			IOUtils.copy(is, os);
+			os.close();
+			os = null;
+
+			if (!file.delete()) {
+				log.error("Failed to remove compressed audit file '{}'", file.getAbsolutePath());
+			}
+		} catch (IOException ex) {
+			log.error("Failed to compress audit file '{}'", file.getAbsolutePath(), ex);
+			compressedFile.delete();
+		} finally {
+			IOUtils.closeQuietly(is);
+			IOUtils.closeQuietly(os);
+		}
+	}
+
+	private Date parseHour(SimpleDateFormat hourFormat, String fileName) {
+		if (!fileName.startsWith(AUDIT_FILE_PREFIX)) {
+			return null;
+		}
+
+		String hour;
+		if (fileName.endsWith(COMPRESSED_FILE_EXTENSION)) {
+			hour = fileName.substring(AUDIT_FILE_PREFIX.length(), fileName.length() - COMPRESSED_FILE_EXTENSION.length());
+		} else if (fileName.endsWith(FILE_EXTENSION)) {
+			hour = fileName.substring(AUDIT_FILE_PREFIX.length(), fileName.length() - FILE_EXTENSION.length());
+		} else {
+			return null;
+		}
+
+		try {
+			return hourFormat.parse(hour);
+		} catch (ParseException ex) {
+			return null;
+		}
+	}
+
+	private static SimpleDateFormat createHourFormat() {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd-HH");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		format.setLenient(false);
+
+		return format;
+	}
+
+	private static int index(long sequence) {
+		return (int) (sequence & (BUFFER_SIZE - 1));
+	}
+
+}
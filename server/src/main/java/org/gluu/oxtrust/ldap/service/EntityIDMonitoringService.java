@@ -6,10 +6,12 @@
 
 package org.gluu.oxtrust.ldap.service;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -25,9 +27,7 @@ import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
 import org.gluu.oxtrust.model.GluuValidationStatus;
 import org.gluu.oxtrust.service.cdi.event.EntityIdMonitoringEvent;
 import org.gluu.oxtrust.util.ServiceUtil;
-import org.gluu.saml.metadata.SAMLMetadataParser;
 import org.slf4j.Logger;
-import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.model.GluuStatus;
 import org.xdi.service.cdi.async.Asynchronous;
 import org.xdi.service.cdi.event.Scheduled;
@@ -47,23 +47,34 @@ public class EntityIDMonitoringService {
 
 	private static final int DEFAULT_INTERVAL = 2 * 60; // 2 minutes
 
+	// Attributes needed to decide if trust relationship entityIDs should be checked
+	private static final String[] MONITORING_ATTRIBUTES = new String[] { "inum", "gluuSAMLspMetaDataFN", "gluuValidationStatus",
+			"gluuContainerFederation", "gluuIsFederation", "gluuEntityId" };
+
 	@Inject
 	private Logger log;
 
 	@Inject
 	private Event<TimerEvent> timerEvent;
 
-	@Inject
-	private AppConfiguration appConfiguration;
-
 	@Inject
 	private ServiceUtil serviceUtil;
 
 	@Inject
 	private TrustService trustService;
 
+	@Inject
+	private MetadataIndexService metadataIndexService;
+
 	private AtomicBoolean isActive;
 
+	// Metadata digests of trust relationships checked during last run
+	private Map<String, String> metadataDigests = new HashMap<String, String>();
+
+	private volatile long lastRunDuration = -1;
+	private volatile int lastRunChecked;
+	private volatile int lastRunUpdated;
+
 	public void initTimer() {
 		log.debug("Initializing EntityId Monitoring Timer");
 		this.isActive = new AtomicBoolean(false);
@@ -98,77 +109,140 @@ public class EntityIDMonitoringService {
 	public void process() {
 		log.trace("Starting entityId monitoring process.");
 		log.trace("EVENT_METADATA_ENTITY_ID_UPDATE Starting");
-		for (GluuSAMLTrustRelationship tr : trustService.getAllTrustRelationships()) {
+		long startTime = System.currentTimeMillis();
+
+		// Entries are updated one by one after all trust relationships were checked
+		Map<String, GluuSAMLTrustRelationship> updates = new LinkedHashMap<String, GluuSAMLTrustRelationship>();
+		Map<String, String> checkedDigests = new HashMap<String, String>();
+		int checked = 0;
+
+		for (GluuSAMLTrustRelationship tr : trustService.getAllTrustRelationships(MONITORING_ATTRIBUTES)) {
 			log.trace("Evaluating TR " + tr.getDn());
 			boolean meatadataAvailable = tr.getSpMetaDataFN() != null && StringHelper.isNotEmpty(tr.getSpMetaDataFN());
 			log.trace("meatadataAvailable:" + meatadataAvailable);
-			boolean correctType = trustService.getTrustContainerFederation(tr) == null;
-			log.trace("correctType:" + correctType);
 			boolean isValidated = GluuValidationStatus.VALIDATION_SUCCESS.equals(tr.getValidationStatus());
 			log.trace("isValidated:" + isValidated);
-			if (meatadataAvailable && correctType && isValidated) {
-				String idpMetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator
-						+ Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
-				File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
-				List<String> entityIds = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
-
-				log.trace("entityIds from metadata: " + serviceUtil.iterableToString(entityIds));
-				Set<String> entityIdSet = new TreeSet<String>();
-
-				if (entityIds != null && !entityIds.isEmpty()) {
-					Set<String> duplicatesSet = new TreeSet<String>();
-					for (String entityId : entityIds) {
-						if (!entityIdSet.add(entityId)) {
-							duplicatesSet.add(entityId);
-						}
-					}
+			if (!meatadataAvailable || !isValidated) {
+				continue;
+			}
+
+			String digest = metadataIndexService.getDigest(tr);
+			if ((digest != null) && digest.equals(metadataDigests.get(tr.getInum()))) {
+				log.trace("Metadata wasn't changed since last check");
+				checkedDigests.put(tr.getInum(), digest);
+				continue;
+			}
+
+			boolean correctType = trustService.getTrustContainerFederation(tr) == null;
+			log.trace("correctType:" + correctType);
+			if (!correctType) {
+				continue;
+			}
+
+			checked++;
+			if (digest != null) {
+				checkedDigests.put(tr.getInum(), digest);
+			}
+
+			List<String> entityIds = metadataIndexService.getEntityIds(tr);
+
+			log.trace("entityIds from metadata: " + serviceUtil.iterableToString(entityIds));
+			Set<String> entityIdSet = new TreeSet<String>();
+			if (entityIds != null) {
+				entityIdSet.addAll(entityIds);
+			}
+
+			log.trace("unique entityIds: " + serviceUtil.iterableToString(entityIdSet));
+			Collection<String> disjunction = CollectionUtils.disjunction(entityIdSet, tr.getGluuEntityId());
+			log.trace("entityIds disjunction: " + serviceUtil.iterableToString(disjunction));
+
+			if (!disjunction.isEmpty()) {
+				log.trace("entityIds disjunction is not empty. Somthing has changed. Processing further.");
+				// Only monitoring attributes were loaded. Full entry is needed to update it
+				GluuSAMLTrustRelationship fullTr = trustService.getRelationshipByDn(tr.getDn());
+				if (fullTr == null) {
+					checkedDigests.remove(tr.getInum());
+					continue;
 				}
 
-				log.trace("unique entityIds: " + serviceUtil.iterableToString(entityIdSet));
-				Collection<String> disjunction = CollectionUtils.disjunction(entityIdSet, tr.getGluuEntityId());
-				log.trace("entityIds disjunction: " + serviceUtil.iterableToString(disjunction));
-
-				if (!disjunction.isEmpty()) {
-					log.trace("entityIds disjunction is not empty. Somthing has changed. Processing further.");
-					tr.setGluuEntityId(entityIdSet);
-					if (tr.isFederation()) {
-						List<GluuSAMLTrustRelationship> parts = trustService.getDeconstructedTrustRelationships(tr);
-						for (GluuSAMLTrustRelationship part : parts) {
-							log.trace("Processing TR part: " + part.getDn());
-							boolean isActive = part.getStatus() != null && GluuStatus.ACTIVE.equals(part.getStatus());
-							log.trace("isActive:" + isActive);
-							boolean entityIdPresent = entityIdSet != null && entityIdSet.contains(part.getEntityId());
-							log.trace("entityIdPresent:" + entityIdPresent);
-							boolean previouslyDisabled = part.getValidationLog() != null && part.getValidationLog()
-									.contains(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
-							log.trace("previouslyDisabled:" + previouslyDisabled);
-							if (isActive && !entityIdPresent) {
-								log.trace("no entityId found for part : " + part.getDn());
-								part.setStatus(GluuStatus.INACTIVE);
-								List<String> log = new ArrayList<String>();
-								log.add(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
-								part.setValidationLog(log);
-								trustService.updateTrustRelationship(part);
-							}
-							if (entityIdPresent && previouslyDisabled) {
-								log.trace("entityId found for part : " + part.getDn());
-								part.setStatus(GluuStatus.ACTIVE);
-								List<String> log = part.getValidationLog();
-								List<String> updatedLog = new ArrayList<String>(log);
-								updatedLog.remove(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
-								if (updatedLog.isEmpty()) {
-									updatedLog = null;
-								}
-								part.setValidationLog(updatedLog);
-								trustService.updateTrustRelationship(part);
-							}
-						}
-					}
-
-					trustService.updateTrustRelationship(tr);
+				fullTr.setGluuEntityId(entityIdSet);
+				if (fullTr.isFederation()) {
+					processFederationParts(fullTr, entityIdSet, updates);
 				}
+
+				updates.put(fullTr.getDn(), fullTr);
 			}
 		}
+
+		for (GluuSAMLTrustRelationship tr : updates.values()) {
+			trustService.updateTrustRelationship(tr);
+		}
+
+		// Trust relationships which weren't found or became invalid will be checked again
+		metadataDigests.clear();
+		metadataDigests.putAll(checkedDigests);
+
+		metadataIndexService.flush();
+
+		lastRunDuration = System.currentTimeMillis() - startTime;
+		lastRunChecked = checked;
+		lastRunUpdated = updates.size();
+		log.debug("EntityId monitoring took {} ms, checked: {}, updated: {}", lastRunDuration, checked, updates.size());
+	}
+
+	private void processFederationParts(GluuSAMLTrustRelationship tr, Set<String> entityIdSet, Map<String, GluuSAMLTrustRelationship> updates) {
+		List<GluuSAMLTrustRelationship> parts = trustService.getDeconstructedTrustRelationships(tr);
+		for (GluuSAMLTrustRelationship part : parts) {
+			log.trace("Processing TR part: " + part.getDn());
+			boolean isActive = part.getStatus() != null && GluuStatus.ACTIVE.equals(part.getStatus());
+			log.trace("isActive:" + isActive);
+			boolean entityIdPresent = entityIdSet != null && entityIdSet.contains(part.getEntityId());
+			log.trace("entityIdPresent:" + entityIdPresent);
+			boolean previouslyDisabled = part.getValidationLog() != null && part.getValidationLog()
+					.contains(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
+			log.trace("previouslyDisabled:" + previouslyDisabled);
+			if (isActive && !entityIdPresent) {
+				log.trace("no entityId found for part : " + part.getDn());
+				part.setStatus(GluuStatus.INACTIVE);
+				List<String> log = new ArrayList<String>();
+				log.add(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
+				part.setValidationLog(log);
+				updates.put(part.getDn(), part);
+			}
+			if (entityIdPresent && previouslyDisabled) {
+				log.trace("entityId found for part : " + part.getDn());
+				part.setStatus(GluuStatus.ACTIVE);
+				List<String> log = part.getValidationLog();
+				List<String> updatedLog = new ArrayList<String>(log);
+				updatedLog.remove(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
+				if (updatedLog.isEmpty()) {
+					updatedLog = null;
+				}
+				part.setValidationLog(updatedLog);
+				updates.put(part.getDn(), part);
+			}
+		}
+	}
+
+	/**
+	 * @return Duration of last monitoring run in milliseconds or -1 if there was no run yet
+	 */
+	public long getLastRunDuration() {
+		return lastRunDuration;
+	}
+
+	/**
+	 * @return Number of trust relationships which metadata was checked during last run
+	 */
+	public int getLastRunChecked() {
+		return lastRunChecked;
+	}
+
+	/**
+	 * @return Number of trust relationships updated during last run
+	 */
+	public int getLastRunUpdated() {
+		return lastRunUpdated;
 	}
 
 }
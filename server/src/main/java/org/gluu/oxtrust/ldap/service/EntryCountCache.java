@@ -0,0 +1,65 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Named;
+
+/**
+ * Keeps the last known number of entries of a given type (people, groups) so callers only interested in totals don't
+ * need to count entries in LDAP every time
+ */
+@ApplicationScoped
+@Named("entryCountCache")
+public class EntryCountCache {
+
+	public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000; // 1 minute
+
+	private Map<Class<?>, CachedCount> counts = new ConcurrentHashMap<Class<?>, CachedCount>();
+
+	private static class CachedCount {
+
+		private final int count;
+		private final long timestamp;
+
+		private CachedCount(int count) {
+			this.count = count;
+			this.timestamp = System.currentTimeMillis();
+		}
+
+	}
+
+	public void put(Class<?> entryClass, int count) {
+		counts.put(entryClass, new CachedCount(count));
+	}
+
+	/**
+	 * Returns the cached number of entries of the class given
+	 *
+	 * @param entryClass
+	 *            Entry class
+	 * @param maxAge
+	 *            Maximum age in milliseconds a cached value can have to be returned
+	 * @return Cached count or null if there is no value or it's older than maxAge
+	 */
+	public Integer get(Class<?> entryClass, long maxAge) {
+		CachedCount cachedCount = counts.get(entryClass);
+		if ((cachedCount == null) || (System.currentTimeMillis() - cachedCount.timestamp > maxAge)) {
+			return null;
+		}
+
+		return cachedCount.count;
+	}
+
+	public void invalidate(Class<?> entryClass) {
+		counts.remove(entryClass);
+	}
+
+}
@@ -6,23 +6,46 @@
 
 package org.gluu.oxtrust.ldap.service;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.poi.EncryptedDocumentException;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.gluu.oxtrust.model.table.Table;
 import org.slf4j.Logger;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * Service class to work with Excel files
@@ -37,6 +60,28 @@ public class ExcelService {
 	@Inject
 	private Logger log;
 
+	/**
+	 * Receives rows of the first sheet one by one. Row 0 is the header row
+	 */
+	public interface RowHandler {
+
+		/**
+		 * @param row
+		 *            Row index
+		 * @param cells
+		 *            Not empty cell values by column index
+		 * @return false to stop reading
+		 */
+		boolean row(int row, Map<Integer, String> cells) throws Exception;
+
+	}
+
+	private static class StopReadingException extends SAXException {
+
+		private static final long serialVersionUID = -3586183547627155185L;
+
+	}
+
 	public Table read(InputStream is) {
 		org.gluu.oxtrust.model.table.Table result = null;
 		try {
@@ -63,4 +108,185 @@ public class ExcelService {
 		return result;
 	}
 
+	/**
+	 * Read first sheet of XLSX, XLS or CSV file without keeping it in memory. XLSX is parsed with SAX, CSV is read
+	 * line by line. XLS is read with user model because binary format has no streaming API with cell positions
+	 *
+	 * @param file
+	 *            File to read. Format is selected by file name extension
+	 */
+	public void read(File file, String fileName, RowHandler handler) throws Exception {
+		String name = fileName.toLowerCase();
+		if (name.endsWith(".csv")) {
+			readCsv(file, handler);
+		} else if (name.endsWith(".xlsx")) {
+			readXlsx(file, handler);
+		} else {
+			readWorkbook(file, handler);
+		}
+	}
+
+	private void readXlsx(File file, final RowHandler handler) throws Exception {
+		OPCPackage opcPackage = OPCPackage.open(file, PackageAccess.READ);
+		try {
+			XSSFReader xssfReader = new XSSFReader(opcPackage);
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(opcPackage);
+			StylesTable styles = xssfReader.getStylesTable();
+
+			Iterator<InputStream> sheets = xssfReader.getSheetsData();
+			if (!sheets.hasNext()) {
+				return;
+			}
+
+			InputStream sheet = sheets.next();
+			try {
+				SheetContentsHandler contentsHandler = new SheetContentsHandler() {
+
+					private Map<Integer, String> cells;
+
+					@Override
+					public void startRow(int rowNum) {
+						this.cells = new TreeMap<Integer, String>();
+					}
+
+					@Override
+					public void endRow(int rowNum) {
+						try {
+							if (!handler.row(rowNum, cells)) {
+								throw new RuntimeException(new StopReadingException());
+							}
+						} catch (RuntimeException ex) {
+							throw ex;
+						} catch (Exception ex) {
+							throw new RuntimeException(ex);
+						}
+					}
+
+					@Override
+					public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+						if (formattedValue != null) {
+							cells.put((int) new CellReference(cellReference).getCol(), formattedValue);
+						}
+					}
+
+					@Override
+					public void headerFooter(String text, boolean isHeader, String tagName) {
+					}
+
+				};
+
+				XMLReader reader = SAXHelper.newXMLReader();
+				reader.setContentHandler(new XSSFSheetXMLHandler(styles, strings, contentsHandler, new DataFormatter(), false));
+				try {
+					reader.parse(new InputSource(sheet));
+				} catch (RuntimeException ex) {
+					if (ex.getCause() instanceof StopReadingException) {
+						return;
+					}
+					if (ex.getCause() instanceof Exception) {
+						throw (Exception) ex.getCause();
+					}
+					throw ex;
+				}
+			} finally {
+				IOUtils.closeQuietly(sheet);
+			}
+		} finally {
+			opcPackage.revert();
+		}
+	}
+
+	private void readWorkbook(File file, RowHandler handler) throws Exception {
+		Workbook workbook = WorkbookFactory.create(file, null, true);
+		try {
+			DataFormatter dataFormatter = new DataFormatter();
+			Sheet sheet = workbook.getSheetAt(0);
+			for (Row currentRow : sheet) {
+				Map<Integer, String> cells = new TreeMap<Integer, String>();
+				for (Cell currentCell : currentRow) {
+					cells.put(currentCell.getColumnIndex(), dataFormatter.formatCellValue(currentCell));
+				}
+
+				if (!handler.row(currentRow.getRowNum(), cells)) {
+					return;
+				}
+			}
+		} finally {
+			workbook.close();
+		}
+	}
+
+	private void readCsv(File file, RowHandler handler) throws Exception {
+		Reader reader = new BufferedReader(new InputStreamReader(FileUtils.openInputStream(file), StandardCharsets.UTF_8));
+		try {
+			// Skip UTF-8 BOM added by Excel
+			reader.mark(1);
+			if (reader.read() != '\uFEFF') {
+				reader.reset();
+			}
+
+			int row = 0;
+			Map<Integer, String> cells;
+			while ((cells = readCsvRecord(reader)) != null) {
+				if (!handler.row(row++, cells)) {
+					return;
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+	}
+
+	/*
+	 * Read one RFC 4180 record. Quoted values may contain separators, line breaks and doubled quotes
+	 */
+	private Map<Integer, String> readCsvRecord(Reader reader) throws IOException {
+		Map<Integer, String> cells = new TreeMap<Integer, String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		boolean empty = true;
+		int col = 0;
+
+		int ch;
+		while ((ch = reader.read()) != -1) {
+			empty = false;
+			if (quoted) {
+				if (ch == '"') {
+					reader.mark(1);
+					if (reader.read() == '"') {
+						value.append('"');
+					} else {
+						reader.reset();
+						quoted = false;
+					}
+				} else {
+					value.append((char) ch);
+				}
+			} else if (ch == '"') {
+				quoted = true;
+			} else if (ch == ',') {
+				addCsvValue(cells, col++, value);
+			} else if (ch == '\n') {
+				break;
+			} else if (ch != '\r') {
+				value.append((char) ch);
+			}
+		}
+
+		if (empty) {
+			return null;
+		}
+
+		addCsvValue(cells, col, value);
+
+		return cells;
+	}
+
+	private void addCsvValue(Map<Integer, String> cells, int col, StringBuilder value) {
+		if (value.length() > 0) {
+			cells.put(col, value.toString());
+			value.setLength(0);
+		}
+	}
+
 }
@@ -25,7 +25,6 @@ import org.gluu.search.filter.Filter;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.util.ArrayHelper;
-import org.xdi.util.INumGenerator;
 import org.xdi.util.StringHelper;
 
 /**
@@ -53,6 +52,9 @@ public class GroupService implements Serializable, IGroupService {
 	
 	@Inject
 	private PersonService personService;
+
+	@Inject
+	private InumAllocator inumAllocator;
 	
 	/* (non-Javadoc)
 	 * @see org.gluu.oxtrust.ldap.service.IGroupService#addGroup(org.gluu.oxtrust.model.GluuGroup)
@@ -177,28 +179,9 @@ public class GroupService implements Serializable, IGroupService {
 	 */
 	@Override
 	public String generateInumForNewGroup() throws Exception {
-		GluuGroup group = new GluuGroup();
-		String newInum = null;
-		do {
-			newInum = generateInumForNewGroupImpl();
-			String newDn = getDnForGroup(newInum);
-			group.setDn(newDn);
-		} while (containsGroup(group));
-
-		return newInum;
+		return generateInumForNewGroupImpl();
 	}
 
-    private boolean containsGroup(GluuGroup group) {
-        boolean result=false;
-        try {
-            result = ldapEntryManager.contains(group);
-        }
-        catch (Exception e){
-            log.debug(e.getMessage(), e);
-        }
-        return result;
-    }
-
 	/* (non-Javadoc)
 	 * @see org.gluu.oxtrust.ldap.service.IGroupService#generateInameForNewGroup(java.lang.String)
 	 */
@@ -244,7 +227,7 @@ public class GroupService implements Serializable, IGroupService {
 	private String generateInumForNewGroupImpl() throws Exception {
 		String orgInum = organizationService.getInumForOrganization();
 		return orgInum + OxTrustConstants.inumDelimiter + OxTrustConstants.INUM_GROUP_OBJECTTYPE + OxTrustConstants.inumDelimiter
-				+ INumGenerator.generate(2);
+				+ inumAllocator.allocate();
 	}
 
 	/* (non-Javadoc)
@@ -145,6 +145,13 @@ public interface IPersonService {
 	 */
 	public abstract String generateInumForNewPerson();
 
+	/**
+	 * Generate several new inums for persons at once
+	 * 
+	 * @return New inums for persons
+	 */
+	public abstract List<String> generateInumsForNewPersons(int count);
+
 	public abstract String generateInameForNewPerson(String uid);
 
 	/**
@@ -0,0 +1,233 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.slf4j.Logger;
+
+/**
+ * Allocates unique inum suffixes without checking if entry with generated inum already exists. Suffix has the same
+ * format as INumGenerator.generate(4) result and consists of:
+ * <ul>
+ * <li>32 bits: seconds since EPOCH</li>
+ * <li>16 bits: node id</li>
+ * <li>16 bits: sequence number inside second</li>
+ * </ul>
+ * When sequence is exhausted allocator continues with next second, so bulk allocation never waits.
+ *
+ * Node id is taken from "gluu.inum.node" system property. Otherwise random node id is generated once and stored in
+ * STATE_FILE. Every node of cluster must have own node id, so it should be set explicitly there.
+ *
+ * Seconds are reserved in STATE_FILE by RESERVATION_SECONDS before they are used. After restart allocation continues
+ * after the last reserved second, so suffixes issued in advance or before clock was set back aren't issued again.
+ */
+@ApplicationScoped
+@Named("inumAllocator")
+public class InumAllocator {
+
+	public static final String NODE_ID_PROPERTY = "gluu.inum.node";
+
+	public static final int INUM_BLOCKS = 4;
+
+	public static final String STATE_FILE = "inum-allocator.properties";
+
+	public static final int RESERVATION_SECONDS = 60;
+
+	// 2018-01-01T00:00:00Z
+	private static final long EPOCH = 1514764800L;
+
+	private static final int MAX_SEQUENCE = 0xFFFF;
+
+	private static final String STATE_NODE_ID = "nodeId";
+	private static final String STATE_RESERVED_SECOND = "reservedSecond";
+
+	@Inject
+	private Logger log;
+
+	private File stateFile;
+
+	private int nodeId;
+
+	private long lastSecond;
+	private int sequence;
+	private long reservedSecond;
+
+	public InumAllocator() {
+	}
+
+	InumAllocator(Logger log) {
+		this.log = log;
+	}
+
+	@PostConstruct
+	public void init() {
+		String baseDir = ConfigurationFactory.BASE_DIR == null ? System.getProperty("java.io.tmpdir") : ConfigurationFactory.DIR;
+		init(new File(baseDir, STATE_FILE));
+	}
+
+	synchronized void init(File stateFile) {
+		this.stateFile = stateFile;
+
+		Properties state = loadState();
+		Long configuredNodeId = Long.getLong(NODE_ID_PROPERTY);
+		String storedNodeId = state.getProperty(STATE_NODE_ID);
+		if (configuredNodeId != null) {
+			this.nodeId = (int) (configuredNodeId & 0xFFFF);
+		} else if (storedNodeId != null) {
+			this.nodeId = Integer.parseInt(storedNodeId, 16) & 0xFFFF;
+		} else {
+			this.nodeId = new SecureRandom().nextInt() & 0xFFFF;
+		}
+
+		if (configuredNodeId == null) {
+			log.warn("Inum allocator node id isn't set with '{}' system property. In cluster every node should have unique node id",
+					NODE_ID_PROPERTY);
+		}
+
+		// Continue after the last second which could be used before restart
+		this.reservedSecond = Long.parseLong(state.getProperty(STATE_RESERVED_SECOND, "0"));
+		this.lastSecond = reservedSecond;
+		this.sequence = MAX_SEQUENCE + 1;
+		storeState();
+
+		log.info("Inum allocator node id: {}", String.format("%04X", nodeId));
+	}
+
+	public int getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Allocate new inum suffix
+	 *
+	 * @return Suffix in format XXXX.XXXX.XXXX.XXXX
+	 */
+	public String allocate() {
+		return format(next());
+	}
+
+	/**
+	 * Allocate several inum suffixes at once
+	 *
+	 * @param count
+	 *            Count of suffixes
+	 * @return Suffixes in format XXXX.XXXX.XXXX.XXXX
+	 */
+	public List<String> allocate(int count) {
+		List<String> result = new ArrayList<String>(count);
+		long[] values = next(count);
+		for (long value : values) {
+			result.add(format(value));
+		}
+
+		return result;
+	}
+
+	private long next() {
+		return next(1)[0];
+	}
+
+	private synchronized long[] next(int count) {
+		long currentSecond = System.currentTimeMillis() / 1000 - EPOCH;
+		if (currentSecond > lastSecond) {
+			lastSecond = currentSecond;
+			sequence = 0;
+		}
+
+		long[] result = new long[count];
+		for (int i = 0; i < count; i++) {
+			if (sequence > MAX_SEQUENCE) {
+				lastSecond++;
+				sequence = 0;
+			}
+			result[i] = ((lastSecond & 0xFFFFFFFFL) << 32) | ((long) nodeId << 16) | sequence++;
+		}
+
+		// Reserve used seconds before suffixes are returned
+		if (lastSecond > reservedSecond) {
+			reservedSecond = lastSecond + RESERVATION_SECONDS;
+			storeState();
+		}
+
+		return result;
+	}
+
+	private String format(long value) {
+		StringBuilder sb = new StringBuilder(INUM_BLOCKS * 5);
+		for (int i = INUM_BLOCKS - 1; i >= 0; i--) {
+			sb.append(String.format("%04X", (value >>> (i * 16)) & 0xFFFF));
+			if (i > 0) {
+				sb.append('.');
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private Properties loadState() {
+		Properties state = new Properties();
+		if (!stateFile.isFile()) {
+			return state;
+		}
+
+		InputStream is = null;
+		try {
+			is = FileUtils.openInputStream(stateFile);
+			state.load(is);
+		} catch (IOException ex) {
+			log.error("Failed to load inum allocator state file '{}'", stateFile.getAbsolutePath(), ex);
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+
+		return state;
+	}
+
+	private void storeState() {
+		Properties state = new Properties();
+		state.setProperty(STATE_NODE_ID, String.format("%04X", nodeId));
+		state.setProperty(STATE_RESERVED_SECOND, Long.toString(reservedSecond));
+
+		File tmpStateFile = new File(stateFile.getAbsolutePath() + ".tmp");
+		OutputStream os = null;
+		try {
+			os = FileUtils.openOutputStream(tmpStateFile);
+			state.store(os, "Inum allocator state");
+			os.close();
+			try {
+				Files.move(tmpStateFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmpStateFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException ex) {
+			log.error("Failed to store inum allocator state file '{}'", stateFile.getAbsolutePath(), ex);
+			FileUtils.deleteQuietly(tmpStateFile);
+		} finally {
+			IOUtils.closeQuietly(os);
+		}
+	}
+
+}
@@ -7,6 +7,7 @@
 package org.gluu.oxtrust.ldap.service;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.ejb.Stateless;
@@ -25,7 +26,6 @@ import org.gluu.persist.model.base.InumEntry;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.model.GluuAttribute;
-import org.xdi.util.INumGenerator;
 
 /* 
 
@@ -70,8 +70,6 @@ public class InumService implements Serializable {
 
 	private static final String SEPARATOR = "!";
 
-	private static final int MAX = 100;
-
 	@Inject
 	private Logger log;
 
@@ -84,6 +82,9 @@ public class InumService implements Serializable {
 	@Inject
 	private AppConfiguration appConfiguration;
 
+	@Inject
+	private InumAllocator inumAllocator;
+
 	public boolean contains(String inum, String gluuInum, String type) {
 		boolean contains = false;
 		if ("attribute".equals(type)) {
@@ -178,29 +179,16 @@ public class InumService implements Serializable {
 		return generateInums(type, true);
 	}
 
+	/**
+	 * Generate new inum of given type. Inums are allocated by InumAllocator and are unique without lookup, so
+	 * checkInDb is kept for compatibility only
+	 */
 	public String generateInums(String type, boolean checkInDb) {
 		String inum = "";
-		int counter = 0;
-		String gluu = organizationService.getInumForOrganization();
 		try {
-			while (true) {
-				inum = getInum(type, gluu);
-				if (inum == null || inum.trim().equals(""))
-					break;
-
-				if (!checkInDb) {
-					break;
-				}
-				if (!contains(inum, gluu, type)) {
-					break;
-				}
-				/* Just to make sure it doesn't get into an infinite loop */
-				if (counter > MAX) {
-					inum = "";
-					log.error("Infinite loop problem while generating new inum");
-					break;
-				}
-				counter++;
+			String prefix = getInumPrefix(type);
+			if (prefix != null) {
+				inum = prefix + inumAllocator.allocate();
 			}
 		} catch (Exception ex) {
 			log.error("Failed to generate inum", ex);
@@ -208,36 +196,37 @@ public class InumService implements Serializable {
 		return inum;
 	}
 
-	private String getInum(String type, String gluu) {
-		String inum = "";
+	/**
+	 * Generate several new inums of given type at once
+	 *
+	 * @return New inums or empty list if type is unknown
+	 */
+	public List<String> generateInums(String type, int count) {
+		List<String> result = new ArrayList<String>(count);
+		String prefix = getInumPrefix(type);
+		if (prefix == null) {
+			return result;
+		}
+
+		for (String suffix : inumAllocator.allocate(count)) {
+			result.add(prefix + suffix);
+		}
+
+		return result;
+	}
+
+	private String getInumPrefix(String type) {
+		String gluu = organizationService.getInumForOrganization();
 		if ("people".equals(type)) {
-			inum = gluu + SEPARATOR + PEOPLE + SEPARATOR + generateInum(2);
+			return gluu + SEPARATOR + PEOPLE + SEPARATOR;
 		} else if ("group".equals(type)) {
-			inum = gluu + SEPARATOR + GROUP + SEPARATOR + generateInum(2);
+			return gluu + SEPARATOR + GROUP + SEPARATOR;
 		} else if ("attribute".equals(type)) {
-			inum = gluu + SEPARATOR + ATTRIBUTE + SEPARATOR + generateInum(2);
+			return gluu + SEPARATOR + ATTRIBUTE + SEPARATOR;
 		} else if ("trelationship".equals(type)) {
-			inum = gluu + SEPARATOR + TRUST_RELATIONSHIP + SEPARATOR + generateInum(2);
-		}
-		return inum;
-	}
-
-	private String generateInum(int size) {
-		String inum = "";
-		long value;
-		while (true) {
-			inum = INumGenerator.generate(size);
-			try {
-				value = Long.parseLong(inum.replace(".", ""), 16);
-				if (value < 7) {
-					continue;
-				}
-			} catch (Exception ex) {
-				log.error("Error generating inum: " + ex.getMessage());
-			}
-			break;
+			return gluu + SEPARATOR + TRUST_RELATIONSHIP + SEPARATOR;
 		}
-		return inum;
+		return null;
 	}
 
 	/**
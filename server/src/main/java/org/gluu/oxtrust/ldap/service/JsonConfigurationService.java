@@ -105,6 +105,7 @@ public class JsonConfigurationService implements Serializable {
 		ldapOxTrustConfiguration.setApplication(oxTrustappConfiguration);
 		ldapOxTrustConfiguration.setRevision(ldapOxTrustConfiguration.getRevision() + 1);
 		ldapEntryManager.merge(ldapOxTrustConfiguration);
+		configurationFactory.notifyConfigurationChanged();
 		return true;
 	}
 
@@ -113,6 +114,7 @@ public class JsonConfigurationService implements Serializable {
 		ldapOxTrustConfiguration.setImportPersonConfig(oxTrustImportPersonConfiguration);
 		ldapOxTrustConfiguration.setRevision(ldapOxTrustConfiguration.getRevision() + 1);
 		ldapEntryManager.merge(ldapOxTrustConfiguration);
+		configurationFactory.notifyConfigurationChanged();
 		return true;
 	}
 
@@ -121,6 +123,7 @@ public class JsonConfigurationService implements Serializable {
 		ldapOxTrustConfiguration.setCacheRefresh(oxTrustCacheRefreshConfiguration);
 		ldapOxTrustConfiguration.setRevision(ldapOxTrustConfiguration.getRevision() + 1);
 		ldapEntryManager.merge(ldapOxTrustConfiguration);
+		configurationFactory.notifyConfigurationChanged();
 		return true;
 	}
 
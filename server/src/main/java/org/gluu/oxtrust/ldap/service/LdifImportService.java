@@ -0,0 +1,428 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.lang.NotImplementedException;
+import org.gluu.oxtrust.service.cdi.event.LdifImportTaskEvent;
+import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.persist.ldap.operation.LdapOperationService;
+import org.gluu.persist.operation.PersistenceOperationService;
+import org.slf4j.Logger;
+import org.xdi.service.cdi.async.Asynchronous;
+
+import com.unboundid.ldap.sdk.ChangeType;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+
+/**
+ * Imports LDIF change records concurrently. Records are read one by one and at most IMPORT_THREADS of them are applied
+ * at the same time by asynchronous event observer, each record with connection from persistence connection pool.
+ *
+ * Record waits for the last not finished record with the same DN or DN of the nearest ancestor, so parent entries are
+ * always created before children and changes of one entry are applied in file order. Records of independent subtrees
+ * are applied in parallel. Delete and modify DN records are applied alone after all previous records are finished.
+ * Records which depend on failed add, delete or modify DN record are skipped. Failed modify record doesn't affect
+ * other records.
+ *
+ * At most MAX_PENDING_RECORDS records are kept in memory.
+ */
+@ApplicationScoped
+@Named("ldifImportService")
+public class LdifImportService {
+
+	public static final int IMPORT_THREADS = 4;
+	public static final int MAX_PENDING_RECORDS = 1000;
+
+	private static final int MAX_ERRORS = 100;
+	private static final long PROGRESS_INTERVAL = 10 * 1000L; // 10 seconds
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private PersistenceEntryManager ldapEntryManager;
+
+	@Inject
+	private Event<LdifImportTaskEvent> ldifImportTaskEvent;
+
+	public static class ImportStatus {
+
+		private final AtomicInteger readRecords = new AtomicInteger();
+		private final AtomicInteger addedEntries = new AtomicInteger();
+		private final AtomicInteger modifiedEntries = new AtomicInteger();
+		private final AtomicInteger deletedEntries = new AtomicInteger();
+		private final AtomicInteger renamedEntries = new AtomicInteger();
+		private final AtomicInteger failedRecords = new AtomicInteger();
+		private final AtomicInteger skippedRecords = new AtomicInteger();
+
+		private final List<String> errors = new ArrayList<String>();
+
+		private volatile ResultCode resultCode;
+
+		private volatile long startTime;
+		private volatile long endTime;
+
+		public int getReadRecords() {
+			return readRecords.get();
+		}
+
+		public int getAddedEntries() {
+			return addedEntries.get();
+		}
+
+		public int getModifiedEntries() {
+			return modifiedEntries.get();
+		}
+
+		public int getDeletedEntries() {
+			return deletedEntries.get();
+		}
+
+		public int getRenamedEntries() {
+			return renamedEntries.get();
+		}
+
+		public int getFailedRecords() {
+			return failedRecords.get();
+		}
+
+		public int getSkippedRecords() {
+			return skippedRecords.get();
+		}
+
+		public int getAppliedRecords() {
+			return addedEntries.get() + modifiedEntries.get() + deletedEntries.get() + renamedEntries.get();
+		}
+
+		/**
+		 * @return First MAX_ERRORS error messages
+		 */
+		public synchronized List<String> getErrors() {
+			return new ArrayList<String>(errors);
+		}
+
+		/**
+		 * @return SUCCESS if all records were applied, otherwise result code of the first failed record
+		 */
+		public ResultCode getResultCode() {
+			return resultCode;
+		}
+
+		public long getStartTime() {
+			return startTime;
+		}
+
+		public long getEndTime() {
+			return endTime;
+		}
+
+		public boolean isFinished() {
+			return endTime > 0;
+		}
+
+		/**
+		 * @return Applied records per second
+		 */
+		public double getThroughput() {
+			long duration = (isFinished() ? endTime : System.currentTimeMillis()) - startTime;
+			if (duration <= 0) {
+				return 0;
+			}
+
+			return getAppliedRecords() * 1000.0 / duration;
+		}
+
+		private void recordApplied(ChangeType changeType) {
+			if (ChangeType.ADD == changeType) {
+				addedEntries.incrementAndGet();
+			} else if (ChangeType.MODIFY == changeType) {
+				modifiedEntries.incrementAndGet();
+			} else if (ChangeType.DELETE == changeType) {
+				deletedEntries.incrementAndGet();
+			} else {
+				renamedEntries.incrementAndGet();
+			}
+		}
+
+		private synchronized void recordFailure(ResultCode failureCode, String error) {
+			failedRecords.incrementAndGet();
+			if (ResultCode.SUCCESS.equals(resultCode)) {
+				resultCode = failureCode;
+			}
+			if (errors.size() < MAX_ERRORS) {
+				errors.add(error);
+			}
+		}
+
+		private synchronized void recordSkipped(String error) {
+			skippedRecords.incrementAndGet();
+			if (errors.size() < MAX_ERRORS) {
+				errors.add(error);
+			}
+		}
+
+	}
+
+	private static class ImportTask implements Runnable {
+
+		private final ImportContext context;
+		private final LDIFChangeRecord record;
+		private final String key;
+
+		private final List<ImportTask> dependents = new ArrayList<ImportTask>();
+
+		private ImportTask dependency;
+		private boolean completed;
+		private boolean failed;
+
+		private ImportTask(ImportContext context, LDIFChangeRecord record, String key) {
+			this.context = context;
+			this.record = record;
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			boolean skipDependents = false;
+			try {
+				if ((dependency != null) && dependency.failed) {
+					context.status.recordSkipped(String.format("Record for '%s' was skipped because record for '%s' failed", record.getDN(),
+							dependency.record.getDN()));
+					skipDependents = true;
+				} else if (!context.apply(record)) {
+					skipDependents = ChangeType.MODIFY != record.getChangeType();
+				}
+			} finally {
+				context.complete(this, skipDependents);
+			}
+		}
+
+	}
+
+	/**
+	 * State of one import. Access to not finished tasks is guarded by context monitor
+	 */
+	private class ImportContext {
+
+		private final LdapOperationService ldapOperationService;
+		private final ImportStatus status;
+
+		private final Map<String, ImportTask> lastTasks = new HashMap<String, ImportTask>();
+		private final LinkedList<ImportTask> readyTasks = new LinkedList<ImportTask>();
+		private int pendingTasks;
+		private int runningTasks;
+
+		private ImportContext(LdapOperationService ldapOperationService, ImportStatus status) {
+			this.ldapOperationService = ldapOperationService;
+			this.status = status;
+		}
+
+		private synchronized void submit(LDIFChangeRecord record, DN dn) throws InterruptedException {
+			while (pendingTasks >= MAX_PENDING_RECORDS) {
+				wait();
+			}
+
+			ImportTask task = new ImportTask(this, record, dn.toNormalizedString());
+
+			for (DN current = dn; (current != null) && (task.dependency == null); current = current.getParent()) {
+				task.dependency = lastTasks.get(current.toNormalizedString());
+			}
+
+			lastTasks.put(task.key, task);
+			pendingTasks++;
+
+			if ((task.dependency == null) || task.dependency.completed) {
+				readyTasks.add(task);
+				dispatch();
+			} else {
+				task.dependency.dependents.add(task);
+			}
+		}
+
+		private synchronized void complete(ImportTask task, boolean skipDependents) {
+			task.completed = true;
+			task.failed = skipDependents;
+			if (lastTasks.get(task.key) == task) {
+				lastTasks.remove(task.key);
+			}
+
+			readyTasks.addAll(task.dependents);
+			task.dependents.clear();
+
+			pendingTasks--;
+			runningTasks--;
+			dispatch();
+			notifyAll();
+		}
+
+		/**
+		 * Keep failed delete or modify DN record, so records of its entry or subtree are skipped
+		 */
+		private synchronized void fail(LDIFChangeRecord record, DN dn) {
+			ImportTask task = new ImportTask(this, record, dn.toNormalizedString());
+			task.completed = true;
+			task.failed = true;
+			lastTasks.put(task.key, task);
+		}
+
+		private void dispatch() {
+			while ((runningTasks < IMPORT_THREADS) && !readyTasks.isEmpty()) {
+				runningTasks++;
+				ldifImportTaskEvent.fire(new LdifImportTaskEvent(readyTasks.poll()));
+			}
+		}
+
+		private synchronized void awaitPendingTasks() throws InterruptedException {
+			while (pendingTasks > 0) {
+				wait();
+			}
+		}
+
+		private boolean apply(LDIFChangeRecord record) {
+			LDAPConnection connection = null;
+			try {
+				connection = ldapOperationService.getConnection();
+				record.processChange(connection);
+				status.recordApplied(record.getChangeType());
+
+				return true;
+			} catch (LDAPException ex) {
+				log.debug("Failed to apply LDIF record for '{}'", record.getDN(), ex);
+				status.recordFailure(ex.getResultCode(), String.format("Failed to apply record for '%s': %s", record.getDN(), ex.getMessage()));
+			} catch (Exception ex) {
+				log.error("Failed to apply LDIF record for '{}'", record.getDN(), ex);
+				status.recordFailure(ResultCode.LOCAL_ERROR, String.format("Failed to apply record for '%s': %s", record.getDN(), ex.getMessage()));
+			} finally {
+				if (connection != null) {
+					ldapOperationService.releaseConnection(connection);
+				}
+			}
+
+			return false;
+		}
+
+	}
+
+	@Asynchronous
+	public void processLdifImportTaskEvent(@Observes LdifImportTaskEvent ldifImportTaskEvent) {
+		ldifImportTaskEvent.getTask().run();
+	}
+
+	/**
+	 * Import LDIF file. Progress is logged every PROGRESS_INTERVAL
+	 *
+	 * @param is
+	 *            LDIF file content
+	 * @return Import status
+	 */
+	public ImportStatus importLdif(InputStream is) {
+		ImportStatus status = new ImportStatus();
+		PersistenceOperationService persistenceOperationService = ldapEntryManager.getOperationService();
+		if (!(persistenceOperationService instanceof LdapOperationService)) {
+			throw new NotImplementedException("Current Persistence mechanism not allows to import data from LDIF!");
+		}
+
+		ImportContext context = new ImportContext((LdapOperationService) persistenceOperationService, status);
+		status.resultCode = ResultCode.SUCCESS;
+		status.startTime = System.currentTimeMillis();
+
+		LDIFReader ldifReader = new LDIFReader(is);
+		long lastProgressTime = status.startTime;
+		try {
+			LDIFChangeRecord record;
+			while ((record = readChangeRecord(ldifReader, status)) != null) {
+				status.readRecords.incrementAndGet();
+
+				DN dn;
+				try {
+					dn = record.getParsedDN();
+				} catch (LDAPException ex) {
+					status.recordFailure(ex.getResultCode(), String.format("Invalid DN '%s': %s", record.getDN(), ex.getMessage()));
+					continue;
+				}
+
+				ChangeType changeType = record.getChangeType();
+				if ((ChangeType.DELETE == changeType) || (ChangeType.MODIFY_DN == changeType)) {
+					context.awaitPendingTasks();
+					if (!context.apply(record)) {
+						context.fail(record, dn);
+					}
+				} else {
+					context.submit(record, dn);
+				}
+
+				long now = System.currentTimeMillis();
+				if (now - lastProgressTime >= PROGRESS_INTERVAL) {
+					logProgress(status);
+					lastProgressTime = now;
+				}
+			}
+
+			context.awaitPendingTasks();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			status.recordFailure(ResultCode.LOCAL_ERROR, "LDIF import was interrupted");
+		} catch (Exception ex) {
+			log.error("Failed to import LDIF file", ex);
+			status.recordFailure(ResultCode.LOCAL_ERROR, "Failed to read LDIF file: " + ex.getMessage());
+		} finally {
+			try {
+				ldifReader.close();
+			} catch (IOException ex) {
+				log.warn("Failed to close LDIF reader", ex);
+			}
+			status.endTime = System.currentTimeMillis();
+		}
+
+		logProgress(status);
+
+		return status;
+	}
+
+	/**
+	 * Read next change record. Malformed records are reported and skipped if reader can continue
+	 */
+	private LDIFChangeRecord readChangeRecord(LDIFReader ldifReader, ImportStatus status) throws IOException, LDIFException {
+		while (true) {
+			try {
+				return ldifReader.readChangeRecord(true);
+			} catch (LDIFException ex) {
+				if (!ex.mayContinueReading()) {
+					throw ex;
+				}
+				status.readRecords.incrementAndGet();
+				status.recordFailure(ResultCode.DECODING_ERROR, String.format("Invalid record at line %d: %s", ex.getLineNumber(), ex.getMessage()));
+			}
+		}
+	}
+
+	private void logProgress(ImportStatus status) {
+		log.info("LDIF import: read {} records, applied {}, failed {}, skipped {}, {} records/s", status.getReadRecords(), status.getAppliedRecords(),
+				status.getFailedRecords(), status.getSkippedRecords(), String.format("%.1f", status.getThroughput()));
+	}
+
+}
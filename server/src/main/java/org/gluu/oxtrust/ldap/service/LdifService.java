@@ -10,7 +10,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ejb.Stateless;
 import javax.inject.Inject;
@@ -18,16 +22,26 @@ import javax.inject.Named;
 
 import org.apache.commons.lang.NotImplementedException;
 import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.oxtrust.ldap.service.LdifImportService.ImportStatus;
 import org.gluu.persist.exception.BasePersistenceException;
 import org.gluu.persist.ldap.impl.LdifDataUtility;
 import org.gluu.persist.ldap.operation.LdapOperationService;
 import org.gluu.persist.operation.PersistenceOperationService;
 import org.slf4j.Logger;
 
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
 import com.unboundid.ldif.LDIFReader;
 import com.unboundid.ldif.LDIFWriter;
 
@@ -43,6 +57,15 @@ public class LdifService implements Serializable {
 
 	private static final long serialVersionUID = 6690460114767359078L;
 
+	private static final int EXPORT_PAGE_SIZE = 500;
+	private static final int MAX_FILTER_SIZE = 100;
+
+	/**
+	 * Person attributes with passwords, OTP secrets and tokens
+	 */
+	public static final List<String> SECRET_PERSON_ATTRIBUTES = Collections.unmodifiableList(Arrays.asList("userPassword", "oxOTPDevices",
+			"oxOTPCache", "oxAuthPersistentJWT"));
+
 	@Inject
 	private Logger log;
 
@@ -51,31 +74,28 @@ public class LdifService implements Serializable {
 	@Inject
 	private AttributeService attributeService;
 
-	public ResultCode importLdifFileInLdap(InputStream is) throws LDAPException {
-		ResultCode result = ResultCode.UNAVAILABLE;
-
-		PersistenceOperationService persistenceOperationService = ldapEntryManager.getOperationService();
-        if (!(persistenceOperationService instanceof LdapOperationService)) {
-            throw new NotImplementedException("Current Persistence mechanism not allows to import data from LDIF!");
-        }
+	@Inject
+	private IPersonService personService;
 
-        LdapOperationService ldapOperationService = (LdapOperationService) persistenceOperationService;
+	@Inject
+	private IGroupService groupService;
 
-		LDAPConnection connection = ldapOperationService.getConnection();
-		try {
-			LdifDataUtility ldifDataUtility = LdifDataUtility.instance();
-			LDIFReader importLdifReader = new LDIFReader(is);
+	@Inject
+	private LdifImportService ldifImportService;
 
-			result = ldifDataUtility.importLdifFile(connection, importLdifReader);
-			importLdifReader.close();
-		} catch (Exception ex) {
-			log.error("Failed to import ldif file: ", ex);
-		} finally {
-		    ldapOperationService.releaseConnection(connection);
+	/**
+	 * Import LDIF file. Records are applied concurrently by LdifImportService
+	 * 
+	 * @return SUCCESS if all records were applied, otherwise result code of the first failed record
+	 */
+	public ResultCode importLdifFileInLdap(InputStream is) throws LDAPException {
+		ImportStatus status = ldifImportService.importLdif(is);
+		if (status.getFailedRecords() + status.getSkippedRecords() > 0) {
+			log.error("Failed to import {} of {} LDIF records: {}", status.getFailedRecords() + status.getSkippedRecords(), status.getReadRecords(),
+					status.getErrors());
 		}
 
-		return result;
-
+		return status.getResultCode();
 	}
 
 	public ResultCode validateLdifFile(InputStream is, String dn) throws LDAPException {
@@ -94,39 +114,173 @@ public class LdifService implements Serializable {
 
 	}
 	
-	public void exportLDIFFile(List<String> checkedItems, OutputStream output)
-			throws LDAPException {
-		List<SearchResultEntry> result = null;
-		PersistenceOperationService persistenceOperationService = ldapEntryManager.getOperationService();
-		if (!(persistenceOperationService instanceof LdapOperationService)) {
-		    throw new NotImplementedException("Current Persistence mechanism not allows to export data to LDIF!");
+	/**
+	 * Export attributes to LDIF. Entries are written to output stream as they are returned by server
+	 * 
+	 * @param checkedItems
+	 *            Inums of attributes
+	 */
+	public void exportLDIFFile(List<String> checkedItems, OutputStream output) throws LDAPException {
+		List<Filter> filters = new ArrayList<Filter>();
+		for (String inum : checkedItems) {
+			filters.add(Filter.createEqualityFilter("inum", inum));
+		}
+
+		LdifExport export = new LdifExport(output, false, null);
+		try {
+			for (int i = 0; i < filters.size(); i += MAX_FILTER_SIZE) {
+				Filter filter = Filter.createORFilter(filters.subList(i, Math.min(i + MAX_FILTER_SIZE, filters.size())));
+				exportLDIF(attributeService.getDnForAttribute(null), filter, export);
+			}
+			export.finish();
+		} catch (IOException ex) {
+			throw new BasePersistenceException("Error writing to file, try again", ex);
 		}
+	}
+
+	/**
+	 * Export all persons to LDIF
+	 * 
+	 * @param compress
+	 *            Write gzip compressed LDIF
+	 * @param includeSecrets
+	 *            Export SECRET_PERSON_ATTRIBUTES too
+	 * @return Count of exported entries
+	 */
+	public int exportPersonsLDIF(OutputStream output, boolean compress, boolean includeSecrets) throws LDAPException, IOException {
+		return exportLDIF(personService.getDnForPerson(null), Filter.createPresenceFilter("objectClass"), output, compress,
+				includeSecrets ? null : SECRET_PERSON_ATTRIBUTES);
+	}
+
+	/**
+	 * Export all groups to LDIF
+	 * 
+	 * @param compress
+	 *            Write gzip compressed LDIF
+	 * @return Count of exported entries
+	 */
+	public int exportGroupsLDIF(OutputStream output, boolean compress) throws LDAPException, IOException {
+		return exportLDIF(groupService.getDnForGroup(null), Filter.createPresenceFilter("objectClass"), output, compress, null);
+	}
+
+	/**
+	 * Export subtree to LDIF. Entries are loaded with simple paged results control and written to output stream as
+	 * they are returned by server, so memory usage doesn't depend on count of entries
+	 * 
+	 * @param compress
+	 *            Write gzip compressed LDIF
+	 * @param excludedAttributes
+	 *            Attributes which aren't written or null to write all attributes
+	 * @return Count of exported entries
+	 */
+	public int exportLDIF(String baseDn, Filter filter, OutputStream output, boolean compress, List<String> excludedAttributes)
+			throws LDAPException, IOException {
+		LdifExport export = new LdifExport(output, compress, excludedAttributes);
+		exportLDIF(baseDn, filter, export);
+		export.finish();
+
+		log.debug("Exported {} entries from '{}' to LDIF", export.count, baseDn);
+
+		return export.count;
+	}
+
+	private void exportLDIF(String baseDn, Filter filter, final LdifExport export) throws LDAPException, IOException {
+		LdapOperationService ldapOperationService = getLdapOperationService("Current Persistence mechanism not allows to export data to LDIF!");
+
+		SearchResultListener listener = new SearchResultListener() {
+
+			private static final long serialVersionUID = -5219305914395346577L;
+
+			@Override
+			public void searchEntryReturned(SearchResultEntry entry) {
+				export.write(entry);
+			}
+
+			@Override
+			public void searchReferenceReturned(SearchResultReference reference) {
+			}
+		};
 
-		LdapOperationService ldapOperationService = (LdapOperationService) persistenceOperationService;
 		LDAPConnection connection = ldapOperationService.getConnection();
 		try {
-			LdifDataUtility ldifDataUtility = LdifDataUtility.instance();
-			result = ldifDataUtility.getAttributeResultEntryLDIF(connection,checkedItems, attributeService.getDnForAttribute(null));
-		} catch (Exception ex) {
-			log.error("Failed to export ldif file: ", ex);
+			SearchRequest searchRequest = new SearchRequest(listener, baseDn, SearchScope.SUB, filter);
+			ASN1OctetString cookie = null;
+			do {
+				searchRequest.setControls(new SimplePagedResultsControl(EXPORT_PAGE_SIZE, cookie));
+				SearchResult searchResult = connection.search(searchRequest);
+				export.checkError();
+
+				SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(searchResult);
+				cookie = ((responseControl != null) && responseControl.moreResultsToReturn()) ? responseControl.getCookie() : null;
+			} while (cookie != null);
 		} finally {
-		    ldapOperationService.releaseConnection(connection);
+			ldapOperationService.releaseConnection(connection);
 		}
+	}
 
-		if (result != null && result.size() > 0) {
-			// Write all of the matching entries to LDIF.
-			LDIFWriter ldifWriter;
-			try {
-				ldifWriter = new LDIFWriter(output);
-				for (SearchResultEntry entry : result) {
-					ldifWriter.writeEntry(entry);
+	private LdapOperationService getLdapOperationService(String errorMessage) {
+		PersistenceOperationService persistenceOperationService = ldapEntryManager.getOperationService();
+		if (!(persistenceOperationService instanceof LdapOperationService)) {
+			throw new NotImplementedException(errorMessage);
+		}
+
+		return (LdapOperationService) persistenceOperationService;
+	}
+
+	/**
+	 * Writes entries returned by search listener. Listener can't throw IOException, so first error is kept and
+	 * reported after search
+	 */
+	private static class LdifExport {
+
+		private final LDIFWriter ldifWriter;
+		private final GZIPOutputStream gzipOutput;
+		private final List<String> excludedAttributes;
+
+		private int count;
+		private IOException error;
+
+		private LdifExport(OutputStream output, boolean compress, List<String> excludedAttributes) throws IOException {
+			this.gzipOutput = compress ? new GZIPOutputStream(output, 8192) : null;
+			this.ldifWriter = new LDIFWriter(compress ? gzipOutput : output);
+			this.excludedAttributes = excludedAttributes;
+		}
+
+		private void write(SearchResultEntry entry) {
+			if (error != null) {
+				return;
+			}
+
+			Entry exportEntry = entry;
+			if ((excludedAttributes != null) && !excludedAttributes.isEmpty()) {
+				exportEntry = entry.duplicate();
+				for (String excludedAttribute : excludedAttributes) {
+					exportEntry.removeAttribute(excludedAttribute);
 				}
+			}
 
-				ldifWriter.close();
-			} catch (IOException e) {
-				throw new BasePersistenceException("Error writing to file, try again", e);
+			try {
+				ldifWriter.writeEntry(exportEntry);
+				count++;
+			} catch (IOException ex) {
+				error = ex;
+			}
+		}
+
+		private void checkError() throws IOException {
+			if (error != null) {
+				throw error;
 			}
 		}
+
+		private void finish() throws IOException {
+			checkError();
+			ldifWriter.flush();
+			if (gzipOutput != null) {
+				gzipOutput.finish();
+			}
+		}
+
 	}
 
 }
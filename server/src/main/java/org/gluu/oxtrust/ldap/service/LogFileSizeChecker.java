@@ -7,13 +7,25 @@
 package org.gluu.oxtrust.ldap.service;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.event.Observes;
@@ -29,6 +41,7 @@ import org.gluu.oxtrust.config.ConfigurationFactory;
 import org.gluu.oxtrust.model.FileData;
 import org.gluu.oxtrust.model.GluuAppliance;
 import org.gluu.oxtrust.service.cdi.event.LogFileSizeChekerEvent;
+import org.gluu.oxtrust.service.cdi.event.LogFileSizeWatchEvent;
 import org.slf4j.Logger;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -39,11 +52,39 @@ import org.xdi.service.timer.event.TimerEvent;
 import org.xdi.service.timer.schedule.TimerSchedule;
 import org.xdi.util.StringHelper;
 
+/**
+ * Keeps size of log folders configured in LOG_ROTATION_CONFIGURATION under appliance maxLogSize. Folders are watched
+ * with WatchService which is polled by timer every WATCH_INTERVAL, sizes of matching files are kept in index ordered by
+ * modification time and updated on every create/modify/delete event, so limit is enforced soon after log file grows
+ * and only oldest files are checked.
+ *
+ * Timer reloads configuration and rescans folders once a day to recover from lost events.
+ */
 @ApplicationScoped
 @Named("logFileSizeChecker")
 public class LogFileSizeChecker {
 
 	private static final int DEFAULT_INTERVAL = 60 * 60 * 24; // 24 hours
+	private static final int WATCH_INTERVAL = 10; // 10 seconds
+
+	private static final long MEGABYTE = 1024 * 1024;
+	private static final int FREE_SPACE_PERCENT = 15;
+
+	private static final Comparator<FileData> LAST_MODIFIED_COMPARATOR = new Comparator<FileData>() {
+		@Override
+		public int compare(FileData fileData1, FileData fileData2) {
+			if (fileData1.getLastModified() != fileData2.getLastModified()) {
+				return fileData1.getLastModified() < fileData2.getLastModified() ? -1 : 1;
+			}
+
+			int result = fileData1.getFilePath().compareTo(fileData2.getFilePath());
+			if (result != 0) {
+				return result;
+			}
+
+			return fileData1.getName().compareTo(fileData2.getName());
+		}
+	};
 
 	@Inject
 	private Logger log;
@@ -58,10 +99,34 @@ public class LogFileSizeChecker {
 	private XmlService xmlService;
 
 	private AtomicBoolean isActive;
+	private AtomicBoolean isWatchActive;
+
+	private WatchService watchService;
+
+	private final Map<WatchKey, List<LogDir>> watchedDirs = new HashMap<WatchKey, List<LogDir>>();
+	private final Map<String, FileData> files = new HashMap<String, FileData>();
+	private final TreeSet<FileData> filesByLastModified = new TreeSet<FileData>(LAST_MODIFIED_COMPARATOR);
+	private long currentSize;
+	private long maxSizeInByte;
 
     public void initTimer() {
         log.info("Initializing Log File Size Checker Timer");
         this.isActive = new AtomicBoolean(false);
+        this.isWatchActive = new AtomicBoolean(false);
+
+		try {
+			this.watchService = FileSystems.getDefault().newWatchService();
+			timerEvent.fire(new TimerEvent(new TimerSchedule(WATCH_INTERVAL, WATCH_INTERVAL), new LogFileSizeWatchEvent(),
+					Scheduled.Literal.INSTANCE));
+		} catch (IOException ex) {
+			log.error("Failed to create watch service. Log folders will be checked by timer only", ex);
+		}
+
+		try {
+			configure();
+		} catch (Exception ex) {
+			log.error("Failed to initialize log folders index", ex);
+		}
 
 		final int delay = 2 * 60;
 		final int interval = DEFAULT_INTERVAL;
@@ -70,6 +135,17 @@ public class LogFileSizeChecker {
 				Scheduled.Literal.INSTANCE));
     }
 
+	@PreDestroy
+	public void destroy() {
+		if (this.watchService != null) {
+			try {
+				this.watchService.close();
+			} catch (IOException ex) {
+				log.error("Failed to close watch service", ex);
+			}
+		}
+	}
+
     @Asynchronous
     public void process(@Observes @Scheduled LogFileSizeChekerEvent logFileSizeChekerEvent) {
         if (this.isActive.get()) {
@@ -88,15 +164,57 @@ public class LogFileSizeChecker {
     }
 
 	/**
-	 * Gather periodically site and server status
+	 * Reload configuration, rescan log folders and remove old files if they are too big
 	 */
 	private void processInt() {
-		GluuAppliance appliance;
-		appliance = applianceService.getAppliance();
+		configure();
+	}
+
+	private synchronized void configure() {
+		this.maxSizeInByte = getMaxSize() * MEGABYTE;
+
+		String filePath = ConfigurationFactory.DIR + ConfigurationFactory.LOG_ROTATION_CONFIGURATION;
+		log.debug("FilePath: " + filePath);
+
+		List<LogDir> logDirs = readConfig(filePath);
+
+		for (WatchKey watchKey : watchedDirs.keySet()) {
+			watchKey.cancel();
+		}
+		watchedDirs.clear();
+		files.clear();
+		filesByLastModified.clear();
+		currentSize = 0;
+
+		for (LogDir logDir : logDirs) {
+			if (logDir.getLocation() == null) {
+				continue;
+			}
+
+			WatchKey watchKey = register(logDir);
+			if (watchKey != null) {
+				List<LogDir> keyLogDirs = watchedDirs.get(watchKey);
+				if (keyLogDirs == null) {
+					keyLogDirs = new ArrayList<LogDir>();
+					watchedDirs.put(watchKey, keyLogDirs);
+				}
+				keyLogDirs.add(logDir);
+			}
+
+			scanDir(logDir);
+		}
+
+		log.debug("Log folders size: {} bytes in {} files", currentSize, files.size());
+
+		removeOldFiles();
+	}
+
+	private long getMaxSize() {
+		GluuAppliance appliance = applianceService.getAppliance();
 		String maxLogSize = appliance.getMaxLogSize();
 		log.debug("Max Log Size: " + maxLogSize);
-		long maxSize = 0;
 
+		long maxSize = 0;
 		try {
 			maxSize = Long.parseLong(maxLogSize); // MB
 		} catch (Exception ex) {
@@ -104,69 +222,175 @@ public class LogFileSizeChecker {
 			log.error("assuming 0");
 		}
 
-		if (maxSize > 0) {
+		return maxSize;
+	}
 
-			log.debug("Max Log Size: " + maxLogSize);
+	private WatchKey register(LogDir logDir) {
+		if (this.watchService == null) {
+			return null;
+		}
 
-			long maxSizeInByte = maxSize * 1024 * 1024;
-			long currentSize = 0;
-			Date today = new Date();
-			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-			String todayStr = sdf.format(today);
+		try {
+			return Paths.get(logDir.getLocation()).register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (Exception ex) {
+			log.error("Failed to watch log folder '{}'", logDir.getLocation(), ex);
+			return null;
+		}
+	}
 
-			log.debug("Getting the tomcat home directory");
-			String filePath = ConfigurationFactory.DIR
-					+ ConfigurationFactory.LOG_ROTATION_CONFIGURATION;
-			log.debug("FilePath: " + filePath);
+	@Asynchronous
+	public void processWatchEvents(@Observes @Scheduled LogFileSizeWatchEvent logFileSizeWatchEvent) {
+		if (!this.isWatchActive.compareAndSet(false, true)) {
+			return;
+		}
 
-			List<LogDir> logDirs = readConfig(filePath);
+		try {
+			WatchKey watchKey;
+			while ((watchKey = watchService.poll()) != null) {
+				try {
+					processEvents(watchKey);
+				} catch (Exception ex) {
+					log.error("Failed to process log folder changes", ex);
+				}
+			}
+		} catch (ClosedWatchServiceException ex) {
+			log.debug("Log folders watch service is closed");
+		} finally {
+			this.isWatchActive.set(false);
+		}
+	}
+
+	private synchronized void processEvents(WatchKey watchKey) {
+		List<WatchEvent<?>> events = watchKey.pollEvents();
+		List<LogDir> logDirs = watchedDirs.get(watchKey);
+		if (!watchKey.reset()) {
+			watchedDirs.remove(watchKey);
+		}
 
-			List<FileData> fDataList = new ArrayList<FileData>();
+		if (logDirs == null) {
+			return;
+		}
+
+		for (WatchEvent<?> event : events) {
+			if (StandardWatchEventKinds.OVERFLOW == event.kind()) {
+				for (LogDir logDir : logDirs) {
+					rescanDir(logDir);
+				}
+				continue;
+			}
+
+			String fileName = event.context().toString();
 			for (LogDir logDir : logDirs) {
-				File file = new File(logDir.getLocation());
-				File[] files = file.listFiles();
-				long totalSize = 0;
-
-				if (files != null && files.length > 0) {
-					for (File singleFile : files) {
-						if (singleFile.getName().startsWith(logDir.getPrefix()) && singleFile.getName().endsWith(logDir.getExtension())) {
-							totalSize += singleFile.length();
-							FileData fData = new FileData(singleFile.getName(), logDir.getLocation(), singleFile.lastModified(),
-									singleFile.length());
-							fDataList.add(fData);
-						}
-					}
+				if (isLogFile(logDir, fileName)) {
+					updateFile(logDir, new File(logDir.getLocation(), fileName));
+					break;
 				}
+			}
+		}
 
-				currentSize += totalSize;
-				logDir.setLength(totalSize);
+		removeOldFiles();
+	}
+
+	private void scanDir(LogDir logDir) {
+		File[] dirFiles = new File(logDir.getLocation()).listFiles();
+		if (dirFiles == null) {
+			return;
+		}
+
+		for (File file : dirFiles) {
+			if (isLogFile(logDir, file.getName())) {
+				updateFile(logDir, file);
 			}
+		}
+	}
 
-			Collections.sort(fDataList);
-			if (currentSize > maxSizeInByte) {
-				maxSizeInByte -= (maxSizeInByte * 15) / 100; // empty 15% space
-																// less of the
-																// maximum
-																// allocated
+	/**
+	 * Rebuild entries of folder after events were lost. Entries of files which don't exist anymore are removed
+	 */
+	private void rescanDir(LogDir logDir) {
+		for (FileData fileData : new ArrayList<FileData>(files.values())) {
+			if (fileData.getFilePath().equals(logDir.getLocation()) && isLogFile(logDir, fileData.getName())) {
+				updateFile(logDir, new File(fileData.getFilePath(), fileData.getName()));
 			}
-			for (FileData fileData : fDataList) {
-				if (currentSize < maxSizeInByte) {
-					break;
-				}
-				Date date = new Date(fileData.getLastModified());
-				String dateStr = sdf.format(date);
-				if (todayStr.equals(dateStr)) {
-					log.debug("--Skipped Active File: " + fileData.getName() + " Date: " + sdf.format(date) + " Size: "
-							+ fileData.getSize());
-					continue;
-				}
+		}
 
-				File singleFile = new File(fileData.getFilePath() + "/" + fileData.getName());
-				if (!singleFile.delete()) {
-					log.error("Failed to delete the file.");
-				} else {
-					currentSize -= fileData.getSize();
-					log.debug("--Deleted File Name: " + fileData.getName() + " Date: " + sdf.format(date) + " Size: " + fileData.getSize());
+		scanDir(logDir);
+	}
+
+	private boolean isLogFile(LogDir logDir, String fileName) {
+		String prefix = logDir.getPrefix() == null ? "" : logDir.getPrefix();
+		return fileName.startsWith(prefix) && fileName.endsWith(logDir.getExtension());
+	}
+
+	private void updateFile(LogDir logDir, File file) {
+		String key = file.getAbsolutePath();
+
+		FileData oldFileData = files.remove(key);
+		if (oldFileData != null) {
+			filesByLastModified.remove(oldFileData);
+			currentSize -= oldFileData.getSize();
+			logDir.setLength(logDir.getLength() - oldFileData.getSize());
+		}
+
+		if (file.isFile()) {
+			FileData fileData = new FileData(file.getName(), logDir.getLocation(), file.lastModified(), file.length());
+			files.put(key, fileData);
+			filesByLastModified.add(fileData);
+			currentSize += fileData.getSize();
+			logDir.setLength(logDir.getLength() + fileData.getSize());
+		}
+	}
+
+	/**
+	 * Remove oldest files until size of log folders is FREE_SPACE_PERCENT less than maximum. Files modified today are
+	 * never removed
+	 */
+	private void removeOldFiles() {
+		if ((maxSizeInByte <= 0) || (currentSize <= maxSizeInByte)) {
+			return;
+		}
+
+		long targetSize = maxSizeInByte - (maxSizeInByte * FREE_SPACE_PERCENT) / 100;
+
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+		String todayStr = sdf.format(new Date());
+
+		List<FileData> removedFiles = new ArrayList<FileData>();
+		long size = currentSize;
+		for (FileData fileData : filesByLastModified) {
+			if (size < targetSize) {
+				break;
+			}
+
+			String dateStr = sdf.format(new Date(fileData.getLastModified()));
+			if (todayStr.equals(dateStr)) {
+				// Next files are modified today too
+				log.debug("--Skipped Active File: " + fileData.getName() + " Date: " + dateStr + " Size: " + fileData.getSize());
+				break;
+			}
+
+			File singleFile = new File(fileData.getFilePath(), fileData.getName());
+			// File which was already removed by someone else is removed from index too
+			if (!singleFile.delete() && singleFile.exists()) {
+				log.error("Failed to delete the file: " + singleFile.getAbsolutePath());
+			} else {
+				size -= fileData.getSize();
+				removedFiles.add(fileData);
+				log.debug("--Deleted File Name: " + fileData.getName() + " Date: " + dateStr + " Size: " + fileData.getSize());
+			}
+		}
+
+		for (FileData fileData : removedFiles) {
+			File singleFile = new File(fileData.getFilePath(), fileData.getName());
+			files.remove(singleFile.getAbsolutePath());
+			filesByLastModified.remove(fileData);
+			currentSize -= fileData.getSize();
+			for (List<LogDir> logDirs : watchedDirs.values()) {
+				for (LogDir logDir : logDirs) {
+					if (fileData.getFilePath().equals(logDir.getLocation()) && isLogFile(logDir, fileData.getName())) {
+						logDir.setLength(logDir.getLength() - fileData.getSize());
+					}
 				}
 			}
 		}
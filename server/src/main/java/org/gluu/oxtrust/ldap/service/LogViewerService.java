@@ -0,0 +1,522 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.slf4j.Logger;
+import org.xdi.util.StringHelper;
+
+/**
+ * Reads log files for log viewer without scanning them on every request. For every file service keeps index with
+ * count of complete lines and offset of every INDEX_STEP line. Index is extended with data appended since last access
+ * and rebuilt only after file was rotated or truncated. Lines are read with positioned reads starting from the nearest
+ * indexed line.
+ *
+ * Line numbers are 0-based. Cursors returned by service are valid while generation of file index isn't changed.
+ * Indexes of at most MAX_INDEXES recently read files are kept.
+ */
+@ApplicationScoped
+@Named("logViewerService")
+public class LogViewerService {
+
+	public static final int INDEX_STEP = 1000;
+	public static final int MAX_LINES = 5000;
+	public static final int MAX_SEARCH_PAGE_SIZE = 500;
+	public static final int MAX_INDEXES = 32;
+
+	private static final long MAX_SEARCH_BYTES = 64L * 1024 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_LINE_LENGTH = 16 * 1024;
+	private static final int LEVEL_PREFIX_LENGTH = 128;
+
+	private static final Pattern LEVEL_PATTERN = Pattern.compile("\\b(TRACE|DEBUG|INFO|WARN|WARNING|ERROR|FATAL)\\b");
+
+	public enum LogLevel {
+		TRACE, DEBUG, INFO, WARN, ERROR, FATAL;
+
+		private static LogLevel fromString(String value) {
+			if ("WARNING".equals(value)) {
+				return WARN;
+			}
+
+			return valueOf(value);
+		}
+	}
+
+	@Inject
+	private Logger log;
+
+	// Access ordered, guarded by itself
+	private final Map<String, LineIndex> indexes = new LinkedHashMap<String, LineIndex>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 5618215342627458923L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LineIndex> eldest) {
+			return size() > MAX_INDEXES;
+		}
+	};
+
+	public LogViewerService() {
+	}
+
+	LogViewerService(Logger log) {
+		this.log = log;
+	}
+
+	public static class LogLine {
+
+		private final long number;
+		private final String text;
+
+		private LogLine(long number, String text) {
+			this.number = number;
+			this.text = text;
+		}
+
+		public long getNumber() {
+			return number;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+	}
+
+	public static class LogChunk {
+
+		private final List<LogLine> lines;
+		private final long nextLine;
+		private final int generation;
+		private final boolean reset;
+		private final LogLevel level;
+
+		private LogChunk(List<LogLine> lines, long nextLine, int generation, boolean reset) {
+			this(lines, nextLine, generation, reset, null);
+		}
+
+		private LogChunk(List<LogLine> lines, long nextLine, int generation, boolean reset, LogLevel level) {
+			this.lines = lines;
+			this.nextLine = nextLine;
+			this.generation = generation;
+			this.reset = reset;
+			this.level = level;
+		}
+
+		public List<LogLine> getLines() {
+			return lines;
+		}
+
+		/**
+		 * @return Number of line to continue reading from. For search result it's -1 if end of file was reached
+		 */
+		public long getNextLine() {
+			return nextLine;
+		}
+
+		public int getGeneration() {
+			return generation;
+		}
+
+		/**
+		 * @return True if file was rotated or truncated after previous call and lines don't continue previous chunk
+		 */
+		public boolean isReset() {
+			return reset;
+		}
+
+		/**
+		 * @return Level of the last line checked by search. It should be passed to search of next page
+		 */
+		public LogLevel getLevel() {
+			return level;
+		}
+
+	}
+
+	private static class LineIndex {
+
+		private Object fileKey;
+		private int generation;
+
+		private long length;
+		private long lineCount;
+		private long[] offsets = new long[] { 0 };
+		private int offsetCount = 1;
+
+		private void reset(Object fileKey) {
+			this.fileKey = fileKey;
+			this.generation++;
+			this.length = 0;
+			this.lineCount = 0;
+			this.offsetCount = 1;
+		}
+
+		private void addLine(long nextLineOffset) {
+			lineCount++;
+			if (lineCount % INDEX_STEP == 0) {
+				if (offsetCount == offsets.length) {
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				}
+				offsets[offsetCount++] = nextLineOffset;
+			}
+		}
+
+	}
+
+	/**
+	 * Snapshot of index taken under index lock
+	 */
+	private static class IndexState {
+
+		private final int generation;
+		private final long length;
+		private final long lineCount;
+		private final long[] offsets;
+
+		private IndexState(LineIndex index) {
+			this.generation = index.generation;
+			this.length = index.length;
+			this.lineCount = index.lineCount;
+			this.offsets = Arrays.copyOf(index.offsets, index.offsetCount);
+		}
+
+	}
+
+	/**
+	 * Get last lines of log file
+	 *
+	 * @param fileName
+	 *            Log file name
+	 * @param count
+	 *            Count of lines. It's limited by MAX_LINES
+	 */
+	public LogChunk tail(String fileName, int count) throws IOException {
+		FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ);
+		try {
+			IndexState state = updateIndex(fileName, channel);
+			long fromLine = Math.max(0, state.lineCount - Math.min(count, MAX_LINES));
+
+			return new LogChunk(readLines(channel, state, fromLine, MAX_LINES), state.lineCount, state.generation, true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Get lines appended to log file after previous call
+	 *
+	 * @param fileName
+	 *            Log file name
+	 * @param generation
+	 *            Generation returned with previous chunk
+	 * @param fromLine
+	 *            Next line returned with previous chunk
+	 * @param count
+	 *            Maximum count of lines. If more lines were appended only the last ones are returned
+	 */
+	public LogChunk follow(String fileName, int generation, long fromLine, int count) throws IOException {
+		FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ);
+		try {
+			IndexState state = updateIndex(fileName, channel);
+			boolean reset = (state.generation != generation) || (fromLine > state.lineCount);
+
+			long startLine = reset ? 0 : fromLine;
+			startLine = Math.max(startLine, state.lineCount - Math.min(count, MAX_LINES));
+
+			return new LogChunk(readLines(channel, state, startLine, MAX_LINES), state.lineCount, state.generation, reset);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Search lines which match regular expression and have at least specified level. Lines without level (stack traces,
+	 * multi-line messages) get level of previous line. At most MAX_SEARCH_BYTES are scanned per call, so result can
+	 * have less lines than requested while end of file isn't reached yet
+	 *
+	 * @param fileName
+	 *            Log file name
+	 * @param regex
+	 *            Regular expression or empty string to match all lines
+	 * @param minLevel
+	 *            Minimal level or null
+	 * @param fromLine
+	 *            First line to check
+	 * @param fromLevel
+	 *            Level returned with previous page or null if search starts from the first line
+	 * @param pageSize
+	 *            Maximum count of found lines. It's limited by MAX_SEARCH_PAGE_SIZE
+	 */
+	public LogChunk search(String fileName, String regex, LogLevel minLevel, long fromLine, LogLevel fromLevel, int pageSize) throws IOException {
+		Pattern pattern = StringHelper.isEmpty(regex) ? null : Pattern.compile(regex);
+		int maxCount = Math.min(pageSize, MAX_SEARCH_PAGE_SIZE);
+
+		FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ);
+		try {
+			IndexState state = updateIndex(fileName, channel);
+
+			List<LogLine> result = new ArrayList<LogLine>();
+			long lineNumber = Math.max(0, fromLine);
+			LogLevel currentLevel = lineNumber > 0 ? fromLevel : null;
+
+			ChannelLineReader reader = openReader(channel, state, lineNumber);
+			long startOffset = reader.offset;
+			String line;
+			while ((result.size() < maxCount) && (reader.offset - startOffset < MAX_SEARCH_BYTES) && ((line = reader.readLine()) != null)) {
+				LogLevel lineLevel = getLevel(line);
+				if (lineLevel != null) {
+					currentLevel = lineLevel;
+				}
+
+				boolean levelMatches = (minLevel == null) || ((currentLevel != null) && (currentLevel.compareTo(minLevel) >= 0));
+				if (levelMatches && ((pattern == null) || pattern.matcher(line).find())) {
+					result.add(new LogLine(lineNumber, line));
+				}
+				lineNumber++;
+			}
+
+			long nextLine = lineNumber < state.lineCount ? lineNumber : -1;
+
+			return new LogChunk(result, nextLine, state.generation, false, currentLevel);
+		} finally {
+			channel.close();
+		}
+	}
+
+	public void invalidate(String fileName) {
+		synchronized (indexes) {
+			indexes.remove(new File(fileName).getAbsolutePath());
+		}
+	}
+
+	int getIndexCount() {
+		synchronized (indexes) {
+			return indexes.size();
+		}
+	}
+
+	private LogLevel getLevel(String line) {
+		Matcher matcher = LEVEL_PATTERN.matcher(line);
+		matcher.region(0, Math.min(line.length(), LEVEL_PREFIX_LENGTH));
+		if (matcher.find()) {
+			return LogLevel.fromString(matcher.group(1));
+		}
+
+		return null;
+	}
+
+	private IndexState updateIndex(String fileName, FileChannel channel) throws IOException {
+		File file = new File(fileName);
+		String key = file.getAbsolutePath();
+
+		LineIndex index;
+		synchronized (indexes) {
+			index = indexes.get(key);
+			if (index == null) {
+				index = new LineIndex();
+				indexes.put(key, index);
+			}
+		}
+
+		Object fileKey = getFileKey(file.toPath());
+		synchronized (index) {
+			long size = channel.size();
+			if ((index.generation == 0) || (size < index.length) || ((fileKey != null) && !fileKey.equals(index.fileKey))) {
+				index.reset(fileKey);
+			}
+
+			if (size > index.length) {
+				long startTime = System.currentTimeMillis();
+				long startLength = index.length;
+
+				extendIndex(index, channel, size);
+
+				long duration = System.currentTimeMillis() - startTime;
+				if (duration > 1000) {
+					log.debug("Indexed {} bytes of log file '{}' in {} ms", index.length - startLength, key, duration);
+				}
+			}
+
+			return new IndexState(index);
+		}
+	}
+
+	private void extendIndex(LineIndex index, FileChannel channel, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long position = index.length;
+		while (position < size) {
+			buffer.clear();
+			buffer.limit((int) Math.min(BUFFER_SIZE, size - position));
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+
+			byte[] bytes = buffer.array();
+			for (int i = 0; i < read; i++) {
+				if (bytes[i] == '\n') {
+					index.addLine(position + i + 1);
+					index.length = position + i + 1;
+				}
+			}
+			position += read;
+		}
+	}
+
+	private List<LogLine> readLines(FileChannel channel, IndexState state, long fromLine, int count) throws IOException {
+		List<LogLine> result = new ArrayList<LogLine>();
+
+		ChannelLineReader reader = openReader(channel, state, fromLine);
+		long lineNumber = fromLine;
+		String line;
+		while ((result.size() < count) && ((line = reader.readLine()) != null)) {
+			result.add(new LogLine(lineNumber++, line));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Open reader positioned at specified line. Lines before it are skipped starting from the nearest indexed line
+	 */
+	private ChannelLineReader openReader(FileChannel channel, IndexState state, long fromLine) throws IOException {
+		long line = Math.min(fromLine, state.lineCount);
+		int offsetIndex = (int) Math.min(line / INDEX_STEP, state.offsets.length - 1);
+
+		ChannelLineReader reader = new ChannelLineReader(channel, state.offsets[offsetIndex], state.length);
+		for (long i = (long) offsetIndex * INDEX_STEP; i < line; i++) {
+			if (!reader.skipLine()) {
+				break;
+			}
+		}
+
+		return reader;
+	}
+
+	private Object getFileKey(Path path) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			Object fileKey = attributes.fileKey();
+
+			return fileKey != null ? fileKey : attributes.creationTime();
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads complete lines from channel up to limit. Lines longer than MAX_LINE_LENGTH bytes are truncated
+	 */
+	private static class ChannelLineReader {
+
+		private final FileChannel channel;
+		private final long limit;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		private long position;
+		private long offset;
+
+		private ChannelLineReader(FileChannel channel, long offset, long limit) {
+			this.channel = channel;
+			this.limit = limit;
+			this.position = offset;
+			this.offset = offset;
+			this.buffer.limit(0);
+		}
+
+		private String readLine() throws IOException {
+			line.reset();
+			if (!nextLine(true)) {
+				return null;
+			}
+
+			byte[] bytes = line.toByteArray();
+			int length = bytes.length;
+			if ((length > 0) && (bytes[length - 1] == '\r')) {
+				length--;
+			}
+
+			return new String(bytes, 0, length, Charset.defaultCharset());
+		}
+
+		private boolean skipLine() throws IOException {
+			return nextLine(false);
+		}
+
+		private boolean nextLine(boolean keep) throws IOException {
+			while (true) {
+				if (!buffer.hasRemaining()) {
+					if (position >= limit) {
+						return false;
+					}
+
+					buffer.clear();
+					buffer.limit((int) Math.min(BUFFER_SIZE, limit - position));
+					int read = channel.read(buffer, position);
+					if (read <= 0) {
+						return false;
+					}
+					position += read;
+					buffer.flip();
+				}
+
+				byte[] bytes = buffer.array();
+				int start = buffer.position();
+				int end = buffer.limit();
+				for (int i = start; i < end; i++) {
+					if (bytes[i] == '\n') {
+						append(keep, bytes, start, i - start);
+						buffer.position(i + 1);
+						offset += i + 1 - start;
+						return true;
+					}
+				}
+
+				append(keep, bytes, start, end - start);
+				buffer.position(end);
+				offset += end - start;
+			}
+		}
+
+		private void append(boolean keep, byte[] bytes, int start, int length) {
+			if (!keep) {
+				return;
+			}
+
+			int toCopy = Math.min(length, MAX_LINE_LENGTH - line.size());
+			if (toCopy > 0) {
+				line.write(bytes, start, toCopy);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,382 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.gluu.oxtrust.util.EasyCASSLProtocolSocketFactory;
+import org.slf4j.Logger;
+import org.xdi.config.oxtrust.AppConfiguration;
+import org.xdi.util.StringHelper;
+
+/**
+ * Downloads metadata from URL directly to file. Requests are conditional (ETag, Last-Modified) when local copy of
+ * previously downloaded metadata still exists, responses are accepted gzip compressed and interrupted downloads of
+ * uncompressed responses are resumed with range request. Number of concurrent downloads from the same host is limited.
+ *
+ * Content is downloaded into part file in IDP temporary metadata folder and moved over target file only when download
+ * is complete, so IDP never reads partially downloaded metadata.
+ */
+@ApplicationScoped
+@Named("metadataDownloadService")
+public class MetadataDownloadService {
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+	public static final int DEFAULT_CONNECTION_TIMEOUT = 30 * 1000; // 30 seconds
+	public static final int DEFAULT_SO_TIMEOUT = 5 * 60 * 1000; // 5 minutes
+
+	private static final String PART_FILE_SUFFIX = ".part";
+
+	// Download state of URL which wasn't requested during this time is dropped
+	private static final long STATE_EXPIRATION = 24 * 60 * 60 * 1000L; // 1 day
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private AppConfiguration appConfiguration;
+
+	private MultiThreadedHttpConnectionManager connectionManager;
+	private HttpClient httpClient;
+
+	private Map<String, DownloadState> states = new ConcurrentHashMap<String, DownloadState>();
+
+	public enum Status {
+		DOWNLOADED, NOT_MODIFIED, FAILED
+	}
+
+	public static class DownloadResult {
+
+		private final Status status;
+		private final String digest;
+
+		private DownloadResult(Status status, String digest) {
+			this.status = status;
+			this.digest = digest;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return SHA-256 digest of metadata content or null if download failed
+		 */
+		public String getDigest() {
+			return digest;
+		}
+
+	}
+
+	private static class DownloadState {
+
+		private String etag;
+		private String lastModified;
+		private String digest;
+
+		// Uncompressed response which wasn't read completely
+		private String partialEtag;
+
+		private volatile long lastUsed;
+
+	}
+
+	@PostConstruct
+	public void init() {
+		this.connectionManager = new MultiThreadedHttpConnectionManager();
+		this.connectionManager.getParams().setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+		this.connectionManager.getParams().setMaxTotalConnections(DEFAULT_MAX_CONNECTIONS);
+		this.connectionManager.getParams().setConnectionTimeout(DEFAULT_CONNECTION_TIMEOUT);
+		this.connectionManager.getParams().setSoTimeout(DEFAULT_SO_TIMEOUT);
+
+		this.httpClient = new HttpClient(connectionManager);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (this.connectionManager != null) {
+			this.connectionManager.shutdown();
+		}
+	}
+
+	/**
+	 * Download metadata
+	 *
+	 * @param url
+	 *            Metadata URL
+	 * @param targetFile
+	 *            File to store downloaded metadata. It's written only if status is DOWNLOADED
+	 * @param currentFile
+	 *            File with metadata downloaded from the same URL before or null to download metadata unconditionally.
+	 *            Status is NOT_MODIFIED if server reports that metadata wasn't modified or downloaded content is the
+	 *            same as content of this file
+	 * @return Download result
+	 */
+	public DownloadResult download(String url, File targetFile, File currentFile) {
+		String currentDigest = getCurrentDigest(url, currentFile);
+
+		long now = System.currentTimeMillis();
+		removeExpiredStates(now);
+
+		DownloadState state = states.get(url);
+		if (state == null) {
+			state = new DownloadState();
+			states.put(url, state);
+		}
+		state.lastUsed = now;
+
+		File partFile = new File(getPartFolder(targetFile), "." + DigestUtils.sha1Hex(url) + PART_FILE_SUFFIX);
+
+		// Don't let two requests write the same part file
+		synchronized (state) {
+			try {
+				return download(url, targetFile, partFile, currentDigest, state);
+			} catch (Exception ex) {
+				log.error("Failed to download metadata from '{}'", url, ex);
+				return new DownloadResult(Status.FAILED, null);
+			}
+		}
+	}
+
+	/**
+	 * Forget conditional request and resume data of URL which is not used anymore
+	 *
+	 * @param url
+	 *            Metadata URL
+	 */
+	public void removeState(String url) {
+		if (StringHelper.isNotEmpty(url)) {
+			states.remove(url);
+		}
+	}
+
+	private void removeExpiredStates(long now) {
+		for (Iterator<DownloadState> it = states.values().iterator(); it.hasNext();) {
+			if (now - it.next().lastUsed > STATE_EXPIRATION) {
+				it.remove();
+			}
+		}
+	}
+
+	private DownloadResult download(String url, File targetFile, File partFile, String currentDigest, DownloadState state)
+			throws Exception {
+		URL parsedUrl = new URL(url);
+
+		HostConfiguration hostConfiguration = new HostConfiguration();
+		if ("https".equalsIgnoreCase(parsedUrl.getProtocol())) {
+			Protocol protocol = new Protocol("https", new EasyCASSLProtocolSocketFactory(), 443);
+			hostConfiguration.setHost(parsedUrl.getHost(), parsedUrl.getPort() == -1 ? 443 : parsedUrl.getPort(), protocol);
+		} else {
+			hostConfiguration.setHost(parsedUrl.getHost(), parsedUrl.getPort() == -1 ? 80 : parsedUrl.getPort(), parsedUrl.getProtocol());
+		}
+
+		GetMethod method = new GetMethod();
+		method.setPath(StringHelper.isEmpty(parsedUrl.getPath()) ? "/" : parsedUrl.getPath());
+		method.setQueryString(parsedUrl.getQuery());
+		method.setFollowRedirects(true);
+		method.setRequestHeader("Accept", "application/xml, text/xml");
+
+		long resumeFrom = 0;
+		if ((state.partialEtag != null) && partFile.isFile()) {
+			resumeFrom = partFile.length();
+			method.setRequestHeader("Range", "bytes=" + resumeFrom + "-");
+			method.setRequestHeader("If-Range", state.partialEtag);
+		} else {
+			FileUtils.deleteQuietly(partFile);
+			method.setRequestHeader("Accept-Encoding", "gzip");
+			if (currentDigest != null) {
+				if (state.etag != null) {
+					method.setRequestHeader("If-None-Match", state.etag);
+				}
+				if (state.lastModified != null) {
+					method.setRequestHeader("If-Modified-Since", state.lastModified);
+				}
+			}
+		}
+
+		try {
+			int statusCode = httpClient.executeMethod(hostConfiguration, method);
+			if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+				log.debug("Metadata from '{}' wasn't modified", url);
+				return new DownloadResult(Status.NOT_MODIFIED, currentDigest);
+			}
+
+			boolean resumed = statusCode == HttpStatus.SC_PARTIAL_CONTENT;
+			if (!resumed && (statusCode != HttpStatus.SC_OK)) {
+				log.error("Failed to download metadata from '{}', server returned status {}", url, statusCode);
+				return new DownloadResult(Status.FAILED, null);
+			}
+
+			String etag = getHeader(method, "ETag");
+			String lastModified = getHeader(method, "Last-Modified");
+			boolean compressed = "gzip".equalsIgnoreCase(getHeader(method, "Content-Encoding"));
+
+			MessageDigest messageDigest = DigestUtils.getSha256Digest();
+			if (resumed) {
+				log.debug("Resuming metadata download from '{}' at {} bytes", url, resumeFrom);
+				updateDigest(messageDigest, partFile);
+			} else {
+				resumeFrom = 0;
+			}
+
+			// Only uncompressed response can be resumed by offset in stored content
+			state.partialEtag = compressed ? null : etag;
+
+			InputStream is = method.getResponseBodyAsStream();
+			if (compressed) {
+				is = new GZIPInputStream(is);
+			}
+
+			OutputStream os = null;
+			try {
+				partFile.getParentFile().mkdirs();
+				os = new FileOutputStream(partFile, resumed);
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = is.read(buffer)) != -1) {
+					os.write(buffer, 0, count);
+					messageDigest.update(buffer, 0, count);
+				}
+			} finally {
+				IOUtils.closeQuietly(os);
+				IOUtils.closeQuietly(is);
+			}
+			state.partialEtag = null;
+
+			String digest = Hex.encodeHexString(messageDigest.digest());
+			state.etag = etag;
+			state.lastModified = lastModified;
+			state.digest = digest;
+
+			if (digest.equals(currentDigest)) {
+				log.debug("Metadata downloaded from '{}' wasn't changed", url);
+				FileUtils.deleteQuietly(partFile);
+				return new DownloadResult(Status.NOT_MODIFIED, digest);
+			}
+
+			moveToTarget(partFile, targetFile);
+
+			log.debug("Downloaded metadata from '{}' to '{}', {} bytes", url, targetFile.getAbsolutePath(), targetFile.length());
+
+			return new DownloadResult(Status.DOWNLOADED, digest);
+		} finally {
+			method.releaseConnection();
+		}
+	}
+
+	/*
+	 * Part files are kept in IDP temporary metadata folder, never next to live metadata
+	 */
+	private File getPartFolder(File targetFile) {
+		if (appConfiguration.getShibboleth3IdpRootDir() == null) {
+			return targetFile.getParentFile();
+		}
+
+		return new File(appConfiguration.getShibboleth3IdpRootDir() + File.separator + Shibboleth3ConfService.SHIB3_IDP_TEMPMETADATA_FOLDER);
+	}
+
+	/*
+	 * Replace target file atomically. If part file is on another file system it's copied next to target file first
+	 */
+	private void moveToTarget(File partFile, File targetFile) throws IOException {
+		targetFile.getParentFile().mkdirs();
+		try {
+			Files.move(partFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return;
+		} catch (AtomicMoveNotSupportedException ex) {
+			log.debug("Part file '{}' can't be moved atomically to '{}'", partFile.getAbsolutePath(), targetFile.getAbsolutePath());
+		}
+
+		File tmpFile = new File(targetFile.getParentFile(), partFile.getName());
+		try {
+			Files.copy(partFile.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			try {
+				Files.move(tmpFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmpFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			FileUtils.deleteQuietly(tmpFile);
+			FileUtils.deleteQuietly(partFile);
+		}
+	}
+
+	/*
+	 * Conditional request makes sense only if current file still contains what was downloaded from URL last time
+	 */
+	private String getCurrentDigest(String url, File currentFile) {
+		DownloadState state = states.get(url);
+		if ((currentFile == null) || !currentFile.isFile() || (state == null) || (state.digest == null)) {
+			return null;
+		}
+
+		InputStream is = null;
+		try {
+			is = FileUtils.openInputStream(currentFile);
+			String digest = DigestUtils.sha256Hex(is);
+
+			return digest.equals(state.digest) ? digest : null;
+		} catch (IOException ex) {
+			log.warn("Failed to read metadata file '{}'", currentFile.getAbsolutePath(), ex);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	private void updateDigest(MessageDigest messageDigest, File file) throws IOException {
+		InputStream is = null;
+		try {
+			is = FileUtils.openInputStream(file);
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				messageDigest.update(buffer, 0, count);
+			}
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	private String getHeader(GetMethod method, String name) {
+		Header header = method.getResponseHeader(name);
+
+		return header == null ? null : header.getValue();
+	}
+
+}
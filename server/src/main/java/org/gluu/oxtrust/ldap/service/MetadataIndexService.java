@@ -0,0 +1,446 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
+import org.gluu.oxtrust.util.MetadataScanner;
+import org.gluu.oxtrust.util.MetadataScanner.Metadata;
+import org.slf4j.Logger;
+import org.xdi.config.oxtrust.AppConfiguration;
+import org.xdi.service.JsonService;
+import org.xdi.util.StringHelper;
+
+/**
+ * Keeps information extracted from SAML metadata files (entityIDs, certificates, endpoints) so files are parsed only
+ * once after they change. Entries become stale when file modification time or size changes and are parsed again only
+ * if file digest changed too.
+ *
+ * Index of files from IDP metadata folder is stored in METADATA_INDEX_FILE in the same folder and loaded on first
+ * access after restart. Inverse index from entityID to files is kept in memory only and rebuilt on load.
+ */
+@ApplicationScoped
+@Named("metadataIndexService")
+public class MetadataIndexService {
+
+	public static final String METADATA_INDEX_FILE = ".metadata-index.json";
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private AppConfiguration appConfiguration;
+
+	@Inject
+	private JsonService jsonService;
+
+	private volatile Map<String, IndexEntry> index;
+
+	// entityID -> absolute paths of indexed files which define it. Guarded by service monitor
+	private Map<String, Set<String>> entityIndex = new HashMap<String, Set<String>>();
+
+	private volatile boolean changed;
+
+	public MetadataIndexService() {
+	}
+
+	MetadataIndexService(Logger log, AppConfiguration appConfiguration, JsonService jsonService) {
+		this.log = log;
+		this.appConfiguration = appConfiguration;
+		this.jsonService = jsonService;
+	}
+
+	public static class IndexEntry {
+
+		private long lastModified;
+		private long length;
+		private String digest;
+		private Metadata metadata;
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public void setLastModified(long lastModified) {
+			this.lastModified = lastModified;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		public void setLength(long length) {
+			this.length = length;
+		}
+
+		public String getDigest() {
+			return digest;
+		}
+
+		public void setDigest(String digest) {
+			this.digest = digest;
+		}
+
+		public Metadata getMetadata() {
+			return metadata;
+		}
+
+		public void setMetadata(Metadata metadata) {
+			this.metadata = metadata;
+		}
+
+		private boolean isActual(File metadataFile) {
+			return (lastModified == metadataFile.lastModified()) && (length == metadataFile.length());
+		}
+
+	}
+
+	public static class MetadataIndex {
+
+		private Map<String, IndexEntry> entries = new HashMap<String, IndexEntry>();
+
+		public Map<String, IndexEntry> getEntries() {
+			return entries;
+		}
+
+		public void setEntries(Map<String, IndexEntry> entries) {
+			this.entries = entries;
+		}
+
+	}
+
+	/**
+	 * Get entityIDs defined in metadata file
+	 *
+	 * @param metadataFile
+	 *            Metadata file
+	 * @return New list of entityIDs or null if file doesn't exist or can't be parsed
+	 */
+	public List<String> getEntityIds(File metadataFile) {
+		Metadata metadata = getMetadata(metadataFile);
+		if (metadata == null) {
+			return null;
+		}
+
+		return new ArrayList<String>(metadata.getEntityIds());
+	}
+
+	/**
+	 * Get entityIDs of service providers defined in metadata file
+	 *
+	 * @param metadataFile
+	 *            Metadata file
+	 * @return New list of entityIDs or null if file doesn't exist or can't be parsed
+	 */
+	public List<String> getSpEntityIds(File metadataFile) {
+		Metadata metadata = getMetadata(metadataFile);
+		if (metadata == null) {
+			return null;
+		}
+
+		return new ArrayList<String>(metadata.getSpEntityIds());
+	}
+
+	/**
+	 * Get entityIDs defined in metadata file of trust relationship
+	 *
+	 * @param trustRelationship
+	 *            Trust relationship with own metadata file
+	 * @return New list of entityIDs or null if trust relationship metadata file doesn't exist or can't be parsed
+	 */
+	public List<String> getEntityIds(GluuSAMLTrustRelationship trustRelationship) {
+		if (StringHelper.isEmpty(trustRelationship.getSpMetaDataFN())) {
+			return null;
+		}
+
+		return getEntityIds(new File(getMetadataDir() + trustRelationship.getSpMetaDataFN()));
+	}
+
+	/**
+	 * Find indexed metadata files which define entityID. Files changed since last access aren't parsed again by this
+	 * method
+	 *
+	 * @param entityId
+	 *            entityID
+	 * @return Names of metadata files from IDP metadata folder
+	 */
+	public List<String> getMetadataFileNames(String entityId) {
+		getIndex();
+
+		List<String> result = new ArrayList<String>();
+
+		String metadataDir = getMetadataDir();
+		synchronized (this) {
+			Set<String> paths = entityIndex.get(entityId);
+			if (paths == null) {
+				return result;
+			}
+
+			for (String path : paths) {
+				File file = new File(path);
+				if ((file.getParent() + File.separator).equals(metadataDir)) {
+					result.add(file.getName());
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get information extracted from metadata file
+	 *
+	 * @param metadataFile
+	 *            Metadata file
+	 * @return Metadata or null if file doesn't exist or can't be parsed
+	 */
+	public Metadata getMetadata(File metadataFile) {
+		Map<String, IndexEntry> index = getIndex();
+
+		String key = metadataFile.getAbsolutePath();
+		if (!metadataFile.isFile()) {
+			removeEntry(key);
+			return null;
+		}
+
+		IndexEntry indexEntry = index.get(key);
+		if ((indexEntry != null) && indexEntry.isActual(metadataFile)) {
+			return indexEntry.getMetadata();
+		}
+
+		long lastModified = metadataFile.lastModified();
+		long length = metadataFile.length();
+
+		String digest = calculateDigest(metadataFile);
+		if (digest == null) {
+			removeEntry(key);
+			return null;
+		}
+
+		if ((indexEntry != null) && digest.equals(indexEntry.getDigest())) {
+			log.debug("Metadata file '{}' was touched but its content wasn't changed", key);
+		} else {
+			Metadata metadata = MetadataScanner.scan(metadataFile);
+			if (metadata == null) {
+				removeEntry(key);
+				return null;
+			}
+
+			log.debug("Parsed metadata file '{}', found {} entityIDs", key, metadata.getEntityIds().size());
+
+			indexEntry = new IndexEntry();
+			indexEntry.setDigest(digest);
+			indexEntry.setMetadata(metadata);
+		}
+
+		IndexEntry newIndexEntry = new IndexEntry();
+		newIndexEntry.setLastModified(lastModified);
+		newIndexEntry.setLength(length);
+		newIndexEntry.setDigest(indexEntry.getDigest());
+		newIndexEntry.setMetadata(indexEntry.getMetadata());
+
+		putEntry(key, newIndexEntry);
+
+		return newIndexEntry.getMetadata();
+	}
+
+	/**
+	 * Get digest of metadata file content
+	 *
+	 * @param metadataFile
+	 *            Metadata file
+	 * @return SHA-256 digest or null if file doesn't exist or can't be parsed
+	 */
+	public String getDigest(File metadataFile) {
+		if (getMetadata(metadataFile) == null) {
+			return null;
+		}
+
+		IndexEntry indexEntry = getIndex().get(metadataFile.getAbsolutePath());
+
+		return indexEntry == null ? null : indexEntry.getDigest();
+	}
+
+	/**
+	 * Get digest of metadata file of trust relationship
+	 *
+	 * @param trustRelationship
+	 *            Trust relationship with own metadata file
+	 * @return SHA-256 digest or null if trust relationship metadata file doesn't exist or can't be parsed
+	 */
+	public String getDigest(GluuSAMLTrustRelationship trustRelationship) {
+		if (StringHelper.isEmpty(trustRelationship.getSpMetaDataFN())) {
+			return null;
+		}
+
+		return getDigest(new File(getMetadataDir() + trustRelationship.getSpMetaDataFN()));
+	}
+
+	public void invalidate(File metadataFile) {
+		getIndex();
+		removeEntry(metadataFile.getAbsolutePath());
+	}
+
+	/**
+	 * Store index of files from IDP metadata folder if it was changed since last call
+	 */
+	public synchronized void flush() {
+		if (!changed || (index == null) || (appConfiguration.getShibboleth3IdpRootDir() == null)) {
+			return;
+		}
+		changed = false;
+
+		String metadataDir = getMetadataDir();
+
+		MetadataIndex metadataIndex = new MetadataIndex();
+		for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+			File file = new File(entry.getKey());
+			if ((file.getParent() + File.separator).equals(metadataDir)) {
+				metadataIndex.getEntries().put(file.getName(), entry.getValue());
+			}
+		}
+
+		File indexFile = new File(metadataDir + METADATA_INDEX_FILE);
+		File tmpIndexFile = new File(metadataDir + METADATA_INDEX_FILE + ".tmp");
+		try {
+			FileUtils.writeStringToFile(tmpIndexFile, jsonService.objectToJson(metadataIndex), "UTF-8");
+			try {
+				Files.move(tmpIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmpIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (Exception ex) {
+			log.error("Failed to store metadata index file '{}'", indexFile.getAbsolutePath(), ex);
+			FileUtils.deleteQuietly(tmpIndexFile);
+			changed = true;
+		}
+	}
+
+	private Map<String, IndexEntry> getIndex() {
+		Map<String, IndexEntry> current = index;
+		if (current == null) {
+			synchronized (this) {
+				current = index;
+				if (current == null) {
+					current = loadIndex();
+					for (Map.Entry<String, IndexEntry> entry : current.entrySet()) {
+						addToEntityIndex(entry.getKey(), entry.getValue());
+					}
+					index = current;
+				}
+			}
+		}
+
+		return current;
+	}
+
+	private synchronized void putEntry(String key, IndexEntry indexEntry) {
+		IndexEntry oldIndexEntry = index.put(key, indexEntry);
+		if (oldIndexEntry != null) {
+			removeFromEntityIndex(key, oldIndexEntry);
+		}
+		addToEntityIndex(key, indexEntry);
+		changed = true;
+	}
+
+	private synchronized void removeEntry(String key) {
+		IndexEntry oldIndexEntry = index.remove(key);
+		if (oldIndexEntry != null) {
+			removeFromEntityIndex(key, oldIndexEntry);
+			changed = true;
+		}
+	}
+
+	private void addToEntityIndex(String key, IndexEntry indexEntry) {
+		for (String entityId : indexEntry.getMetadata().getEntityIds()) {
+			Set<String> paths = entityIndex.get(entityId);
+			if (paths == null) {
+				paths = new HashSet<String>();
+				entityIndex.put(entityId, paths);
+			}
+			paths.add(key);
+		}
+	}
+
+	private void removeFromEntityIndex(String key, IndexEntry indexEntry) {
+		for (String entityId : indexEntry.getMetadata().getEntityIds()) {
+			Set<String> paths = entityIndex.get(entityId);
+			if (paths != null) {
+				paths.remove(key);
+				if (paths.isEmpty()) {
+					entityIndex.remove(entityId);
+				}
+			}
+		}
+	}
+
+	private Map<String, IndexEntry> loadIndex() {
+		Map<String, IndexEntry> result = new ConcurrentHashMap<String, IndexEntry>();
+		if (appConfiguration.getShibboleth3IdpRootDir() == null) {
+			return result;
+		}
+
+		String metadataDir = getMetadataDir();
+		File indexFile = new File(metadataDir + METADATA_INDEX_FILE);
+		if (!indexFile.isFile()) {
+			return result;
+		}
+
+		try {
+			MetadataIndex metadataIndex = jsonService.jsonToObject(FileUtils.readFileToString(indexFile, "UTF-8"), MetadataIndex.class);
+			for (Map.Entry<String, IndexEntry> entry : metadataIndex.getEntries().entrySet()) {
+				if ((entry.getValue() != null) && (entry.getValue().getMetadata() != null)) {
+					result.put(new File(metadataDir + entry.getKey()).getAbsolutePath(), entry.getValue());
+				}
+			}
+			log.info("Loaded metadata index with {} entries", result.size());
+		} catch (Exception ex) {
+			log.error("Failed to load metadata index file '{}'. Metadata files will be parsed again", indexFile.getAbsolutePath(), ex);
+		}
+
+		return result;
+	}
+
+	private String calculateDigest(File metadataFile) {
+		InputStream is = null;
+		try {
+			is = FileUtils.openInputStream(metadataFile);
+			return DigestUtils.sha256Hex(is);
+		} catch (IOException ex) {
+			log.error("Failed to read metadata file '{}'", metadataFile.getAbsolutePath(), ex);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	private String getMetadataDir() {
+		return new File(appConfiguration.getShibboleth3IdpRootDir() + File.separator + Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER).getAbsolutePath()
+				+ File.separator;
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.opensaml.xml.schema.SchemaBuilder;
+import org.opensaml.xml.schema.SchemaBuilder.SchemaLanguage;
+import org.slf4j.Logger;
+import org.xdi.xml.GluuErrorHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Validates SAML metadata against IDP schema set. Schema is compiled once per schema folder and validators are reused,
+ * documents are validated while they are parsed without building DOM.
+ */
+@ApplicationScoped
+@Named("metadataSchemaValidator")
+public class MetadataSchemaValidator {
+
+	public static final String VALIDATION_TIME_MESSAGE = "Metadata validation took %d ms";
+
+	private static final int MAX_POOLED_VALIDATORS = 8;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private ConfigurationFactory configurationFactory;
+
+	private String schemaDir;
+	private volatile Schema schema;
+
+	private final ConcurrentLinkedQueue<Validator> validators = new ConcurrentLinkedQueue<Validator>();
+	private final AtomicInteger pooledValidators = new AtomicInteger();
+
+	private SAXParserFactory parserFactory;
+
+	@PostConstruct
+	public void init() {
+		this.parserFactory = createParserFactory();
+	}
+
+	/**
+	 * Validate metadata. Validation time is added to the end of validation log
+	 *
+	 * @param stream
+	 *            Metadata stream. It's not closed by this method
+	 * @return GluuErrorHandler with validation result
+	 */
+	public GluuErrorHandler validateMetadata(InputStream stream) throws ParserConfigurationException, SAXException, IOException {
+		Schema schema;
+		try {
+			schema = getSchema();
+		} catch (Exception e) {
+			// Schema build error
+			final List<String> validationLog = new ArrayList<String>();
+			validationLog.add(GluuErrorHandler.SCHEMA_CREATING_ERROR_MESSAGE);
+			validationLog.add(e.getMessage());
+			// return internal error
+			return new GluuErrorHandler(false, true, validationLog);
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		CollectingErrorHandler errorHandler = new CollectingErrorHandler();
+		Validator validator = borrowValidator(schema);
+		try {
+			validator.setErrorHandler(errorHandler);
+
+			XMLReader reader = parserFactory.newSAXParser().getXMLReader();
+			validator.validate(new SAXSource(reader, new InputSource(stream)));
+		} catch (SAXParseException ex) {
+			// Error handler rethrows fatal errors, they are already in log
+			log.trace("Metadata is not well-formed", ex);
+		} finally {
+			returnValidator(schema, validator);
+		}
+
+		long duration = System.currentTimeMillis() - startTime;
+		log.debug("Metadata validation took {} ms, errors: {}", duration, errorHandler.validationLog.size());
+
+		List<String> validationLog = errorHandler.validationLog;
+		validationLog.add(String.format(VALIDATION_TIME_MESSAGE, duration));
+
+		return new GluuErrorHandler(errorHandler.valid, false, validationLog);
+	}
+
+	/**
+	 * Drop compiled schema. It will be compiled again on next validation
+	 */
+	public synchronized void reset() {
+		this.schemaDir = null;
+		this.schema = null;
+		this.validators.clear();
+		this.pooledValidators.set(0);
+	}
+
+	private synchronized Schema getSchema() throws Exception {
+		String idpTemplatesLocation = configurationFactory.getIDPTemplatesLocation();
+		String currentSchemaDir = idpTemplatesLocation + "shibboleth3" + File.separator + "idp" + File.separator + "schema" + File.separator;
+
+		if ((schema == null) || !currentSchemaDir.equals(schemaDir)) {
+			long startTime = System.currentTimeMillis();
+			Schema newSchema = SchemaBuilder.buildSchema(SchemaLanguage.XML, currentSchemaDir);
+			log.info("Compiled metadata schema from '{}' in {} ms", currentSchemaDir, System.currentTimeMillis() - startTime);
+
+			this.validators.clear();
+			this.pooledValidators.set(0);
+			this.schema = newSchema;
+			this.schemaDir = currentSchemaDir;
+		}
+
+		return schema;
+	}
+
+	private Validator borrowValidator(Schema schema) {
+		Validator validator = validators.poll();
+		if (validator != null) {
+			pooledValidators.decrementAndGet();
+			return validator;
+		}
+
+		return schema.newValidator();
+	}
+
+	private void returnValidator(Schema schema, Validator validator) {
+		// Validator created for replaced schema is dropped
+		if (schema != this.schema) {
+			return;
+		}
+
+		validator.reset();
+		if (pooledValidators.incrementAndGet() <= MAX_POOLED_VALIDATORS) {
+			validators.offer(validator);
+		} else {
+			pooledValidators.decrementAndGet();
+		}
+	}
+
+	private SAXParserFactory createParserFactory() {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		factory.setValidating(false);
+		try {
+			factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+			factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+		} catch (Exception ex) {
+			log.warn("Failed to disable external entities in metadata parser", ex);
+		}
+
+		return factory;
+	}
+
+	private static class CollectingErrorHandler implements ErrorHandler {
+
+		private boolean valid = true;
+		private List<String> validationLog = new ArrayList<String>();
+
+		@Override
+		public void warning(SAXParseException ex) throws SAXException {
+			validationLog.add(getMessage(ex));
+		}
+
+		@Override
+		public void error(SAXParseException ex) throws SAXException {
+			valid = false;
+			validationLog.add(getMessage(ex));
+		}
+
+		@Override
+		public void fatalError(SAXParseException ex) throws SAXException {
+			valid = false;
+			validationLog.add(getMessage(ex));
+			throw ex;
+		}
+
+		private String getMessage(SAXParseException ex) {
+			return String.format("Line %d, column %d: %s", ex.getLineNumber(), ex.getColumnNumber(), ex.getMessage());
+		}
+
+	}
+
+}
@@ -8,15 +8,27 @@ package org.gluu.oxtrust.ldap.service;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
@@ -25,10 +37,11 @@ import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.apache.commons.io.IOUtils;
 import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
 import org.gluu.oxtrust.model.GluuValidationStatus;
 import org.gluu.oxtrust.service.cdi.event.MetadataValidationEvent;
-import org.gluu.saml.metadata.SAMLMetadataParser;
+import org.gluu.oxtrust.service.cdi.event.MetadataValidationTaskEvent;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.model.GluuStatus;
@@ -50,30 +63,93 @@ public class MetadataValidationTimer {
 
 	private final static int DEFAULT_INTERVAL = 60; // 60 seconds
 
+	private final static int MAX_VALIDATION_THREADS = 4;
+
 	@Inject
 	private Logger log;
 
 	@Inject
 	private Event<TimerEvent> timerEvent;
+
+	@Inject
+	private Event<MetadataValidationTaskEvent> validationTaskEvent;
 	
 	@Inject
 	private AppConfiguration appConfiguration;
 	
 	@Inject
 	private TrustService trustService;
+
+	@Inject
+	private MetadataIndexService metadataIndexService;
 	
 	@Inject
 	private Shibboleth3ConfService shibboleth3ConfService;
 
+	@Inject
+	private Shibboleth3ConfUpdateService shibboleth3ConfUpdateService;
+
 	private AtomicBoolean isActive;
 
-	private LinkedBlockingQueue<String> metadataUpdates;
+	private PriorityBlockingQueue<QueuedMetadata> metadataUpdates;
+
+	private Set<String> metadataInValidation;
+
+	private Set<String> targetsInValidation;
+
+	private CompletionService<Boolean> validationCompletion;
+
+	private int maxValidations;
+
+	private int validationsInProgress;
+
+	private final AtomicLong queueSequence = new AtomicLong();
+
+	/*
+	 * Metadata file waiting for validation. Smaller files go first so big federation
+	 * aggregates don't delay validation of SP metadata uploaded after them. Size only
+	 * orders different trust relationships, only the latest file of each trust
+	 * relationship is validated
+	 */
+	private static class QueuedMetadata implements Comparable<QueuedMetadata> {
+
+		private final String fileName;
+		private final long size;
+		private final long sequence;
+
+		private QueuedMetadata(String fileName, long size, long sequence) {
+			this.fileName = fileName;
+			this.size = size;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(QueuedMetadata other) {
+			if (size != other.size) {
+				return size < other.size ? -1 : 1;
+			}
+
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+
+	}
 
 	@PostConstruct
 	public void init() {
 		this.isActive = new AtomicBoolean(true);
 		try {
-			this.metadataUpdates = new LinkedBlockingQueue<String>();
+			this.metadataUpdates = new PriorityBlockingQueue<QueuedMetadata>();
+			this.metadataInValidation = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			this.targetsInValidation = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			this.maxValidations = Math.max(1, Math.min(MAX_VALIDATION_THREADS, Runtime.getRuntime().availableProcessors()));
+
+			// Validations are run by container managed asynchronous observer
+			this.validationCompletion = new ExecutorCompletionService<Boolean>(new Executor() {
+				@Override
+				public void execute(Runnable task) {
+					validationTaskEvent.fire(new MetadataValidationTaskEvent(task));
+				}
+			});
 		} finally {
 			this.isActive.set(false);
 		}
@@ -108,33 +184,145 @@ public class MetadataValidationTimer {
 		}
 	}
 
+	@Asynchronous
+	public void processMetadataValidationTaskEvent(@Observes MetadataValidationTaskEvent metadataValidationTaskEvent) {
+		metadataValidationTaskEvent.getTask().run();
+	}
+
 	private void procesMetadataValidation() {
 		log.debug("Starting metadata validation");
-		boolean result = validateMetadata(appConfiguration.getShibboleth3IdpRootDir() + File.separator
-				+ Shibboleth3ConfService.SHIB3_IDP_TEMPMETADATA_FOLDER + File.separator, appConfiguration
-				.getShibboleth3IdpRootDir() + File.separator + Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator);
-		log.debug("Metadata validation finished with result: '{}'", result);
-		
+		collectValidationResults();
+
+		final String shib3IdpTempmetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator
+				+ Shibboleth3ConfService.SHIB3_IDP_TEMPMETADATA_FOLDER + File.separator;
+		final String shib3IdpMetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator
+				+ Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
+
+		// Take all queued files. Only the latest uploaded file of each trust relationship
+		// is validated, older files are superseded by it. Trust relationships are
+		// validated in parallel. Timer doesn't wait for them, results are collected
+		// on next runs
+		Map<String, QueuedMetadata> batch = new LinkedHashMap<String, QueuedMetadata>();
+		QueuedMetadata queuedMetadata;
+		while ((queuedMetadata = metadataUpdates.poll()) != null) {
+			String target = getTargetFileName(queuedMetadata.fileName);
+			QueuedMetadata latestMetadata = batch.get(target);
+			if ((latestMetadata != null) && (latestMetadata.sequence > queuedMetadata.sequence)) {
+				removeSupersededMetadata(queuedMetadata, shib3IdpTempmetadataFolder);
+				continue;
+			}
+
+			if (latestMetadata != null) {
+				removeSupersededMetadata(latestMetadata, shib3IdpTempmetadataFolder);
+				metadataInValidation.remove(latestMetadata.fileName);
+			}
+			batch.put(target, queuedMetadata);
+			metadataInValidation.add(queuedMetadata.fileName);
+		}
+
+		if (batch.isEmpty()) {
+			log.trace("There are no metadata files to validate");
+			return;
+		}
+
+		// Trust relationships which are still in validation or don't fit into
+		// free validation slots wait for next run
+		List<QueuedMetadata> deferred = new ArrayList<QueuedMetadata>();
+		int submitted = 0;
+		for (Map.Entry<String, QueuedMetadata> entry : batch.entrySet()) {
+			final String target = entry.getKey();
+			final QueuedMetadata metadata = entry.getValue();
+			if ((validationsInProgress >= maxValidations) || !targetsInValidation.add(target)) {
+				deferred.add(metadata);
+				continue;
+			}
+
+			validationsInProgress++;
+			submitted++;
+			validationCompletion.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					try {
+						return validateMetadata(metadata, shib3IdpTempmetadataFolder, shib3IdpMetadataFolder);
+					} catch (Throwable ex) {
+						log.error("Exception happened while validating metadata file '{}'", metadata.fileName, ex);
+					} finally {
+						metadataInValidation.remove(metadata.fileName);
+						targetsInValidation.remove(target);
+					}
+
+					return false;
+				}
+			});
+		}
+
+		metadataUpdates.addAll(deferred);
+		for (QueuedMetadata metadata : deferred) {
+			metadataInValidation.remove(metadata.fileName);
+		}
+
+		log.debug("Started metadata validation of {} trust relationship(s), {} deferred", submitted, deferred.size());
+	}
+
+	private void collectValidationResults() {
+		int completed = 0;
+		boolean result = false;
+		Future<Boolean> future;
+		while ((future = validationCompletion.poll()) != null) {
+			validationsInProgress--;
+			completed++;
+			try {
+				result |= future.get();
+			} catch (ExecutionException ex) {
+				log.error("Exception happened while validating metadata", ex);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		if (completed == 0) {
+			return;
+		}
+
+		log.debug("Metadata validation of {} trust relationship(s) finished with result: '{}'", completed, result);
+		metadataIndexService.flush();
+
 		if (result) {
 			regenerateConfigurationFiles();
 		}
 	}
 
 	public void queue(String fileName) {
-		synchronized (metadataUpdates) {
-			metadataUpdates.add(fileName);
+		String shib3IdpTempmetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator
+				+ Shibboleth3ConfService.SHIB3_IDP_TEMPMETADATA_FOLDER + File.separator;
+		long size = new File(shib3IdpTempmetadataFolder + fileName).length();
+
+		metadataUpdates.add(new QueuedMetadata(fileName, size, queueSequence.incrementAndGet()));
+	}
+
+	private void removeSupersededMetadata(QueuedMetadata metadata, String shib3IdpTempmetadataFolder) {
+		log.debug("Metadata file '{}' was superseded by newer upload", metadata.fileName);
+		File metadataFile = new File(shib3IdpTempmetadataFolder + metadata.fileName);
+		if (metadataFile.exists() && !metadataFile.delete()) {
+			log.warn("Failed to remove superseded metadata file '{}'", metadataFile.getAbsolutePath());
 		}
 	}
 
 	public boolean isQueued(String gluuSAMLspMetaDataFN) {
-		synchronized (metadataUpdates) {
-			for (String filename : metadataUpdates) {
-				if (filename.contains(gluuSAMLspMetaDataFN)) {
-					return true;
-				}
+		for (QueuedMetadata queuedMetadata : metadataUpdates) {
+			if (queuedMetadata.fileName.contains(gluuSAMLspMetaDataFN)) {
+				return true;
 			}
-			return false;
 		}
+
+		for (String filename : metadataInValidation) {
+			if (filename.contains(gluuSAMLspMetaDataFN)) {
+				return true;
+			}
+		}
+
+		return false;
 	}
 
 	private void regenerateConfigurationFiles() {
@@ -142,132 +330,133 @@ public class MetadataValidationTimer {
 		log.info("IDP config generation is set to " + createConfig);
 		
 		if (createConfig) {
-			List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
-			shibboleth3ConfService.generateConfigurationFiles(trustRelationships);
-
-			log.info("IDP config generation files finished. TR count: '{}'", trustRelationships.size());
+			shibboleth3ConfUpdateService.requestUpdate();
 		}
 
 	}
 
+	private String getTargetFileName(String metadataFN) {
+		return metadataFN.replaceAll(".{4}\\..{4}$", "");
+	}
+
 	/**
+	 * @param queuedMetadata
 	 * @param shib3IdpTempmetadataFolder
 	 * @param shib3IdpMetadataFolder
 	 */
-	private boolean validateMetadata(String shib3IdpTempmetadataFolder, String shib3IdpMetadataFolder) {
+	private boolean validateMetadata(QueuedMetadata queuedMetadata, String shib3IdpTempmetadataFolder, String shib3IdpMetadataFolder) {
+		String metadataFN = queuedMetadata.fileName;
 		boolean result = false;
 		log.trace("Starting metadata validation process.");
 
-		String metadataFN = null;
-		synchronized (metadataUpdates) {
-			if (!metadataUpdates.isEmpty()) {
-				metadataFN = metadataUpdates.poll();
-			}
-		}
-
-		synchronized (this) {
-			if (StringHelper.isNotEmpty(metadataFN)) {
-				File metadata = new File(shib3IdpTempmetadataFolder + metadataFN);
-				File target = new File(shib3IdpMetadataFolder + metadataFN.replaceAll(".{4}\\..{4}$", ""));
-				GluuSAMLTrustRelationship tr = trustService.getTrustByUnpunctuatedInum(
-						metadataFN.split("-" + Shibboleth3ConfService.SHIB3_IDP_SP_METADATA_FILE)[0]);
-				if (tr == null) {
-					metadataUpdates.add(metadataFN);
-					return false;
+		if (StringHelper.isNotEmpty(metadataFN)) {
+			File metadata = new File(shib3IdpTempmetadataFolder + metadataFN);
+			File target = new File(shib3IdpMetadataFolder + getTargetFileName(metadataFN));
+			GluuSAMLTrustRelationship tr = trustService.getTrustByUnpunctuatedInum(
+					metadataFN.split("-" + Shibboleth3ConfService.SHIB3_IDP_SP_METADATA_FILE)[0]);
+			if (tr == null) {
+				// Registry miss was already checked in LDAP. Trust relationship was removed
+				log.warn("Trust relationship of metadata file '{}' doesn't exist. Skipping it", metadataFN);
+				if (metadata.exists() && !metadata.delete()) {
+					log.warn("Failed to remove metadata file '{}'", metadata.getAbsolutePath());
 				}
-				tr.setValidationStatus(GluuValidationStatus.VALIDATION);
+				return false;
+			}
+			tr.setValidationStatus(GluuValidationStatus.VALIDATION);
+			trustService.updateTrustRelationship(tr);
+
+			GluuErrorHandler errorHandler = null;
+			List<String> validationLog = null;
+			InputStream is = null;
+			try {
+				is = new FileInputStream(metadata);
+				errorHandler = shibboleth3ConfService.validateMetadata(is);
+			} catch (Exception e) {
+				tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
+				tr.setStatus(GluuStatus.INACTIVE);
+				validationLog = new ArrayList<String>();
+				validationLog.add(e.getMessage());
+				log.warn("Validation of " + tr.getInum() + " failed: " + e.getMessage() );
+				tr.setValidationLog(validationLog);
 				trustService.updateTrustRelationship(tr);
 
-				GluuErrorHandler errorHandler = null;
-				List<String> validationLog = null;
-				try {
-					errorHandler = shibboleth3ConfService.validateMetadata(new FileInputStream(metadata));
-				} catch (Exception e) {
-					tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
+				return false;
+			} finally {
+				IOUtils.closeQuietly(is);
+			}
+			if (errorHandler.isValid()) {
+				// Keep validator log (with timing) and append own messages to it
+				validationLog = new LinkedList<String>();
+				if (errorHandler.getLog() != null) {
+					validationLog.addAll(errorHandler.getLog());
+				}
+				tr.setValidationStatus(GluuValidationStatus.VALIDATION_SUCCESS);
+				if (((!target.exists()) || target.delete()) && (!metadata.renameTo(target))) {
+					log.error("Failed to move metadata file to location:" + target.getAbsolutePath());
 					tr.setStatus(GluuStatus.INACTIVE);
-					validationLog = new ArrayList<String>();
-					validationLog.add(e.getMessage());
-					log.warn("Validation of " + tr.getInum() + " failed: " + e.getMessage() );
-					tr.setValidationLog(validationLog);
-					trustService.updateTrustRelationship(tr);
-
-					return false;
+				} else {
+					tr.setSpMetaDataFN(target.getName());
 				}
-				if (errorHandler.isValid()) {
-					tr.setValidationLog(errorHandler.getLog());
-					tr.setValidationStatus(GluuValidationStatus.VALIDATION_SUCCESS);
-					if (((!target.exists()) || target.delete()) && (!metadata.renameTo(target))) {
-						log.error("Failed to move metadata file to location:" + target.getAbsolutePath());
-						tr.setStatus(GluuStatus.INACTIVE);
-					} else {
-						tr.setSpMetaDataFN(target.getName());
-					}
-					boolean federation = shibboleth3ConfService.isFederation(tr);
-					tr.setFederation(federation);
-					String idpMetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator
-							+ Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
-					File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
-					
-					
-					List<String> entityIdList = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
-					Set<String> entityIdSet = new TreeSet<String>();
-					Set<String> duplicatesSet = new TreeSet<String>(); 
-					if(entityIdList != null && ! entityIdList.isEmpty()){
-
-						for (String entityId : entityIdList) {
-							if (!entityIdSet.add(entityId)) {
-								duplicatesSet.add(entityId);
-							}
-						}
-					}
-
-					
-					if(! duplicatesSet.isEmpty()){
-						validationLog = tr.getValidationLog();
-						if(validationLog != null){
-							validationLog = new LinkedList<String>(validationLog);
-						}else{
-							validationLog = new LinkedList<String>();
-						}
-						validationLog.add("This metadata contains multiple instances of entityId: " + Arrays.toString(duplicatesSet.toArray()));
-					}
-					tr.setValidationLog(validationLog);
-					tr.setGluuEntityId(entityIdSet);
-					tr.setStatus(GluuStatus.ACTIVE);
-
-					trustService.updateTrustRelationship(tr);
-					result = true;
-				} else if(appConfiguration.isIgnoreValidation() || errorHandler.isInternalError()){
-					tr.setValidationLog(new ArrayList<String>(new HashSet<String>(errorHandler.getLog())));
-					tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
-					if( (( ! target.exists() ) ||  target.delete()) && ( ! metadata.renameTo(target) )){
-						log.error("Failed to move metadata file to location:" + target.getAbsolutePath());
-						tr.setStatus(GluuStatus.INACTIVE);
-					}else{
-						tr.setSpMetaDataFN(target.getName());
-					}
-					boolean federation = shibboleth3ConfService.isFederation(tr);
-					tr.setFederation(federation);
-					String idpMetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator + Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
-					File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
-					
-					List<String> entityIdList = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
-					Set<String> duplicatesSet = new TreeSet<String>(); 
-					Set<String> entityIdSet = new TreeSet<String>();
+				boolean federation = shibboleth3ConfService.isFederation(tr);
+				tr.setFederation(federation);
+				String idpMetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator
+						+ Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
+				File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
+				
+				
+				List<String> entityIdList = metadataIndexService.getEntityIds(metadataFile);
+				Set<String> entityIdSet = new TreeSet<String>();
+				Set<String> duplicatesSet = new TreeSet<String>(); 
+				if(entityIdList != null && ! entityIdList.isEmpty()){
 
 					for (String entityId : entityIdList) {
 						if (!entityIdSet.add(entityId)) {
 							duplicatesSet.add(entityId);
 						}
 					}
-					
-					tr.setGluuEntityId(entityIdSet);
-					tr.setStatus(GluuStatus.ACTIVE);	
-					validationLog = tr.getValidationLog();
-					if(! duplicatesSet.isEmpty()){
-						validationLog.add("This metadata contains multiple instances of entityId: " + Arrays.toString(duplicatesSet.toArray()));
+				}
+
+				
+				if(! duplicatesSet.isEmpty()){
+					validationLog.add("This metadata contains multiple instances of entityId: " + Arrays.toString(duplicatesSet.toArray()));
+				}
+				tr.setValidationLog(validationLog);
+				tr.setGluuEntityId(entityIdSet);
+				tr.setStatus(GluuStatus.ACTIVE);
+
+				trustService.updateTrustRelationship(tr);
+				result = true;
+			} else if(appConfiguration.isIgnoreValidation() || errorHandler.isInternalError()){
+				tr.setValidationLog(new ArrayList<String>(new LinkedHashSet<String>(errorHandler.getLog())));
+				tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
+				if( (( ! target.exists() ) ||  target.delete()) && ( ! metadata.renameTo(target) )){
+					log.error("Failed to move metadata file to location:" + target.getAbsolutePath());
+					tr.setStatus(GluuStatus.INACTIVE);
+				}else{
+					tr.setSpMetaDataFN(target.getName());
+				}
+				boolean federation = shibboleth3ConfService.isFederation(tr);
+				tr.setFederation(federation);
+				String idpMetadataFolder = appConfiguration.getShibboleth3IdpRootDir() + File.separator + Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER + File.separator;
+				File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
+				
+				List<String> entityIdList = metadataIndexService.getEntityIds(metadataFile);
+				Set<String> duplicatesSet = new TreeSet<String>(); 
+				Set<String> entityIdSet = new TreeSet<String>();
+
+				for (String entityId : entityIdList) {
+					if (!entityIdSet.add(entityId)) {
+						duplicatesSet.add(entityId);
 					}
-					
+				}
+				
+				tr.setGluuEntityId(entityIdSet);
+				tr.setStatus(GluuStatus.ACTIVE);	
+				validationLog = tr.getValidationLog();
+				if(! duplicatesSet.isEmpty()){
+					validationLog.add("This metadata contains multiple instances of entityId: " + Arrays.toString(duplicatesSet.toArray()));
+				}
+				
                                         if (errorHandler.isInternalError()) {
                                             validationLog = tr.getValidationLog();
                                             
@@ -279,13 +468,12 @@ public class MetadataValidationTimer {
                                         }
                                         
                                         trustService.updateTrustRelationship(tr);
-					result = true;
-				} else {
-					tr.setValidationLog(new ArrayList<String>(new HashSet<String>(errorHandler.getLog())));
-					tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
-					tr.setStatus(GluuStatus.INACTIVE);
-					trustService.updateTrustRelationship(tr);
-				}
+				result = true;
+			} else {
+				tr.setValidationLog(new ArrayList<String>(new LinkedHashSet<String>(errorHandler.getLog())));
+				tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
+				tr.setStatus(GluuStatus.INACTIVE);
+				trustService.updateTrustRelationship(tr);
 			}
 		}
 
@@ -5,25 +5,82 @@ import java.io.Serializable;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 
+import org.gluu.oxtrust.ldap.service.AuditTrailService.AuditEvent;
+import org.gluu.oxtrust.ldap.service.AuditTrailService.Outcome;
 import org.gluu.oxtrust.model.GluuCustomPerson;
-import org.slf4j.Logger;
 
 public class OxTrustAuditService implements Serializable {
 
 	private static final long serialVersionUID = -3495894016120236517L;
 
 	@Inject
-	private Logger log;
+	private AuditTrailService auditTrailService;
 
     public void audit(String message, GluuCustomPerson user, HttpServletRequest request) {
-        String ipAddress = request.getHeader("X-FORWARDED-FOR") != null ? request.getHeader("X-FORWARDED-FOR")
-                : request.getRemoteAddr();
-        String fullMessage = message.concat(" BY USER " + user.getDisplayName() + " FROM IP ADDRESS " + ipAddress);
-        log.info(fullMessage);
+        audit(message, null, null, -1, user, request);
     }
 
     public void audit(String message) {
-        log.info(message);
+        AuditEvent event = new AuditEvent();
+        event.setAction(message);
+        event.setMessage(message);
+
+        auditTrailService.publish(event);
     }
 
+	/**
+	 * Audit action on entry
+	 *
+	 * @param action
+	 *            Action description
+	 * @param targetDn
+	 *            DN of changed entry or null
+	 * @param outcome
+	 *            Action outcome or null
+	 * @param latency
+	 *            Action duration in milliseconds or -1
+	 */
+	public void audit(String action, String targetDn, Outcome outcome, long latency, GluuCustomPerson user, HttpServletRequest request) {
+		AuditEvent event = new AuditEvent();
+		event.setAction(action);
+		event.setTargetDn(targetDn);
+		event.setOutcome(outcome);
+		event.setLatency(latency);
+
+		StringBuilder message = new StringBuilder(action);
+		if (user != null) {
+			event.setActor(user.getInum());
+			event.setActorName(user.getDisplayName());
+			message.append(" BY USER ").append(user.getDisplayName());
+		}
+		if (request != null) {
+			String ipAddress = request.getHeader("X-FORWARDED-FOR") != null ? request.getHeader("X-FORWARDED-FOR") : request.getRemoteAddr();
+			event.setIpAddress(ipAddress);
+			message.append(" FROM IP ADDRESS ").append(ipAddress);
+		}
+		event.setMessage(message.toString());
+
+		auditTrailService.publish(event);
+	}
+
+	/**
+	 * Audit add, update or remove of person
+	 *
+	 * @param person
+	 *            Changed person
+	 * @param action
+	 *            Change description, e.g. ADDED or UPDATE FAILED
+	 * @param startTime
+	 *            Time when change was started
+	 */
+	public void auditPersonChange(GluuCustomPerson person, String action, Outcome outcome, long startTime) {
+		auditPersonChange(person, action, outcome, startTime, null, null);
+	}
+
+	public void auditPersonChange(GluuCustomPerson person, String action, Outcome outcome, long startTime, GluuCustomPerson user,
+			HttpServletRequest request) {
+		audit("USER " + person.getInum() + " **" + person.getDisplayName() + "** " + action, person.getDn(), outcome,
+				System.currentTimeMillis() - startTime, user, request);
+	}
+
 }
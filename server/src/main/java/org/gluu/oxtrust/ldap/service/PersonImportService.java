@@ -0,0 +1,818 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.RandomStringUtils;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.gluu.oxtrust.ldap.load.conf.ImportPersonConfiguration;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.service.cdi.event.PersonImportTaskEvent;
+import org.gluu.oxtrust.service.external.ExternalUpdateUserService;
+import org.gluu.oxtrust.util.OxTrustConstants;
+import org.gluu.persist.model.AttributeData;
+import org.gluu.persist.model.base.GluuBoolean;
+import org.slf4j.Logger;
+import org.xdi.model.GluuAttribute;
+import org.xdi.model.GluuStatus;
+import org.xdi.model.attribute.AttributeDataType;
+import org.xdi.service.JsonService;
+import org.xdi.service.cdi.async.Asynchronous;
+import org.xdi.util.StringHelper;
+
+/**
+ * Imports persons from spreadsheet in background. File is read row by row, rows are converted, validated and added in
+ * chunks of CHUNK_SIZE rows by IMPORT_THREADS tasks. Jobs run one by one. Job and person additions are run by
+ * asynchronous event observer. Job status is stored in work folder after every chunk, so interrupted import can be
+ * resumed from the first not finished chunk.
+ *
+ * Copy of file is removed when validation job is finished or import is completed. Failed and interrupted imports keep
+ * it to be resumed until job is removed or JOB_RETENTION passes.
+ *
+ * Validation job does the same checks without adding persons.
+ */
+@ApplicationScoped
+@Named("personImportService")
+public class PersonImportService {
+
+	public static final String PERSON_PASSWORD_ATTRIBUTE = "userPassword";
+	public static final String PERSON_STATUS_ATTRIBUTE = "gluuStatus";
+
+	public static final int CHUNK_SIZE = 500;
+	public static final int IMPORT_THREADS = 4;
+
+	private static final int MAX_ERRORS = 100;
+
+	private static final long JOB_RETENTION = 7 * 24 * 60 * 60 * 1000L; // 7 days
+
+	private static final String STATUS_FILE = "status.json";
+	private static final String DATA_FILE = "data";
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private IPersonService personService;
+
+	@Inject
+	private OrganizationService organizationService;
+
+	@Inject
+	private ExternalUpdateUserService externalUpdateUserService;
+
+	@Inject
+	private ImportPersonConfiguration importPersonConfiguration;
+
+	@Inject
+	private PersonUniquenessService personUniquenessService;
+
+	@Inject
+	private ExcelService excelService;
+
+	@Inject
+	private JsonService jsonService;
+
+	@Inject
+	private OxTrustAuditService oxTrustAuditService;
+
+	@Inject
+	private Event<PersonImportTaskEvent> personImportTaskEvent;
+
+	private final Queue<ImportStatus> queuedJobs = new ConcurrentLinkedQueue<ImportStatus>();
+	private final AtomicBoolean jobRunning = new AtomicBoolean(false);
+	private volatile boolean stopped;
+
+	private Map<String, ImportStatus> jobs = new ConcurrentHashMap<String, ImportStatus>();
+
+	public enum JobType {
+		VALIDATE, IMPORT
+	}
+
+	public enum JobState {
+		QUEUED, RUNNING, COMPLETED, FAILED, INTERRUPTED
+	}
+
+	public static class ImportStatus {
+
+		private String id;
+		private String fileName;
+		private JobType type;
+		private volatile JobState state;
+		private Map<String, String> columns = new HashMap<String, String>();
+		private boolean generatePassword;
+
+		private volatile int lastCommittedRow;
+		private final AtomicInteger processedRows = new AtomicInteger();
+		private final AtomicInteger addedRows = new AtomicInteger();
+		private final AtomicInteger failedRows = new AtomicInteger();
+		private final List<String> errors = new ArrayList<String>();
+
+		private volatile long startTime;
+		private volatile long endTime;
+
+		public String getId() {
+			return id;
+		}
+
+		public void setId(String id) {
+			this.id = id;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		public void setFileName(String fileName) {
+			this.fileName = fileName;
+		}
+
+		public JobType getType() {
+			return type;
+		}
+
+		public void setType(JobType type) {
+			this.type = type;
+		}
+
+		public JobState getState() {
+			return state;
+		}
+
+		public void setState(JobState state) {
+			this.state = state;
+		}
+
+		/**
+		 * @return Attribute names by column index
+		 */
+		public Map<String, String> getColumns() {
+			return columns;
+		}
+
+		public void setColumns(Map<String, String> columns) {
+			this.columns = columns;
+		}
+
+		public boolean isGeneratePassword() {
+			return generatePassword;
+		}
+
+		public void setGeneratePassword(boolean generatePassword) {
+			this.generatePassword = generatePassword;
+		}
+
+		/**
+		 * @return Last row of the last finished chunk
+		 */
+		public int getLastCommittedRow() {
+			return lastCommittedRow;
+		}
+
+		public void setLastCommittedRow(int lastCommittedRow) {
+			this.lastCommittedRow = lastCommittedRow;
+		}
+
+		public int getProcessedRows() {
+			return processedRows.get();
+		}
+
+		public void setProcessedRows(int processedRows) {
+			this.processedRows.set(processedRows);
+		}
+
+		public int getAddedRows() {
+			return addedRows.get();
+		}
+
+		public void setAddedRows(int addedRows) {
+			this.addedRows.set(addedRows);
+		}
+
+		public int getFailedRows() {
+			return failedRows.get();
+		}
+
+		public void setFailedRows(int failedRows) {
+			this.failedRows.set(failedRows);
+		}
+
+		/**
+		 * @return Copy of first MAX_ERRORS error messages
+		 */
+		public synchronized List<String> getErrors() {
+			return new ArrayList<String>(errors);
+		}
+
+		public synchronized void setErrors(List<String> errors) {
+			this.errors.clear();
+			if (errors != null) {
+				this.errors.addAll(errors);
+			}
+		}
+
+		public long getStartTime() {
+			return startTime;
+		}
+
+		public void setStartTime(long startTime) {
+			this.startTime = startTime;
+		}
+
+		public long getEndTime() {
+			return endTime;
+		}
+
+		public void setEndTime(long endTime) {
+			this.endTime = endTime;
+		}
+
+		@JsonIgnore
+		public boolean isFinished() {
+			return (state == JobState.COMPLETED) || (state == JobState.FAILED) || (state == JobState.INTERRUPTED);
+		}
+
+		private void addProcessedRows(int count) {
+			processedRows.addAndGet(count);
+		}
+
+		private void addAddedRows(int count) {
+			addedRows.addAndGet(count);
+		}
+
+		private void addFailedRows(int count) {
+			failedRows.addAndGet(count);
+		}
+
+		private synchronized void addError(String error) {
+			if (errors.size() < MAX_ERRORS) {
+				errors.add(error);
+			}
+		}
+
+	}
+
+	@PostConstruct
+	public void init() {
+		// Jobs which were running before restart can be resumed
+		long expirationTime = System.currentTimeMillis() - JOB_RETENTION;
+		File[] jobFolders = getWorkFolder().listFiles();
+		if (jobFolders != null) {
+			for (File jobFolder : jobFolders) {
+				ImportStatus status = loadStatus(jobFolder);
+				if (status == null) {
+					log.info("Removing person import folder '{}' without job status", jobFolder.getAbsolutePath());
+					FileUtils.deleteQuietly(jobFolder);
+					continue;
+				}
+
+				if (!status.isFinished()) {
+					status.setState(JobState.INTERRUPTED);
+					status.setEndTime(System.currentTimeMillis());
+					storeStatus(status);
+				} else if (status.getEndTime() < expirationTime) {
+					log.info("Removing expired person import job: {}", status.getId());
+					FileUtils.deleteQuietly(jobFolder);
+					continue;
+				}
+
+				if (!isResumable(status)) {
+					removeJobData(status);
+				}
+				jobs.put(status.getId(), status);
+			}
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		// Running job stops after current row and can be resumed after restart
+		this.stopped = true;
+	}
+
+	@Asynchronous
+	public void processPersonImportTaskEvent(@Observes PersonImportTaskEvent personImportTaskEvent) {
+		personImportTaskEvent.getTask().run();
+	}
+
+	/**
+	 * Start validation or import of file in background
+	 *
+	 * @param file
+	 *            File to import. It's copied to job work folder
+	 * @param fileName
+	 *            Original file name. Extension defines file format
+	 * @param columns
+	 *            Attributes by column index
+	 * @return Job status
+	 */
+	public ImportStatus start(JobType type, File file, String fileName, Map<Integer, GluuAttribute> columns) throws Exception {
+		ImportStatus status = new ImportStatus();
+		status.setId(StringHelper.getRandomString(16));
+		status.setFileName(fileName);
+		status.setType(type);
+		status.setState(JobState.QUEUED);
+		status.setGeneratePassword(isGeneratePassword());
+		for (Map.Entry<Integer, GluuAttribute> column : columns.entrySet()) {
+			status.getColumns().put(column.getKey().toString(), column.getValue().getName());
+		}
+
+		File jobFolder = getJobFolder(status.getId());
+		jobFolder.mkdirs();
+		FileUtils.copyFile(file, new File(jobFolder, DATA_FILE));
+		storeStatus(status);
+
+		jobs.put(status.getId(), status);
+		submit(status);
+
+		return status;
+	}
+
+	/**
+	 * Continue interrupted or failed import after the last finished chunk
+	 */
+	public ImportStatus resume(String id) {
+		ImportStatus status = jobs.get(id);
+		if ((status == null) || !isResumable(status)) {
+			return status;
+		}
+
+		status.setState(JobState.QUEUED);
+		storeStatus(status);
+		submit(status);
+
+		return status;
+	}
+
+	public ImportStatus getStatus(String id) {
+		if (id == null) {
+			return null;
+		}
+
+		return jobs.get(id);
+	}
+
+	public List<ImportStatus> getStatuses() {
+		return new ArrayList<ImportStatus>(jobs.values());
+	}
+
+	/**
+	 * @return True if job is interrupted or failed import and copy of its file still exists
+	 */
+	public boolean isResumable(ImportStatus status) {
+		return (status.getType() == JobType.IMPORT) && ((status.getState() == JobState.INTERRUPTED) || (status.getState() == JobState.FAILED))
+				&& new File(getJobFolder(status.getId()), DATA_FILE).isFile();
+	}
+
+	/**
+	 * Remove finished job and its files
+	 */
+	public void remove(String id) {
+		ImportStatus status = jobs.get(id);
+		if ((status == null) || !status.isFinished()) {
+			return;
+		}
+
+		jobs.remove(id);
+		FileUtils.deleteQuietly(getJobFolder(id));
+	}
+
+	/**
+	 * Add new person
+	 *
+	 * @return OxTrustConstants.RESULT_SUCCESS, RESULT_DUPLICATE or RESULT_FAILURE
+	 */
+	public String addPerson(GluuCustomPerson person) {
+		if (!organizationService.isAllowPersonModification()) {
+			return OxTrustConstants.RESULT_FAILURE;
+		}
+
+		personService.addCustomObjectClass(person);
+
+		if (personService.getPersonByUid(person.getUid()) != null) {
+			return OxTrustConstants.RESULT_DUPLICATE;
+		}
+
+		// Inum can be allocated in advance for bulk import
+		String inum = StringHelper.isEmpty(person.getInum()) ? personService.generateInumForNewPerson() : person.getInum();
+		String iname = personService.generateInameForNewPerson(person.getUid());
+		String dn = personService.getDnForPerson(inum);
+
+		// Save person
+		person.setDn(dn);
+		person.setInum(inum);
+		person.setIname(iname);
+
+		List<GluuCustomAttribute> personAttributes = person.getCustomAttributes();
+		if (!personAttributes.contains(new GluuCustomAttribute("cn", ""))) {
+			List<GluuCustomAttribute> changedAttributes = new ArrayList<GluuCustomAttribute>();
+			changedAttributes.addAll(personAttributes);
+			changedAttributes.add(new GluuCustomAttribute("cn", person.getGivenName() + " " + person.getDisplayName()));
+			person.setCustomAttributes(changedAttributes);
+		} else {
+			person.setCommonName(person.getCommonName() + " " + person.getGivenName());
+		}
+
+		try {
+			boolean runScript = externalUpdateUserService.isEnabled();
+			if (runScript) {
+				externalUpdateUserService.executeExternalAddUserMethods(person);
+			}
+
+			personService.addPerson(person);
+
+			if (runScript) {
+				externalUpdateUserService.executeExternalPostAddUserMethods(person);
+			}
+		} catch (Exception ex) {
+			log.error("Failed to add new person {}", person.getInum(), ex);
+
+			return OxTrustConstants.RESULT_FAILURE;
+		}
+
+		return OxTrustConstants.RESULT_SUCCESS;
+	}
+
+	private void submit(ImportStatus status) {
+		queuedJobs.add(status);
+		personImportTaskEvent.fire(new PersonImportTaskEvent(new Runnable() {
+			@Override
+			public void run() {
+				processQueuedJobs();
+			}
+		}));
+	}
+
+	private void processQueuedJobs() {
+		// Only one job runs at a time. Job queued while last one is finishing is picked up by recheck
+		while (!queuedJobs.isEmpty() && jobRunning.compareAndSet(false, true)) {
+			try {
+				ImportStatus status;
+				while (!stopped && ((status = queuedJobs.poll()) != null)) {
+					process(status);
+				}
+			} finally {
+				jobRunning.set(false);
+			}
+		}
+	}
+
+	private <T> Future<T> submitTask(Callable<T> task) {
+		FutureTask<T> future = new FutureTask<T>(task);
+		personImportTaskEvent.fire(new PersonImportTaskEvent(future));
+
+		return future;
+	}
+
+	private void process(final ImportStatus status) {
+		log.info("Starting {} of persons from file '{}', job: {}", status.getType(), status.getFileName(), status.getId());
+		status.setState(JobState.RUNNING);
+		if (status.getStartTime() == 0) {
+			status.setStartTime(System.currentTimeMillis());
+		}
+		storeStatus(status);
+
+		final Map<Integer, GluuAttribute> columns = getColumns(status);
+		final Set<String> uids = new HashSet<String>();
+		final Set<String> mails = new HashSet<String>();
+		final Map<Integer, Map<Integer, String>> chunk = new LinkedHashMap<Integer, Map<Integer, String>>();
+
+		try {
+			excelService.read(new File(getJobFolder(status.getId()), DATA_FILE), status.getFileName(), new ExcelService.RowHandler() {
+				@Override
+				public boolean row(int row, Map<Integer, String> cells) throws Exception {
+					if (stopped) {
+						throw new InterruptedException("Person import service was stopped");
+					}
+
+					if ((row == 0) || cells.isEmpty()) {
+						return true;
+					}
+
+					// Uniqueness in file is checked for all rows, including already imported ones
+					boolean committed = row <= status.getLastCommittedRow();
+					String uid = getCellValue(cells, columns, "uid");
+					String mail = getCellValue(cells, columns, "mail");
+					if (((uid != null) && !uids.add(uid.toLowerCase())) || ((mail != null) && !mails.add(mail.toLowerCase()))) {
+						if (!committed) {
+							status.addError(String.format("Row %d: there are persons with simular uid or mail in input file", row + 1));
+							status.addFailedRows(1);
+						}
+						return true;
+					}
+
+					if (committed) {
+						return true;
+					}
+
+					chunk.put(row, cells);
+					if (chunk.size() >= CHUNK_SIZE) {
+						processChunk(status, columns, chunk);
+						chunk.clear();
+					}
+
+					return true;
+				}
+			});
+
+			if (!chunk.isEmpty()) {
+				processChunk(status, columns, chunk);
+			}
+
+			status.setState(JobState.COMPLETED);
+			log.info("Finished {} of persons from file '{}', processed: {}, added: {}, failed: {}", status.getType(), status.getFileName(),
+					status.getProcessedRows(), status.getAddedRows(), status.getFailedRows());
+			if (status.getType() == JobType.IMPORT) {
+				oxTrustAuditService.audit(status.getAddedRows() + " USERS IMPORTED FROM FILE " + status.getFileName());
+			}
+		} catch (Throwable ex) {
+			log.error("Failed to process persons file '{}'", status.getFileName(), ex);
+			status.addError("Import failed: " + ex.getMessage());
+			status.setState((stopped || Thread.currentThread().isInterrupted()) ? JobState.INTERRUPTED : JobState.FAILED);
+		} finally {
+			status.setEndTime(System.currentTimeMillis());
+			storeStatus(status);
+
+			// Copy of file may contain passwords. It's kept only while import can be resumed
+			if (!isResumable(status)) {
+				removeJobData(status);
+			}
+		}
+	}
+
+	private void processChunk(ImportStatus status, Map<Integer, GluuAttribute> columns, Map<Integer, Map<Integer, String>> rows) throws Exception {
+		Map<String, Integer> rowsByUid = new LinkedHashMap<String, Integer>();
+		Map<String, List<AttributeData>> entriesAttributes = new LinkedHashMap<String, List<AttributeData>>();
+		Map<String, String> mailsByUid = new HashMap<String, String>();
+
+		for (Map.Entry<Integer, Map<Integer, String>> row : rows.entrySet()) {
+			List<AttributeData> attributeDataList = convertRow(status, row.getKey(), row.getValue(), columns);
+			if (attributeDataList == null) {
+				status.addFailedRows(1);
+				continue;
+			}
+
+			String uid = getCellValue(row.getValue(), columns, "uid");
+			rowsByUid.put(uid, row.getKey());
+			entriesAttributes.put(uid, attributeDataList);
+
+			String mail = getCellValue(row.getValue(), columns, "mail");
+			if (mail != null) {
+				mailsByUid.put(uid, mail);
+			}
+		}
+
+		// Check if persons already exist
+		Set<String> existUids = personUniquenessService.findExistingUids(rowsByUid.keySet());
+		for (String existUid : existUids) {
+			rejectPerson(status, rowsByUid, entriesAttributes, existUid, "there is person with existing uid");
+		}
+
+		Set<String> existMails = personUniquenessService.findExistingMails(mailsByUid.values());
+		for (Map.Entry<String, String> entry : mailsByUid.entrySet()) {
+			if (existMails.contains(entry.getValue()) && entriesAttributes.containsKey(entry.getKey())) {
+				rejectPerson(status, rowsByUid, entriesAttributes, entry.getKey(), "there is person with existing mailid");
+			}
+		}
+
+		if (status.getType() == JobType.IMPORT) {
+			addPersons(status, rowsByUid, entriesAttributes);
+		}
+
+		status.addProcessedRows(rows.size());
+		status.setLastCommittedRow(Collections.max(rows.keySet()));
+		storeStatus(status);
+	}
+
+	private void addPersons(final ImportStatus status, final Map<String, Integer> rowsByUid, Map<String, List<AttributeData>> entriesAttributes)
+			throws Exception {
+		if (entriesAttributes.isEmpty()) {
+			return;
+		}
+
+		// Convert to GluuCustomPerson and set right DN
+		List<GluuCustomPerson> persons = personService.createEntities(entriesAttributes);
+
+		Iterator<String> inums = personService.generateInumsForNewPersons(persons.size()).iterator();
+
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (final GluuCustomPerson person : persons) {
+			setDefaultPersonAttributes(person, status.isGeneratePassword(), entriesAttributes.get(person.getUid()));
+			person.setInum(inums.next());
+
+			results.add(submitTask(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					String result = addPerson(person);
+					if (OxTrustConstants.RESULT_SUCCESS.equals(result)) {
+						log.debug("Added new person: {}", person.getUid());
+						return true;
+					}
+
+					log.debug("Failed to add new person: {}", person.getUid());
+					status.addError(String.format("Row %d: failed to add new person '%s'", rowsByUid.get(person.getUid()) + 1, person.getUid()));
+					return false;
+				}
+			}));
+		}
+
+		int added = 0;
+		for (Future<Boolean> result : results) {
+			if (result.get()) {
+				added++;
+			}
+		}
+
+		status.addAddedRows(added);
+		status.addFailedRows(results.size() - added);
+	}
+
+	private void rejectPerson(ImportStatus status, Map<String, Integer> rowsByUid, Map<String, List<AttributeData>> entriesAttributes, String uid,
+			String message) {
+		for (String key : new ArrayList<String>(entriesAttributes.keySet())) {
+			if (key.equalsIgnoreCase(uid)) {
+				entriesAttributes.remove(key);
+				status.addError(String.format("Row %d: %s '%s'", rowsByUid.get(key) + 1, message, key));
+				status.addFailedRows(1);
+			}
+		}
+	}
+
+	private List<AttributeData> convertRow(ImportStatus status, int row, Map<Integer, String> cells, Map<Integer, GluuAttribute> columns) {
+		List<AttributeData> attributeDataList = new ArrayList<AttributeData>();
+		boolean validRow = true;
+		for (Map.Entry<Integer, GluuAttribute> column : columns.entrySet()) {
+			GluuAttribute attribute = column.getValue();
+			String cellValue = cells.get(column.getKey());
+			if (StringHelper.isEmpty(cellValue)) {
+				if (attribute.isRequred()) {
+					status.addError(String.format("Row %d: empty '%s' not allowed", row + 1, attribute.getDisplayName()));
+					validRow = false;
+				}
+				continue;
+			}
+
+			String ldapValue = getTypedValue(attribute, cellValue);
+			if (StringHelper.isEmpty(ldapValue)) {
+				status.addError(String.format("Row %d: invalid value '%s' in column '%s'", row + 1, cellValue, attribute.getDisplayName()));
+				validRow = false;
+				continue;
+			}
+
+			attributeDataList.add(new AttributeData(attribute.getName(), ldapValue));
+		}
+
+		return validRow ? attributeDataList : null;
+	}
+
+	private void setDefaultPersonAttributes(GluuCustomPerson person, boolean generatePassword, List<AttributeData> attributeDataList) {
+		if (attributeDataList != null) {
+			for (AttributeData attributeData : attributeDataList) {
+				if (PERSON_PASSWORD_ATTRIBUTE.equalsIgnoreCase(attributeData.getName())) {
+					person.setUserPassword(attributeData.getValue());
+				} else if (PERSON_STATUS_ATTRIBUTE.equalsIgnoreCase(attributeData.getName())) {
+					person.setStatus(GluuStatus.getByValue(attributeData.getValue()));
+				}
+			}
+		}
+
+		if (StringHelper.isEmpty(person.getCommonName())) {
+			person.setCommonName(person.getGivenName() + " " + person.getSurname());
+		} else {
+			person.setCommonName(person.getCommonName() + " " + person.getGivenName() + " " + person.getSurname());
+		}
+		person.setDisplayName(person.getCommonName());
+
+		if (generatePassword && StringHelper.isEmpty(person.getUserPassword())) {
+			person.setUserPassword(RandomStringUtils.randomAlphanumeric(16));
+		}
+	}
+
+	private String getTypedValue(GluuAttribute attribute, String value) {
+		if (AttributeDataType.STRING.equals(attribute.getDataType())) {
+			return value;
+		} else if (AttributeDataType.BOOLEAN.equals(attribute.getDataType())) {
+			GluuBoolean gluuBoolean = GluuBoolean.getByValue(value);
+			if (gluuBoolean != null) {
+				return gluuBoolean.toString();
+			}
+		}
+
+		return null;
+	}
+
+	private String getCellValue(Map<Integer, String> cells, Map<Integer, GluuAttribute> columns, String attributeName) {
+		for (Map.Entry<Integer, GluuAttribute> column : columns.entrySet()) {
+			if (attributeName.equalsIgnoreCase(column.getValue().getName())) {
+				String value = cells.get(column.getKey());
+				return StringHelper.isEmpty(value) ? null : value;
+			}
+		}
+
+		return null;
+	}
+
+	private boolean isGeneratePassword() {
+		for (GluuAttribute attribute : importPersonConfiguration.getAttributes()) {
+			if (attribute.getName().equalsIgnoreCase(PERSON_PASSWORD_ATTRIBUTE) && !attribute.isRequred()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private Map<Integer, GluuAttribute> getColumns(ImportStatus status) {
+		Map<String, GluuAttribute> attributes = new HashMap<String, GluuAttribute>();
+		for (GluuAttribute attribute : importPersonConfiguration.getAttributes()) {
+			attributes.put(attribute.getName(), attribute);
+		}
+
+		Map<Integer, GluuAttribute> columns = new LinkedHashMap<Integer, GluuAttribute>();
+		for (Map.Entry<String, String> column : status.getColumns().entrySet()) {
+			GluuAttribute attribute = attributes.get(column.getValue());
+			if (attribute != null) {
+				columns.put(Integer.valueOf(column.getKey()), attribute);
+			}
+		}
+
+		return columns;
+	}
+
+	private synchronized void storeStatus(ImportStatus status) {
+		File statusFile = new File(getJobFolder(status.getId()), STATUS_FILE);
+		File tmpStatusFile = new File(getJobFolder(status.getId()), STATUS_FILE + ".tmp");
+		try {
+			FileUtils.writeStringToFile(tmpStatusFile, jsonService.objectToJson(status), "UTF-8");
+			if ((statusFile.exists() && !statusFile.delete()) || !tmpStatusFile.renameTo(statusFile)) {
+				log.error("Failed to replace person import status file '{}'", statusFile.getAbsolutePath());
+			}
+		} catch (Exception ex) {
+			log.error("Failed to store person import status file '{}'", statusFile.getAbsolutePath(), ex);
+		}
+	}
+
+	private void removeJobData(ImportStatus status) {
+		File dataFile = new File(getJobFolder(status.getId()), DATA_FILE);
+		if (dataFile.exists() && !dataFile.delete()) {
+			log.error("Failed to remove person import file '{}'", dataFile.getAbsolutePath());
+		}
+	}
+
+	private ImportStatus loadStatus(File jobFolder) {
+		File statusFile = new File(jobFolder, STATUS_FILE);
+		if (!statusFile.isFile()) {
+			return null;
+		}
+
+		try {
+			return jsonService.jsonToObject(FileUtils.readFileToString(statusFile, "UTF-8"), ImportStatus.class);
+		} catch (Exception ex) {
+			log.error("Failed to load person import status file '{}'", statusFile.getAbsolutePath(), ex);
+			return null;
+		}
+	}
+
+	private File getJobFolder(String id) {
+		return new File(getWorkFolder(), id);
+	}
+
+	private File getWorkFolder() {
+		String baseDir = ConfigurationFactory.BASE_DIR == null ? System.getProperty("java.io.tmpdir") : ConfigurationFactory.BASE_DIR + File.separator + "temp";
+
+		return new File(baseDir + File.separator + "person-import");
+	}
+
+}
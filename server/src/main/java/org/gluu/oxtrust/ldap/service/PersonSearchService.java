@@ -0,0 +1,143 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.util.OxTrustConstants;
+import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.persist.model.SearchScope;
+import org.gluu.search.filter.Filter;
+import org.slf4j.Logger;
+import org.xdi.util.OxConstants;
+import org.xdi.util.StringHelper;
+
+/**
+ * Searches persons for admin UI and API. Filter depends on search pattern:
+ * <ul>
+ * <li>empty pattern: all persons</li>
+ * <li>inum (contains '!'): equality on inum</li>
+ * <li>email address (contains '@'): equality on mail and uid</li>
+ * <li>pattern with '*': substring filter on uid, mail and displayName with wildcards where user put them</li>
+ * <li>other patterns: equality on uid and prefix filter on uid, mail, displayName, givenName and sn</li>
+ * </ul>
+ * Equality and prefix filters can be served by default directory indexes, substring filter with leading '*' is used
+ * only if user asked for it. Results are always limited, lists for UI contain only LIST_VIEW_ATTRIBUTES.
+ */
+@ApplicationScoped
+@Named("personSearchService")
+public class PersonSearchService {
+
+	/**
+	 * Attributes needed to show persons in lists
+	 */
+	public static final String[] LIST_VIEW_ATTRIBUTES = new String[] { OxConstants.INUM, OxTrustConstants.iname, OxConstants.UID,
+			OxTrustConstants.displayName, OxTrustConstants.mail, OxTrustConstants.gluuStatus };
+
+	public static final int DEFAULT_SIZE_LIMIT = 200;
+	public static final int MAX_PAGE_SIZE = 500;
+
+	private static final int CHUNK_SIZE = 100;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private PersistenceEntryManager ldapEntryManager;
+
+	@Inject
+	private IPersonService personService;
+
+	/**
+	 * Search persons
+	 *
+	 * @param pattern
+	 *            Search pattern
+	 * @param sizeLimit
+	 *            Maximum count of returned persons
+	 * @return List of persons with LIST_VIEW_ATTRIBUTES only
+	 */
+	public List<GluuCustomPerson> searchPersons(String pattern, int sizeLimit) {
+		return searchPersons(pattern, sizeLimit, LIST_VIEW_ATTRIBUTES);
+	}
+
+	/**
+	 * Search persons
+	 *
+	 * @param pattern
+	 *            Search pattern
+	 * @param sizeLimit
+	 *            Maximum count of returned persons
+	 * @param returnAttributes
+	 *            Attributes to load or null to load all attributes
+	 * @return List of persons
+	 */
+	public List<GluuCustomPerson> searchPersons(String pattern, int sizeLimit, String[] returnAttributes) {
+		Filter searchFilter = createSearchFilter(pattern);
+		log.debug("Searching persons with filter: {}", searchFilter);
+
+		return ldapEntryManager.findEntries(personService.getDnForPerson(null), GluuCustomPerson.class, searchFilter, SearchScope.SUB,
+				returnAttributes, null, 0, sizeLimit, Math.min(sizeLimit, CHUNK_SIZE));
+	}
+
+	public Filter createSearchFilter(String pattern) {
+		String value = pattern == null ? "" : pattern.trim();
+		if (StringHelper.isEmpty(value) || "*".equals(value)) {
+			return Filter.createEqualityFilter(OxConstants.OBJECT_CLASS, OxTrustConstants.objectClassPerson);
+		}
+
+		if (value.contains("*")) {
+			return createWildcardFilter(value);
+		}
+
+		if (value.contains("!")) {
+			return Filter.createEqualityFilter(OxConstants.INUM, value);
+		}
+
+		if (value.contains("@")) {
+			return Filter.createORFilter(Filter.createEqualityFilter(OxTrustConstants.mail, value),
+					Filter.createEqualityFilter(OxConstants.UID, value));
+		}
+
+		return Filter.createORFilter(Filter.createEqualityFilter(OxConstants.UID, value),
+				Filter.createSubstringFilter(OxConstants.UID, value, null, null),
+				Filter.createSubstringFilter(OxTrustConstants.mail, value, null, null),
+				Filter.createSubstringFilter(OxTrustConstants.displayName, value, null, null),
+				Filter.createSubstringFilter(OxTrustConstants.givenName, value, null, null),
+				Filter.createSubstringFilter(OxTrustConstants.sn, value, null, null));
+	}
+
+	private Filter createWildcardFilter(String value) {
+		String[] parts = value.split("\\*", -1);
+
+		String subInitial = StringHelper.isEmpty(parts[0]) ? null : parts[0];
+		String subFinal = StringHelper.isEmpty(parts[parts.length - 1]) ? null : parts[parts.length - 1];
+
+		List<String> subAny = new ArrayList<String>();
+		for (int i = 1; i < parts.length - 1; i++) {
+			if (StringHelper.isNotEmpty(parts[i])) {
+				subAny.add(parts[i]);
+			}
+		}
+		String[] subAnyArray = subAny.isEmpty() ? null : subAny.toArray(new String[subAny.size()]);
+
+		if ((subInitial == null) && (subFinal == null) && (subAnyArray == null)) {
+			return Filter.createEqualityFilter(OxConstants.OBJECT_CLASS, OxTrustConstants.objectClassPerson);
+		}
+
+		return Filter.createORFilter(Filter.createSubstringFilter(OxConstants.UID, subInitial, subAnyArray, subFinal),
+				Filter.createSubstringFilter(OxTrustConstants.mail, subInitial, subAnyArray, subFinal),
+				Filter.createSubstringFilter(OxTrustConstants.displayName, subInitial, subAnyArray, subFinal));
+	}
+
+}
@@ -7,7 +7,6 @@
 package org.gluu.oxtrust.ldap.service;
 
 import java.io.Serializable;
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -31,7 +30,6 @@ import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.util.ArrayHelper;
-import org.xdi.util.INumGenerator;
 import org.xdi.util.OxConstants;
 import org.xdi.util.StringHelper;
 
@@ -61,6 +59,9 @@ public class PersonService implements Serializable, IPersonService {
     @Inject
     private OrganizationService organizationService;
 
+    @Inject
+    private InumAllocator inumAllocator;
+
     private List<GluuCustomAttribute> mandatoryAttributes;
 
     /* (non-Javadoc)
@@ -348,27 +349,27 @@ public class PersonService implements Serializable, IPersonService {
      */
     @Override
     public String generateInumForNewPerson() {
-        GluuCustomPerson person = null;
-        String newInum = null;
-
-        do {
-            newInum = generateInumForNewPersonImpl();
-            String newDn = getDnForPerson(newInum);
-            person = new GluuCustomPerson();
-            person.setDn(newDn);
-        } while (containsPerson(person));
-        return newInum;
+        return getInumPrefixForPerson() + inumAllocator.allocate();
     }
 
-    /**
-     * Generate new inum for person
-     *
-     * @return New inum for person
-     * @throws Exception
+    /* (non-Javadoc)
+     * @see org.gluu.oxtrust.ldap.service.IPersonService#generateInumsForNewPersons(int)
      */
-    private String generateInumForNewPersonImpl() {
+    @Override
+    public List<String> generateInumsForNewPersons(int count) {
+        String prefix = getInumPrefixForPerson();
+
+        List<String> result = new ArrayList<String>(count);
+        for (String suffix : inumAllocator.allocate(count)) {
+            result.add(prefix + suffix);
+        }
+
+        return result;
+    }
+
+    private String getInumPrefixForPerson() {
         String orgInum = organizationService.getInumForOrganization();
-        return orgInum + OxTrustConstants.inumDelimiter + OxTrustConstants.INUM_PERSON_OBJECTTYPE + OxTrustConstants.inumDelimiter + generateInum();
+        return orgInum + OxTrustConstants.inumDelimiter + OxTrustConstants.INUM_PERSON_OBJECTTYPE + OxTrustConstants.inumDelimiter;
     }
 
     /* (non-Javadoc)
@@ -379,23 +380,6 @@ public class PersonService implements Serializable, IPersonService {
         return String.format("%s*person*%s", appConfiguration.getOrgIname(), uid);
     }
 
-    private String generateInum() {
-        String inum = "";
-        while (true) {
-            inum = INumGenerator.generate(4);
-            try {
-                BigInteger value = new BigInteger(inum.replace(".", ""), 16);
-                if (value.doubleValue() < 7.0) {
-                    continue;
-                }
-            } catch (Exception ex) {
-                log.error("Error generating inum: ", ex);
-            }
-            break;
-        }
-        return inum;
-    }
-
     /* (non-Javadoc)
      * @see org.gluu.oxtrust.ldap.service.IPersonService#getDnForPerson(java.lang.String)
      */
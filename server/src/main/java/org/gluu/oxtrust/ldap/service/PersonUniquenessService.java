@@ -0,0 +1,183 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.service.cdi.event.PersonLookupTaskEvent;
+import org.gluu.oxtrust.util.OxTrustConstants;
+import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.search.filter.Filter;
+import org.slf4j.Logger;
+import org.xdi.service.cdi.async.Asynchronous;
+import org.xdi.util.OxConstants;
+import org.xdi.util.StringHelper;
+
+/**
+ * Checks if values of unique person attributes (uid, mail) are already used. Values are looked up with OR filters of
+ * at most MAX_FILTER_SIZE values, up to MAX_THREADS filters are executed concurrently by asynchronous event observer.
+ * Only conflicting values are returned.
+ */
+@ApplicationScoped
+@Named("personUniquenessService")
+public class PersonUniquenessService {
+
+	public static final int MAX_FILTER_SIZE = 100;
+	public static final int MAX_THREADS = 4;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private PersistenceEntryManager ldapEntryManager;
+
+	@Inject
+	private IPersonService personService;
+
+	@Inject
+	private Event<PersonLookupTaskEvent> personLookupTaskEvent;
+
+	@Asynchronous
+	public void processPersonLookupTaskEvent(@Observes PersonLookupTaskEvent personLookupTaskEvent) {
+		personLookupTaskEvent.getTask().run();
+	}
+
+	public Set<String> findExistingUids(Collection<String> uids) throws Exception {
+		return findExistingValues(OxConstants.UID, uids, null);
+	}
+
+	public Set<String> findExistingMails(Collection<String> mails) throws Exception {
+		return findExistingValues(OxTrustConstants.mail, mails, null);
+	}
+
+	public boolean isUidUsed(String uid, String excludeInum) throws Exception {
+		return !findExistingValues(OxConstants.UID, Collections.singletonList(uid), excludeInum).isEmpty();
+	}
+
+	public boolean isMailUsed(String mail, String excludeInum) throws Exception {
+		return !findExistingValues(OxTrustConstants.mail, Collections.singletonList(mail), excludeInum).isEmpty();
+	}
+
+	/**
+	 * Find values which are already used by persons
+	 *
+	 * @param attributeName
+	 *            Attribute name
+	 * @param values
+	 *            Values to check. Values are compared ignoring case
+	 * @param excludeInum
+	 *            Inum of person which can own checked values or null
+	 * @return Values from given collection which are used by other persons
+	 */
+	public Set<String> findExistingValues(final String attributeName, Collection<String> values, final String excludeInum) throws Exception {
+		Map<String, String> valuesByKey = new LinkedHashMap<String, String>();
+		for (String value : values) {
+			if (StringHelper.isNotEmpty(value)) {
+				valuesByKey.put(value.toLowerCase(), value);
+			}
+		}
+
+		Set<String> result = new HashSet<String>();
+		if (valuesByKey.isEmpty()) {
+			return result;
+		}
+
+		List<List<String>> chunks = new ArrayList<List<String>>();
+		List<String> chunk = null;
+		for (String value : valuesByKey.values()) {
+			if ((chunk == null) || (chunk.size() >= MAX_FILTER_SIZE)) {
+				chunk = new ArrayList<String>(MAX_FILTER_SIZE);
+				chunks.add(chunk);
+			}
+			chunk.add(value);
+		}
+
+		// Single lookup is done in caller thread
+		if (chunks.size() == 1) {
+			addExistingValues(result, valuesByKey, lookupValues(attributeName, chunks.get(0), excludeInum));
+			return result;
+		}
+
+		// Lookups are done in groups of MAX_THREADS. Last lookup of group is done in caller thread
+		for (int start = 0; start < chunks.size(); start += MAX_THREADS) {
+			List<List<String>> group = chunks.subList(start, Math.min(start + MAX_THREADS, chunks.size()));
+
+			List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>(group.size() - 1);
+			for (final List<String> chunkValues : group.subList(0, group.size() - 1)) {
+				FutureTask<List<String>> future = new FutureTask<List<String>>(new Callable<List<String>>() {
+					@Override
+					public List<String> call() throws Exception {
+						return lookupValues(attributeName, chunkValues, excludeInum);
+					}
+				});
+				personLookupTaskEvent.fire(new PersonLookupTaskEvent(future));
+				futures.add(future);
+			}
+
+			addExistingValues(result, valuesByKey, lookupValues(attributeName, group.get(group.size() - 1), excludeInum));
+			for (Future<List<String>> future : futures) {
+				addExistingValues(result, valuesByKey, future.get());
+			}
+		}
+
+		log.debug("Checked {} values of '{}' in {} lookups, found {} existing", valuesByKey.size(), attributeName, chunks.size(), result.size());
+
+		return result;
+	}
+
+	private List<String> lookupValues(String attributeName, List<String> values, String excludeInum) {
+		List<Filter> filters = new ArrayList<Filter>(values.size());
+		for (String value : values) {
+			filters.add(Filter.createEqualityFilter(attributeName, value));
+		}
+		Filter filter = filters.size() == 1 ? filters.get(0) : Filter.createORFilter(filters);
+
+		List<GluuCustomPerson> persons = ldapEntryManager.findEntries(personService.getDnForPerson(null), GluuCustomPerson.class, filter,
+				new String[] { OxConstants.INUM, attributeName });
+
+		List<String> result = new ArrayList<String>();
+		for (GluuCustomPerson person : persons) {
+			if ((excludeInum != null) && excludeInum.equals(person.getInum())) {
+				continue;
+			}
+
+			String[] personValues = person.getAttributeArray(attributeName);
+			if (personValues != null) {
+				Collections.addAll(result, personValues);
+			}
+		}
+
+		return result;
+	}
+
+	private void addExistingValues(Set<String> result, Map<String, String> valuesByKey, List<String> existingValues) {
+		for (String existingValue : existingValues) {
+			String value = valuesByKey.get(existingValue.toLowerCase());
+			if (value != null) {
+				result.add(value);
+			}
+		}
+	}
+
+}
@@ -15,40 +15,38 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.validation.Schema;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
-import org.apache.commons.httpclient.protocol.Protocol;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.velocity.VelocityContext;
 import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.gluu.oxtrust.ldap.service.TrustConfigurationCache.TrustConfiguration;
 import org.gluu.oxtrust.model.GluuAppliance;
 import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuMetadataSourceType;
 import org.gluu.oxtrust.model.GluuSAMLFederationProposal;
 import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
+import org.gluu.oxtrust.model.MetadataFilter;
 import org.gluu.oxtrust.model.ProfileConfiguration;
 import org.gluu.oxtrust.model.SubversionFile;
-import org.gluu.oxtrust.util.EasyCASSLProtocolSocketFactory;
-import org.gluu.saml.metadata.SAMLMetadataParser;
-import org.opensaml.xml.schema.SchemaBuilder;
-import org.opensaml.xml.schema.SchemaBuilder.SchemaLanguage;
+import org.gluu.oxtrust.util.MetadataScanner;
 import org.slf4j.Logger;
 import org.w3c.dom.Document;
 import org.xdi.config.oxtrust.AppConfiguration;
@@ -67,11 +65,8 @@ import org.xdi.util.OxConstants;
 import org.xdi.util.StringHelper;
 import org.xdi.util.Util;
 import org.xdi.util.exception.InvalidConfigurationException;
-import org.xdi.util.io.FileUploadWrapper;
-import org.xdi.util.io.HTTPFileDownloader;
 import org.xdi.util.security.StringEncrypter.EncryptionException;
 import org.xdi.xml.GluuErrorHandler;
-import org.xdi.xml.XMLValidator;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -110,6 +105,7 @@ public class Shibboleth3ConfService implements Serializable {
 	private static final String SHIB3_SAML_NAMEID_FILE = "saml-nameid.xml";
 
 	private static final String SHIB3_SP_METADATA_FILE_PATTERN = "%s-sp-metadata.xml";
+
 	// private static final String SHIB3_IDP_METADATA_FILE_PATTERN = "%s-idp-metadata.xml";
 
 	public static final String PUBLIC_CERTIFICATE_START_LINE = "-----BEGIN CERTIFICATE-----";
@@ -129,6 +125,32 @@ public class Shibboleth3ConfService implements Serializable {
 
 	public static final String SHIB3_IDP_SP_CERT_FILE = "spcert.crt";
 
+	/**
+	 * Result of SP metadata download
+	 */
+	public static class SpMetadataDownloadResult {
+
+		private final MetadataDownloadService.Status status;
+		private final String tempFileName;
+
+		private SpMetadataDownloadResult(MetadataDownloadService.Status status, String tempFileName) {
+			this.status = status;
+			this.tempFileName = tempFileName;
+		}
+
+		public MetadataDownloadService.Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return Name of temporary file with downloaded metadata or null if status isn't DOWNLOADED
+		 */
+		public String getTempFileName() {
+			return tempFileName;
+		}
+
+	}
+
 	@Inject
 	private AttributeService attributeService;
 
@@ -156,6 +178,12 @@ public class Shibboleth3ConfService implements Serializable {
 	@Inject
 	private XmlService xmlService;
 
+	@Inject
+	private MetadataSchemaValidator metadataSchemaValidator;
+
+	@Inject
+	private MetadataDownloadService metadataDownloadService;
+
 	@Inject
 	private ProfileConfigurationService profileConfigurationService;
 
@@ -171,6 +199,12 @@ public class Shibboleth3ConfService implements Serializable {
 	@Inject
 	private TrustService trustService;
 
+	@Inject
+	private MetadataIndexService metadataIndexService;
+
+	@Inject
+	private TrustConfigurationCache trustConfigurationCache;
+
 	/*
 	 * Generate relying-party.xml, attribute-filter.xml, attribute-resolver.xml
 	 */
@@ -227,19 +261,19 @@ public class Shibboleth3ConfService implements Serializable {
 		result = (metadataProviders != null) && (attributeFilter != null) && (attributeResolver != null) && (relyingParty != null)  && (casProtocol != null) && (shibConfig != null);
 
 		// Write metadata-providers.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_METADATA_PROVIDERS_FILE, metadataProviders);
+		result &= writeConfFileIfChanged(idpConfFolder + SHIB3_IDP_METADATA_PROVIDERS_FILE, metadataProviders);
 		// Write attribute-resolver.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_ATTRIBUTE_RESOLVER_FILE, attributeResolver);
+		result &= writeConfFileIfChanged(idpConfFolder + SHIB3_IDP_ATTRIBUTE_RESOLVER_FILE, attributeResolver);
 		// Write attribute-filter.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_ATTRIBUTE_FILTER_FILE, attributeFilter);
+		result &= writeConfFileIfChanged(idpConfFolder + SHIB3_IDP_ATTRIBUTE_FILTER_FILE, attributeFilter);
 		// Write relying-party.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_RELYING_PARTY_FILE, relyingParty);
+		result &= writeConfFileIfChanged(idpConfFolder + SHIB3_IDP_RELYING_PARTY_FILE, relyingParty);
 		// Write cas-protocol.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_CAS_PROTOCOL_FILE, casProtocol);
+		result &= writeConfFileIfChanged(idpConfFolder + SHIB3_IDP_CAS_PROTOCOL_FILE, casProtocol);
 		// Write shibboleth2.xml
-		result &= templateService.writeConfFile(getSpShibboleth3FilePath(), shibConfig);
+		result &= writeConfFileIfChanged(getSpShibboleth3FilePath(), shibConfig);
 		// Write saml-nameid.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_SAML_NAMEID_FILE, samlnamedConfig);
+		result &= writeConfFileIfChanged(idpConfFolder + SHIB3_SAML_NAMEID_FILE, samlnamedConfig);
 		
 		// Write handler.xml
 		// result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_PROFILE_HADLER, profileHandler);
@@ -248,11 +282,33 @@ public class Shibboleth3ConfService implements Serializable {
 		// result &= templateService.writeConfFile(spConfFolder +
 		// SHIB2_SP_ATTRIBUTE_MAP, attributeMap);
 
+		metadataIndexService.flush();
+
 		log.info(">>>>>>>>>> LEAVING Shibboleth3ConfService.generateConfigurationFiles()...");
 
 		return result;
 	}
 
+	/*
+	 * Write configuration file only if content differs from the one on disk.
+	 * This prevents IDP from reloading services which configuration wasn't changed
+	 */
+	private boolean writeConfFileIfChanged(String confFile, String conf) {
+		File file = new File(confFile);
+		if ((conf != null) && file.isFile() && (file.length() <= conf.length() * 4L)) {
+			try {
+				if (conf.equals(FileUtils.readFileToString(file, "UTF-8"))) {
+					log.debug("IDP configuration file '{}' wasn't changed", confFile);
+					return true;
+				}
+			} catch (IOException ex) {
+				log.warn("Failed to read IDP configuration file '{}'", confFile, ex);
+			}
+		}
+
+		return templateService.writeConfFile(confFile, conf);
+	}
+
 	/*
 	 * Init attributes
 	 */
@@ -318,8 +374,12 @@ public class Shibboleth3ConfService implements Serializable {
 		// entityIds defined in each TR.
 		Map<String, List<String>> trustEntityIds = new HashMap<String, List<String>>();
 
+		// DNs of all trust relationships to drop cached configuration of removed ones
+		Set<String> trustDns = new HashSet<String>();
+
 		int id = 1;
 		for (GluuSAMLTrustRelationship trustRelationship : trustRelationships) {
+			trustDns.add(trustRelationship.getDn());
 
 			boolean isPartOfFederation = !(trustRelationship.getSpMetaDataSourceType().equals(GluuMetadataSourceType.URI) || trustRelationship.getSpMetaDataSourceType().equals(GluuMetadataSourceType.FILE));
 
@@ -332,26 +392,21 @@ public class Shibboleth3ConfService implements Serializable {
 				String idpMetadataFolder = getIdpMetadataDir();
 
 				File metadataFile = new File(idpMetadataFolder + trustRelationship.getSpMetaDataFN());
-				List<String> entityIds = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+				TrustConfiguration trustConfiguration = getTrustConfiguration(trustRelationship, metadataFile);
 
 				// if for some reason metadata is corrupted or missing - mark trust relationship INACTIVE
 				// user will be able to fix this in UI
-				if (entityIds == null) {
+				if (trustConfiguration == null) {
 					trustRelationship.setStatus(GluuStatus.INACTIVE);
 					trustService.updateTrustRelationship(trustRelationship);
 					continue;
 				}
 
-				trustEntityIds.put(trustRelationship.getInum(), entityIds);
-
-				try {
-
-					filterService.parseFilters(trustRelationship);
-					profileConfigurationService.parseProfileConfigurations(trustRelationship);
-
-				} catch (Exception e) {
-					log.error("Failed to parse stored metadataFilter configuration for trustRelationship " + trustRelationship.getDn(), e);
-					e.printStackTrace();
+				trustEntityIds.put(trustRelationship.getInum(), new ArrayList<String>(trustConfiguration.getEntityIds()));
+				trustRelationship.setMetadataFilters(new HashMap<String, MetadataFilter>(trustConfiguration.getMetadataFilters()));
+				trustRelationship.setProfileConfigurations(new HashMap<String, ProfileConfiguration>(trustConfiguration.getProfileConfigurations()));
+				if (trustConfiguration.getOrderedMetadataFilters() != null) {
+					trustRelationship.setGluuSAMLMetaDataFilter(new ArrayList<String>(trustConfiguration.getOrderedMetadataFilters()));
 				}
 
 				if (trustRelationship.getMetadataFilters().get("signatureValidation") != null) {
@@ -366,43 +421,15 @@ public class Shibboleth3ConfService implements Serializable {
 					trustEngines.add(trustEngine);
 				}
 
-				// If there is an intrusive filter - push it to the end of the list.
-				if (trustRelationship.getGluuSAMLMetaDataFilter() != null) {
-
-					List<String> filtersList = new ArrayList<String>();
-					String entityRoleWhiteList = null;
-					for (String filterXML : trustRelationship.getGluuSAMLMetaDataFilter()) {
-
-						Document xmlDocument;
-
-						try {
-
-							xmlDocument = xmlService.getXmlDocument(filterXML.getBytes());
-
-						} catch (Exception e) {
-							log.error("GluuSAMLMetaDataFilter contains invalid value.", e);
-							e.printStackTrace();
-							continue;
-						}
-
-						if (xmlDocument.getFirstChild().getAttributes().getNamedItem("xsi:type").getNodeValue().equals(FilterService.ENTITY_ROLE_WHITE_LIST_TYPE)) {
-							entityRoleWhiteList = filterXML;
-							continue;
-						}
-
-						filtersList.add(filterXML);
-					}
-
-					if (entityRoleWhiteList != null) {
-						filtersList.add(entityRoleWhiteList);
-					}
-
-					trustRelationship.setGluuSAMLMetaDataFilter(filtersList);
-				}
-
 			} else {
                                 // add Part Of Federation
-				String federationInum = trustService.getTrustContainerFederation(trustRelationship).getInum();
+				GluuSAMLTrustRelationship federation = trustService.getTrustContainerFederation(trustRelationship);
+				if (federation == null) {
+					log.warn("Federation of trust relationship '{}' doesn't exist. Skipping trust relationship", trustRelationship.getDn());
+					continue;
+				}
+
+				String federationInum = federation.getInum();
 
 				if (deconstructedMap.get(federationInum) == null) {
 					deconstructedMap.put(federationInum, new ArrayList<String>());
@@ -414,6 +441,8 @@ public class Shibboleth3ConfService implements Serializable {
 			}
 		}
 
+		trustConfigurationCache.retain(trustDns);
+
 		for (String trustRelationshipInum : trustEntityIds.keySet()) {
 			List<String> federatedSites = deconstructedMap.get(trustRelationshipInum);
 			if (federatedSites != null) {
@@ -434,6 +463,82 @@ public class Shibboleth3ConfService implements Serializable {
 		return trustParams;
 	}
 
+	/*
+	 * Get entityIDs, parsed filters and profile configurations of trust relationship. They are prepared again only
+	 * if trust relationship metadata file or stored filters were changed since last generation
+	 */
+	private TrustConfiguration getTrustConfiguration(GluuSAMLTrustRelationship trustRelationship, File metadataFile) {
+		long metadataLastModified = metadataFile.lastModified();
+		String metadataDigest = metadataIndexService.getDigest(metadataFile);
+		if (metadataDigest == null) {
+			return null;
+		}
+
+		TrustConfiguration trustConfiguration = trustConfigurationCache.get(trustRelationship, metadataLastModified, metadataDigest);
+		if (trustConfiguration != null) {
+			return trustConfiguration;
+		}
+
+		List<String> entityIds = metadataIndexService.getEntityIds(metadataFile);
+		if (entityIds == null) {
+			return null;
+		}
+
+		boolean parsed = true;
+		try {
+
+			filterService.parseFilters(trustRelationship);
+			profileConfigurationService.parseProfileConfigurations(trustRelationship);
+
+		} catch (Exception e) {
+			log.error("Failed to parse stored metadataFilter configuration for trustRelationship " + trustRelationship.getDn(), e);
+			parsed = false;
+		}
+
+		// If there is an intrusive filter - push it to the end of the list.
+		List<String> filtersList = null;
+		if (trustRelationship.getGluuSAMLMetaDataFilter() != null) {
+
+			filtersList = new ArrayList<String>();
+			String entityRoleWhiteList = null;
+			for (String filterXML : trustRelationship.getGluuSAMLMetaDataFilter()) {
+
+				Document xmlDocument;
+
+				try {
+
+					xmlDocument = xmlService.getXmlDocument(filterXML.getBytes());
+
+				} catch (Exception e) {
+					log.error("GluuSAMLMetaDataFilter contains invalid value.", e);
+					parsed = false;
+					continue;
+				}
+
+				if (xmlDocument.getFirstChild().getAttributes().getNamedItem("xsi:type").getNodeValue().equals(FilterService.ENTITY_ROLE_WHITE_LIST_TYPE)) {
+					entityRoleWhiteList = filterXML;
+					continue;
+				}
+
+				filtersList.add(filterXML);
+			}
+
+			if (entityRoleWhiteList != null) {
+				filtersList.add(entityRoleWhiteList);
+			}
+		}
+
+		trustConfiguration = new TrustConfiguration(entityIds, trustRelationship.getMetadataFilters(), trustRelationship.getProfileConfigurations(),
+				filtersList);
+
+		// Invalid configuration is prepared again on next generation so errors are reported again
+		if (parsed) {
+			trustConfigurationCache.put(trustRelationship, metadataLastModified, metadataDigest, trustConfiguration);
+		}
+
+		return trustConfiguration;
+	}
+
 	private HashMap<String, Object> initAttributeParamMap(List<GluuSAMLTrustRelationship> trustRelationships) {
 
 		HashMap<String, Object> attrParams = new HashMap<String, Object>();
@@ -765,33 +870,44 @@ public class Shibboleth3ConfService implements Serializable {
 	}
 
 	public String saveSpMetadataFile(String uri, String spMetadataFileName) {
+		return downloadSpMetadataFile(uri, spMetadataFileName, false).getTempFileName();
+	}
+
+	/**
+	 * Download SP metadata to temporary folder for validation
+	 *
+	 * @param uri
+	 *            Metadata URL
+	 * @param spMetadataFileName
+	 *            Name of current metadata file of trust relationship
+	 * @param conditional
+	 *            Don't store metadata if it wasn't changed since it was downloaded into current metadata file
+	 * @return Download result. Status is NOT_MODIFIED only for conditional download which found no changes
+	 */
+	public SpMetadataDownloadResult downloadSpMetadataFile(String uri, String spMetadataFileName, boolean conditional) {
 
 		if (StringHelper.isEmpty(uri)) {
-			return null;
+			return new SpMetadataDownloadResult(MetadataDownloadService.Status.FAILED, null);
 		}
 
-		HTTPFileDownloader.setEasyhttps(new Protocol("https", new EasyCASSLProtocolSocketFactory(), 443));
-		String spMetadataFileContent = HTTPFileDownloader.getResource(uri, "application/xml, text/xml", null, null);
-
-		if (StringHelper.isEmpty(spMetadataFileContent)) {
-			return null;
+		if (appConfiguration.getShibboleth3IdpRootDir() == null) {
+			String errorMessage = "Failed to save SP meta-data file due to undefined IDP root folder";
+			log.error(errorMessage);
+			throw new InvalidConfigurationException(errorMessage);
 		}
 
-		// Save new file
-		ByteArrayInputStream is;
-		try {
-			byte[] spMetadataFileContentBytes = spMetadataFileContent.getBytes("UTF-8");
-			is = new ByteArrayInputStream(spMetadataFileContentBytes);
-		} catch (UnsupportedEncodingException ex) {
-                        log.error("saveSpMetadataFile exception", ex);
-			ex.printStackTrace();
-			return null;
-		}
+		String idpMetadataTempFolder = getIdpMetadataTempDir();
+		String tempFileName = getTempMetadataFilename(idpMetadataTempFolder, spMetadataFileName);
+		File spMetadataFile = new File(idpMetadataTempFolder + tempFileName);
+		File currentSpMetadataFile = conditional ? new File(getIdpMetadataDir() + spMetadataFileName) : null;
 
-		FileUploadWrapper tmpfileWrapper = new FileUploadWrapper();
-		tmpfileWrapper.setStream(is);
+		MetadataDownloadService.DownloadResult result = metadataDownloadService.download(uri, spMetadataFile, currentSpMetadataFile);
+		if (MetadataDownloadService.Status.NOT_MODIFIED == result.getStatus()) {
+			log.info("SP meta-data '{}' wasn't changed since last download", uri);
+		}
 
-		return saveSpMetadataFile(spMetadataFileName, tmpfileWrapper.getStream());
+		return new SpMetadataDownloadResult(result.getStatus(),
+				MetadataDownloadService.Status.DOWNLOADED == result.getStatus() ? tempFileName : null);
 	}
 
 	public String generateSpAttributeMapFile(GluuSAMLTrustRelationship trustRelationship) {
@@ -867,7 +983,7 @@ public class Shibboleth3ConfService implements Serializable {
 
 		String idpMetadataFolder = getIdpMetadataDir();
 		File metadataFile = new File(idpMetadataFolder + spMetadataFileName);
-		List<String> entityId = SAMLMetadataParser.getSpEntityIdFromMetadataFile(metadataFile);
+		List<String> entityId = metadataIndexService.getSpEntityIds(metadataFile);
 
 		return (entityId != null) && !entityId.isEmpty();
 	}
@@ -993,43 +1109,8 @@ public class Shibboleth3ConfService implements Serializable {
 		}
 
 		File spMetaDataFile = new File(getSpMetadataFilePath(spMetaDataFN));
-		InputStream is = null;
-		InputStreamReader isr = null;
-		Document xmlDocument = null;
 
-		try {
-			is = FileUtils.openInputStream(spMetaDataFile);
-			isr = new InputStreamReader(is, "UTF-8");
-			try {
-				xmlDocument = xmlService.getXmlDocument(new InputSource(isr));
-			} catch (Exception ex) {
-				log.error("Failed to parse metadata file '{}'", spMetaDataFile.getAbsolutePath(), ex);
-				ex.printStackTrace();
-			}
-		} catch (IOException ex) {
-			log.error("Failed to read metadata file '{}'", spMetaDataFile.getAbsolutePath(), ex);
-			ex.printStackTrace();
-		} finally {
-			IOUtils.closeQuietly(isr);
-			IOUtils.closeQuietly(is);
-		}
-
-		if (xmlDocument == null) {
-			return false;
-		}
-
-		XPathFactory factory = XPathFactory.newInstance();
-		XPath xPath = factory.newXPath();
-
-		String federationTag = null;
-		try {
-			federationTag = xPath.compile("count(//*[local-name() = 'EntitiesDescriptor'])").evaluate(xmlDocument);
-		} catch (XPathExpressionException ex) {
-			log.error("Failed to find IDP metadata file in relaying party file '{}'", spMetaDataFile.getAbsolutePath(), ex);
-			ex.printStackTrace();
-		}
-
-		return Integer.parseInt(federationTag) > 0;
+		return MetadataScanner.isFederation(spMetaDataFile);
 	}
 
 	public boolean generateIdpConfigurationFiles() {
@@ -1106,7 +1187,8 @@ public class Shibboleth3ConfService implements Serializable {
 				}
 			})) {
 
-				if (metadata.getName().equals(SHIB3_IDP_IDP_METADATA_FILE) || trustRelationExists(metadata.getName())) {
+				if (metadata.getName().equals(SHIB3_IDP_IDP_METADATA_FILE) || metadata.getName().startsWith(MetadataIndexService.METADATA_INDEX_FILE)
+						|| trustRelationExists(metadata.getName())) {
 					continue;
 				}
 
@@ -1220,7 +1302,7 @@ public class Shibboleth3ConfService implements Serializable {
 
 		String metadataFolder = getIdpMetadataDir();
 		File metadataFile = new File(metadataFolder + spMetaDataFN);
-		List<String> entityId = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+		List<String> entityId = metadataIndexService.getEntityIds(metadataFile);
 		return (entityId != null) && !entityId.isEmpty();
 	}
 
@@ -1295,26 +1377,20 @@ public class Shibboleth3ConfService implements Serializable {
 			return false;
 		}
 
-		String metadataFileContent = HTTPFileDownloader.getResource(spMetaDataURL, "application/xml, text/xml", null, null);
-
-		if (StringHelper.isEmpty(metadataFileContent)) {
-			return false;
+		if (appConfiguration.getShibboleth3FederationRootDir() == null) {
+			throw new InvalidConfigurationException("Failed to save meta-data file due to undefined federation root folder");
 		}
 
-		// Save new file
-		ByteArrayInputStream is;
-		try {
-			byte[] metadataFileContentBytes = metadataFileContent.getBytes("UTF-8");
-			is = new ByteArrayInputStream(metadataFileContentBytes);
-		} catch (UnsupportedEncodingException ex) {
-			ex.printStackTrace();
-			return false;
+		String idpMetadataFolderName = getIdpMetadataDir();
+		File idpMetadataFolder = new File(idpMetadataFolderName);
+		if (!idpMetadataFolder.exists()) {
+			idpMetadataFolder.mkdirs();
 		}
+		File metadataFile = new File(idpMetadataFolderName + metadataFileName);
 
-		FileUploadWrapper tmpfileWrapper = new FileUploadWrapper();
-		tmpfileWrapper.setStream(is);
+		MetadataDownloadService.DownloadResult result = metadataDownloadService.download(spMetaDataURL, metadataFile, metadataFile);
 
-		return saveMetadataFile(metadataFileName, tmpfileWrapper.getStream());
+		return MetadataDownloadService.Status.FAILED != result.getStatus();
 	}
 
 	/**
@@ -1402,21 +1478,7 @@ public class Shibboleth3ConfService implements Serializable {
          * @return GluuErrorHandler
 	 */
 	public GluuErrorHandler validateMetadata(InputStream stream) throws ParserConfigurationException, SAXException, IOException {
-                Schema schema;
-                try {
-                    String idpTemplatesLocation = configurationFactory.getIDPTemplatesLocation();
-                    // String schemaDir = OxTrustConfiguration.DIR + "shibboleth3" + File.separator + "idp" + File.separator + "schema" + File.separator;
-                    String schemaDir = idpTemplatesLocation + "shibboleth3" + File.separator + "idp" + File.separator + "schema" + File.separator;
-                    schema = SchemaBuilder.buildSchema(SchemaLanguage.XML, schemaDir);
-                } catch (Exception e) {
-                    // Schema build error 
-                    final List<String> validationLog = new ArrayList<String>();
-                    validationLog.add(GluuErrorHandler.SCHEMA_CREATING_ERROR_MESSAGE);
-                    validationLog.add(e.getMessage());
-                    // return internal error
-                    return new GluuErrorHandler(false, true, validationLog);
-                }
-		return XMLValidator.validateMetadata(stream, schema);
+		return metadataSchemaValidator.validateMetadata(stream);
 	}
 
 	public  boolean existsResourceUri(String URLName) {
@@ -1521,7 +1583,6 @@ public class Shibboleth3ConfService implements Serializable {
 	 * @return
 	 */
 	public boolean isFederation(GluuSAMLTrustRelationship trustRelationship) {
-	    //TODO: optimize this method. should not take so long
 		return isFederationMetadata(trustRelationship.getSpMetaDataFN());
 	}
         
@@ -0,0 +1,198 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
+import org.gluu.oxtrust.service.cdi.event.Shibboleth3ConfUpdateEvent;
+import org.slf4j.Logger;
+import org.xdi.config.oxtrust.AppConfiguration;
+import org.xdi.service.cdi.async.Asynchronous;
+import org.xdi.service.cdi.event.Scheduled;
+import org.xdi.service.timer.event.TimerEvent;
+import org.xdi.service.timer.schedule.TimerSchedule;
+
+/**
+ * Regenerates IDP configuration files outside of user requests. Update requests coming within a short period of
+ * time are coalesced into one generation, and only one generation runs at a time.
+ *
+ * Quiet period (in seconds) after the last request can be adjusted with system property "gluu.idp.conf.updateDelay".
+ * Generation is never postponed more than MAX_DELAY_FACTOR times this period, even if requests keep coming.
+ */
+@ApplicationScoped
+@Named("shibboleth3ConfUpdateService")
+public class Shibboleth3ConfUpdateService {
+
+	public static final long DEFAULT_UPDATE_DELAY = 5; // 5 seconds
+
+	private static final int DEFAULT_INTERVAL = 2; // 2 seconds
+	private static final int MAX_DELAY_FACTOR = 6;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private Event<TimerEvent> timerEvent;
+
+	@Inject
+	private AppConfiguration appConfiguration;
+
+	@Inject
+	private TrustService trustService;
+
+	@Inject
+	private Shibboleth3ConfService shibboleth3ConfService;
+
+	private final long updateDelay = Long.getLong("gluu.idp.conf.updateDelay", DEFAULT_UPDATE_DELAY) * 1000;
+
+	private final ReentrantLock updateLock = new ReentrantLock();
+
+	private AtomicBoolean isActive;
+
+	private long firstRequestTime;
+	private long lastRequestTime;
+
+	private volatile boolean running;
+	private volatile Date lastUpdateTime;
+	private volatile long lastUpdateDuration = -1;
+	private volatile boolean lastUpdateResult;
+
+	public void initTimer() {
+		log.info("Initializing IDP Configuration Update Timer");
+		this.isActive = new AtomicBoolean(false);
+
+		final int delay = 30;
+		final int interval = DEFAULT_INTERVAL;
+
+		timerEvent.fire(new TimerEvent(new TimerSchedule(delay, interval), new Shibboleth3ConfUpdateEvent(),
+				Scheduled.Literal.INSTANCE));
+	}
+
+	@Asynchronous
+	public void process(@Observes @Scheduled Shibboleth3ConfUpdateEvent shibboleth3ConfUpdateEvent) {
+		if (this.isActive.get()) {
+			return;
+		}
+
+		if (!this.isActive.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			if (isUpdateDue()) {
+				if (appConfiguration.isConfigGeneration()) {
+					update();
+				} else {
+					log.info("IDP config generation is disabled. Skipping scheduled update");
+					clearRequest();
+				}
+			}
+		} catch (Throwable ex) {
+			log.error("Exception happened while updating IDP configuration", ex);
+		} finally {
+			this.isActive.set(false);
+		}
+	}
+
+	/**
+	 * Schedule regeneration of IDP configuration files from all active trust relationships
+	 */
+	public synchronized void requestUpdate() {
+		long now = System.currentTimeMillis();
+		if (firstRequestTime == 0) {
+			firstRequestTime = now;
+		}
+		lastRequestTime = now;
+
+		log.debug("IDP configuration update requested");
+	}
+
+	/**
+	 * Regenerate IDP configuration files from all active trust relationships in the current thread. Pending update
+	 * requests are satisfied by this call
+	 *
+	 * @return true if all files were generated successfully
+	 */
+	public boolean update() {
+		updateLock.lock();
+		try {
+			// Requests arriving from now on can be based on data we won't see
+			clearRequest();
+
+			running = true;
+			long startTime = System.currentTimeMillis();
+			boolean result = false;
+			try {
+				List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
+				result = shibboleth3ConfService.generateConfigurationFiles(trustRelationships);
+
+				log.info("IDP config generation files finished. TR count: '{}', result: '{}'", trustRelationships.size(), result);
+			} finally {
+				lastUpdateTime = new Date();
+				lastUpdateDuration = System.currentTimeMillis() - startTime;
+				lastUpdateResult = result;
+				running = false;
+			}
+
+			return result;
+		} finally {
+			updateLock.unlock();
+		}
+	}
+
+	public synchronized boolean isUpdatePending() {
+		return lastRequestTime > 0;
+	}
+
+	public boolean isUpdateRunning() {
+		return running;
+	}
+
+	/**
+	 * @return Time when last update finished or null if there were no updates yet
+	 */
+	public Date getLastUpdateTime() {
+		return lastUpdateTime;
+	}
+
+	/**
+	 * @return Duration of last update in milliseconds or -1 if there were no updates yet
+	 */
+	public long getLastUpdateDuration() {
+		return lastUpdateDuration;
+	}
+
+	public boolean isLastUpdateSucceeded() {
+		return lastUpdateResult;
+	}
+
+	private synchronized boolean isUpdateDue() {
+		if (lastRequestTime == 0) {
+			return false;
+		}
+
+		long now = System.currentTimeMillis();
+
+		return (now - lastRequestTime >= updateDelay) || (now - firstRequestTime >= MAX_DELAY_FACTOR * updateDelay);
+	}
+
+	private synchronized void clearRequest() {
+		firstRequestTime = 0;
+		lastRequestTime = 0;
+	}
+
+}
@@ -1,7 +1,5 @@
 package org.gluu.oxtrust.ldap.service;
 
-import java.util.List;
-
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -35,6 +33,9 @@ public class ShibbolethInitializer {
 	
 	@Inject
 	private Shibboleth3ConfService shibboleth3ConfService;
+
+	@Inject
+	private Shibboleth3ConfUpdateService shibboleth3ConfUpdateService;
 	
 	public boolean createShibbolethConfiguration() {
 		boolean createConfig = appConfiguration.isConfigGeneration();
@@ -73,21 +74,12 @@ public class ShibbolethInitializer {
 
 			gluuSP = trustService.getRelationshipByInum(applianceService.getAppliance().getGluuSPTR());
 
-			List<GluuSAMLTrustRelationship> trustRelationships = trustService.getAllActiveTrustRelationships();
-
-			/*
-			if (trustRelationships != null && !trustRelationships.isEmpty()) {
-				for (GluuSAMLTrustRelationship gluuSAMLTrustRelationship : trustRelationships) {
-					log.info("########## gluuSAMLTrustRelationship.getDn() = " + gluuSAMLTrustRelationship.getDn());
-				}
-			}
-			*/
-
 			String shibbolethVersion = appConfiguration.getShibbolethVersion();
 			log.info("########## shibbolethVersion = " + shibbolethVersion);
 
 			shibboleth3ConfService.generateMetadataFiles(gluuSP);
-			shibboleth3ConfService.generateConfigurationFiles(trustRelationships);
+			// Generate in this thread, removal of unused files below depends on generated configuration
+			shibboleth3ConfUpdateService.update();
 
 			shibboleth3ConfService.removeUnusedCredentials();
 			shibboleth3ConfService.removeUnusedMetadata();
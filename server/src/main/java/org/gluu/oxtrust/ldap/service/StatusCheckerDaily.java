@@ -17,6 +17,8 @@ import javax.inject.Named;
 
 import org.gluu.oxtrust.config.ConfigurationFactory;
 import org.gluu.oxtrust.model.GluuAppliance;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.service.cdi.event.StatusCheckerDailyEvent;
 import org.gluu.persist.exception.BasePersistenceException;
 import org.slf4j.Logger;
@@ -54,6 +56,9 @@ public class StatusCheckerDaily {
 	@Inject
 	private ConfigurationFactory configurationFactory;
 
+	@Inject
+	private EntryCountCache entryCountCache;
+
     private AtomicBoolean isActive;
 
     public void initTimer() {
@@ -102,6 +107,8 @@ public class StatusCheckerDaily {
         log.debug("Getting data from ldap");
         int groupCount = groupService.countGroups();
         int personCount = personService.countPersons();
+        entryCountCache.put(GluuGroup.class, groupCount);
+        entryCountCache.put(GluuCustomPerson.class, personCount);
 
 		GluuAppliance appliance = applianceService.getAppliance();
 
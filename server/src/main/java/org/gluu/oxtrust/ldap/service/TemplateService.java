@@ -11,6 +11,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Properties;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -61,11 +64,21 @@ public class TemplateService implements Serializable {
 	}
 
 	public boolean writeConfFile(String confFile, String conf) {
+		// Write to temporary file first and replace target file with it to make sure
+		// IDP never reads partially written configuration
+		File file = new File(confFile);
+		File tmpFile = new File(file.getParentFile(), "." + file.getName() + ".tmp");
 		try {
-			FileUtils.writeStringToFile(new File(confFile), conf, "UTF-8");
+			FileUtils.writeStringToFile(tmpFile, conf, "UTF-8");
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
 		} catch (IOException ex) {
 			log.error("Failed to write IDP configuration file '{}'", confFile, ex);
 			ex.printStackTrace();
+			FileUtils.deleteQuietly(tmpFile);
 			return false;
 		}
 
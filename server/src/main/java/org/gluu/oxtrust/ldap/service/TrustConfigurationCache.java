@@ -0,0 +1,141 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Named;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
+import org.gluu.oxtrust.model.MetadataFilter;
+import org.gluu.oxtrust.model.ProfileConfiguration;
+
+/**
+ * Keeps per trust relationship data prepared for IDP configuration generation: entityIDs, parsed metadata filters
+ * and profile configurations. Entry is keyed by trust relationship DN, metadata file modification time and digest
+ * and digest of stored filter and profile configuration XML, so it's reused until one of them changes.
+ */
+@ApplicationScoped
+@Named("trustConfigurationCache")
+public class TrustConfigurationCache {
+
+	private Map<String, CachedConfiguration> cache = new ConcurrentHashMap<String, CachedConfiguration>();
+
+	public static class TrustConfiguration {
+
+		private final List<String> entityIds;
+		private final Map<String, MetadataFilter> metadataFilters;
+		private final Map<String, ProfileConfiguration> profileConfigurations;
+		private final List<String> orderedMetadataFilters;
+
+		public TrustConfiguration(List<String> entityIds, Map<String, MetadataFilter> metadataFilters,
+				Map<String, ProfileConfiguration> profileConfigurations, List<String> orderedMetadataFilters) {
+			this.entityIds = Collections.unmodifiableList(entityIds);
+			this.metadataFilters = Collections.unmodifiableMap(new HashMap<String, MetadataFilter>(metadataFilters));
+			this.profileConfigurations = Collections.unmodifiableMap(new HashMap<String, ProfileConfiguration>(profileConfigurations));
+			this.orderedMetadataFilters = orderedMetadataFilters == null ? null : Collections.unmodifiableList(orderedMetadataFilters);
+		}
+
+		public List<String> getEntityIds() {
+			return entityIds;
+		}
+
+		public Map<String, MetadataFilter> getMetadataFilters() {
+			return metadataFilters;
+		}
+
+		public Map<String, ProfileConfiguration> getProfileConfigurations() {
+			return profileConfigurations;
+		}
+
+		/**
+		 * @return Metadata filters XML with entity role white list filter moved to the end or null if trust
+		 *         relationship has no filters
+		 */
+		public List<String> getOrderedMetadataFilters() {
+			return orderedMetadataFilters;
+		}
+
+	}
+
+	private static class CachedConfiguration {
+
+		private final String key;
+		private final TrustConfiguration configuration;
+
+		private CachedConfiguration(String key, TrustConfiguration configuration) {
+			this.key = key;
+			this.configuration = configuration;
+		}
+
+	}
+
+	/**
+	 * Get prepared configuration of trust relationship
+	 *
+	 * @return Configuration or null if trust relationship, its metadata file or its filters were changed since it was
+	 *         stored
+	 */
+	public TrustConfiguration get(GluuSAMLTrustRelationship trustRelationship, long metadataLastModified, String metadataDigest) {
+		CachedConfiguration cachedConfiguration = cache.get(trustRelationship.getDn());
+		if ((cachedConfiguration == null) || !cachedConfiguration.key.equals(getKey(trustRelationship, metadataLastModified, metadataDigest))) {
+			return null;
+		}
+
+		return cachedConfiguration.configuration;
+	}
+
+	public void put(GluuSAMLTrustRelationship trustRelationship, long metadataLastModified, String metadataDigest, TrustConfiguration configuration) {
+		cache.put(trustRelationship.getDn(), new CachedConfiguration(getKey(trustRelationship, metadataLastModified, metadataDigest), configuration));
+	}
+
+	/**
+	 * Remove entries of trust relationships which don't exist anymore
+	 *
+	 * @param trustRelationshipDns
+	 *            DNs of all trust relationships
+	 */
+	public void retain(Collection<String> trustRelationshipDns) {
+		cache.keySet().retainAll(trustRelationshipDns);
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	private String getKey(GluuSAMLTrustRelationship trustRelationship, long metadataLastModified, String metadataDigest) {
+		StringBuilder key = new StringBuilder();
+		key.append(trustRelationship.getDn()).append('\n');
+		key.append(trustRelationship.getSpMetaDataFN()).append('\n');
+		key.append(metadataLastModified).append('\n');
+		key.append(metadataDigest).append('\n');
+		appendValues(key, trustRelationship.getGluuSAMLMetaDataFilter());
+		appendValues(key, trustRelationship.getGluuProfileConfiguration());
+
+		return DigestUtils.sha256Hex(key.toString());
+	}
+
+	private void appendValues(StringBuilder key, List<String> values) {
+		if (values == null) {
+			key.append("-\n");
+			return;
+		}
+
+		key.append(values.size()).append('\n');
+		for (String value : values) {
+			key.append(value.length()).append(':').append(value).append('\n');
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
+import org.xdi.util.StringHelper;
+
+/**
+ * Keeps lookup keys of all trust relationships (inum, unpunctuated inum and entityIDs) in memory. It doesn't keep
+ * entries itself, callers load entries they found by inum. TrustService updates registry on every add, update and
+ * remove. Registry is considered stale after DEFAULT_TIME_TO_LIVE to pick up changes made by other cluster members.
+ */
+@ApplicationScoped
+@Named("trustRelationshipRegistry")
+public class TrustRelationshipRegistry {
+
+	public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000; // 5 minutes
+
+	public static final String[] LOOKUP_ATTRIBUTES = new String[] { "inum", "gluuEntityId" };
+
+	private Map<String, TrustRelationshipKeys> keysByInum = new HashMap<String, TrustRelationshipKeys>();
+	private Map<String, String> inumsByUnpunctuatedInum = new HashMap<String, String>();
+	private Map<String, Set<String>> inumsByEntityId = new HashMap<String, Set<String>>();
+
+	private long loadTime;
+
+	private static class TrustRelationshipKeys {
+
+		private final String inum;
+		private final List<String> entityIds;
+
+		private TrustRelationshipKeys(GluuSAMLTrustRelationship trustRelationship) {
+			this.inum = trustRelationship.getInum();
+			this.entityIds = trustRelationship.getGluuEntityId() == null ? Collections.<String> emptyList()
+					: new ArrayList<String>(trustRelationship.getGluuEntityId());
+		}
+
+	}
+
+	public synchronized boolean isLoaded() {
+		return (loadTime > 0) && (System.currentTimeMillis() - loadTime <= DEFAULT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * Replace registry content
+	 *
+	 * @param trustRelationships
+	 *            All trust relationships. Only LOOKUP_ATTRIBUTES are used
+	 */
+	public synchronized void load(List<GluuSAMLTrustRelationship> trustRelationships) {
+		keysByInum.clear();
+		inumsByUnpunctuatedInum.clear();
+		inumsByEntityId.clear();
+
+		for (GluuSAMLTrustRelationship trustRelationship : trustRelationships) {
+			put(trustRelationship);
+		}
+
+		loadTime = System.currentTimeMillis();
+	}
+
+	public synchronized void put(GluuSAMLTrustRelationship trustRelationship) {
+		if (StringHelper.isEmpty(trustRelationship.getInum())) {
+			return;
+		}
+
+		remove(trustRelationship.getInum());
+
+		TrustRelationshipKeys keys = new TrustRelationshipKeys(trustRelationship);
+		keysByInum.put(keys.inum, keys);
+		inumsByUnpunctuatedInum.put(StringHelper.removePunctuation(keys.inum), keys.inum);
+		for (String entityId : keys.entityIds) {
+			addToIndex(inumsByEntityId, entityId, keys.inum);
+		}
+	}
+
+	public synchronized void remove(String inum) {
+		TrustRelationshipKeys keys = keysByInum.remove(inum);
+		if (keys == null) {
+			return;
+		}
+
+		inumsByUnpunctuatedInum.remove(StringHelper.removePunctuation(inum));
+		for (String entityId : keys.entityIds) {
+			removeFromIndex(inumsByEntityId, entityId, inum);
+		}
+	}
+
+	public synchronized void clear() {
+		loadTime = 0;
+	}
+
+	public synchronized String getInumByUnpunctuatedInum(String unpunctuatedInum) {
+		return inumsByUnpunctuatedInum.get(unpunctuatedInum);
+	}
+
+	public synchronized List<String> getInumsByEntityId(String entityId) {
+		return getFromIndex(inumsByEntityId, entityId);
+	}
+
+	private void addToIndex(Map<String, Set<String>> index, String key, String inum) {
+		Set<String> inums = index.get(key);
+		if (inums == null) {
+			inums = new HashSet<String>();
+			index.put(key, inums);
+		}
+		inums.add(inum);
+	}
+
+	private void removeFromIndex(Map<String, Set<String>> index, String key, String inum) {
+		Set<String> inums = index.get(key);
+		if (inums != null) {
+			inums.remove(inum);
+			if (inums.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+
+	private List<String> getFromIndex(Map<String, Set<String>> index, String key) {
+		Set<String> inums = index.get(key);
+		if (inums == null) {
+			return new ArrayList<String>();
+		}
+
+		return new ArrayList<String>(inums);
+	}
+
+}
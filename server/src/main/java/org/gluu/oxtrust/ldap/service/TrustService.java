@@ -8,7 +8,10 @@ package org.gluu.oxtrust.ldap.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.ejb.Stateless;
 import javax.inject.Inject;
@@ -24,7 +27,9 @@ import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
 import org.gluu.oxtrust.model.OrganizationalUnit;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.persist.PersistenceEntryManager;
-import org.gluu.persist.model.base.InumEntry;
+import org.gluu.persist.model.PagedResult;
+import org.gluu.persist.model.SearchScope;
+import org.gluu.persist.model.SortOrder;
 import org.gluu.search.filter.Filter;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
@@ -33,7 +38,6 @@ import org.xdi.model.GluuStatus;
 import org.xdi.model.TrustContact;
 import org.xdi.service.MailService;
 import org.xdi.service.XmlService;
-import org.xdi.util.INumGenerator;
 import org.xdi.util.StringHelper;
 
 /**
@@ -76,8 +80,34 @@ public class TrustService implements Serializable {
 	@Inject
 	private RenderParameters rendererParameters;
 
+	@Inject
+	private TrustRelationshipRegistry trustRelationshipRegistry;
+
+	@Inject
+	private InumAllocator inumAllocator;
+
+	@Inject
+	private MetadataIndexService metadataIndexService;
+
+	@Inject
+	private MetadataDownloadService metadataDownloadService;
+
 	public static final String GENERATED_SSL_ARTIFACTS_DIR = "ssl";
 
+	/**
+	 * Attributes needed to show trust relationships in lists
+	 */
+	public static final String[] LIST_VIEW_ATTRIBUTES = new String[] { "inum", "iname", "displayName", "description", "gluuStatus",
+			"gluuValidationStatus", "gluuReleasedAttribute", "gluuSAMLspMetaDataFN", "gluuContainerFederation", "gluuIsFederation" };
+
+	/**
+	 * Attributes which trust relationships page can be sorted by
+	 */
+	public static final List<String> SORT_ATTRIBUTES = Arrays.asList("displayName", "description", "inum", "iname", "gluuStatus",
+			"gluuValidationStatus");
+
+	public static final int MAX_PAGE_SIZE = 500;
+
 	public void addTrustRelationship(GluuSAMLTrustRelationship trustRelationship) {
 		trustRelationship.setGluuContainerFederation(trustRelationship.getGluuContainerFederation());
 		String[] clusterMembers = appConfiguration.getClusteredInums();
@@ -106,6 +136,7 @@ public class TrustService implements Serializable {
 			}
 		}
 		trustRelationship.setDn(dn);
+		trustRelationshipRegistry.put(trustRelationship);
 	}
 
 	public void updateTrustRelationship(GluuSAMLTrustRelationship trustRelationship) {
@@ -135,10 +166,12 @@ public class TrustService implements Serializable {
 			}
 		}
 		trustRelationship.setDn(dn);
+		trustRelationshipRegistry.put(trustRelationship);
 	}
 
 	public void removeTrustRelationship(GluuSAMLTrustRelationship trustRelationship) {
 		log.info("Removing TR " + trustRelationship.getInum());
+		metadataDownloadService.removeState(trustRelationship.getSpMetaDataURL());
 		String[] clusterMembers = appConfiguration.getClusteredInums();
 		String applianceInum = appConfiguration.getApplianceInum();
 		if (clusterMembers == null || clusterMembers.length == 0) {
@@ -157,7 +190,7 @@ public class TrustService implements Serializable {
 			}
 		}
 		trustRelationship.setDn(dn);
-
+		trustRelationshipRegistry.remove(trustRelationship.getInum());
 	}
 
 	public GluuSAMLTrustRelationship getRelationshipByInum(String inum) {
@@ -239,16 +272,7 @@ public class TrustService implements Serializable {
 	 * @return New inum for trust relationship
 	 */
 	public String generateInumForNewTrustRelationship() {
-		InumEntry entry = new InumEntry();
-		String newDn = appConfiguration.getBaseDN();
-		entry.setDn(newDn);
-		String newInum;
-		do {
-			newInum = generateInumForNewTrustRelationshipImpl();
-			entry.setInum(newInum);
-		} while (ldapEntryManager.contains(entry));
-
-		return newInum;
+		return generateInumForNewTrustRelationshipImpl();
 	}
 
 	/**
@@ -258,7 +282,7 @@ public class TrustService implements Serializable {
 	 */
 	private String generateInumForNewTrustRelationshipImpl() {
 		return getApplianceInum() + OxTrustConstants.inumDelimiter + "0006" + OxTrustConstants.inumDelimiter
-				+ INumGenerator.generate(2);
+				+ inumAllocator.allocate();
 	}
 
 	/**
@@ -406,22 +430,108 @@ public class TrustService implements Serializable {
 	public List<GluuSAMLTrustRelationship> getDeconstructedTrustRelationships(
 			GluuSAMLTrustRelationship trustRelationship) {
 		List<GluuSAMLTrustRelationship> result = new ArrayList<GluuSAMLTrustRelationship>();
-		for (GluuSAMLTrustRelationship trust : getAllTrustRelationships()) {
-			if (trustRelationship.equals(getTrustContainerFederation(trust))) {
-				result.add(trust);
-			}
+		if (StringHelper.isEmpty(trustRelationship.getInum())) {
+			return result;
+		}
+
+		// Trusts are matched by container federation which is resolved by their own DN, so only the entry with
+		// the same inum is found. It's loaded directly instead of checking all trust relationships
+		GluuSAMLTrustRelationship trust = getRelationshipByInum(trustRelationship.getInum());
+		if (trust != null) {
+			result.add(trust);
 		}
+
 		return result;
 	}
 
 	public GluuSAMLTrustRelationship getTrustByUnpunctuatedInum(String unpunctuated) {
-		for (GluuSAMLTrustRelationship trust : getAllTrustRelationships()) {
-			if (StringHelper.removePunctuation(trust.getInum()).equals(unpunctuated)) {
-				return trust;
+		String inum = getTrustRelationshipRegistry().getInumByUnpunctuatedInum(unpunctuated);
+		if (inum != null) {
+			return getRelationshipByInum(inum);
+		}
+
+		// Trust relationship can be added by another cluster member after registry load
+		inum = restoreTrustRelationshipInum(unpunctuated);
+		if (inum == null) {
+			return null;
+		}
+
+		GluuSAMLTrustRelationship trustRelationship = getRelationshipByDn(getDnForTrustRelationShip(inum));
+		if (trustRelationship != null) {
+			trustRelationshipRegistry.put(trustRelationship);
+		}
+
+		return trustRelationship;
+	}
+
+	/**
+	 * Restore inum of trust relationship generated by generateInumForNewTrustRelationship from inum without
+	 * punctuation
+	 * 
+	 * @return Inum or null if unpunctuated inum has another prefix
+	 */
+	private String restoreTrustRelationshipInum(String unpunctuated) {
+		String prefix = getApplianceInum() + OxTrustConstants.inumDelimiter + "0006" + OxTrustConstants.inumDelimiter;
+		String unpunctuatedPrefix = StringHelper.removePunctuation(prefix);
+		if ((unpunctuated == null) || !unpunctuated.startsWith(unpunctuatedPrefix)) {
+			return null;
+		}
+
+		// Suffix consists of blocks of 4 characters separated by dots
+		String suffix = unpunctuated.substring(unpunctuatedPrefix.length());
+		if ((suffix.length() == 0) || (suffix.length() % 4 != 0)) {
+			return null;
+		}
+
+		StringBuilder inum = new StringBuilder(prefix);
+		for (int i = 0; i < suffix.length(); i += 4) {
+			if (i > 0) {
+				inum.append('.');
 			}
+			inum.append(suffix, i, i + 4);
 		}
-		return null;
+
+		return inum.toString();
+	}
+
+	/**
+	 * Find trust relationships which metadata defines entityID. Both entityIDs stored in trust relationships and
+	 * entityIDs from indexed metadata files, which may be not stored yet, are checked
+	 * 
+	 * @param entityId
+	 *            entityID
+	 * @return List of trust relationships
+	 */
+	public List<GluuSAMLTrustRelationship> getTrustRelationshipsByEntityId(String entityId) {
+		Set<String> inums = new LinkedHashSet<String>(getTrustRelationshipRegistry().getInumsByEntityId(entityId));
+		for (String metadataFileName : metadataIndexService.getMetadataFileNames(entityId)) {
+			String unpunctuatedInum = metadataFileName.split("-" + Shibboleth3ConfService.SHIB3_IDP_SP_METADATA_FILE)[0];
+			String inum = getTrustRelationshipRegistry().getInumByUnpunctuatedInum(unpunctuatedInum);
+			if (inum != null) {
+				inums.add(inum);
+			}
+		}
+
+		List<GluuSAMLTrustRelationship> result = new ArrayList<GluuSAMLTrustRelationship>();
+		for (String inum : inums) {
+			GluuSAMLTrustRelationship trustRelationship = getRelationshipByInum(inum);
+			if (trustRelationship != null) {
+				result.add(trustRelationship);
+			}
+		}
+
+		if (result.isEmpty()) {
+			// Trust relationship can be added by another cluster member after registry load
+			Filter filter = Filter.createEqualityFilter("gluuEntityId", entityId);
+			result = ldapEntryManager.findEntries(getDnForTrustRelationShip(null), GluuSAMLTrustRelationship.class, filter);
+			for (GluuSAMLTrustRelationship trustRelationship : result) {
+				trustRelationshipRegistry.put(trustRelationship);
+			}
+		}
+
+		return result;
 	}
+
 	public GluuSAMLTrustRelationship getTrustContainerFederation(GluuSAMLTrustRelationship trustRelationship) {
 		GluuSAMLTrustRelationship relationshipByDn = getRelationshipByDn(trustRelationship.getDn());
 		return relationshipByDn;
@@ -433,20 +543,89 @@ public class TrustService implements Serializable {
 	}
 
 	public List<GluuSAMLTrustRelationship> searchSAMLTrustRelationships(String pattern, int sizeLimit) {
+		return searchSAMLTrustRelationships(pattern, sizeLimit, null);
+	}
+
+	/**
+	 * Search trust relationships
+	 *
+	 * @param pattern
+	 *            Substring of displayName, description, iname or inum
+	 * @param sizeLimit
+	 *            Maximum number of entries
+	 * @param returnAttributes
+	 *            Attributes to load or null to load all attributes
+	 */
+	public List<GluuSAMLTrustRelationship> searchSAMLTrustRelationships(String pattern, int sizeLimit, String[] returnAttributes) {
+		Filter searchFilter = createSearchFilter(pattern);
+
+		List<GluuSAMLTrustRelationship> result = ldapEntryManager.findEntries(getDnForTrustRelationShip(null), GluuSAMLTrustRelationship.class, searchFilter,
+				SearchScope.SUB, returnAttributes, null, 0, sizeLimit, 0);
+
+		return result;
+	}
+	
+	public List<GluuSAMLTrustRelationship> getAllSAMLTrustRelationships(int sizeLimit) {		
+			return getAllSAMLTrustRelationships(sizeLimit, null);
+	}
+
+	public List<GluuSAMLTrustRelationship> getAllSAMLTrustRelationships(int sizeLimit, String[] returnAttributes) {
+		return ldapEntryManager.findEntries(getDnForTrustRelationShip(null), GluuSAMLTrustRelationship.class, null, SearchScope.SUB, returnAttributes,
+				null, 0, sizeLimit, 0);
+	}
+
+	public List<GluuSAMLTrustRelationship> getAllTrustRelationships(String[] returnAttributes) {
+		return ldapEntryManager.findEntries(getDnForTrustRelationShip(null), GluuSAMLTrustRelationship.class, null, returnAttributes);
+	}
+
+	public List<GluuSAMLTrustRelationship> getAllActiveTrustRelationships(String[] returnAttributes) {
+		Filter activeFilter = Filter.createEqualityFilter(OxTrustConstants.gluuStatus, GluuStatus.ACTIVE.getValue());
+
+		return ldapEntryManager.findEntries(getDnForTrustRelationShip(null), GluuSAMLTrustRelationship.class, activeFilter, returnAttributes);
+	}
+
+	/**
+	 * Search trust relationships page by page. Filtering, sorting and paging are done by LDAP server
+	 *
+	 * @param pattern
+	 *            Substring of displayName, description, iname or inum. Empty pattern matches all trust relationships
+	 * @param sortBy
+	 *            Attribute to sort by. One of SORT_ATTRIBUTES
+	 * @param sortOrder
+	 *            Sort order
+	 * @param startIndex
+	 *            Index of the first entry, starting from 1
+	 * @param count
+	 *            Number of entries in page
+	 * @param returnAttributes
+	 *            Attributes to load or null to load all attributes
+	 */
+	public PagedResult<GluuSAMLTrustRelationship> searchSAMLTrustRelationships(String pattern, String sortBy, SortOrder sortOrder, int startIndex,
+			int count, String[] returnAttributes) {
+		Filter searchFilter = StringHelper.isEmpty(pattern) ? Filter.createPresenceFilter(OxTrustConstants.inum) : createSearchFilter(pattern);
+
+		return ldapEntryManager.findPagedEntries(getDnForTrustRelationShip(null), GluuSAMLTrustRelationship.class, searchFilter, returnAttributes,
+				sortBy, sortOrder, startIndex, count, MAX_PAGE_SIZE);
+	}
+
+	private Filter createSearchFilter(String pattern) {
 		String[] targetArray = new String[] { pattern };
 		Filter displayNameFilter = Filter.createSubstringFilter(OxTrustConstants.displayName, null, targetArray, null);
 		Filter descriptionFilter = Filter.createSubstringFilter(OxTrustConstants.description, null, targetArray, null);
 		Filter inameFilter = Filter.createSubstringFilter(OxTrustConstants.iname, null, targetArray, null);
 		Filter inumFilter = Filter.createSubstringFilter(OxTrustConstants.inum, null, targetArray, null);
-		Filter searchFilter = Filter.createORFilter(displayNameFilter, descriptionFilter, inameFilter, inumFilter);
-
-		List<GluuSAMLTrustRelationship> result = ldapEntryManager.findEntries(getDnForTrustRelationShip(null), GluuSAMLTrustRelationship.class, searchFilter, sizeLimit);
 
-		return result;
+		return Filter.createORFilter(displayNameFilter, descriptionFilter, inameFilter, inumFilter);
 	}
-	
-	public List<GluuSAMLTrustRelationship> getAllSAMLTrustRelationships(int sizeLimit) {		
-			return ldapEntryManager.findEntries(getDnForTrustRelationShip(null), GluuSAMLTrustRelationship.class, null, sizeLimit);
+
+	private TrustRelationshipRegistry getTrustRelationshipRegistry() {
+		if (!trustRelationshipRegistry.isLoaded()) {
+			List<GluuSAMLTrustRelationship> trustRelationships = ldapEntryManager.findEntries(getDnForTrustRelationShip(null),
+					GluuSAMLTrustRelationship.class, null, TrustRelationshipRegistry.LOOKUP_ATTRIBUTES);
+			trustRelationshipRegistry.load(trustRelationships);
+		}
+
+		return trustRelationshipRegistry;
 	}
 
 	/**
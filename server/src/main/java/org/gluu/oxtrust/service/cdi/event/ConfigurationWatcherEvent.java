@@ -0,0 +1,8 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+/**
+ * Periodic check of configuration watcher state
+ */
+public class ConfigurationWatcherEvent {
+
+}
@@ -0,0 +1,18 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+/**
+ * LDIF record which should be applied by asynchronous observer
+ */
+public class LdifImportTaskEvent {
+
+	private final Runnable task;
+
+	public LdifImportTaskEvent(Runnable task) {
+		this.task = task;
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+}
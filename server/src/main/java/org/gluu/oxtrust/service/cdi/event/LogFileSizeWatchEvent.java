@@ -0,0 +1,8 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+/**
+ * Check of log folder changes reported by watch service
+ */
+public class LogFileSizeWatchEvent {
+
+}
@@ -0,0 +1,18 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+/**
+ * Validation of single metadata file which should be run by asynchronous observer
+ */
+public class MetadataValidationTaskEvent {
+
+	private final Runnable task;
+
+	public MetadataValidationTaskEvent(Runnable task) {
+		this.task = task;
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+}
@@ -0,0 +1,18 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+/**
+ * Person import job or addition of single person which should be run by asynchronous observer
+ */
+public class PersonImportTaskEvent {
+
+	private final Runnable task;
+
+	public PersonImportTaskEvent(Runnable task) {
+		this.task = task;
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+}
@@ -0,0 +1,18 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+/**
+ * Lookup of person attribute values which should be run by asynchronous observer
+ */
+public class PersonLookupTaskEvent {
+
+	private final Runnable task;
+
+	public PersonLookupTaskEvent(Runnable task) {
+		this.task = task;
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+}
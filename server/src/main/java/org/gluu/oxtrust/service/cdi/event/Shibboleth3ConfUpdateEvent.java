@@ -0,0 +1,8 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+/**
+ * Event fired periodically to apply pending IDP configuration updates
+ */
+public class Shibboleth3ConfUpdateEvent {
+
+}
@@ -0,0 +1,8 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+/**
+ * Event fired periodically to renew UMA PAT tokens ahead of their expiration
+ */
+public class UmaPatRefreshEvent {
+
+}
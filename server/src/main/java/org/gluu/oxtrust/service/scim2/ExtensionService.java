@@ -16,7 +16,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.ejb.Stateless;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -25,6 +26,8 @@ import org.gluu.oxtrust.model.scim2.BaseScimResource;
 import org.gluu.oxtrust.model.scim2.extensions.Extension;
 import org.gluu.oxtrust.model.scim2.extensions.ExtensionField;
 import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.service.cdi.event.EventType;
+import org.gluu.oxtrust.service.cdi.event.Events;
 import org.slf4j.Logger;
 import org.xdi.model.GluuAttribute;
 import org.xdi.model.attribute.Multivalued;
@@ -32,8 +35,12 @@ import org.xdi.model.scim.ScimCustomAtribute;
 
 /**
  * Created by jgomer on 2017-09-29.
+ *
+ * Extensions are computed from the SCIM-related attributes found in LDAP. Since they are requested many times per
+ * SCIM operation (serialization, validation, patching, filter translation...), they are built once and kept in an
+ * immutable registry which is rebuilt only when attributes change (see {@link Events#EVENT_CLEAR_ATTRIBUTES}).
  */
-@Stateless
+@ApplicationScoped
 @Named
 public class ExtensionService {
 
@@ -43,53 +50,132 @@ public class ExtensionService {
     @Inject
     private AttributeService attrService;
 
-    public List<Extension> getResourceExtensions(Class<? extends BaseScimResource> cls){
+    private volatile Registry registry;
 
-        List<Extension> list=new ArrayList<Extension>();
-        try {
-            //Currently support one extension only for User Resource
-            if (cls.equals(UserResource.class)) {
+    /**
+     * Immutable snapshot of the extensions available per resource type, plus indexes to find extended attributes by
+     * their fully qualified name (urn:attribute)
+     */
+    private static class Registry {
+
+        private Map<Class<? extends BaseScimResource>, List<Extension>> extensions=new HashMap<Class<? extends BaseScimResource>, List<Extension>>();
+        private Map<Class<? extends BaseScimResource>, List<String>> urns=new HashMap<Class<? extends BaseScimResource>, List<String>>();
+        private Map<String, Extension> extensionsByAttribute=new HashMap<String, Extension>();
+        private Map<String, ExtensionField> fieldsByAttribute=new HashMap<String, ExtensionField>();
 
-                Map<String, ExtensionField> fields=new HashMap<String, ExtensionField>();
+        private void add(Class<? extends BaseScimResource> cls, Extension extension){
 
-                for (GluuAttribute attribute : attrService.getSCIMRelatedAttributes()) {
-                    if (attribute.getOxSCIMCustomAttribute().equals(ScimCustomAtribute.TRUE)) {
-                        //first non-null check is needed because certain entries do not have the multivalue attribute set
-                        boolean multi=attribute.getMultivaluedAttribute()!=null && attribute.getMultivaluedAttribute().equals(Multivalued.TRUE);
+            List<Extension> list=extensions.get(cls);
+            if (list==null) {
+                list = new ArrayList<Extension>();
+                extensions.put(cls, list);
+                urns.put(cls, new ArrayList<String>());
+            }
+            list.add(extension);
+            urns.get(cls).add(extension.getUrn());
+
+            for (ExtensionField field : extension.getFields().values()){
+                String key=extension.getUrn() + ":" + field.getName();
+                extensionsByAttribute.put(key, extension);
+                fieldsByAttribute.put(key, field);
+            }
 
-                        ExtensionField field=new ExtensionField();
-                        field.setDescription(attribute.getDescription());
-                        field.setType(attribute.getDataType());
-                        field.setMultiValued(multi);
-                        field.setName(attribute.getName());
+        }
 
-                        fields.put(attribute.getName(), field);
-                    }
+        private List<Extension> getExtensions(Class<? extends BaseScimResource> cls){
+            List<Extension> list=extensions.get(cls);
+            return list==null ? Collections.<Extension>emptyList() : Collections.unmodifiableList(list);
+        }
+
+    }
+
+    private Registry getRegistry(){
+
+        Registry current=registry;
+        if (current==null) {
+            synchronized (this) {
+                current=registry;
+                if (current==null) {
+                    current=buildRegistry();
+                    if (current!=null)
+                        registry=current;
+                    else    //Do not keep an empty registry due to a transient error, but serve an empty one this time
+                        current=new Registry();
                 }
+            }
+        }
+        return current;
 
-                Extension ext=new Extension(USER_EXT_SCHEMA_ID);
-                ext.setFields(fields);
-                ext.setName(USER_EXT_SCHEMA_NAME);
-                ext.setDescription(USER_EXT_SCHEMA_DESCRIPTION);
+    }
 
-                list.add(ext);
+    private Registry buildRegistry(){
+
+        Registry reg=null;
+        try {
+            //Currently support one extension only for User Resource
+            Map<String, ExtensionField> fields=new HashMap<String, ExtensionField>();
+
+            for (GluuAttribute attribute : attrService.getSCIMRelatedAttributes()) {
+                if (attribute.getOxSCIMCustomAttribute().equals(ScimCustomAtribute.TRUE)) {
+                    //first non-null check is needed because certain entries do not have the multivalue attribute set
+                    boolean multi=attribute.getMultivaluedAttribute()!=null && attribute.getMultivaluedAttribute().equals(Multivalued.TRUE);
+
+                    ExtensionField field=new ExtensionField();
+                    field.setDescription(attribute.getDescription());
+                    field.setType(attribute.getDataType());
+                    field.setMultiValued(multi);
+                    field.setName(attribute.getName());
+
+                    fields.put(attribute.getName(), field);
+                }
             }
+
+            Extension ext=new Extension(USER_EXT_SCHEMA_ID);
+            ext.setFields(Collections.unmodifiableMap(fields));
+            ext.setName(USER_EXT_SCHEMA_NAME);
+            ext.setDescription(USER_EXT_SCHEMA_DESCRIPTION);
+
+            reg=new Registry();
+            reg.add(UserResource.class, ext);
+            log.info("SCIM extensions registry built. {} extended attributes found", fields.size());
         }
         catch (Exception e){
-            log.error("An error ocurred when building extension for {}", cls.getName());
+            log.error("An error ocurred when building extension for {}", UserResource.class.getName());
             log.error(e.getMessage(), e);
         }
-        return list;
+        return reg;
 
     }
 
-    public List<String> getUrnsOfExtensions(Class<? extends BaseScimResource> cls){
+    /**
+     * Discards the extensions registry after receiving event that attributes were changed. It will be rebuilt upon next use.
+     * Uses the same lock as the rebuild, so a registry built from attributes read before the change can not be stored
+     * after it was discarded. The attributes cache is cleared here too because CDI does not define in which order
+     * observers are notified: otherwise the registry could be rebuilt from stale cached attributes
+     */
+    public void clearExtensions(@Observes @EventType(Events.EVENT_CLEAR_ATTRIBUTES) Events event) {
+        log.debug("Removing SCIM extensions registry");
+        synchronized (this) {
+            attrService.clearAttributesCache(event);
+            registry=null;
+        }
+    }
+
+    /**
+     * Returns the extensions applicable to a resource type. The list and the extensions contained are shared, so they
+     * must not be modified
+     * @param cls Resource type
+     * @return An unmodifiable list (possibly empty)
+     */
+    public List<Extension> getResourceExtensions(Class<? extends BaseScimResource> cls){
+        return getRegistry().getExtensions(cls);
+    }
 
-        List<String> list=new ArrayList<String>();
-        for (Extension ext : getResourceExtensions(cls))
-            list.add(ext.getUrn());
+    public List<String> getUrnsOfExtensions(Class<? extends BaseScimResource> cls){
 
-        return list;
+        List<String> urns=getRegistry().urns.get(cls);
+        //Return a copy: callers are free to modify the list
+        return urns==null ? new ArrayList<String>() : new ArrayList<String>(urns);
 
     }
 
@@ -146,51 +232,19 @@ public class ExtensionService {
 
     public Extension extensionOfAttribute(Class<? extends BaseScimResource> cls, String attribute){
 
-        List<Extension> extensions=getResourceExtensions(cls);
-        Extension belong=null;
-
-        try {
-            for (Extension ext : extensions) {
-                if (attribute.startsWith(ext.getUrn() + ":")){
-                    attribute=attribute.substring(ext.getUrn().length()+1);
-
-                    for (String fieldName : ext.getFields().keySet())
-                        if (attribute.equals(fieldName)) {
-                            belong = ext;
-                            break;
-                        }
-                }
-            }
-        }
-        catch (Exception e){
-            log.error(e.getMessage(), e);
-        }
-        return belong;
+        Extension belong=getRegistry().extensionsByAttribute.get(attribute);
+        return belong==null || !getResourceExtensions(cls).contains(belong) ? null : belong;
 
     }
 
     public ExtensionField getFieldOfExtendedAttribute(Class<? extends BaseScimResource> cls, String attribute){
 
-        List<Extension> extensions=getResourceExtensions(cls);
         ExtensionField field=null;
+        if (extensionOfAttribute(cls, attribute)!=null)
+            field=getRegistry().fieldsByAttribute.get(attribute);
 
-        try {
-            for (Extension ext : extensions) {
-                if (attribute.startsWith(ext.getUrn() + ":")){
-                    attribute=attribute.substring(ext.getUrn().length()+1);
-
-                    for (ExtensionField f : ext.getFields().values())
-                        if (attribute.equals(f.getName())) {
-                            field = f;
-                            break;
-                        }
-                }
-            }
-        }
-        catch (Exception e){
-            log.error(e.getMessage(), e);
-        }
         return field;
+
     }
 
 }
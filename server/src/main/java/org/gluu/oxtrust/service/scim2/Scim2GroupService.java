@@ -7,8 +7,10 @@ package org.gluu.oxtrust.service.scim2;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -16,6 +18,8 @@ import javax.inject.Named;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response.Status;
 
+import org.apache.commons.lang.StringUtils;
+import org.gluu.oxtrust.ldap.service.EntryCountCache;
 import org.gluu.oxtrust.ldap.service.IGroupService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.ldap.service.OrganizationService;
@@ -65,9 +69,15 @@ public class Scim2GroupService implements Serializable {
     @Inject
     private ScimFilterParserService scimFilterParserService;
 
+    @Inject
+    private ScimCursorService scimCursorService;
+
     @Inject
     private PersistenceEntryManager ldapEntryManager;
 
+    @Inject
+    private EntryCountCache entryCountCache;
+
     private void transferAttributesToGroup(GroupResource res, GluuGroup group, String usersUrl) {
 
         //externalId (so oxTrustExternalId) not part of LDAP schema
@@ -202,6 +212,7 @@ public class Scim2GroupService implements Serializable {
             group.setId(gluuGroup.getInum());
             syncMemberAttributeInPerson(gluuGroup.getDn(), null, gluuGroup.getMembers());
         }
+        entryCountCache.invalidate(GluuGroup.class);
 
     }
 
@@ -232,6 +243,7 @@ public class Scim2GroupService implements Serializable {
         }
 
         groupService.removeGroup(gluuGroup);
+        entryCountCache.invalidate(GluuGroup.class);
 
         if (externalScimService.isEnabled())
             externalScimService.executeScimPostDeleteGroupMethods(gluuGroup);
@@ -297,6 +309,65 @@ public class Scim2GroupService implements Serializable {
 
     }
 
+    /**
+     * Computes the number of groups matching a filter without retrieving them. See {@link Scim2UserService#countUsers(String)}
+     */
+    public int countGroups(String filter) throws Exception{
+
+        Integer total;
+        if (StringUtils.isEmpty(filter)) {
+            total=entryCountCache.get(GluuGroup.class, EntryCountCache.DEFAULT_TIME_TO_LIVE);
+            if (total==null) {
+                total=groupService.countGroups();
+                entryCountCache.put(GluuGroup.class, total);
+            }
+        }
+        else {
+            Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", GroupResource.class);
+            log.info("Counting groups using: ldapfilter '{}'", ldapFilter.toString());
+            total=ldapEntryManager.countEntries(groupService.getDnForGroup(null), GluuGroup.class, ldapFilter);
+        }
+        return total;
+
+    }
+
+    /**
+     * Searches groups in cursor mode. See {@link Scim2UserService#searchUsers(String, ScimCursorService.Cursor, int, String, int)}
+     */
+    public ScimCursorService.CursorPage<BaseScimResource> searchGroups(String filter, ScimCursorService.Cursor cursor, int count, String groupsUrl,
+                                                                       String usersUrl, int maxCount) throws Exception{
+
+        String baseDn=groupService.getDnForGroup(null);
+        Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", GroupResource.class);
+        log.info("Executing cursor search for groups using: ldapfilter '{}', count '{}'", ldapFilter.toString(), count);
+
+        int total=cursor==null ? countGroups(filter) : cursor.getTotalResults();
+        List<BaseScimResource> resources=new ArrayList<BaseScimResource>();
+        if (count<=0)
+            return new ScimCursorService.CursorPage<BaseScimResource>(resources, total, null);
+
+        ScimCursorService.CursorPage<String> keys=scimCursorService.findKeys(baseDn, ldapFilter, cursor, Math.min(count, maxCount));
+        if (!keys.getEntries().isEmpty()) {
+            //Keep the order in which LDAP returned keys
+            Map<String, GluuGroup> entries=new HashMap<String, GluuGroup>();
+            for (GluuGroup group : ldapEntryManager.findEntries(baseDn, GluuGroup.class, scimCursorService.keysFilter(keys.getEntries())))
+                entries.put(group.getInum(), group);
+
+            for (String key : keys.getEntries()){
+                GluuGroup group=entries.get(key);
+                if (group!=null) {
+                    GroupResource scimGroup=new GroupResource();
+                    transferAttributesToGroupResource(group, scimGroup, groupsUrl, usersUrl);
+                    resources.add(scimGroup);
+                }
+            }
+        }
+        log.info ("Found {} entries - returning {}", total, resources.size());
+
+        return new ScimCursorService.CursorPage<BaseScimResource>(resources, total, keys.getCookie());
+
+    }
+
     private void syncMemberAttributeInPerson(String groupDn, List<String> beforeMemberDns, List<String> afterMemberDns){
 
         log.debug("syncMemberAttributeInPerson. Updating memberOf attribute in user LDAP entries");
@@ -20,9 +20,12 @@ import javax.ws.rs.core.Response.Status;
 
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.gluu.oxtrust.ldap.service.EntryCountCache;
 import org.gluu.oxtrust.ldap.service.IGroupService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.ldap.service.MemberService;
+import org.gluu.oxtrust.ldap.service.OxTrustAuditService;
+import org.gluu.oxtrust.ldap.service.AuditTrailService.Outcome;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.scim2.BaseScimResource;
@@ -97,9 +100,18 @@ public class Scim2UserService implements Serializable {
     @Inject
     private ScimFilterParserService scimFilterParserService;
 
+    @Inject
+    private ScimCursorService scimCursorService;
+
     @Inject
     private PersistenceEntryManager ldapEntryManager;
 
+    @Inject
+    private EntryCountCache entryCountCache;
+
+    @Inject
+    private OxTrustAuditService oxTrustAuditService;
+
     private String[] getComplexMultivaluedAsArray(List items){
 
         String array[]=null;
@@ -439,17 +451,18 @@ public class Scim2UserService implements Serializable {
                 throw new WebApplicationException("Failed to execute SCIM script successfully", Status.PRECONDITION_FAILED);
             }
 
-            personService.addPerson(gluuPerson);
+            addPerson(gluuPerson);
             //Copy back to user the info from gluuPerson
             transferAttributesToUserResource(gluuPerson, user, url);
             externalScimService.executeScimPostCreateUserMethods(gluuPerson);
         }
         else {
-            personService.addPerson(gluuPerson);
+            addPerson(gluuPerson);
             user.getMeta().setLocation(location);
             //We are ignoring the id value received (user.getId())
             user.setId(gluuPerson.getInum());
         }
+        entryCountCache.invalidate(GluuCustomPerson.class);
 
     }
 
@@ -483,13 +496,13 @@ public class Scim2UserService implements Serializable {
                 throw new WebApplicationException("Failed to execute SCIM script successfully", Status.PRECONDITION_FAILED);
             }
 
-            personService.updatePerson(gluuPerson);
+            updatePerson(gluuPerson);
             //Copy back to user the info from gluuPerson
             transferAttributesToUserResource(gluuPerson, user, url);
             externalScimService.executeScimPostUpdateUserMethods(gluuPerson);
         }
         else {
-            personService.updatePerson(gluuPerson);
+            updatePerson(gluuPerson);
         }
 
     }
@@ -510,13 +523,53 @@ public class Scim2UserService implements Serializable {
             }
         }
 
-        personService.removePerson(gluuPerson);
+        removePerson(gluuPerson);
+        entryCountCache.invalidate(GluuCustomPerson.class);
 
         if (externalScimService.isEnabled())
             externalScimService.executeScimPostDeleteUserMethods(gluuPerson);
 
     }
 
+    private void addPerson(GluuCustomPerson gluuPerson) throws Exception {
+
+        long startTime = System.currentTimeMillis();
+        try {
+            personService.addPerson(gluuPerson);
+        } catch (Exception e) {
+            oxTrustAuditService.auditPersonChange(gluuPerson, "ADD FAILED", Outcome.FAILURE, startTime);
+            throw e;
+        }
+        oxTrustAuditService.auditPersonChange(gluuPerson, "ADDED", Outcome.SUCCESS, startTime);
+
+    }
+
+    private void updatePerson(GluuCustomPerson gluuPerson) {
+
+        long startTime = System.currentTimeMillis();
+        try {
+            personService.updatePerson(gluuPerson);
+        } catch (RuntimeException e) {
+            oxTrustAuditService.auditPersonChange(gluuPerson, "UPDATE FAILED", Outcome.FAILURE, startTime);
+            throw e;
+        }
+        oxTrustAuditService.auditPersonChange(gluuPerson, "UPDATED", Outcome.SUCCESS, startTime);
+
+    }
+
+    private void removePerson(GluuCustomPerson gluuPerson) {
+
+        long startTime = System.currentTimeMillis();
+        try {
+            personService.removePerson(gluuPerson);
+        } catch (RuntimeException e) {
+            oxTrustAuditService.auditPersonChange(gluuPerson, "REMOVE FAILED", Outcome.FAILURE, startTime);
+            throw e;
+        }
+        oxTrustAuditService.auditPersonChange(gluuPerson, "REMOVED", Outcome.SUCCESS, startTime);
+
+    }
+
     public PagedResult<BaseScimResource> searchUsers(String filter, String sortBy, SortOrder sortOrder, int startIndex, int count,
                                               String url, int maxCount) throws Exception{
 
@@ -543,6 +596,77 @@ public class Scim2UserService implements Serializable {
 
     }
 
+    /**
+     * Computes the number of users matching a filter without retrieving them. When no filter is supplied, a recently
+     * computed total (see {@link EntryCountCache}) is used if available
+     * @param filter SCIM filter expression (may be null)
+     * @return Number of users matching
+     * @throws Exception
+     */
+    public int countUsers(String filter) throws Exception{
+
+        Integer total;
+        if (StringUtils.isEmpty(filter)) {
+            total=entryCountCache.get(GluuCustomPerson.class, EntryCountCache.DEFAULT_TIME_TO_LIVE);
+            if (total==null) {
+                total=personService.countPersons();
+                entryCountCache.put(GluuCustomPerson.class, total);
+            }
+        }
+        else {
+            Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", UserResource.class);
+            log.info("Counting users using: ldapfilter '{}'", ldapFilter.toString());
+            total=ldapEntryManager.countEntries(personService.getDnForPerson(null), GluuCustomPerson.class, ldapFilter);
+        }
+        return total;
+
+    }
+
+    /**
+     * Searches users in cursor mode: the page returned continues the unsorted paged search held by <code>cursor</code>,
+     * so LDAP does not need to sort the result set or skip over the entries of previous pages
+     * @param filter SCIM filter expression
+     * @param cursor Position where the page starts. Null to obtain the first page
+     * @param count Maximum number of results to return
+     * @param url Base URL of users endpoint
+     * @param maxCount Maximum number of results the server allows per page
+     * @return A CursorPage whose total count is that of the whole search (not just the remaining part)
+     * @throws Exception
+     */
+    public ScimCursorService.CursorPage<BaseScimResource> searchUsers(String filter, ScimCursorService.Cursor cursor, int count, String url,
+                                                                      int maxCount) throws Exception{
+
+        String baseDn=personService.getDnForPerson(null);
+        Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", UserResource.class);
+        log.info("Executing cursor search for users using: ldapfilter '{}', count '{}'", ldapFilter.toString(), count);
+
+        int total=cursor==null ? countUsers(filter) : cursor.getTotalResults();
+        List<BaseScimResource> resources=new ArrayList<BaseScimResource>();
+        if (count<=0)
+            return new ScimCursorService.CursorPage<BaseScimResource>(resources, total, null);
+
+        ScimCursorService.CursorPage<String> keys=scimCursorService.findKeys(baseDn, ldapFilter, cursor, Math.min(count, maxCount));
+        if (!keys.getEntries().isEmpty()) {
+            //Keep the order in which LDAP returned keys
+            Map<String, GluuCustomPerson> entries=new HashMap<String, GluuCustomPerson>();
+            for (GluuCustomPerson person : ldapEntryManager.findEntries(baseDn, GluuCustomPerson.class, scimCursorService.keysFilter(keys.getEntries())))
+                entries.put(person.getInum(), person);
+
+            for (String key : keys.getEntries()){
+                GluuCustomPerson person=entries.get(key);
+                if (person!=null) {
+                    UserResource scimUsr=new UserResource();
+                    transferAttributesToUserResource(person, scimUsr, url);
+                    resources.add(scimUsr);
+                }
+            }
+        }
+        log.info ("Found {} entries - returning {}", total, resources.size());
+
+        return new ScimCursorService.CursorPage<BaseScimResource>(resources, total, keys.getCookie());
+
+    }
+
     //See: https://github.com/GluuFederation/oxTrust/issues/800
     public void removePPIDsBranch(String dn) {
         try {
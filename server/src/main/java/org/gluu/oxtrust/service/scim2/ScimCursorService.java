@@ -0,0 +1,268 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.apache.commons.lang.NotImplementedException;
+import org.apache.commons.lang.StringUtils;
+import org.gluu.oxtrust.model.scim2.BaseScimResource;
+import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
+import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.persist.ldap.operation.LdapOperationService;
+import org.gluu.persist.operation.PersistenceOperationService;
+import org.gluu.search.filter.Filter;
+import org.slf4j.Logger;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+
+/**
+ * Server-side registry of continuation tokens (cursors) used when SCIM searches are done in cursor mode. Every cursor
+ * holds the LDAP simple paged results cookie returned for the previous page, so the next page continues an unsorted
+ * scan where the previous one stopped instead of making LDAP walk (and sort) the result set from the beginning as
+ * happens with <code>startIndex</code>-based paging. The cookie never leaves the server: clients only see an opaque token.
+ * <p>Cursors are immutable: every page hands out a fresh token, so a client retrying a request with the same token
+ * gets the same page. Tokens not used within {@link #CURSOR_TIME_TO_LIVE} milliseconds are discarded.</p>
+ * <p>Pages are requested on any connection of the persistence pool, so the directory server has to accept paged results
+ * cookies issued on another connection (as OpenDJ does).</p>
+ */
+@ApplicationScoped
+public class ScimCursorService {
+
+    /**
+     * LDAP attribute used as key of entries found in cursor mode. It's unique and indexed for both people and groups
+     */
+    public static final String CURSOR_KEY_ATTRIBUTE = "inum";
+
+    public static final long CURSOR_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(10);
+
+    private static final int MAX_OPEN_CURSORS = 10000;
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private PersistenceEntryManager ldapEntryManager;
+
+    private Map<String, Cursor> cursors = new ConcurrentHashMap<String, Cursor>();
+
+    private volatile long lastPurge;
+
+    /**
+     * Holds the state of a search done in cursor mode at a given page boundary
+     */
+    public static class Cursor {
+
+        private final String resourceType;
+        private final String filter;
+        private final ASN1OctetString cookie;
+        private final int nextIndex;
+        private final int totalResults;
+        private final long expiresAt;
+
+        private Cursor(String resourceType, String filter, ASN1OctetString cookie, int nextIndex, int totalResults) {
+            this.resourceType = resourceType;
+            this.filter = filter;
+            this.cookie = cookie;
+            this.nextIndex = nextIndex;
+            this.totalResults = totalResults;
+            this.expiresAt = System.currentTimeMillis() + CURSOR_TIME_TO_LIVE;
+        }
+
+        public ASN1OctetString getCookie() {
+            return cookie;
+        }
+
+        /**
+         * @return The 1-based index (in the overall result set) of the first entry of the page this cursor points to
+         */
+        public int getNextIndex() {
+            return nextIndex;
+        }
+
+        /**
+         * @return The total number of results the search had at the moment the first page was requested
+         */
+        public int getTotalResults() {
+            return totalResults;
+        }
+
+        private boolean isExpired(long now) {
+            return now > expiresAt;
+        }
+
+    }
+
+    /**
+     * A page of results found in cursor mode
+     */
+    public static class CursorPage<T> {
+
+        private final List<T> entries;
+        private final int totalEntriesCount;
+        private final ASN1OctetString cookie;
+
+        public CursorPage(List<T> entries, int totalEntriesCount, ASN1OctetString cookie) {
+            this.entries = entries;
+            this.totalEntriesCount = totalEntriesCount;
+            this.cookie = cookie;
+        }
+
+        public List<T> getEntries() {
+            return entries;
+        }
+
+        public int getTotalEntriesCount() {
+            return totalEntriesCount;
+        }
+
+        /**
+         * @return Cookie to obtain the following page or null if no more results are available
+         */
+        public ASN1OctetString getCookie() {
+            return cookie;
+        }
+
+    }
+
+    /**
+     * Registers the position reached after a page of results has been served.
+     * @param cls Resource type the search refers to
+     * @param filter SCIM filter expression employed in the search (may be null)
+     * @param cookie Paged results cookie returned by LDAP for the page served
+     * @param nextIndex 1-based index of the first entry of the following page
+     * @param totalResults Total number of results matching the search
+     * @return An opaque token the client can supply to obtain the next page
+     */
+    public String register(Class<? extends BaseScimResource> cls, String filter, ASN1OctetString cookie, int nextIndex, int totalResults) {
+
+        purgeExpired();
+        if (cursors.size() >= MAX_OPEN_CURSORS) {
+            log.warn("Maximum number of open SCIM cursors ({}) reached. Cursor will not be created", MAX_OPEN_CURSORS);
+            return null;
+        }
+
+        String token = UUID.randomUUID().toString();
+        cursors.put(token, new Cursor(ScimResourceUtil.getType(cls), filter, cookie, nextIndex, totalResults));
+        log.trace("Registered cursor {} for next index {}", token, nextIndex);
+        return token;
+
+    }
+
+    /**
+     * Retrieves the cursor associated to the token passed. A cursor is only returned if it has not expired, and was
+     * originated with a search of the same resource type and filter expression.
+     * @param token Continuation token previously issued by {@link #register(Class, String, ASN1OctetString, int, int) register}
+     * @param cls Resource type of the current search
+     * @param filter SCIM filter expression of the current search
+     * @return A Cursor object or null if no valid cursor is associated to token
+     */
+    public Cursor lookup(String token, Class<? extends BaseScimResource> cls, String filter) {
+
+        Cursor cursor = token == null ? null : cursors.get(token);
+        if (cursor != null) {
+            if (cursor.isExpired(System.currentTimeMillis())) {
+                cursors.remove(token);
+                cursor = null;
+            }
+            else
+            if (!StringUtils.equals(cursor.resourceType, ScimResourceUtil.getType(cls)) || !StringUtils.equals(cursor.filter, filter)) {
+                log.warn("Cursor {} was issued for a different search", token);
+                cursor = null;
+            }
+        }
+        return cursor;
+
+    }
+
+    /**
+     * Finds keys ({@link #CURSOR_KEY_ATTRIBUTE} values) of the next page of entries with an unsorted simple paged results
+     * search. Only keys are returned by LDAP, so entries of the page are loaded afterwards with {@link #keysFilter(List)}
+     * @param baseDn Base DN of the search
+     * @param filter LDAP filter of the search
+     * @param cursor Position where the page starts. Null to obtain the first page
+     * @param count Maximum number of keys to return
+     * @return Keys in the order LDAP returned them. Total count is not computed
+     * @throws LDAPException
+     */
+    public CursorPage<String> findKeys(String baseDn, Filter filter, Cursor cursor, int count) throws LDAPException {
+
+        PersistenceOperationService persistenceOperationService = ldapEntryManager.getOperationService();
+        if (!(persistenceOperationService instanceof LdapOperationService))
+            throw new NotImplementedException("Current Persistence mechanism does not support cursor mode");
+
+        LdapOperationService ldapOperationService = (LdapOperationService) persistenceOperationService;
+        SearchRequest searchRequest = new SearchRequest(baseDn, SearchScope.SUB, com.unboundid.ldap.sdk.Filter.create(filter.toString()),
+                CURSOR_KEY_ATTRIBUTE);
+        searchRequest.setControls(new SimplePagedResultsControl(count, cursor == null ? null : cursor.getCookie()));
+
+        List<String> keys = new ArrayList<String>();
+        ASN1OctetString cookie = null;
+        LDAPConnection connection = ldapOperationService.getConnection();
+        try {
+            SearchResult searchResult = connection.search(searchRequest);
+            for (SearchResultEntry entry : searchResult.getSearchEntries()) {
+                String key = entry.getAttributeValue(CURSOR_KEY_ATTRIBUTE);
+                if (key != null)
+                    keys.add(key);
+            }
+
+            SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(searchResult);
+            if (responseControl != null && responseControl.moreResultsToReturn())
+                cookie = responseControl.getCookie();
+        } finally {
+            ldapOperationService.releaseConnection(connection);
+        }
+        return new CursorPage<String>(keys, -1, cookie);
+
+    }
+
+    /**
+     * Builds an LDAP filter that matches the entries having the keys passed
+     * @param keys Non empty list of {@link #CURSOR_KEY_ATTRIBUTE} values
+     * @return An LDAP filter
+     */
+    public Filter keysFilter(List<String> keys) {
+
+        Filter[] filters = new Filter[keys.size()];
+        for (int i = 0; i < filters.length; i++)
+            filters[i] = Filter.createEqualityFilter(CURSOR_KEY_ATTRIBUTE, keys.get(i));
+
+        return Filter.createORFilter(filters);
+
+    }
+
+    private void purgeExpired() {
+
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < TimeUnit.MINUTES.toMillis(1) && cursors.size() < MAX_OPEN_CURSORS)
+            return;
+
+        lastPurge = now;
+        for (Iterator<Cursor> it = cursors.values().iterator(); it.hasNext(); ) {
+            if (it.next().isExpired(now))
+                it.remove();
+        }
+
+    }
+
+}
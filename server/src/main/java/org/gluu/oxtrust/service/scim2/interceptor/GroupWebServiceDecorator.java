@@ -192,6 +192,7 @@ public class GroupWebServiceDecorator extends BaseScimWebService implements IGro
                 searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr(), searchReq);
 
         if (response==null) {
+            searchReq.setCursor(searchRequest.getCursor());
             response = service.searchGroupsPost(searchReq);
         }
         return response;
@@ -5,9 +5,6 @@
  */
 package org.gluu.oxtrust.service.scim2.interceptor;
 
-import java.util.Collections;
-import java.util.List;
-
 import javax.annotation.Priority;
 import javax.decorator.Decorator;
 import javax.decorator.Delegate;
@@ -18,6 +15,7 @@ import javax.ws.rs.core.Response;
 
 import org.apache.commons.lang.StringUtils;
 import org.gluu.oxtrust.ldap.service.IPersonService;
+import org.gluu.oxtrust.ldap.service.PersonUniquenessService;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.exception.SCIMException;
 import org.gluu.oxtrust.model.scim2.ErrorScimType;
@@ -49,6 +47,9 @@ public class UserWebServiceDecorator extends BaseScimWebService implements IUser
     @Inject
     private IPersonService personService;
 
+    @Inject
+    private PersonUniquenessService personUniquenessService;
+
     private Response validateExistenceOfUser(String id){
 
         Response response=null;
@@ -63,25 +64,21 @@ public class UserWebServiceDecorator extends BaseScimWebService implements IUser
     }
 
     private void checkUidExistence(String uid) throws DuplicateEntryException{
-        if (personService.getPersonByUid(uid) != null)
-            throw new DuplicateEntryException("Duplicate UID value: " + uid);
+        checkUidExistence(uid, null);
     }
 
     private void checkUidExistence(String uid, String id) throws DuplicateEntryException{
 
         // Validate if there is an attempt to supply a userName already in use by a user other than current
-        List<GluuCustomPerson> list=null;
+        boolean used=false;
         try{
-            list=personService.findPersonsByUids(Collections.singletonList(uid), new String[]{"inum"});
+            used=personUniquenessService.isUidUsed(uid, id);
         }
         catch (Exception e){
             log.error(e.getMessage(), e);
         }
-        if (list!=null){
-            for (GluuCustomPerson p : list)
-                if (!p.getInum().equals(id))
-                    throw new DuplicateEntryException("Duplicate UID value: " + uid);
-        }
+        if (used)
+            throw new DuplicateEntryException("Duplicate UID value: " + uid);
 
     }
 
@@ -186,6 +183,7 @@ public class UserWebServiceDecorator extends BaseScimWebService implements IUser
                             searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr(), searchReq);
 
         if (response==null) {
+            searchReq.setCursor(searchRequest.getCursor());
             response = service.searchUsersPost(searchReq);
         }
         return response;
@@ -69,6 +69,9 @@ public class ListResponseJsonSerializer extends JsonSerializer<ListResponse> {
                     jGen.writeNumberField("itemsPerPage", listResponse.getItemsPerPage());
                 }
 
+                if (listResponse.getNextCursor()!=null)
+                    jGen.writeStringField("nextCursor", listResponse.getNextCursor());
+
                 //Section 3.4.2 RFC 7644: Resources [...] REQUIRED if "totalResults" is non-zero
                 if (listResponse.getTotalResults()>0) {
                     jGen.writeArrayFieldStart("Resources");
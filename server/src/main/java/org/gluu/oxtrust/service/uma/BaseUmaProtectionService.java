@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
@@ -49,29 +50,99 @@ public abstract class BaseUmaProtectionService implements Serializable {
 	@Inject
 	private AppConfiguration appConfiguration;
 
-	private Token umaPat;
-	private long umaPatAccessTokenExpiration = 0l; // When the "accessToken" will expire;
+	// Do not retry to obtain PAT token in request threads more often than this
+	private static final long PAT_RETRY_INTERVAL = 5 * 1000;
+
+	private final AtomicReference<PatToken> umaPat = new AtomicReference<PatToken>();
+	private volatile long lastPatFailureTime = 0l;
 
 	private final ReentrantLock lock = new ReentrantLock();
 
+	/**
+	 * Immutable holder of PAT token and its expiration times
+	 */
+	private static class PatToken implements Serializable {
+
+		private static final long serialVersionUID = 2245169872453129735L;
+
+		private final Token token;
+		private final long expiration; // When the "accessToken" will expire
+		private final long refreshTime; // When a new token should be requested in background
+
+		private PatToken(Token token, long expiration, long refreshTime) {
+			this.token = token;
+			this.expiration = expiration;
+			this.refreshTime = refreshTime;
+		}
+
+	}
+
+	/**
+	 * Get current PAT token. Valid token is returned without locking. Only if there is no valid token (first use or
+	 * background refresh failed) one of the callers requests new token, the rest wait for it
+	 */
 	public Token getPatToken() throws UmaProtectionException {
-		if (isValidPatToken(this.umaPat, this.umaPatAccessTokenExpiration)) {
-			return this.umaPat;
+		PatToken currentPat = this.umaPat.get();
+		if (isValidPatToken(currentPat)) {
+			return currentPat.token;
 		}
 
 		lock.lock();
 		try {
-			if (isValidPatToken(this.umaPat, this.umaPatAccessTokenExpiration)) {
-				return this.umaPat;
+			currentPat = this.umaPat.get();
+			if (isValidPatToken(currentPat)) {
+				return currentPat.token;
 			}
 
-			retrievePatToken();
+			if (System.currentTimeMillis() - this.lastPatFailureTime < PAT_RETRY_INTERVAL) {
+				throw new UmaProtectionException("Failed to obtain valid UMA PAT token recently. Skipping new attempt");
+			}
+
+			try {
+				currentPat = retrievePatToken();
+			} catch (UmaProtectionException ex) {
+				this.lastPatFailureTime = System.currentTimeMillis();
+				throw ex;
+			}
+			this.umaPat.set(currentPat);
 		} finally {
 		  lock.unlock();
 		}
 
+		return currentPat == null ? null : currentPat.token;
+	}
+
+	/**
+	 * Request new PAT token if current one is close to expiration. It's called periodically by {@link UmaPatRefreshTimer}
+	 * so token rotation happens outside of request threads
+	 */
+	public void refreshPatTokenIfNeeded() {
+		PatToken currentPat = this.umaPat.get();
+		if ((currentPat == null) || (currentPat.refreshTime > System.currentTimeMillis())) {
+			return;
+		}
+
+		// Another thread is already requesting PAT token
+		if (!lock.tryLock()) {
+			return;
+		}
+
+		try {
+			if (currentPat != this.umaPat.get()) {
+				return;
+			}
 
-		return this.umaPat;
+			log.debug("Refreshing UMA PAT token in background for client '{}'", getClientId());
+			PatToken newPat = retrievePatToken();
+			if (newPat != null) {
+				this.umaPat.set(newPat);
+			}
+		} catch (UmaProtectionException ex) {
+			// Current token is still in use until expiration. Next timer event will try again
+			log.error("Failed to refresh UMA PAT token", ex);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	protected boolean isEnabledUmaAuthentication() {
@@ -88,10 +159,9 @@ public abstract class BaseUmaProtectionService implements Serializable {
 		return false;
 	}
 
-	private void retrievePatToken() throws UmaProtectionException {
-		this.umaPat = null;
+	private PatToken retrievePatToken() throws UmaProtectionException {
 		if (umaMetadata == null) {
-			return;
+			return null;
 		}
 
 		String umaClientKeyStoreFile = getClientKeyStoreFile();
@@ -109,20 +179,21 @@ public abstract class BaseUmaProtectionService implements Serializable {
 		}
 		
 
+		Token patToken;
 		try {
-			this.umaPat = UmaClient.requestPat(umaMetadata.getTokenEndpoint(), umaClientKeyStoreFile, umaClientKeyStorePassword, getClientId(), getClientKeyId());
-			if (this.umaPat == null) {
-				this.umaPatAccessTokenExpiration = 0l;
-			} else {
-				this.umaPatAccessTokenExpiration = computeAccessTokenExpirationTime(this.umaPat.getExpiresIn());
-			}
+			patToken = UmaClient.requestPat(umaMetadata.getTokenEndpoint(), umaClientKeyStoreFile, umaClientKeyStorePassword, getClientId(), getClientKeyId());
 		} catch (Exception ex) {
 			throw new UmaProtectionException("Failed to obtain valid UMA PAT token", ex);
 		}
 		
-		if ((this.umaPat == null) || (this.umaPat.getAccessToken() == null)) {
+		if ((patToken == null) || (patToken.getAccessToken() == null)) {
 			throw new UmaProtectionException("Failed to obtain valid UMA PAT token");
 		}
+
+		long expiration = computeAccessTokenExpirationTime(patToken.getExpiresIn());
+		long refreshTime = computeRefreshTime(expiration);
+
+		return new PatToken(patToken, expiration, refreshTime);
 	}
 
 	protected long computeAccessTokenExpirationTime(Integer expiresIn) {
@@ -136,12 +207,19 @@ public abstract class BaseUmaProtectionService implements Serializable {
 		return calendar.getTimeInMillis();
 	}
 
-	private boolean isValidPatToken(Token validatePatToken, long validatePatTokenExpiration) {
+	private long computeRefreshTime(long expiration) {
+		// Request new token when 80% of its lifetime has passed
+		final long now = System.currentTimeMillis();
+
+		return now + (expiration - now) * 4 / 5;
+	}
+
+	private boolean isValidPatToken(PatToken validatePatToken) {
 		final long now = System.currentTimeMillis();
 
 		// Get new access token only if is the previous one is missing or expired
-        return !((validatePatToken == null) || (validatePatToken.getAccessToken() == null) ||
-                (validatePatTokenExpiration <= now));
+        return !((validatePatToken == null) || (validatePatToken.token.getAccessToken() == null) ||
+                (validatePatToken.expiration <= now));
     }
 
     protected Response getErrorResponse(Response.Status status, String detail) {
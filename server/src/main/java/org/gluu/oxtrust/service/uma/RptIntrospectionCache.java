@@ -0,0 +1,184 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.service.uma;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.xdi.oxauth.model.uma.RptIntrospectionResponse;
+
+/**
+ * Keeps RPT introspection results for a short period of time so clients reusing the same RPT for many calls don't
+ * trigger a request to oxAuth on every call. Entries are keyed by RPT hash and never outlive the token expiration
+ * time. Inactive tokens are cached too, but for a shorter period. Active token permissions can be extended by UMA
+ * RPT upgrade, so callers invalidate entry when cached permissions don't cover requested ones.
+ *
+ * Maximum times (in seconds) can be adjusted with system properties "gluu.rpt.cache.maxTtl" and
+ * "gluu.rpt.cache.negativeTtl". Setting the first one to zero disables the cache.
+ */
+@ApplicationScoped
+@Named("rptIntrospectionCache")
+public class RptIntrospectionCache {
+
+	public static final long DEFAULT_MAX_TTL = 60; // 1 minute
+	public static final long DEFAULT_NEGATIVE_TTL = 10;
+
+	private static final int MAX_ENTRIES = 10000;
+
+	@Inject
+	private Logger log;
+
+	private final long maxTtl = Long.getLong("gluu.rpt.cache.maxTtl", DEFAULT_MAX_TTL) * 1000;
+	private final long negativeTtl = Long.getLong("gluu.rpt.cache.negativeTtl", DEFAULT_NEGATIVE_TTL) * 1000;
+
+	private Map<String, CachedStatus> cache = new ConcurrentHashMap<String, CachedStatus>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong negativeHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public static class CachedStatus {
+
+		private final RptIntrospectionResponse response;
+		private final long expiresAt;
+
+		private CachedStatus(RptIntrospectionResponse response, long expiresAt) {
+			this.response = response;
+			this.expiresAt = expiresAt;
+		}
+
+		/**
+		 * @return Introspection response or null if the token was found inactive
+		 */
+		public RptIntrospectionResponse getResponse() {
+			return response;
+		}
+
+	}
+
+	public boolean isEnabled() {
+		return maxTtl > 0;
+	}
+
+	/**
+	 * Get cached status of RPT token
+	 *
+	 * @param rptToken
+	 *            RPT token
+	 * @return Cached status or null if token is not in cache
+	 */
+	public CachedStatus get(String rptToken) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		String key = getKey(rptToken);
+		CachedStatus cachedStatus = cache.get(key);
+		if ((cachedStatus != null) && (cachedStatus.expiresAt < System.currentTimeMillis())) {
+			cache.remove(key);
+			cachedStatus = null;
+		}
+
+		if (cachedStatus == null) {
+			misses.incrementAndGet();
+		} else if (cachedStatus.response == null) {
+			negativeHits.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+
+		return cachedStatus;
+	}
+
+	/**
+	 * Store status of RPT token
+	 *
+	 * @param rptToken
+	 *            RPT token
+	 * @param rptStatusResponse
+	 *            Active status response or null if token is not active
+	 */
+	public void put(String rptToken, RptIntrospectionResponse rptStatusResponse) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		long expiresAt;
+		if (rptStatusResponse == null) {
+			expiresAt = now + negativeTtl;
+		} else {
+			expiresAt = now + maxTtl;
+
+			long tokenExpiresAt = getExpirationTime(rptStatusResponse);
+			if (tokenExpiresAt > 0) {
+				expiresAt = Math.min(expiresAt, tokenExpiresAt);
+			}
+		}
+
+		if (expiresAt <= now) {
+			return;
+		}
+
+		if (cache.size() >= MAX_ENTRIES) {
+			purge(now);
+		}
+
+		cache.put(getKey(rptToken), new CachedStatus(rptStatusResponse, expiresAt));
+	}
+
+	/**
+	 * Remove cached status of RPT token
+	 *
+	 * @param rptToken
+	 *            RPT token
+	 */
+	public void invalidate(String rptToken) {
+		cache.remove(getKey(rptToken));
+	}
+
+	private void purge(long now) {
+		for (Iterator<CachedStatus> it = cache.values().iterator(); it.hasNext();) {
+			if (it.next().expiresAt < now) {
+				it.remove();
+			}
+		}
+
+		if (cache.size() >= MAX_ENTRIES) {
+			log.warn("RPT introspection cache is full. Clearing it");
+			cache.clear();
+		}
+
+		log.debug("RPT introspection cache statistics. Hits: {}, negative hits: {}, misses: {}, size: {}", hits.get(),
+				negativeHits.get(), misses.get(), cache.size());
+	}
+
+	private String getKey(String rptToken) {
+		return DigestUtils.sha256Hex(rptToken);
+	}
+
+	/**
+	 * Token expiration "exp" is given in seconds since epoch
+	 */
+	private long getExpirationTime(RptIntrospectionResponse rptStatusResponse) {
+		Integer expiresAt = rptStatusResponse.getExpiresAt();
+		if (expiresAt == null) {
+			return -1;
+		}
+
+		return expiresAt.longValue() * 1000;
+	}
+
+}
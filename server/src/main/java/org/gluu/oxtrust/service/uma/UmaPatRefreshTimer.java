@@ -0,0 +1,79 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.service.uma;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.service.cdi.event.UmaPatRefreshEvent;
+import org.slf4j.Logger;
+import org.xdi.service.cdi.async.Asynchronous;
+import org.xdi.service.cdi.event.Scheduled;
+import org.xdi.service.timer.event.TimerEvent;
+import org.xdi.service.timer.schedule.TimerSchedule;
+
+/**
+ * Renews PAT tokens of UMA protection services before they expire, so requests never wait for a new token
+ */
+@ApplicationScoped
+@Named("umaPatRefreshTimer")
+public class UmaPatRefreshTimer {
+
+	private static final int DEFAULT_INTERVAL = 30; // 30 seconds
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private Event<TimerEvent> timerEvent;
+
+	@Inject
+	@Any
+	private Instance<BaseUmaProtectionService> protectionServices;
+
+	private AtomicBoolean isActive;
+
+	public void initTimer() {
+		log.info("Initializing UMA PAT Refresh Timer");
+		this.isActive = new AtomicBoolean(false);
+
+		final int delay = 60;
+		final int interval = DEFAULT_INTERVAL;
+
+		timerEvent.fire(new TimerEvent(new TimerSchedule(delay, interval), new UmaPatRefreshEvent(),
+				Scheduled.Literal.INSTANCE));
+	}
+
+	@Asynchronous
+	public void process(@Observes @Scheduled UmaPatRefreshEvent umaPatRefreshEvent) {
+		if (this.isActive.get()) {
+			return;
+		}
+
+		if (!this.isActive.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			for (BaseUmaProtectionService protectionService : protectionServices) {
+				protectionService.refreshPatTokenIfNeeded();
+			}
+		} catch (Throwable ex) {
+			log.error("Exception happened while refreshing UMA PAT tokens", ex);
+		} finally {
+			this.isActive.set(false);
+		}
+	}
+
+}
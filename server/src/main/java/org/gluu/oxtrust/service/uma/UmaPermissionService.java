@@ -66,6 +66,9 @@ public class UmaPermissionService implements Serializable {
 	@Inject
 	private AppInitializer appInitializer;
 
+	@Inject
+	private RptIntrospectionCache rptIntrospectionCache;
+
 	private org.xdi.oxauth.client.uma.UmaPermissionService permissionService;
 	private UmaRptIntrospectionService rptStatusService;
 
@@ -115,28 +118,16 @@ public class UmaPermissionService implements Serializable {
 		if (StringHelper.isNotEmpty(authorization) && authorization.startsWith("Bearer ")) {
 			String rptToken = authorization.substring(7);
 	
-	        RptIntrospectionResponse rptStatusResponse = getStatusResponse(patToken, rptToken);
+	        RptIntrospectionResponse rptStatusResponse = getStatusResponse(patToken, rptToken, scopeIds);
 			if ((rptStatusResponse == null) || !rptStatusResponse.getActive()) {
 				log.error("Status response for RPT token: '{}' is invalid", rptToken);
 				//return authenticationFailure;
 			} else{
-                boolean rptHasPermissions = isRptHasPermissions(rptStatusResponse);
-
-                if (rptHasPermissions) {
-                	// Collect all scopes
-                	List<String> returnScopeIds = new LinkedList<String>();
-                    for (UmaPermission umaPermission : rptStatusResponse.getPermissions()) {
-                        if (umaPermission.getScopes() != null) {
-                        	returnScopeIds.addAll(umaPermission.getScopes());
-                        }
-                    }
-                    
-                    if (returnScopeIds.containsAll(scopeIds)) {
-                        return authenticationSuccess;
-                    }
-
-                    log.error("Status response for RPT token: '{}' not contains right permissions", rptToken);
+                if (isRptHasPermissions(rptStatusResponse, scopeIds)) {
+                    return authenticationSuccess;
                 }
+
+                log.error("Status response for RPT token: '{}' not contains right permissions", rptToken);
             }
 		}
 
@@ -152,7 +143,34 @@ public class UmaPermissionService implements Serializable {
         return !((umaRptStatusResponse.getPermissions() == null) || umaRptStatusResponse.getPermissions().isEmpty());
     }
 
-	private RptIntrospectionResponse getStatusResponse(Token patToken, String rptToken) {
+	private boolean isRptHasPermissions(RptIntrospectionResponse umaRptStatusResponse, List<String> scopeIds) {
+		if (!isRptHasPermissions(umaRptStatusResponse)) {
+			return false;
+		}
+
+		// Collect all scopes
+		List<String> returnScopeIds = new LinkedList<String>();
+		for (UmaPermission umaPermission : umaRptStatusResponse.getPermissions()) {
+			if (umaPermission.getScopes() != null) {
+				returnScopeIds.addAll(umaPermission.getScopes());
+			}
+		}
+
+		return returnScopeIds.containsAll(scopeIds);
+	}
+
+	private RptIntrospectionResponse getStatusResponse(Token patToken, String rptToken, List<String> scopeIds) {
+		RptIntrospectionCache.CachedStatus cachedStatus = rptIntrospectionCache.get(rptToken);
+		if (cachedStatus != null) {
+			if ((cachedStatus.getResponse() == null) || isRptHasPermissions(cachedStatus.getResponse(), scopeIds)) {
+				return cachedStatus.getResponse();
+			}
+
+			// Client might have upgraded RPT after previous ticket. Check it again instead of sending new ticket
+			log.debug("Cached permissions of RPT token don't cover requested scopes. Introspecting it again");
+			rptIntrospectionCache.invalidate(rptToken);
+		}
+
 		String authorization = "Bearer " + patToken.getAccessToken();
 
 		// Determine RPT token to status
@@ -166,9 +184,15 @@ public class UmaPermissionService implements Serializable {
 
 		// Validate RPT status response
 		if ((rptStatusResponse == null) || !rptStatusResponse.getActive()) {
+			if (rptStatusResponse != null) {
+				// Don't cache failures to reach oxAuth, only tokens reported as inactive
+				rptIntrospectionCache.put(rptToken, null);
+			}
 			return null;
 		}
 
+		rptIntrospectionCache.put(rptToken, rptStatusResponse);
+
 		return rptStatusResponse;
 	}
 
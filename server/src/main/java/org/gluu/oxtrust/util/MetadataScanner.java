@@ -0,0 +1,245 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2018, Gluu
+ */
+
+package org.gluu.oxtrust.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts entityIDs, roles, organization names, certificates and endpoints from SAML metadata in one streaming pass.
+ * Unlike DOM based parsing memory usage doesn't depend on file size, which matters for big federation aggregates.
+ */
+public final class MetadataScanner {
+
+	private static final Logger log = LoggerFactory.getLogger(MetadataScanner.class);
+
+	private static final String ENTITIES_DESCRIPTOR = "EntitiesDescriptor";
+	private static final String ENTITY_DESCRIPTOR = "EntityDescriptor";
+	private static final String SP_SSO_DESCRIPTOR = "SPSSODescriptor";
+	private static final String IDP_SSO_DESCRIPTOR = "IDPSSODescriptor";
+	private static final String ORGANIZATION_DISPLAY_NAME = "OrganizationDisplayName";
+	private static final String X509_CERTIFICATE = "X509Certificate";
+	private static final String ENTITY_ID = "entityID";
+	private static final String LOCATION = "Location";
+
+	private static final XMLInputFactory inputFactory = createInputFactory();
+
+	private MetadataScanner() {
+	}
+
+	public static class Metadata {
+
+		private boolean federation;
+		private List<String> entityIds = new ArrayList<String>();
+		private List<String> spEntityIds = new ArrayList<String>();
+		private List<String> idpEntityIds = new ArrayList<String>();
+		private Map<String, String> organizations = new HashMap<String, String>();
+		private Set<String> certificates = new LinkedHashSet<String>();
+		private Set<String> endpoints = new LinkedHashSet<String>();
+
+		/**
+		 * @return true if metadata contains EntitiesDescriptor element
+		 */
+		public boolean isFederation() {
+			return federation;
+		}
+
+		public void setFederation(boolean federation) {
+			this.federation = federation;
+		}
+
+		/**
+		 * @return entityIDs of all EntityDescriptor elements in document order. There can be duplicates
+		 */
+		public List<String> getEntityIds() {
+			return Collections.unmodifiableList(entityIds);
+		}
+
+		public void setEntityIds(List<String> entityIds) {
+			this.entityIds = entityIds;
+		}
+
+		public List<String> getSpEntityIds() {
+			return Collections.unmodifiableList(spEntityIds);
+		}
+
+		public void setSpEntityIds(List<String> spEntityIds) {
+			this.spEntityIds = spEntityIds;
+		}
+
+		public List<String> getIdpEntityIds() {
+			return Collections.unmodifiableList(idpEntityIds);
+		}
+
+		public void setIdpEntityIds(List<String> idpEntityIds) {
+			this.idpEntityIds = idpEntityIds;
+		}
+
+		/**
+		 * @return Map of entityID to organization display name
+		 */
+		public Map<String, String> getOrganizations() {
+			return Collections.unmodifiableMap(organizations);
+		}
+
+		public void setOrganizations(Map<String, String> organizations) {
+			this.organizations = organizations;
+		}
+
+		/**
+		 * @return Distinct Base64 encoded X.509 certificates without whitespaces
+		 */
+		public Set<String> getCertificates() {
+			return Collections.unmodifiableSet(certificates);
+		}
+
+		public void setCertificates(Set<String> certificates) {
+			this.certificates = certificates;
+		}
+
+		/**
+		 * @return Distinct locations of all endpoints
+		 */
+		public Set<String> getEndpoints() {
+			return Collections.unmodifiableSet(endpoints);
+		}
+
+		public void setEndpoints(Set<String> endpoints) {
+			this.endpoints = endpoints;
+		}
+
+	}
+
+	/**
+	 * Scan metadata file
+	 *
+	 * @param metadataFile
+	 *            Metadata file
+	 * @return Metadata or null if file can't be read or isn't well-formed XML
+	 */
+	public static Metadata scan(File metadataFile) {
+		InputStream is = null;
+		try {
+			is = FileUtils.openInputStream(metadataFile);
+			return scan(is);
+		} catch (IOException ex) {
+			log.error("Failed to read metadata file '{}'", metadataFile.getAbsolutePath(), ex);
+		} catch (XMLStreamException ex) {
+			log.error("Failed to parse metadata file '{}'", metadataFile.getAbsolutePath(), ex);
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+
+		return null;
+	}
+
+	public static Metadata scan(InputStream is) throws XMLStreamException {
+		Metadata metadata = new Metadata();
+
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(is);
+		try {
+			String currentEntityId = null;
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+
+				String localName = reader.getLocalName();
+				if (ENTITIES_DESCRIPTOR.equals(localName)) {
+					metadata.federation = true;
+				} else if (ENTITY_DESCRIPTOR.equals(localName)) {
+					currentEntityId = reader.getAttributeValue(null, ENTITY_ID);
+					metadata.entityIds.add(currentEntityId);
+				} else if (SP_SSO_DESCRIPTOR.equals(localName)) {
+					metadata.spEntityIds.add(currentEntityId);
+				} else if (IDP_SSO_DESCRIPTOR.equals(localName)) {
+					metadata.idpEntityIds.add(currentEntityId);
+				} else if (ORGANIZATION_DISPLAY_NAME.equals(localName)) {
+					metadata.organizations.put(currentEntityId, reader.getElementText());
+				} else if (X509_CERTIFICATE.equals(localName)) {
+					metadata.certificates.add(StringUtils.deleteWhitespace(reader.getElementText()));
+				} else {
+					String location = reader.getAttributeValue(null, LOCATION);
+					if (location != null) {
+						metadata.endpoints.add(location);
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		return metadata;
+	}
+
+	/**
+	 * Check if metadata file is federation metadata. Only the beginning of the file is read, because EntitiesDescriptor
+	 * can only appear as root element or inside another EntitiesDescriptor
+	 *
+	 * @param metadataFile
+	 *            Metadata file
+	 * @return true if root element of metadata is EntitiesDescriptor
+	 */
+	public static boolean isFederation(File metadataFile) {
+		InputStream is = null;
+		XMLStreamReader reader = null;
+		try {
+			is = FileUtils.openInputStream(metadataFile);
+			reader = inputFactory.createXMLStreamReader(is);
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					return ENTITIES_DESCRIPTOR.equals(reader.getLocalName());
+				}
+			}
+		} catch (IOException ex) {
+			log.error("Failed to read metadata file '{}'", metadataFile.getAbsolutePath(), ex);
+		} catch (XMLStreamException ex) {
+			log.error("Failed to parse metadata file '{}'", metadataFile.getAbsolutePath(), ex);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException ex) {
+					log.debug("Failed to close metadata reader", ex);
+				}
+			}
+			IOUtils.closeQuietly(is);
+		}
+
+		return false;
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+		return factory;
+	}
+
+}
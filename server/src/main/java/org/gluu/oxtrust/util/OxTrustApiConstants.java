@@ -6,6 +6,7 @@ public final class OxTrustApiConstants {
 	}
 
 	public static final String BASE_API_URL = "/api";
+	public static final String BASE_PROTECTED_API_URL = "/api/v1";
 	public static final String CLIENTS = "/clients";
 	public static final String GROUPS = "/groups";
 	public static final String GROUP_MEMBERS = "/members";
@@ -15,12 +16,14 @@ public final class OxTrustApiConstants {
 	public static final String SECTORS = "/sectoridentifiers";
 	public static final String ATTRIBUTES = "/attributes";
 	public static final String SEARCH = "/search";
+	public static final String EXPORT = "/export";
 	public static final String ACTIVE = "/active";
 	public static final String INACTIVE = "/inactive";
 	public static final String CONFIGURATION = "/configuration";
 	public static final String STATUS = "/status";
 	public static final String UMA = "/uma";
 	public static final String RESOURCES = "/resources";
+	public static final String AUDIT = "/audit";
 	public static final String INUM_PARAM_PATH = "/{inum}";
 	public static final String ID_PARAM_PATH = "/{id}";
 	public static final String MEMBER_INUM_PARAM_PATH = "/{minum}";
@@ -31,6 +34,13 @@ public final class OxTrustApiConstants {
 	public static final String ID = "id";
 	public static final String DISPLAY_NAME = "displayName";
 	public static final String SEARCH_PATTERN = "pattern";
+	public static final String GZIP = "gzip";
+	public static final String FROM = "from";
+	public static final String TO = "to";
+	public static final String ACTOR = "actor";
+	public static final String ACTION = "action";
+	public static final String TARGET_DN = "target_dn";
+	public static final String OUTCOME = "outcome";
 	public static final String SCOPE_INUM_PARAM_PATH = "/{sinum}";
 
 }
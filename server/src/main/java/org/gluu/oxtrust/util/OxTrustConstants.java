@@ -39,6 +39,7 @@ public final class OxTrustConstants {
     public static final String status = "status";
     public static final String gluuStatus = "gluuStatus";
     public static final String sn = "sn";
+    public static final String givenName = "givenName";
     public static final String cn = "cn";
     public static final String owner = "owner";
     public static final String member = "member";
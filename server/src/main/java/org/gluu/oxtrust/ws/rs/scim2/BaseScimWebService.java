@@ -6,6 +6,7 @@
 package org.gluu.oxtrust.ws.rs.scim2;
 
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static org.gluu.oxtrust.model.scim2.Constants.CURSOR_START;
 import static org.gluu.oxtrust.model.scim2.Constants.PATCH_REQUEST_SCHEMA_ID;
 import static org.gluu.oxtrust.model.scim2.Constants.SEARCH_REQUEST_SCHEMA_ID;
 
@@ -37,6 +38,7 @@ import org.gluu.oxtrust.model.scim2.util.ResourceValidator;
 import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
 import org.gluu.oxtrust.service.antlr.scimFilter.util.FilterUtil;
 import org.gluu.oxtrust.service.scim2.ExtensionService;
+import org.gluu.oxtrust.service.scim2.ScimCursorService;
 import org.gluu.oxtrust.service.scim2.serialization.ListResponseJsonSerializer;
 import org.gluu.oxtrust.service.scim2.serialization.ScimResourceSerializer;
 import org.gluu.persist.model.SortOrder;
@@ -64,6 +66,9 @@ public class BaseScimWebService {
     @Inject
     ExtensionService extService;
 
+    @Inject
+    ScimCursorService cursorService;
+
     public static final String SEARCH_SUFFIX = ".search";
 
     String endpointUrl;
@@ -199,11 +204,52 @@ public class BaseScimWebService {
 
     }
 
+    /**
+     * Resolves the cursor a search in cursor mode refers to
+     * @param cls Resource type searched
+     * @param token Continuation token supplied by the client
+     * @param filter SCIM filter of the search
+     * @return Null if token is the starting cursor, or the Cursor associated to the token
+     * @throws SCIMException If the token does not correspond to a valid cursor
+     */
+    ScimCursorService.Cursor lookupCursor(Class<? extends BaseScimResource> cls, String token, String filter) throws SCIMException{
+
+        ScimCursorService.Cursor cursor=null;
+        if (!CURSOR_START.equals(token)) {
+            cursor = cursorService.lookup(token, cls, filter);
+            if (cursor==null)
+                throw new SCIMException("Cursor supplied is not valid or has expired");
+        }
+        return cursor;
+
+    }
+
+    /**
+     * Registers the cursor that allows to obtain the page following the one passed
+     * @return A continuation token or null if no more results are available
+     */
+    String registerNextCursor(Class<? extends BaseScimResource> cls, String filter, ScimCursorService.CursorPage<BaseScimResource> page,
+                              int startIndex){
+
+        String token=null;
+        if (page.getCookie()!=null)
+            token=cursorService.register(cls, filter, page.getCookie(), startIndex + page.getEntries().size(), page.getTotalEntriesCount());
+
+        return token;
+
+    }
+
     String getListResponseSerialized(int total, int startIndex, List<BaseScimResource> resources, String attrsList,
                                      String excludedAttrsList, boolean ignoreResults) throws IOException{
+        return getListResponseSerialized(total, startIndex, resources, null, attrsList, excludedAttrsList, ignoreResults);
+    }
+
+    String getListResponseSerialized(int total, int startIndex, List<BaseScimResource> resources, String nextCursor,
+                                     String attrsList, String excludedAttrsList, boolean ignoreResults) throws IOException{
 
         ListResponse listResponse = new ListResponse(startIndex, resources.size(), total);
         listResponse.setResources(resources);
+        listResponse.setNextCursor(nextCursor);
 
         ObjectMapper mapper = new ObjectMapper();
         SimpleModule module = new SimpleModule("ListResponseModule", Version.unknownVersion());
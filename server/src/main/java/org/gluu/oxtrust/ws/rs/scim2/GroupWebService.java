@@ -16,6 +16,7 @@ import static org.gluu.oxtrust.model.scim2.Constants.QUERY_PARAM_START_INDEX;
 import static org.gluu.oxtrust.model.scim2.Constants.UTF8_CHARSET_FRAGMENT;
 
 import java.net.URI;
+import java.util.ArrayList;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -48,6 +49,7 @@ import org.gluu.oxtrust.model.scim2.patch.PatchRequest;
 import org.gluu.oxtrust.service.filter.ProtectedApi;
 import org.gluu.oxtrust.service.scim2.Scim2GroupService;
 import org.gluu.oxtrust.service.scim2.Scim2PatchService;
+import org.gluu.oxtrust.service.scim2.ScimCursorService;
 import org.gluu.oxtrust.service.scim2.interceptor.RefAdjusted;
 import org.gluu.persist.model.PagedResult;
 import org.gluu.persist.model.SortOrder;
@@ -222,11 +224,18 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
         Response response;
         try {
             log.debug("Executing web service method. searchGroups");
-            sortBy=translateSortByAttribute(GroupResource.class, sortBy);
-            PagedResult<BaseScimResource> resources = scim2GroupService.searchGroups(filter, sortBy, SortOrder.getByValue(sortOrder),
-                    startIndex, count, endpointUrl, userWebService.getEndpointUrl(), getMaxCount());
-
-            String json = getListResponseSerialized(resources.getTotalEntriesCount(), startIndex, resources.getEntries(), attrsList, excludedAttrsList, count==0);
+            String json;
+            if (count==0) {
+                //Only totalResults is of interest here: count entries instead of retrieving them
+                json = getListResponseSerialized(scim2GroupService.countGroups(filter), startIndex, new ArrayList<BaseScimResource>(), attrsList, excludedAttrsList, true);
+            }
+            else {
+                sortBy=translateSortByAttribute(GroupResource.class, sortBy);
+                PagedResult<BaseScimResource> resources = scim2GroupService.searchGroups(filter, sortBy, SortOrder.getByValue(sortOrder),
+                        startIndex, count, endpointUrl, userWebService.getEndpointUrl(), getMaxCount());
+
+                json = getListResponseSerialized(resources.getTotalEntriesCount(), startIndex, resources.getEntries(), attrsList, excludedAttrsList, false);
+            }
             response=Response.ok(json).location(new URI(endpointUrl)).build();
         }
         catch (SCIMException e){
@@ -255,7 +264,7 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
 
         //Calling searchGroups here does not provoke that method's interceptor/decorator being called (only this one's)
         URI uri=null;
-        Response response = searchGroups(searchRequest.getFilter(), searchRequest.getStartIndex(), searchRequest.getCount(),
+        Response response = searchRequest.getCursor()!=null ? searchGroupsWithCursor(searchRequest) : searchGroups(searchRequest.getFilter(), searchRequest.getStartIndex(), searchRequest.getCount(),
                 searchRequest.getSortBy(), searchRequest.getSortOrder(), searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr());
 
         try {
@@ -268,6 +277,40 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
 
     }
 
+    /**
+     * Performs a search in cursor mode (see {@link SearchRequest#setCursor(String)}). The search continues the
+     * unsorted LDAP paged search of the previous page, so the cost of every page does not depend on how deep it is
+     */
+    private Response searchGroupsWithCursor(SearchRequest searchRequest){
+
+        Response response;
+        try {
+            log.debug("Executing web service method. searchGroupsWithCursor");
+            String filter=searchRequest.getFilter();
+            int count=searchRequest.getCount();
+            ScimCursorService.Cursor cursor=lookupCursor(GroupResource.class, searchRequest.getCursor(), filter);
+
+            ScimCursorService.CursorPage<BaseScimResource> resources=scim2GroupService.searchGroups(filter, cursor, count, endpointUrl, userWebService.getEndpointUrl(), getMaxCount());
+            int startIndex=cursor==null ? 1 : cursor.getNextIndex();
+            int total=resources.getTotalEntriesCount();
+            String nextCursor=registerNextCursor(GroupResource.class, filter, resources, startIndex);
+
+            String json = getListResponseSerialized(total, startIndex, resources.getEntries(), nextCursor,
+                    searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr(), count==0);
+            response=Response.ok(json).location(new URI(endpointUrl)).build();
+        }
+        catch (SCIMException e){
+            log.error(e.getMessage(), e);
+            response=getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_VALUE, e.getMessage());
+        }
+        catch (Exception e){
+            log.error("Failure at searchGroupsWithCursor method", e);
+            response=getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, "Unexpected error: " + e.getMessage());
+        }
+        return response;
+
+    }
+
     @Path("{id}")
     @PATCH
     @Consumes({MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
@@ -17,6 +17,7 @@ import static org.gluu.oxtrust.model.scim2.Constants.UTF8_CHARSET_FRAGMENT;
 import static org.gluu.oxtrust.model.scim2.patch.PatchOperationType.REMOVE;
 
 import java.net.URI;
+import java.util.ArrayList;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -49,6 +50,7 @@ import org.gluu.oxtrust.model.scim2.user.UserResource;
 import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
 import org.gluu.oxtrust.service.filter.ProtectedApi;
 import org.gluu.oxtrust.service.scim2.Scim2PatchService;
+import org.gluu.oxtrust.service.scim2.ScimCursorService;
 import org.gluu.oxtrust.service.scim2.Scim2UserService;
 import org.gluu.oxtrust.service.scim2.interceptor.RefAdjusted;
 import org.gluu.persist.model.PagedResult;
@@ -224,11 +226,18 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
         Response response;
         try {
             log.debug("Executing web service method. searchUsers");
-            sortBy=translateSortByAttribute(UserResource.class, sortBy);
-            PagedResult<BaseScimResource> resources = scim2UserService.searchUsers(filter, sortBy, SortOrder.getByValue(sortOrder),
-                    startIndex, count, endpointUrl, getMaxCount());
+            String json;
+            if (count==0) {
+                //Only totalResults is of interest here: count entries instead of retrieving them
+                json = getListResponseSerialized(scim2UserService.countUsers(filter), startIndex, new ArrayList<BaseScimResource>(), attrsList, excludedAttrsList, true);
+            }
+            else {
+                sortBy=translateSortByAttribute(UserResource.class, sortBy);
+                PagedResult<BaseScimResource> resources = scim2UserService.searchUsers(filter, sortBy, SortOrder.getByValue(sortOrder),
+                        startIndex, count, endpointUrl, getMaxCount());
 
-            String json = getListResponseSerialized(resources.getTotalEntriesCount(), startIndex, resources.getEntries(), attrsList, excludedAttrsList, count==0);
+                json = getListResponseSerialized(resources.getTotalEntriesCount(), startIndex, resources.getEntries(), attrsList, excludedAttrsList, false);
+            }
             response=Response.ok(json).location(new URI(endpointUrl)).build();
         }
         catch (SCIMException e){
@@ -257,7 +266,7 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
 
         //Calling searchUsers here does not provoke that method's interceptor/decorator being called (only this one's)
         URI uri=null;
-        Response response = searchUsers(searchRequest.getFilter(),searchRequest.getStartIndex(), searchRequest.getCount(),
+        Response response = searchRequest.getCursor()!=null ? searchUsersWithCursor(searchRequest) : searchUsers(searchRequest.getFilter(),searchRequest.getStartIndex(), searchRequest.getCount(),
                 searchRequest.getSortBy(), searchRequest.getSortOrder(), searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr());
 
         try {
@@ -270,6 +279,40 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
 
     }
 
+    /**
+     * Performs a search in cursor mode (see {@link SearchRequest#setCursor(String)}). The search continues the
+     * unsorted LDAP paged search of the previous page, so the cost of every page does not depend on how deep it is
+     */
+    private Response searchUsersWithCursor(SearchRequest searchRequest){
+
+        Response response;
+        try {
+            log.debug("Executing web service method. searchUsersWithCursor");
+            String filter=searchRequest.getFilter();
+            int count=searchRequest.getCount();
+            ScimCursorService.Cursor cursor=lookupCursor(UserResource.class, searchRequest.getCursor(), filter);
+
+            ScimCursorService.CursorPage<BaseScimResource> resources=scim2UserService.searchUsers(filter, cursor, count, endpointUrl, getMaxCount());
+            int startIndex=cursor==null ? 1 : cursor.getNextIndex();
+            int total=resources.getTotalEntriesCount();
+            String nextCursor=registerNextCursor(UserResource.class, filter, resources, startIndex);
+
+            String json = getListResponseSerialized(total, startIndex, resources.getEntries(), nextCursor,
+                    searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr(), count==0);
+            response=Response.ok(json).location(new URI(endpointUrl)).build();
+        }
+        catch (SCIMException e){
+            log.error(e.getMessage(), e);
+            response=getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_VALUE, e.getMessage());
+        }
+        catch (Exception e){
+            log.error("Failure at searchUsersWithCursor method", e);
+            response=getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, "Unexpected error: " + e.getMessage());
+        }
+        return response;
+
+    }
+
     @Path("{id}")
     @PATCH
     @Consumes({MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
@@ -0,0 +1,100 @@
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.gluu.oxtrust.ldap.service.AuditTrailService.AuditEvent;
+import org.gluu.oxtrust.ldap.service.AuditTrailService.Outcome;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import org.xdi.service.JsonService;
+
+import static org.testng.Assert.*;
+
+public class AuditTrailServiceTest extends BaseTempDirTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testFullBufferDropsEvents() throws Exception {
+        // Writer isn't started, so buffer isn't drained
+        AuditTrailService service = createService();
+
+        for (int i = 0; i < AuditTrailService.BUFFER_SIZE; i++) {
+            assertTrue(service.publish(createEvent(0, "USER " + i + " ADDED", null, Outcome.SUCCESS)));
+        }
+        assertFalse(service.publish(createEvent(0, "USER DROPPED", null, Outcome.SUCCESS)));
+        assertFalse(service.publish(createEvent(0, "USER DROPPED", null, Outcome.SUCCESS)));
+
+        assertEquals(service.getDroppedEvents(), 2);
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        long now = System.currentTimeMillis();
+        long currentHour = now - now % HOUR;
+
+        AuditTrailService service = createService();
+        service.init(tempDir);
+        service.publish(createEvent(currentHour - 3 * HOUR, "USER 1 ADDED", "inum=1,ou=people,o=gluu", Outcome.SUCCESS));
+        service.publish(createEvent(currentHour - 2 * HOUR, "USER 2 ADD FAILED", "inum=2,ou=people,o=gluu", Outcome.FAILURE));
+        service.publish(createEvent(currentHour - 2 * HOUR + 1, "GROUP 3 ADDED", "inum=3,ou=groups,o=gluu", Outcome.SUCCESS));
+        service.publish(createEvent(now, "USER 1 REMOVED", "inum=1,ou=people,o=gluu", Outcome.SUCCESS));
+        // Writer stores all buffered events before it stops
+        service.destroy();
+
+        // Files of previous hours are compressed
+        List<String> fileNames = new ArrayList<String>(Arrays.asList(tempDir.list()));
+        int compressedFiles = 0;
+        for (String fileName : fileNames) {
+            if (fileName.endsWith(".json.gz")) {
+                compressedFiles++;
+            }
+        }
+        assertEquals(compressedFiles, 2, fileNames.toString());
+
+        assertEquals(getActions(service.query(null, null, null, null, null, null, 100)),
+                Arrays.asList("USER 1 ADDED", "USER 2 ADD FAILED", "GROUP 3 ADDED", "USER 1 REMOVED"));
+        assertEquals(getActions(service.query(new Date(currentHour - 2 * HOUR), new Date(currentHour - 1), null, null, null, null, 100)),
+                Arrays.asList("USER 2 ADD FAILED", "GROUP 3 ADDED"));
+        assertEquals(getActions(service.query(null, null, null, "added", null, null, 100)),
+                Arrays.asList("USER 1 ADDED", "GROUP 3 ADDED"));
+        assertEquals(getActions(service.query(null, null, null, null, "ou=people,o=gluu", null, 100)),
+                Arrays.asList("USER 1 ADDED", "USER 2 ADD FAILED", "USER 1 REMOVED"));
+        assertEquals(getActions(service.query(null, null, null, null, null, Outcome.FAILURE, 100)),
+                Arrays.asList("USER 2 ADD FAILED"));
+        assertEquals(getActions(service.query(null, null, null, null, null, null, 2)),
+                Arrays.asList("USER 1 ADDED", "USER 2 ADD FAILED"));
+    }
+
+    private AuditEvent createEvent(long timestamp, String action, String targetDn, Outcome outcome) {
+        AuditEvent event = new AuditEvent();
+        event.setTimestamp(timestamp);
+        event.setAction(action);
+        event.setTargetDn(targetDn);
+        event.setOutcome(outcome);
+        event.setMessage(action);
+
+        return event;
+    }
+
+    private List<String> getActions(List<AuditEvent> events) {
+        List<String> result = new ArrayList<String>();
+        for (AuditEvent event : events) {
+            result.add(event.getAction());
+        }
+
+        return result;
+    }
+
+    private AuditTrailService createService() throws Exception {
+        JsonService jsonService = new JsonService();
+        jsonService.init();
+
+        return new AuditTrailService(LoggerFactory.getLogger(AuditTrailService.class), jsonService);
+    }
+
+}
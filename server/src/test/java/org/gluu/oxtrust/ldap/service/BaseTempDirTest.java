@@ -0,0 +1,28 @@
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+
+/**
+ * Creates empty temporary folder before each test and removes it after test
+ */
+public abstract class BaseTempDirTest {
+
+    protected File tempDir;
+
+    @BeforeMethod
+    public void createTempDir() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    }
+
+    @AfterMethod
+    public void removeTempDir() {
+        FileUtils.deleteQuietly(tempDir);
+    }
+
+}
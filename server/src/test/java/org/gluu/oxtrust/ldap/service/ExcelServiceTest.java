@@ -0,0 +1,91 @@
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class ExcelServiceTest {
+
+    private File csvFile;
+
+    @BeforeMethod
+    public void createFile() throws IOException {
+        csvFile = File.createTempFile("persons", ".csv");
+    }
+
+    @AfterMethod
+    public void removeFile() {
+        FileUtils.deleteQuietly(csvFile);
+    }
+
+    @Test
+    public void testQuotedValues() throws Exception {
+        FileUtils.writeStringToFile(csvFile, "uid,displayName,description\r\n"
+                + "user1,\"Doe, John\",\"Says \"\"hi\"\"\"\r\n"
+                + "user2,Jane,\"first line\nsecond line\"\n", "UTF-8");
+
+        List<Map<Integer, String>> rows = readCsv();
+
+        assertEquals(rows.size(), 3);
+        assertEquals(rows.get(0), cells("uid", "displayName", "description"));
+        assertEquals(rows.get(1), cells("user1", "Doe, John", "Says \"hi\""));
+        assertEquals(rows.get(2), cells("user2", "Jane", "first line\nsecond line"));
+    }
+
+    @Test
+    public void testEmptyValuesAreSkipped() throws Exception {
+        FileUtils.writeStringToFile(csvFile, "uid,mail,displayName\nuser1,,John\n", "UTF-8");
+
+        List<Map<Integer, String>> rows = readCsv();
+
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        expected.put(0, "user1");
+        expected.put(2, "John");
+        assertEquals(rows.get(1), expected);
+    }
+
+    @Test
+    public void testBomIsSkipped() throws Exception {
+        FileUtils.writeStringToFile(csvFile, "\uFEFFuid,mail\nuser1,user1@example.com\n", "UTF-8");
+
+        List<Map<Integer, String>> rows = readCsv();
+
+        assertEquals(rows.size(), 2);
+        assertEquals(rows.get(0), cells("uid", "mail"));
+        assertEquals(rows.get(1), cells("user1", "user1@example.com"));
+    }
+
+    private List<Map<Integer, String>> readCsv() throws Exception {
+        final List<Map<Integer, String>> rows = new ArrayList<Map<Integer, String>>();
+        new ExcelService().read(csvFile, "persons.csv", new ExcelService.RowHandler() {
+            @Override
+            public boolean row(int row, Map<Integer, String> cells) {
+                assertEquals(row, rows.size());
+                rows.add(cells);
+                return true;
+            }
+        });
+
+        return rows;
+    }
+
+    private Map<Integer, String> cells(String... values) {
+        Map<Integer, String> result = new HashMap<Integer, String>();
+        for (int i = 0; i < values.length; i++) {
+            result.put(i, values[i]);
+        }
+
+        return result;
+    }
+
+}
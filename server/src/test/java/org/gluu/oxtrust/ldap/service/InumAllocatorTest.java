@@ -0,0 +1,75 @@
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class InumAllocatorTest extends BaseTempDirTest {
+
+    @AfterMethod
+    public void clearNodeId() {
+        System.clearProperty(InumAllocator.NODE_ID_PROPERTY);
+    }
+
+    @Test
+    public void testUniqueSuffixes() throws Exception {
+        InumAllocator allocator = createAllocator();
+
+        // More than one second of sequence numbers
+        List<String> suffixes = allocator.allocate(200000);
+        suffixes.add(allocator.allocate());
+
+        Set<String> uniqueSuffixes = new HashSet<String>(suffixes);
+        assertEquals(uniqueSuffixes.size(), suffixes.size());
+
+        String nodeId = String.format("%04X", allocator.getNodeId());
+        for (String suffix : suffixes) {
+            assertTrue(suffix.matches("[0-9A-F]{4}\\.[0-9A-F]{4}\\.[0-9A-F]{4}\\.[0-9A-F]{4}"), suffix);
+            assertEquals(suffix.split("\\.")[2], nodeId);
+        }
+    }
+
+    @Test
+    public void testConfiguredNodeId() throws Exception {
+        System.setProperty(InumAllocator.NODE_ID_PROPERTY, String.valueOf(0x1234));
+        InumAllocator allocator = createAllocator();
+
+        assertEquals(allocator.getNodeId(), 0x1234);
+        assertEquals(allocator.allocate().split("\\.")[2], "1234");
+    }
+
+    @Test
+    public void testGeneratedNodeIdIsStored() throws Exception {
+        InumAllocator allocator = createAllocator();
+
+        assertEquals(createAllocator().getNodeId(), allocator.getNodeId());
+    }
+
+    @Test
+    public void testNoReissueAfterRestart() throws Exception {
+        InumAllocator allocator = createAllocator();
+
+        // Allocation continues with next seconds in advance
+        List<String> suffixes = allocator.allocate(200000);
+        String lastSuffix = suffixes.get(suffixes.size() - 1);
+
+        InumAllocator restartedAllocator = createAllocator();
+        assertEquals(restartedAllocator.getNodeId(), allocator.getNodeId());
+        assertTrue(restartedAllocator.allocate().compareTo(lastSuffix) > 0);
+    }
+
+    private InumAllocator createAllocator() throws Exception {
+        InumAllocator allocator = new InumAllocator(LoggerFactory.getLogger(InumAllocator.class));
+        allocator.init(new File(tempDir, InumAllocator.STATE_FILE));
+
+        return allocator;
+    }
+
+}
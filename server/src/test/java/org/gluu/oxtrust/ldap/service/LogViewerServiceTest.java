@@ -0,0 +1,102 @@
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.gluu.oxtrust.ldap.service.LogViewerService.LogChunk;
+import org.gluu.oxtrust.ldap.service.LogViewerService.LogLevel;
+import org.gluu.oxtrust.ldap.service.LogViewerService.LogLine;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class LogViewerServiceTest extends BaseTempDirTest {
+
+    private static final String LOG = "2018-10-01 10:00:00,001 INFO  [main] Application started\n"
+            + "2018-10-01 10:00:01,002 ERROR [main] Failed to load configuration\n"
+            + "java.lang.IllegalStateException: boom\n"
+            + "\tat org.gluu.Test.run(Test.java:10)\n"
+            + "2018-10-01 10:00:02,003 DEBUG [main] Retrying\n"
+            + "\tat org.gluu.Test.retry(Test.java:20)\n"
+            + "2018-10-01 10:00:03,004 WARN  [main] Configuration is incomplete\n";
+
+    private File logFile;
+
+    @BeforeMethod
+    public void createLog() throws IOException {
+        logFile = new File(tempDir, "oxtrust.log");
+        FileUtils.writeStringToFile(logFile, LOG, "UTF-8");
+    }
+
+    @Test
+    public void testLevelFilter() throws Exception {
+        LogViewerService service = createService();
+
+        LogChunk chunk = service.search(logFile.getAbsolutePath(), null, LogLevel.ERROR, 0, null, 100);
+
+        // Stack trace lines get level of the previous line
+        assertEquals(getNumbers(chunk), Arrays.asList(1L, 2L, 3L));
+        assertEquals(chunk.getNextLine(), -1);
+
+        chunk = service.search(logFile.getAbsolutePath(), null, LogLevel.WARN, 0, null, 100);
+        assertEquals(getNumbers(chunk), Arrays.asList(1L, 2L, 3L, 6L));
+    }
+
+    @Test
+    public void testLevelIsCarriedToNextPage() throws Exception {
+        LogViewerService service = createService();
+
+        LogChunk firstPage = service.search(logFile.getAbsolutePath(), null, LogLevel.ERROR, 0, null, 2);
+        assertEquals(getNumbers(firstPage), Arrays.asList(1L, 2L));
+        assertEquals(firstPage.getNextLine(), 3);
+        assertEquals(firstPage.getLevel(), LogLevel.ERROR);
+
+        LogChunk secondPage = service.search(logFile.getAbsolutePath(), null, LogLevel.ERROR, firstPage.getNextLine(), firstPage.getLevel(), 2);
+        assertEquals(getNumbers(secondPage), Arrays.asList(3L));
+        assertEquals(secondPage.getNextLine(), -1);
+    }
+
+    @Test
+    public void testPatternWithLevel() throws Exception {
+        LogViewerService service = createService();
+
+        LogChunk chunk = service.search(logFile.getAbsolutePath(), "Test\\.", LogLevel.DEBUG, 0, null, 100);
+        assertEquals(getNumbers(chunk), Arrays.asList(3L, 5L));
+
+        chunk = service.search(logFile.getAbsolutePath(), "Test\\.", LogLevel.ERROR, 0, null, 100);
+        assertEquals(getNumbers(chunk), Arrays.asList(3L));
+    }
+
+    @Test
+    public void testIndexesAreLimited() throws Exception {
+        LogViewerService service = createService();
+
+        for (int i = 0; i < LogViewerService.MAX_INDEXES + 5; i++) {
+            File file = new File(tempDir, "app" + i + ".log");
+            FileUtils.writeStringToFile(file, LOG, "UTF-8");
+            service.tail(file.getAbsolutePath(), 10);
+        }
+
+        assertEquals(service.getIndexCount(), LogViewerService.MAX_INDEXES);
+    }
+
+    private List<Long> getNumbers(LogChunk chunk) {
+        List<Long> result = new ArrayList<Long>();
+        for (LogLine line : chunk.getLines()) {
+            result.add(line.getNumber());
+        }
+
+        return result;
+    }
+
+    private LogViewerService createService() {
+        return new LogViewerService(LoggerFactory.getLogger(LogViewerService.class));
+    }
+
+}
@@ -0,0 +1,122 @@
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xdi.config.oxtrust.AppConfiguration;
+import org.xdi.service.JsonService;
+
+import static org.testng.Assert.*;
+
+public class MetadataIndexServiceTest extends BaseTempDirTest {
+
+    private File metadataDir;
+
+    @BeforeMethod
+    public void createMetadataDir() {
+        metadataDir = new File(tempDir, Shibboleth3ConfService.SHIB3_IDP_METADATA_FOLDER);
+        assertTrue(metadataDir.mkdirs());
+    }
+
+    @Test
+    public void testEntityIds() throws Exception {
+        MetadataIndexService service = createService();
+        File metadataFile = writeMetadata("sp1-sp-metadata.xml", "https://sp1.example.com", "https://sp2.example.com");
+
+        assertEquals(service.getEntityIds(metadataFile), Arrays.asList("https://sp1.example.com", "https://sp2.example.com"));
+        assertNotNull(service.getDigest(metadataFile));
+        assertNull(service.getEntityIds(new File(metadataDir, "missing-sp-metadata.xml")));
+    }
+
+    @Test
+    public void testChangedFileIsParsedAgain() throws Exception {
+        MetadataIndexService service = createService();
+        File metadataFile = writeMetadata("sp1-sp-metadata.xml", "https://sp1.example.com");
+        String digest = service.getDigest(metadataFile);
+
+        writeMetadata("sp1-sp-metadata.xml", "https://sp1.example.com", "https://sp3.example.com");
+        assertTrue(metadataFile.setLastModified(metadataFile.lastModified() + 2000));
+
+        assertEquals(service.getEntityIds(metadataFile), Arrays.asList("https://sp1.example.com", "https://sp3.example.com"));
+        assertNotEquals(service.getDigest(metadataFile), digest);
+    }
+
+    @Test
+    public void testMetadataFileNamesByEntityId() throws Exception {
+        MetadataIndexService service = createService();
+        File metadataFile1 = writeMetadata("sp1-sp-metadata.xml", "https://sp1.example.com", "https://shared.example.com");
+        File metadataFile2 = writeMetadata("sp2-sp-metadata.xml", "https://sp2.example.com", "https://shared.example.com");
+        service.getEntityIds(metadataFile1);
+        service.getEntityIds(metadataFile2);
+
+        assertEquals(service.getMetadataFileNames("https://sp1.example.com"), Arrays.asList("sp1-sp-metadata.xml"));
+        List<String> shared = service.getMetadataFileNames("https://shared.example.com");
+        Collections.sort(shared);
+        assertEquals(shared, Arrays.asList("sp1-sp-metadata.xml", "sp2-sp-metadata.xml"));
+        assertTrue(service.getMetadataFileNames("https://unknown.example.com").isEmpty());
+
+        // Inverse index follows file changes
+        writeMetadata("sp2-sp-metadata.xml", "https://sp2.example.com");
+        assertTrue(metadataFile2.setLastModified(metadataFile2.lastModified() + 2000));
+        service.getEntityIds(metadataFile2);
+        assertEquals(service.getMetadataFileNames("https://shared.example.com"), Arrays.asList("sp1-sp-metadata.xml"));
+
+        service.invalidate(metadataFile1);
+        assertTrue(service.getMetadataFileNames("https://shared.example.com").isEmpty());
+    }
+
+    @Test
+    public void testFlushAndLoad() throws Exception {
+        MetadataIndexService service = createService();
+        File metadataFile = writeMetadata("sp1-sp-metadata.xml", "https://sp1.example.com");
+        service.getEntityIds(metadataFile);
+        service.flush();
+
+        File indexFile = new File(metadataDir, MetadataIndexService.METADATA_INDEX_FILE);
+        assertTrue(indexFile.isFile());
+        assertFalse(new File(metadataDir, MetadataIndexService.METADATA_INDEX_FILE + ".tmp").exists());
+
+        // New instance loads index and inverse index from file
+        MetadataIndexService loadedService = createService();
+        assertEquals(loadedService.getMetadataFileNames("https://sp1.example.com"), Arrays.asList("sp1-sp-metadata.xml"));
+        assertEquals(loadedService.getEntityIds(metadataFile), Arrays.asList("https://sp1.example.com"));
+    }
+
+    private MetadataIndexService createService() throws Exception {
+        AppConfiguration appConfiguration = new AppConfiguration();
+        appConfiguration.setShibboleth3IdpRootDir(tempDir.getAbsolutePath());
+
+        JsonService jsonService = new JsonService();
+        jsonService.init();
+
+        return new MetadataIndexService(LoggerFactory.getLogger(MetadataIndexService.class), appConfiguration, jsonService);
+    }
+
+    private File writeMetadata(String fileName, String... entityIds) throws IOException {
+        StringBuilder metadata = new StringBuilder();
+        metadata.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        metadata.append("<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\">\n");
+        for (String entityId : entityIds) {
+            metadata.append("  <md:EntityDescriptor entityID=\"").append(entityId).append("\">\n");
+            metadata.append("    <md:SPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">\n");
+            metadata.append("      <md:AssertionConsumerService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\" Location=\"")
+                    .append(entityId).append("/acs\" index=\"0\"/>\n");
+            metadata.append("    </md:SPSSODescriptor>\n");
+            metadata.append("  </md:EntityDescriptor>\n");
+        }
+        metadata.append("</md:EntitiesDescriptor>\n");
+
+        File file = new File(metadataDir, fileName);
+        FileUtils.writeStringToFile(file, metadata.toString(), "UTF-8");
+
+        return file;
+    }
+
+}
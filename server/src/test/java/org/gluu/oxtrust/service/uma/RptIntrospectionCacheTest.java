@@ -0,0 +1,98 @@
+package org.gluu.oxtrust.service.uma;
+
+import java.util.Arrays;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.xdi.oxauth.model.uma.RptIntrospectionResponse;
+import org.xdi.oxauth.model.uma.UmaPermission;
+
+import static org.testng.Assert.*;
+
+public class RptIntrospectionCacheTest {
+
+    @AfterMethod
+    public void clearProperties() {
+        System.clearProperty("gluu.rpt.cache.maxTtl");
+        System.clearProperty("gluu.rpt.cache.negativeTtl");
+    }
+
+    @Test
+    public void testActiveTokenIsCached() {
+        RptIntrospectionCache cache = new RptIntrospectionCache();
+        RptIntrospectionResponse response = createResponse("scim_access");
+
+        assertNull(cache.get("rpt"));
+        cache.put("rpt", response);
+
+        RptIntrospectionCache.CachedStatus cachedStatus = cache.get("rpt");
+        assertNotNull(cachedStatus);
+        assertSame(cachedStatus.getResponse(), response);
+        assertNull(cache.get("other_rpt"));
+    }
+
+    @Test
+    public void testInactiveTokenIsCached() {
+        RptIntrospectionCache cache = new RptIntrospectionCache();
+        cache.put("rpt", null);
+
+        RptIntrospectionCache.CachedStatus cachedStatus = cache.get("rpt");
+        assertNotNull(cachedStatus);
+        assertNull(cachedStatus.getResponse());
+    }
+
+    @Test
+    public void testEntryExpires() throws InterruptedException {
+        System.setProperty("gluu.rpt.cache.maxTtl", "1");
+        System.setProperty("gluu.rpt.cache.negativeTtl", "1");
+        RptIntrospectionCache cache = new RptIntrospectionCache();
+
+        cache.put("rpt", createResponse("scim_access"));
+        cache.put("inactive_rpt", null);
+        assertNotNull(cache.get("rpt"));
+        assertNotNull(cache.get("inactive_rpt"));
+
+        Thread.sleep(1100);
+        assertNull(cache.get("rpt"));
+        assertNull(cache.get("inactive_rpt"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        RptIntrospectionCache cache = new RptIntrospectionCache();
+        cache.put("rpt", createResponse("scim_access"));
+        cache.put("other_rpt", createResponse("scim_access"));
+
+        cache.invalidate("rpt");
+        assertNull(cache.get("rpt"));
+        assertNotNull(cache.get("other_rpt"));
+
+        // Upgraded token replaces invalidated entry
+        RptIntrospectionResponse upgraded = createResponse("scim_access", "passport_access");
+        cache.put("rpt", upgraded);
+        assertSame(cache.get("rpt").getResponse(), upgraded);
+    }
+
+    @Test
+    public void testDisabled() {
+        System.setProperty("gluu.rpt.cache.maxTtl", "0");
+        RptIntrospectionCache cache = new RptIntrospectionCache();
+        assertFalse(cache.isEnabled());
+
+        cache.put("rpt", createResponse("scim_access"));
+        assertNull(cache.get("rpt"));
+    }
+
+    private RptIntrospectionResponse createResponse(String... scopes) {
+        UmaPermission permission = new UmaPermission();
+        permission.setResourceId("resource");
+        permission.setScopes(Arrays.asList(scopes));
+
+        RptIntrospectionResponse response = new RptIntrospectionResponse();
+        response.setActive(true);
+        response.setPermissions(Arrays.asList(permission));
+
+        return response;
+    }
+
+}